@@ -39,6 +39,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Getter
 @Setter
@@ -58,6 +59,13 @@ public abstract class AbstractDbCachedJmsQueue<M extends IKeyed> extends DbCache
     @Setter(AccessLevel.NONE)
     @Getter(AccessLevel.MODULE)
     private Map<String, Message> messageCache = new ConcurrentHashMap<>();
+    /**
+     * JMS sessions are single threaded, the partition senders share the
+     * queue session/producer so broker sends are serialized.
+     */
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock sendLock = new ReentrantLock();
 
     public void audit(M message, EAuditType auditType, Principal user) throws JMSException {
         if (audited()) {
@@ -89,7 +97,11 @@ public abstract class AbstractDbCachedJmsQueue<M extends IKeyed> extends DbCache
     public void send(@Nonnull M message, @Nonnull Principal user) throws JMSException {
         try {
             sendLatency.record(() -> {
+                sendLock.lock();
                 try {
+                    if (session == null) {
+                        session = connection().connection();
+                    }
                     if (producer == null) {
                         producer = session.createProducer(session.createQueue(queue));
                     }
@@ -103,6 +115,8 @@ public abstract class AbstractDbCachedJmsQueue<M extends IKeyed> extends DbCache
                     LogUtils.error(getClass(), ex);
                     Monitoring.increment(sendErrorCounter.name(), (KeyValuePair<String, String>[]) null);
                     throw new RuntimeException(ex);
+                } finally {
+                    sendLock.unlock();
                 }
             });
         } catch (Exception ex) {
@@ -188,18 +202,25 @@ public abstract class AbstractDbCachedJmsQueue<M extends IKeyed> extends DbCache
 
     @Override
     public void close() throws IOException {
-        if (session != null) {
-            try {
+        super.close();
+        sendLock.lock();
+        try {
+            if (session != null) {
                 if (producer != null) {
                     producer.close();
+                    producer = null;
                 }
                 if (consumer != null) {
                     consumer.close();
+                    consumer = null;
                 }
                 session.close();
-            } catch (JMSException ex) {
-                throw new IOException(ex);
+                session = null;
             }
+        } catch (JMSException ex) {
+            throw new IOException(ex);
+        } finally {
+            sendLock.unlock();
         }
         if (connection() != null) {
             connection().close();
@@ -18,6 +18,7 @@
 package com.codekutter.common.messaging;
 
 import com.codekutter.common.stores.AbstractConnection;
+import com.codekutter.common.stores.ConnectionException;
 import com.codekutter.zconfig.common.model.annotations.ConfigValue;
 import lombok.Getter;
 import lombok.Setter;
@@ -36,4 +37,16 @@ public abstract class AbstractJmsConnection extends AbstractConnection<Session>
     public boolean hasTransactionSupport() {
         return false;
     }
+
+    /**
+     * Create a new transacted session (used for batch sends).
+     * Only supported if the connection has transaction support.
+     *
+     * @return - Transacted Session.
+     * @throws ConnectionException
+     */
+    public Session transactedSession() throws ConnectionException {
+        throw new ConnectionException(String.format("Transacted sessions not supported. [type=%s]",
+                getClass().getCanonicalName()), getClass());
+    }
 }
@@ -39,6 +39,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Getter
 @Setter
@@ -58,6 +59,18 @@ public abstract class AbstractJmsQueue<M extends IKeyed> extends AbstractQueue<S
     @Setter(AccessLevel.NONE)
     @Getter(AccessLevel.MODULE)
     private Map<String, Message> messageCache = new ConcurrentHashMap<>();
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private Session batchSession;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private MessageProducer batchProducer;
+    /**
+     * Guards the batch session/producer, JMS sessions are single threaded.
+     */
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock batchLock = new ReentrantLock();
 
     public void audit(M message, EAuditType auditType, Principal user) throws JMSException {
         if (audited()) {
@@ -112,6 +125,112 @@ public abstract class AbstractJmsQueue<M extends IKeyed> extends AbstractQueue<S
         }
     }
 
+    /**
+     * Send a batch of messages. If the connection supports transactions, the batch
+     * is sent using a transacted session and committed once, else messages are sent
+     * one at a time using the shared producer.
+     *
+     * @param messages - List of messages.
+     * @param user     - Calling user.
+     * @throws JMSException
+     */
+    @Override
+    public void sendBatch(@Nonnull List<M> messages, @Nonnull Principal user) throws JMSException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (!connection().hasTransactionSupport()) {
+            super.sendBatch(messages, user);
+            return;
+        }
+        try {
+            sendLatency.record(() -> {
+                batchLock.lock();
+                try {
+                    if (batchSession == null) {
+                        batchSession = ((AbstractJmsConnection) connection()).transactedSession();
+                        batchProducer = batchSession.createProducer(batchSession.createQueue(queue));
+                    }
+                    try {
+                        for (M message : messages) {
+                            batchProducer.send(message(batchSession, message));
+                        }
+                        batchSession.commit();
+                    } catch (Exception ex) {
+                        batchSession.rollback();
+                        throw ex;
+                    }
+                    for (M message : messages) {
+                        if (audited()) {
+                            audit(message, EAuditType.Create, user);
+                        }
+                        Monitoring.increment(sendCounter.name(), (KeyValuePair<String, String>[]) null);
+                    }
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                    throw new RuntimeException(ex);
+                } finally {
+                    batchLock.unlock();
+                }
+            });
+        } catch (Exception ex) {
+            Monitoring.increment(sendErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Send a batch of messages using SQS batch requests. If the messages can't be
+     * batched they are sent one at a time, as are messages that failed in the
+     * batch request.
+     *
+     * @param messages - List of messages.
+     * @param user     - Calling user.
+     * @param sender   - SQS batch sender.
+     * @throws JMSException
+     */
+    protected void sendBatch(@Nonnull List<M> messages,
+                             @Nonnull Principal user,
+                             @Nonnull SQSBatchSender sender) throws JMSException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<M> failed;
+        try {
+            failed = sendLatency.record(() -> {
+                List<Message> jmsMessages = new ArrayList<>(messages.size());
+                for (M message : messages) {
+                    jmsMessages.add(message(message));
+                }
+                if (!sender.canSend(jmsMessages)) {
+                    return messages;
+                }
+                List<Integer> errors = sender.send(jmsMessages);
+                List<M> retry = new ArrayList<>(errors.size());
+                for (int ii = 0; ii < messages.size(); ii++) {
+                    M message = messages.get(ii);
+                    if (errors.contains(ii)) {
+                        retry.add(message);
+                        continue;
+                    }
+                    if (audited()) {
+                        audit(message, EAuditType.Create, user);
+                    }
+                    Monitoring.increment(sendCounter.name(), (KeyValuePair<String, String>[]) null);
+                }
+                return retry;
+            });
+        } catch (Exception ex) {
+            Monitoring.increment(sendErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+        for (M message : failed) {
+            send(message, user);
+        }
+    }
+
     @Override
     public M receive(long timeout, @Nonnull Principal user) throws JMSException {
         try {
@@ -130,15 +249,7 @@ public abstract class AbstractJmsQueue<M extends IKeyed> extends AbstractQueue<S
             }
             Message m = consumer.receive(timeout);
             if (m != null) {
-                Monitoring.increment(receiveCounter.name(), (KeyValuePair<String, String>[]) null);
-                if (!((AbstractJmsConnection) connection()).autoAck()) {
-                    messageCache.put(m.getJMSMessageID(), m);
-                }
-                M message = message((TextMessage) m, user);
-                if (audited()) {
-                    audit(message, EAuditType.Read, user);
-                }
-                return message;
+                return readMessage(m, user);
             }
             return null;
         } catch (Exception ex) {
@@ -148,6 +259,18 @@ public abstract class AbstractJmsQueue<M extends IKeyed> extends AbstractQueue<S
         }
     }
 
+    private M readMessage(Message m, Principal user) throws Exception {
+        Monitoring.increment(receiveCounter.name(), (KeyValuePair<String, String>[]) null);
+        if (!((AbstractJmsConnection) connection()).autoAck()) {
+            messageCache.put(m.getJMSMessageID(), m);
+        }
+        M message = message((TextMessage) m, user);
+        if (audited()) {
+            audit(message, EAuditType.Read, user);
+        }
+        return message;
+    }
+
     @Override
     public boolean ack(@Nonnull String messageId, @Nonnull Principal user) throws JMSException {
         if (!((AbstractJmsConnection) connection()).autoAck()) {
@@ -160,25 +283,82 @@ public abstract class AbstractJmsQueue<M extends IKeyed> extends AbstractQueue<S
         return false;
     }
 
+    /**
+     * Receive a batch of messages. Waits (till timeout) for the first message,
+     * then drains the messages immediately available till the batch size is met
+     * or the timeout expires.
+     *
+     * @param maxResults - Batch size of messages to fetch.
+     * @param timeout    - Max read timeout.
+     * @param user       - Calling user.
+     * @return - List of read messages or NULL if none available.
+     * @throws JMSException
+     */
     @Override
     public List<M> receiveBatch(int maxResults, long timeout, @Nonnull Principal user) throws JMSException {
-        long stime = System.currentTimeMillis();
-        long tleft = timeout;
-        List<M> messages = new ArrayList<>();
-        while (tleft > 0 && messages.size() < maxResults) {
-            M m = receive(timeout, user);
-            if (m != null) {
-                messages.add(m);
+        try {
+            List<M> messages = receiveLatency.record(() -> receiveMessages(maxResults, timeout, user));
+            if (!messages.isEmpty()) {
+                return messages;
             }
-            tleft = (timeout - (System.currentTimeMillis() - stime));
+            return null;
+        } catch (Exception ex) {
+            Monitoring.increment(receiveErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
         }
-        if (!messages.isEmpty()) {
+    }
+
+    private List<M> receiveMessages(int maxResults, long timeout, Principal user) throws JMSException {
+        try {
+            if (consumer == null) {
+                consumer = session.createConsumer(session.createQueue(queue));
+            }
+            long etime = System.currentTimeMillis() + timeout;
+            List<M> messages = new ArrayList<>();
+            while (messages.size() < maxResults) {
+                Message m = null;
+                if (messages.isEmpty()) {
+                    long tleft = etime - System.currentTimeMillis();
+                    if (tleft > 0) {
+                        m = consumer.receive(tleft);
+                    }
+                } else if (System.currentTimeMillis() < etime) {
+                    m = consumer.receiveNoWait();
+                }
+                if (m == null) {
+                    break;
+                }
+                messages.add(readMessage(m, user));
+            }
             return messages;
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            Monitoring.increment(receiveErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            throw new JMSException(ex.getLocalizedMessage());
         }
-        return null;
     }
 
-    public abstract Message message(M message) throws JMSException;
+    /**
+     * Create a JMS message for the entity using the queue session.
+     *
+     * @param message - Message entity.
+     * @return - JMS Message.
+     * @throws JMSException
+     */
+    public Message message(M message) throws JMSException {
+        return message(session, message);
+    }
+
+    /**
+     * Create a JMS message for the entity using the passed session.
+     *
+     * @param session - JMS Session to create the message with.
+     * @param message - Message entity.
+     * @return - JMS Message.
+     * @throws JMSException
+     */
+    public abstract Message message(@Nonnull Session session, M message) throws JMSException;
 
     public abstract M message(Message message, Principal user) throws JMSException;
 
@@ -192,6 +372,18 @@ public abstract class AbstractJmsQueue<M extends IKeyed> extends AbstractQueue<S
                 if (consumer != null) {
                     consumer.close();
                 }
+                batchLock.lock();
+                try {
+                    if (batchSession != null) {
+                        if (batchProducer != null) {
+                            batchProducer.close();
+                        }
+                        batchSession.close();
+                        batchSession = null;
+                    }
+                } finally {
+                    batchLock.unlock();
+                }
                 session.close();
             } catch (JMSException ex) {
                 throw new IOException(ex);
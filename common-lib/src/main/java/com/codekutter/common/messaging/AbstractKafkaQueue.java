@@ -0,0 +1,438 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.codekutter.common.auditing.AuditManager;
+import com.codekutter.common.model.AuditRecord;
+import com.codekutter.common.model.EAuditType;
+import com.codekutter.common.model.IKeyed;
+import com.codekutter.common.stores.AbstractConnection;
+import com.codekutter.common.stores.ConnectionManager;
+import com.codekutter.common.utils.ConfigUtils;
+import com.codekutter.common.utils.KeyValuePair;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.zconfig.common.ConfigurationAnnotationProcessor;
+import com.codekutter.zconfig.common.ConfigurationException;
+import com.codekutter.zconfig.common.model.annotations.ConfigAttribute;
+import com.codekutter.zconfig.common.model.annotations.ConfigValue;
+import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
+import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import javax.annotation.Nonnull;
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue implementation backed by a Kafka topic.
+ * <p>
+ * Messages are keyed by the entity key, sends are batched/compressed by the
+ * producer (see {@link KafkaConnection}). Received message IDs are of the form
+ * [topic]:[partition]:[offset], offsets are committed based on the configured
+ * commit strategy. When partitions are revoked by a rebalance the pending offsets
+ * are committed and the buffered records of the revoked partitions are dropped.
+ *
+ * @param <M> - Message Type
+ */
+@Getter
+@Setter
+@Accessors(fluent = true)
+@SuppressWarnings("rawtypes")
+public abstract class AbstractKafkaQueue<M extends IKeyed> extends AbstractQueue<Producer<String, byte[]>, M> {
+    public static final int DEFAULT_MAX_POLL_RECORDS = 500;
+
+    @ConfigAttribute(required = true)
+    private String topic;
+    @ConfigValue
+    private String groupId;
+    @ConfigValue
+    private EKafkaCommitStrategy commitStrategy = EKafkaCommitStrategy.Poll;
+    @ConfigValue
+    private int maxPollRecords = DEFAULT_MAX_POLL_RECORDS;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.MODULE)
+    private Consumer<String, byte[]> consumer;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final Deque<ConsumerRecord<String, byte[]>> records = new ArrayDeque<>();
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final Map<TopicPartition, OffsetAndMetadata> pendingOffsets = new HashMap<>();
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock consumerLock = new ReentrantLock();
+
+    public void audit(M message, EAuditType auditType, Principal user) throws JMSException {
+        if (audited()) {
+            try {
+                QueueAuditContext ctx = context();
+                String changeContext = ctx.json();
+                AuditRecord r = null;
+                if (Strings.isNullOrEmpty(auditLogger())) {
+                    r = AuditManager.get().audit(getClass(), name(), auditType, message, null, changeContext, user);
+                } else {
+                    r = AuditManager.get().audit(getClass(), name(), auditLogger(), auditType, message, null, changeContext, user);
+                }
+                if (r == null) {
+                    throw new JMSException(String.format("Error creating audit record. [data store=%s:%s][entity type=%s]",
+                            getClass().getCanonicalName(), name(), message.getClass().getCanonicalName()));
+                }
+            } catch (Exception ex) {
+                LogUtils.error(getClass(), ex);
+                throw new JMSException(ex.getLocalizedMessage());
+            }
+        }
+    }
+
+    @Override
+    public void send(@Nonnull M message, @Nonnull Principal user) throws JMSException {
+        try {
+            sendLatency.record(() -> {
+                try {
+                    connection().connection().send(record(message)).get();
+                    if (audited()) {
+                        audit(message, EAuditType.Create, user);
+                    }
+                    Monitoring.increment(sendCounter.name(), (KeyValuePair<String, String>[]) null);
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                    throw new RuntimeException(ex);
+                }
+            });
+        } catch (Exception ex) {
+            Monitoring.increment(sendErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Send a batch of messages. All records are handed to the producer
+     * (batched/compressed by the client) and flushed once.
+     *
+     * @param messages - List of messages.
+     * @param user     - Calling user.
+     * @throws JMSException - If any of the messages failed.
+     */
+    @Override
+    public void sendBatch(@Nonnull List<M> messages, @Nonnull Principal user) throws JMSException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            sendLatency.record(() -> {
+                try {
+                    Producer<String, byte[]> producer = connection().connection();
+                    List<Future<RecordMetadata>> responses = new ArrayList<>(messages.size());
+                    for (M message : messages) {
+                        responses.add(producer.send(record(message)));
+                    }
+                    producer.flush();
+
+                    int errors = 0;
+                    Throwable error = null;
+                    for (int ii = 0; ii < responses.size(); ii++) {
+                        try {
+                            responses.get(ii).get();
+                            if (audited()) {
+                                audit(messages.get(ii), EAuditType.Create, user);
+                            }
+                            Monitoring.increment(sendCounter.name(), (KeyValuePair<String, String>[]) null);
+                        } catch (ExecutionException ex) {
+                            errors++;
+                            error = ex.getCause();
+                            Monitoring.increment(sendErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+                        }
+                    }
+                    if (errors > 0) {
+                        throw new JMSException(String.format("Error sending batch. [topic=%s][failed=%d/%d][error=%s]",
+                                topic, errors, messages.size(), error.getLocalizedMessage()));
+                    }
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                    throw new RuntimeException(ex);
+                }
+            });
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public M receive(long timeout, @Nonnull Principal user) throws JMSException {
+        try {
+            return receiveLatency.record(() -> {
+                consumerLock.lock();
+                try {
+                    if (records.isEmpty()) {
+                        poll(timeout);
+                    }
+                    return next(user);
+                } finally {
+                    consumerLock.unlock();
+                }
+            });
+        } catch (Exception ex) {
+            Monitoring.increment(receiveErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Receive a batch of messages. Waits (till timeout) for the first poll to return
+     * records, then drains the records already fetched till the batch size is met.
+     *
+     * @param maxResults - Batch size of messages to fetch.
+     * @param timeout    - Max read timeout.
+     * @param user       - Calling user.
+     * @return - List of read messages or NULL if none available.
+     * @throws JMSException
+     */
+    @Override
+    public List<M> receiveBatch(int maxResults, long timeout, @Nonnull Principal user) throws JMSException {
+        try {
+            List<M> messages = receiveLatency.record(() -> {
+                consumerLock.lock();
+                try {
+                    long etime = System.currentTimeMillis() + timeout;
+                    List<M> result = new ArrayList<>();
+                    while (result.size() < maxResults) {
+                        if (records.isEmpty()) {
+                            long tleft = etime - System.currentTimeMillis();
+                            if (tleft <= 0) {
+                                break;
+                            }
+                            poll(result.isEmpty() ? tleft : 0);
+                            if (records.isEmpty()) {
+                                if (!result.isEmpty()) {
+                                    break;
+                                }
+                                continue;
+                            }
+                        }
+                        M m = next(user);
+                        if (m != null) {
+                            result.add(m);
+                        }
+                    }
+                    return result;
+                } finally {
+                    consumerLock.unlock();
+                }
+            });
+            if (!messages.isEmpty()) {
+                return messages;
+            }
+            return null;
+        } catch (Exception ex) {
+            Monitoring.increment(receiveErrorCounter.name(), (KeyValuePair<String, String>[]) null);
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Acknowledge the message. Only applicable for the Ack commit strategy,
+     * the offset of the message (and all preceding messages in the partition) is committed.
+     *
+     * @param messageId - Message ID ([topic]:[partition]:[offset])
+     * @param user      - Calling user.
+     * @return - Committed?
+     * @throws JMSException
+     */
+    @Override
+    public boolean ack(@Nonnull String messageId, @Nonnull Principal user) throws JMSException {
+        if (commitStrategy != EKafkaCommitStrategy.Ack) {
+            return false;
+        }
+        String[] parts = messageId.split(":");
+        if (parts.length != 3) {
+            throw new JMSException(String.format("Invalid message ID. [id=%s]", messageId));
+        }
+        consumerLock.lock();
+        try {
+            if (consumer == null) {
+                return false;
+            }
+            TopicPartition tp = new TopicPartition(parts[0], Integer.parseInt(parts[1]));
+            if (!consumer.assignment().contains(tp)) {
+                // Revoked by a rebalance, the message will be redelivered to the new owner.
+                LogUtils.warn(getClass(), String.format("Partition not assigned, message not acked. [id=%s]", messageId));
+                return false;
+            }
+            long offset = Long.parseLong(parts[2]);
+            consumer.commitSync(Collections.singletonMap(tp, new OffsetAndMetadata(offset + 1)));
+            return true;
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    private void poll(long timeout) throws Exception {
+        if (consumer == null) {
+            consumer = ((KafkaConnection) connection()).consumer(groupId,
+                    commitStrategy == EKafkaCommitStrategy.Auto, maxPollRecords);
+            consumer.subscribe(Collections.singletonList(topic), new RebalanceListener());
+        }
+        commitPending();
+        ConsumerRecords<String, byte[]> polled = consumer.poll(Duration.ofMillis(timeout));
+        if (polled != null && !polled.isEmpty()) {
+            for (ConsumerRecord<String, byte[]> record : polled) {
+                records.add(record);
+            }
+        }
+    }
+
+    private void commitPending() {
+        if (!pendingOffsets.isEmpty()) {
+            consumer.commitSync(pendingOffsets);
+            pendingOffsets.clear();
+        }
+    }
+
+    /**
+     * Commits the pending offsets (Poll strategy) before partitions are revoked and
+     * drops the buffered records of the revoked partitions. Invoked from poll(),
+     * with the consumer lock held.
+     */
+    private final class RebalanceListener implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (commitStrategy == EKafkaCommitStrategy.Poll) {
+                try {
+                    commitPending();
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                }
+            }
+            pendingOffsets.keySet().removeAll(partitions);
+            records.removeIf(r -> partitions.contains(new TopicPartition(r.topic(), r.partition())));
+            LogUtils.debug(getClass(), "Partitions revoked. [topic={}][partitions={}]", topic, partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            LogUtils.debug(getClass(), "Partitions assigned. [topic={}][partitions={}]", topic, partitions);
+        }
+    }
+
+    private M next(Principal user) throws Exception {
+        ConsumerRecord<String, byte[]> record = records.poll();
+        if (record == null) {
+            return null;
+        }
+        if (commitStrategy == EKafkaCommitStrategy.Poll) {
+            pendingOffsets.put(new TopicPartition(record.topic(), record.partition()),
+                    new OffsetAndMetadata(record.offset() + 1));
+        }
+        Monitoring.increment(receiveCounter.name(), (KeyValuePair<String, String>[]) null);
+        String messageId = String.format("%s:%d:%d", record.topic(), record.partition(), record.offset());
+        M message = message(record.value(), messageId, user);
+        if (audited()) {
+            audit(message, EAuditType.Read, user);
+        }
+        return message;
+    }
+
+    private ProducerRecord<String, byte[]> record(M message) throws JMSException {
+        byte[] data = message(message);
+        if (data == null || data.length <= 0) {
+            throw new JMSException("Error serializing message : NULL/Empty buffer returned.");
+        }
+        return new ProducerRecord<>(topic, message.getKey().stringKey(), data);
+    }
+
+    public abstract byte[] message(@Nonnull M message) throws JMSException;
+
+    public abstract M message(@Nonnull byte[] data, @Nonnull String messageId, Principal user) throws JMSException;
+
+    /**
+     * Configure this type instance.
+     *
+     * @param node - Handle to the configuration node.
+     * @throws ConfigurationException
+     */
+    @Override
+    public void configure(@Nonnull AbstractConfigNode node) throws ConfigurationException {
+        Preconditions.checkArgument(node instanceof ConfigPathNode);
+        try {
+            ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
+            LogUtils.info(getClass(), String.format("Configuring Queue. [name=%s]...", name()));
+            AbstractConfigNode cnode = ConfigUtils.getPathNode(getClass(), (ConfigPathNode) node);
+            if (!(cnode instanceof ConfigPathNode)) {
+                throw new ConfigurationException(String.format("Invalid Queue configuration. [node=%s]", node.getAbsolutePath()));
+            }
+            AbstractConnection<Producer<String, byte[]>> conn = ConnectionManager.get().readConnection((ConfigPathNode) cnode);
+            if (!(conn instanceof KafkaConnection)) {
+                throw new ConfigurationException(String.format("Invalid Kafka connection returned. [type=%s]", conn.getClass().getCanonicalName()));
+            }
+            connection(conn);
+            if (Strings.isNullOrEmpty(groupId)) {
+                groupId = name();
+            }
+            setupMetrics(topic);
+        } catch (Throwable t) {
+            throw new ConfigurationException(t);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        consumerLock.lock();
+        try {
+            if (consumer != null) {
+                if (commitStrategy == EKafkaCommitStrategy.Poll) {
+                    commitPending();
+                }
+                consumer.close();
+                consumer = null;
+            }
+        } finally {
+            consumerLock.unlock();
+        }
+        if (connection() != null) {
+            connection().close();
+        }
+    }
+}
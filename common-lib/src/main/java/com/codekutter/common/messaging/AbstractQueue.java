@@ -116,6 +116,22 @@ public abstract class AbstractQueue<C, M> implements IConfigurable, Closeable {
      */
     public abstract void send(@Nonnull M message, @Nonnull Principal user) throws JMSException;
 
+    /**
+     * Send a batch of messages to the queue.
+     * <p>
+     * Default implementation sends the messages one at a time, implementations
+     * should override if the underlying transport supports batched sends.
+     *
+     * @param messages - List of messages.
+     * @param user     - Calling user.
+     * @throws JMSException
+     */
+    public void sendBatch(@Nonnull List<M> messages, @Nonnull Principal user) throws JMSException {
+        for (M message : messages) {
+            send(message, user);
+        }
+    }
+
     /**
      * Receive a message from the queue.
      *
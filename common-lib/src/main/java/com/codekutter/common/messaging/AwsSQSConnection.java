@@ -23,6 +23,7 @@ import com.amazon.sqs.javamessaging.SQSConnectionFactory;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.EC2ContainerCredentialsProviderWrapper;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import com.codekutter.common.AwsConstants;
 import com.codekutter.common.stores.ConnectionException;
@@ -85,6 +86,18 @@ public class AwsSQSConnection extends AbstractJmsConnection {
         return false;
     }
 
+    /**
+     * Get the SQS client used by the JMS connection. SQS JMS sessions
+     * can't be transacted, batches are sent using the client batch API.
+     *
+     * @return - SQS Client.
+     * @throws ConnectionException
+     */
+    public AmazonSQS sqsClient() throws ConnectionException {
+        state().checkOpened();
+        return connection.getAmazonSQSClient();
+    }
+
     @Override
     public void close(@Nonnull Session connection) throws ConnectionException {
         try {
@@ -20,11 +20,15 @@ package com.codekutter.common.messaging;
 import com.codekutter.common.model.EObjectState;
 import com.codekutter.common.model.IKeyed;
 import com.codekutter.common.model.ObjectState;
+import com.codekutter.common.utils.KeyValuePair;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
 import com.codekutter.zconfig.common.model.annotations.ConfigAttribute;
 import com.codekutter.zconfig.common.model.annotations.ConfigValue;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import com.netflix.spectator.api.Id;
 import lombok.experimental.Accessors;
 
 import javax.annotation.Nonnull;
@@ -32,6 +36,10 @@ import javax.jms.JMSException;
 import java.io.IOException;
 import java.security.Principal;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Getter
 @Setter
@@ -43,6 +51,8 @@ public abstract class CachedQueue<C, M extends IKeyed> extends AbstractQueue<C,
     public static final int DEFAULT_RETRY_COUNT = 5;
     public static final long DEFAULT_START_DELAY = 20000;
     public static final long DEFAULT_SEND_DELAY = 10000;
+    public static final long DEFAULT_MIN_SEND_DELAY = 500;
+    public static final long DEFAULT_BLOCK_TIMEOUT = 30000;
 
     @ConfigValue
     protected int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
@@ -54,8 +64,29 @@ public abstract class CachedQueue<C, M extends IKeyed> extends AbstractQueue<C,
     protected long startDelay = DEFAULT_START_DELAY;
     @ConfigValue
     protected long sendDelay = DEFAULT_SEND_DELAY;
+    @ConfigValue
+    protected long minSendDelay = DEFAULT_MIN_SEND_DELAY;
     @ConfigAttribute(required = true)
     protected Class<? extends M> entityType;
+    /**
+     * Pending message count above which backpressure is applied.
+     * Backpressure is disabled if not set (<= 0).
+     */
+    @ConfigValue
+    protected long highWatermark = -1;
+    /**
+     * Pending message count below which backpressure is released.
+     * Defaults to 3/4 of the high watermark.
+     */
+    @ConfigValue
+    protected long lowWatermark = -1;
+    @ConfigValue
+    protected EBackpressurePolicy backpressurePolicy = EBackpressurePolicy.Block;
+    /**
+     * Max time a sender will be blocked (Block policy).
+     */
+    @ConfigValue
+    protected long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
 
     @Setter(AccessLevel.NONE)
     protected ObjectState state = new ObjectState();
@@ -64,16 +95,224 @@ public abstract class CachedQueue<C, M extends IKeyed> extends AbstractQueue<C,
     private CachedQueueSender<C, M> sender;
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
-    private Thread senderThread;
+    private final AtomicLong pendingCount = new AtomicLong();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ReentrantLock backpressureLock = new ReentrantLock();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Condition backpressureReleased = backpressureLock.newCondition();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean throttled = false;
+    /**
+     * Counter - Throttled send events.
+     */
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    protected Id throttledCounter = null;
+    /**
+     * Counter - Messages rejected (FailFast/Block timeout).
+     */
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    protected Id rejectedCounter = null;
+    /**
+     * Counter - Messages dropped (Shed).
+     */
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    protected Id shedCounter = null;
 
     public ObjectState state() {
         return this.state;
     }
 
     public void start() {
+        if (highWatermark > 0 && (lowWatermark <= 0 || lowWatermark > highWatermark)) {
+            lowWatermark = (highWatermark * 3) / 4;
+        }
         sender = new CachedQueueSender<>(this, threadPoolSize, entityType)
-                .withStartDelay(startDelay).withSendInterval(sendDelay);
-        senderThread = new Thread(sender);
+                .withStartDelay(startDelay).withSendInterval(sendDelay)
+                .withMinSendInterval(Math.min(minSendDelay, sendDelay));
+        sender.start();
+    }
+
+    /**
+     * Notify the sender that new messages have been added to
+     * the specified partition.
+     *
+     * @param partition - Queue partition.
+     */
+    protected void notifySender(int partition) {
+        if (sender != null) {
+            sender.wakeup(partition);
+        }
+    }
+
+    /**
+     * Get the (approximate) count of messages pending send.
+     *
+     * @return - Pending message count.
+     */
+    public long pendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Check if a new message can be accepted given the pending message count.
+     * Depending on the backpressure policy the call will block, throw an exception
+     * or return false (message should be dropped).
+     * <p>
+     * Callers enqueueing messages within a transaction should call this before
+     * starting the transaction, sends in an active transaction will not block.
+     *
+     * @return - Accept the message?
+     * @throws JMSException - If rejected or blocking timed out.
+     */
+    public boolean checkBackpressure() throws JMSException {
+        return checkBackpressure(true);
+    }
+
+    /**
+     * Check if a new message can be accepted given the pending message count.
+     * If blocking is not allowed, the Block policy rejects the message.
+     *
+     * @param block - Can the caller be blocked?
+     * @return - Accept the message?
+     * @throws JMSException - If rejected or blocking timed out.
+     */
+    protected boolean checkBackpressure(boolean block) throws JMSException {
+        if (highWatermark <= 0) {
+            return true;
+        }
+        backpressureLock.lock();
+        try {
+            if (!throttled) {
+                if (pendingCount.get() < highWatermark) {
+                    return true;
+                }
+                throttled = true;
+                LogUtils.warn(getClass(), String.format("Queue throttled. [queue=%s][pending=%d][high watermark=%d]",
+                        name(), pendingCount.get(), highWatermark));
+            }
+            incrementCounter(throttledCounter);
+            switch (backpressurePolicy) {
+                case Shed:
+                    incrementCounter(shedCounter);
+                    return false;
+                case FailFast:
+                    incrementCounter(rejectedCounter);
+                    throw new JMSException(String.format("Queue throttled : message rejected. [queue=%s][pending=%d]",
+                            name(), pendingCount.get()));
+                default:
+                    if (!block) {
+                        incrementCounter(rejectedCounter);
+                        throw new JMSException(String.format("Queue throttled : message rejected, can't block in an active transaction. [queue=%s][pending=%d]",
+                                name(), pendingCount.get()));
+                    }
+                    long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+                    while (throttled) {
+                        if (nanos <= 0) {
+                            incrementCounter(rejectedCounter);
+                            throw new JMSException(String.format("Queue throttled : timeout waiting for pending messages. [queue=%s][pending=%d]",
+                                    name(), pendingCount.get()));
+                        }
+                        nanos = backpressureReleased.awaitNanos(nanos);
+                    }
+                    return true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JMSException(String.format("Interrupted waiting for pending messages. [queue=%s]", name()));
+        } finally {
+            backpressureLock.unlock();
+        }
+    }
+
+    /**
+     * Update the pending count with the number of messages added.
+     *
+     * @param count - Number of messages added.
+     */
+    protected void pendingAdded(long count) {
+        pendingCount.addAndGet(count);
+        checkWatermarks();
+    }
+
+    /**
+     * Update the pending count with the number of messages sent/removed.
+     *
+     * @param count - Number of messages removed.
+     */
+    protected void pendingRemoved(long count) {
+        pendingCount.updateAndGet(v -> Math.max(v - count, 0));
+        checkWatermarks();
+    }
+
+    /**
+     * Refresh the pending count from the backing store.
+     */
+    public void refreshPendingCount() {
+        if (highWatermark <= 0) {
+            return;
+        }
+        try {
+            long count = readPendingCount();
+            if (count >= 0) {
+                pendingCount.set(count);
+                checkWatermarks();
+            }
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+        }
+    }
+
+    /**
+     * Read the count of messages pending send from the backing store.
+     *
+     * @return - Pending count or -1 if not supported.
+     * @throws Exception
+     */
+    protected long readPendingCount() throws Exception {
+        return -1;
+    }
+
+    private void checkWatermarks() {
+        if (highWatermark <= 0) {
+            return;
+        }
+        backpressureLock.lock();
+        try {
+            long count = pendingCount.get();
+            if (throttled && count <= lowWatermark) {
+                throttled = false;
+                backpressureReleased.signalAll();
+                LogUtils.info(getClass(), String.format("Queue throttle released. [queue=%s][pending=%d][low watermark=%d]",
+                        name(), count, lowWatermark));
+            } else if (!throttled && count >= highWatermark) {
+                throttled = true;
+                LogUtils.warn(getClass(), String.format("Queue throttled. [queue=%s][pending=%d][high watermark=%d]",
+                        name(), count, highWatermark));
+            }
+        } finally {
+            backpressureLock.unlock();
+        }
+    }
+
+    private void incrementCounter(Id counter) {
+        if (counter != null) {
+            Monitoring.increment(counter.name(), (KeyValuePair<String, String>[]) null);
+        }
+    }
+
+    @Override
+    protected void setupMetrics(String queue) {
+        super.setupMetrics(queue);
+        throttledCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_THROTTLED, getClass().getCanonicalName(), name(), queue));
+        rejectedCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_REJECTED, getClass().getCanonicalName(), name(), queue));
+        shedCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_SHED, getClass().getCanonicalName(), name(), queue));
+        Monitoring.addGauge(String.format(Metrics.METRIC_GAUGE_PENDING, getClass().getCanonicalName(), name(), queue), this, "pendingCount");
     }
 
     @Override
@@ -82,7 +321,16 @@ public abstract class CachedQueue<C, M extends IKeyed> extends AbstractQueue<C,
             if (state.getState() == EObjectState.Available) {
                 state.setState(EObjectState.Disposed);
             }
-            senderThread.join();
+            backpressureLock.lock();
+            try {
+                throttled = false;
+                backpressureReleased.signalAll();
+            } finally {
+                backpressureLock.unlock();
+            }
+            if (sender != null) {
+                sender.stop();
+            }
         } catch (Exception ex) {
             throw new IOException(ex);
         }
@@ -99,4 +347,11 @@ public abstract class CachedQueue<C, M extends IKeyed> extends AbstractQueue<C,
         private M message;
         private Principal user;
     }
+
+    private static final class Metrics {
+        private static final String METRIC_COUNTER_THROTTLED = String.format("%s.%s.%s.BACKPRESSURE.THROTTLED", "%s", "%s", "%s");
+        private static final String METRIC_COUNTER_REJECTED = String.format("%s.%s.%s.BACKPRESSURE.REJECTED", "%s", "%s", "%s");
+        private static final String METRIC_COUNTER_SHED = String.format("%s.%s.%s.BACKPRESSURE.SHED", "%s", "%s", "%s");
+        private static final String METRIC_GAUGE_PENDING = String.format("%s.%s.%s.PENDING", "%s", "%s", "%s");
+    }
 }
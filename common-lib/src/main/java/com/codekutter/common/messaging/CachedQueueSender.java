@@ -20,35 +20,61 @@ package com.codekutter.common.messaging;
 import com.codekutter.common.model.EObjectState;
 import com.codekutter.common.model.IKeyed;
 import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.ManagedExecutor;
+import com.codekutter.common.utils.ManagedTask;
 import com.google.common.base.Preconditions;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Sender for the cached queues. Partitions are polled at an adaptive
+ * interval (tightened to the minimum interval while messages are being found,
+ * backed off to the send interval when idle). Messages enqueued locally
+ * trigger a send for the partition immediately.
+ * <p>
+ * The poll tick runs on the shared ManagedExecutor. Sends block on the broker,
+ * so they run on an executor owned by the sender (one thread per partition)
+ * and don't hold up the other tasks on the shared pool.
+ *
+ * @param <C> - Queue Connection type
+ * @param <M> - Message Type
+ */
 public class CachedQueueSender<C, M extends IKeyed> implements Runnable {
     private static final long DEFAULT_INTERVAL = 15000;
+    private static final long DEFAULT_MIN_INTERVAL = 500;
 
     private final CachedQueue<C, M> queue;
     private final int partitionCount;
     private final Class<? extends M> type;
-    private final ExecutorService executorService;
+    private final ManagedExecutor sendExecutor;
     private long startDelay = DEFAULT_INTERVAL;
     private long sendInterval = DEFAULT_INTERVAL;
-    private Runnable[] runTasks;
+    private long minSendInterval = DEFAULT_MIN_INTERVAL;
+    private SendTask<C, M>[] runTasks;
+    private final AtomicLong processedCount = new AtomicLong();
+    private ManagedTask pollTask = null;
+    private long sleepInterval;
+    private long nextPoll = 0;
+    private long lastProcessed = 0;
 
+    @SuppressWarnings("unchecked")
     public CachedQueueSender(@Nonnull CachedQueue<C, M> queue, int partitionCount, @Nonnull Class<? extends M> type) {
         this.queue = queue;
         this.partitionCount = partitionCount;
         this.type = type;
 
-        runTasks = new Runnable[partitionCount];
+        runTasks = new SendTask[partitionCount];
         for (int ii = 0; ii < partitionCount; ii++) {
-            runTasks[ii] = new SendTask<C, M>(queue, ii, type);
+            runTasks[ii] = new SendTask<C, M>(this, ii);
         }
-        executorService = Executors.newFixedThreadPool(partitionCount);
+        sendExecutor = new ManagedExecutor()
+                .poolSize(partitionCount)
+                .threadPrefix(String.format("queue-sender-%s", queue.name()));
     }
 
     public CachedQueueSender<C, M> withStartDelay(long startDelay) {
@@ -63,51 +89,157 @@ public class CachedQueueSender<C, M extends IKeyed> implements Runnable {
         return this;
     }
 
+    public CachedQueueSender<C, M> withMinSendInterval(long minSendInterval) {
+        Preconditions.checkArgument(minSendInterval > 0);
+        this.minSendInterval = minSendInterval;
+        return this;
+    }
+
+    /**
+     * Start polling the queue partitions.
+     */
+    public synchronized void start() {
+        Preconditions.checkState(sendInterval > 0);
+        Preconditions.checkState(pollTask == null);
+        sleepInterval = startDelay;
+        nextPoll = 0;
+        pollTask = ManagedExecutor.get().schedule(String.format("%s::%s", getClass().getCanonicalName(), queue.name()),
+                this, startDelay, minSendInterval);
+    }
+
+    /**
+     * Stop polling and shutdown the send executor, waits for running sends to complete.
+     */
+    public void stop() {
+        ManagedTask task;
+        synchronized (this) {
+            task = pollTask;
+            pollTask = null;
+        }
+        if (task != null) {
+            task.cancel();
+        }
+        try {
+            sendExecutor.close();
+        } catch (IOException ex) {
+            LogUtils.error(getClass(), ex);
+        }
+    }
+
+    /**
+     * Trigger a send for the specified partition.
+     *
+     * @param partition - Queue partition with pending messages.
+     */
+    public void wakeup(int partition) {
+        Preconditions.checkArgument(partition >= 0 && partition < partitionCount);
+        if (queue.state().getState() == EObjectState.Available) {
+            runTasks[partition].schedule(sendExecutor);
+        }
+    }
+
+    /**
+     * Get the current (adaptive) poll interval.
+     *
+     * @return - Poll interval (milliseconds).
+     */
+    long pollInterval() {
+        return sleepInterval;
+    }
+
+    /**
+     * Get the number of messages sent by this sender.
+     *
+     * @return - Processed message count.
+     */
+    long processedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * Poll tick, runs every min. send interval and polls all partitions
+     * once the current (adaptive) interval has elapsed.
+     */
     @Override
     public void run() {
-        Preconditions.checkState(sendInterval > 0);
-        long sleepInterval = startDelay;
-        while (queue.state().getState() == EObjectState.Available) {
-            try {
-                Thread.sleep(sleepInterval);
-                for (int ii = 0; ii < partitionCount; ii++) {
-                    executorService.execute(runTasks[ii]);
-                }
-                sleepInterval = sendInterval;
-            } catch (InterruptedException ex) {
-                LogUtils.debug(getClass(), String.format("Thread interrupted [thread id=%d]", Thread.currentThread().getId()));
-                // Do nothing.
-            } catch (Exception ex) {
-                LogUtils.error(getClass(), ex);
+        if (queue.state().getState() != EObjectState.Available) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (now < nextPoll) {
+                return;
             }
+            for (int ii = 0; ii < partitionCount; ii++) {
+                runTasks[ii].schedule(sendExecutor);
+            }
+            queue.refreshPendingCount();
+            long processed = processedCount.get();
+            if (processed > lastProcessed) {
+                sleepInterval = minSendInterval;
+            } else {
+                sleepInterval = Math.min(Math.max(sleepInterval, minSendInterval) * 2, sendInterval);
+            }
+            lastProcessed = processed;
+            nextPoll = now + sleepInterval;
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
         }
-        executorService.shutdown();
     }
 
     private static class SendTask<C, M extends IKeyed> implements Runnable {
         private final int partitionId;
-        private final CachedQueue<C, M> queue;
+        private final CachedQueueSender<C, M> sender;
         private final String instanceId;
-        private final Class<? extends M> type;
+        private final String name;
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final AtomicBoolean pending = new AtomicBoolean(false);
 
-        public SendTask(@Nonnull CachedQueue<C, M> queue, int partitionId, @Nonnull Class<? extends M> type) {
+        public SendTask(@Nonnull CachedQueueSender<C, M> sender, int partitionId) {
             Preconditions.checkArgument(partitionId >= 0);
             this.partitionId = partitionId;
-            this.queue = queue;
-            this.type = type;
+            this.sender = sender;
 
             instanceId = UUID.randomUUID().toString();
+            name = String.format("%s::%s[%d]", getClass().getCanonicalName(), sender.queue.name(), partitionId);
+        }
+
+        private void schedule(ManagedExecutor executor) {
+            if (running.compareAndSet(false, true)) {
+                pending.set(false);
+                executor.submit(name, this);
+            } else {
+                // Send in progress, re-run once it completes.
+                pending.set(true);
+                // The send may have completed (and checked pending) before the flag was set.
+                if (running.compareAndSet(false, true)) {
+                    pending.set(false);
+                    executor.submit(name, this);
+                }
+            }
         }
 
         @Override
         public void run() {
+            CachedQueue<C, M> queue = sender.queue;
+            Class<? extends M> type = sender.type;
+            boolean more = false;
             try {
                 List<CachedQueue.MessageStruct<M>> messages = queue.sendNextBatch(instanceId, partitionId, type);
-                if (messages != null)
+                if (messages != null) {
                     LogUtils.info(getClass(), String.format("Processed message count = %d. [type=%s][queue=%s][partition=%d]",
                             messages.size(), type.getCanonicalName(), queue.name(), partitionId));
+                    sender.processedCount.addAndGet(messages.size());
+                    more = (messages.size() >= queue.fetchBatchSize());
+                }
             } catch (Throwable t) {
                 LogUtils.error(getClass(), t);
+            } finally {
+                running.set(false);
+            }
+            if (more || pending.getAndSet(false)) {
+                // Full batch read or new messages added while sending.
+                sender.wakeup(partitionId);
             }
         }
     }
@@ -31,19 +31,23 @@ import com.codekutter.zconfig.common.ConfigurationException;
 import com.codekutter.zconfig.common.model.annotations.ConfigValue;
 import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Preconditions;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.elasticsearch.common.Strings;
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.query.Query;
 
 import javax.annotation.Nonnull;
 import javax.jms.JMSException;
-import javax.persistence.LockModeType;
-import javax.persistence.Query;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 import java.io.IOException;
 import java.security.Principal;
 import java.util.*;
@@ -54,11 +58,18 @@ import java.util.concurrent.locks.ReentrantLock;
 @Accessors(fluent = true)
 @SuppressWarnings("rawtypes")
 public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C, M> {
+    public static final long DEFAULT_CLAIM_TIMEOUT = 5 * 60 * 1000;
 
     @ConfigValue(name = "dbConnection")
     private String dbConnectionName;
     @Setter(AccessLevel.NONE)
     private HibernateConnection dbConnection;
+    /**
+     * Timeout after which a claimed (un-released) message can be
+     * re-claimed by another sender instance.
+     */
+    @ConfigValue
+    private long claimTimeout = DEFAULT_CLAIM_TIMEOUT;
 
     private ReentrantLock __lock = new ReentrantLock();
 
@@ -77,9 +88,30 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
         }
     }
 
-    public void send(@Nonnull M message,
-                     @Nonnull Session session,
-                     @Nonnull Principal user) throws JMSException {
+    /**
+     * Add the message to the DB cache, the message is sent once the session
+     * transaction (if any) is committed.
+     * <p>
+     * The caller is never blocked in an active transaction (row locks would be held
+     * while waiting), if throttled the Block policy rejects the message. Call
+     * checkBackpressure() before starting the transaction to wait for capacity.
+     *
+     * @param message - Message to send.
+     * @param session - DB Session.
+     * @param user    - Calling user.
+     * @return - Message accepted, false if dropped (Shed policy).
+     * @throws JMSException - If rejected or on error.
+     */
+    public boolean send(@Nonnull M message,
+                        @Nonnull Session session,
+                        @Nonnull Principal user) throws JMSException {
+        Transaction tx = session.getTransaction();
+        boolean active = (tx != null && tx.isActive());
+        if (!checkBackpressure(!active)) {
+            LogUtils.warn(getClass(), String.format("Queue throttled : message dropped. [queue=%s][key=%s]",
+                    name(), message.getKey().stringKey()));
+            return false;
+        }
         try {
             byte[] data = getBytes(message);
             if (data == null || data.length <= 0) {
@@ -89,7 +121,8 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
             DbMessage dbm = new DbMessage();
             dbm.setMessageId(UUID.randomUUID().toString());
             dbm.setQueue(name());
-            dbm.setPartition((int) (Thread.currentThread().getId() % threadPoolSize));
+            int partition = (int) (Thread.currentThread().getId() % threadPoolSize);
+            dbm.setPartition(partition);
             dbm.setBody(data);
             dbm.setMessageType(message.getClass().getCanonicalName());
             dbm.setChecksum(checksum);
@@ -100,112 +133,138 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
             dbm.setSender(userJson);
 
             session.save(dbm);
+
+            if (active) {
+                // Wake up the sender only once the message is visible.
+                tx.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            pendingAdded(1);
+                            notifySender(partition);
+                        }
+                    }
+                });
+            } else {
+                pendingAdded(1);
+                notifySender(partition);
+            }
+            return true;
         } catch (Exception ex) {
             LogUtils.error(getClass(), ex);
             throw new JMSException(ex.getLocalizedMessage());
         }
     }
 
+    /**
+     * Claim and send the next batch of pending messages for the specified partition.
+     * <p>
+     * Rows are claimed in a short transaction using SELECT ... FOR UPDATE SKIP LOCKED
+     * (where the dialect supports it), so concurrent senders (partitions/nodes) skip rows
+     * already locked by another claimer instead of blocking on them. The broker sends
+     * are done outside of any DB lock/transaction, the claimed rows are then marked
+     * in a second transaction.
+     *
+     * @param instanceId - Sender instance ID (claim owner).
+     * @param partition  - Queue partition.
+     * @param type       - Message entity type.
+     * @return - List of sent messages or NULL if nothing was sent.
+     * @throws JMSException
+     */
     @Override
     public List<MessageStruct<M>> sendNextBatch(@Nonnull String instanceId,
                                                 int partition,
                                                 @Nonnull Class<? extends M> type) throws JMSException {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(instanceId));
         Preconditions.checkArgument(partition >= 0 && partition < threadPoolSize);
         try {
             try (Session session = getDbConnection().connection()) {
-                return sendNextBatch(instanceId, partition, session, type);
-            }
-        } catch (Exception ex) {
-            LogUtils.error(getClass(), ex);
-            throw new JMSException(ex.getLocalizedMessage());
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private List<MessageStruct<M>> sendNextBatch(@Nonnull String instanceId,
-                                                 int partition,
-                                                 @Nonnull Session session,
-                                                 @Nonnull Class<? extends M> type) throws JMSException {
-        Preconditions.checkArgument(!Strings.isNullOrEmpty(instanceId));
-        __lock.lock();
-        try {
-            Transaction tx = session.beginTransaction();
-            try {
-                state.check(EObjectState.Available, getClass());
-                String qstr = String.format("FROM %s WHERE queue = :queue AND partition = :partition " +
-                                "AND (state = :state_n OR state = :state_e) AND instanceId is null ORDER BY createdTimestamp",
-                        DbMessage.class.getCanonicalName());
-                Query query = session.createQuery(qstr).setLockMode(LockModeType.PESSIMISTIC_WRITE).setMaxResults(fetchBatchSize);
-                query.setParameter("queue", name());
-                query.setParameter("partition", partition);
-                query.setParameter("state_n", ESendState.New.name());
-                query.setParameter("state_e", ESendState.Error.name());
-
-                List<MessageStruct<M>> resutls = new ArrayList<>();
-                List<DbMessage> messages = query.getResultList();
-                Map<String, String> errors = new HashMap<>();
-
-                if (messages != null && !messages.isEmpty()) {
-                    for (DbMessage dbm : messages) {
-                        byte[] body = dbm.getBody();
-                        try {
-                            M m = readMessage(body);
-                            if (m == null) {
-                                dbm.setState(ESendState.Error);
-                                String err = String.format("Error reading entity from record. [type=%s][id=%s]", type.getCanonicalName(), dbm.getMessageId());
-                                dbm.setError(err);
-                                LogUtils.error(getClass(), err);
-                                errors.put(dbm.getMessageId(), err);
-                                dbm.setRetryCount(dbm.getRetryCount() + 1);
-                            } else {
-                                dbm.setInstanceId(instanceId);
-                                MessageStruct<M> ms = new MessageStruct<>();
-                                ms.message(m);
-                                ms.user(GlobalConstants.getJsonMapper().readValue(dbm.getSender(), Principal.class));
-                                resutls.add(ms);
-                            }
-                        } catch (Exception ex) {
-                            dbm.setState(ESendState.Error);
-                            dbm.setError(ex.getLocalizedMessage());
-                            LogUtils.error(getClass(), ex);
-                            errors.put(dbm.getMessageId(), ex.getLocalizedMessage());
-                            dbm.setRetryCount(dbm.getRetryCount() + 1);
-                            dbm.setEx(ex);
-                        }
-                        boolean saved = false;
-                        if (dbm.getState() == ESendState.Error) {
-                            if (dbm.getRetryCount() > retryCount) {
-                                String err = dbm.getError();
-                                if (dbm.getEx() != null) {
-                                    err = LogUtils.getStackTrace(dbm.getEx());
-                                }
-                                sendError(session, dbm, type, err);
-                                session.delete(dbm);
-                                saved = true;
-                            }
+                List<DbMessage> messages = claimNextBatch(instanceId, partition, session);
+                if (messages == null || messages.isEmpty()) {
+                    return null;
+                }
+                List<MessageStruct<M>> results = new ArrayList<>();
+                Map<String, Throwable> errors = new HashMap<>();
+                for (DbMessage dbm : messages) {
+                    try {
+                        M m = readMessage(dbm.getBody());
+                        if (m == null) {
+                            throw new JMSException(String.format("Error reading entity from record. [type=%s][id=%s]",
+                                    type.getCanonicalName(), dbm.getMessageId()));
                         }
-                        if (!saved)
-                            session.save(dbm);
+                        MessageStruct<M> ms = new MessageStruct<>();
+                        ms.message(m);
+                        ms.user(readSender(dbm.getSender()));
+                        send(ms.message(), ms.user());
+                        results.add(ms);
+                    } catch (Exception ex) {
+                        LogUtils.error(getClass(), ex);
+                        errors.put(dbm.getMessageId(), ex);
                     }
                 }
-                tx.commit();
-                if (!resutls.isEmpty()) {
-                    for (MessageStruct<M> message : resutls) {
-                        send(message.message(), message.user());
-                    }
-                    updateProcessed(instanceId, session, resutls, errors, type);
-                    return resutls;
+                updateProcessed(instanceId, session, messages, errors, type);
+                if (!results.isEmpty()) {
+                    return results;
                 }
                 return null;
-            } catch (Exception ex) {
-                tx.rollback();
-                throw ex;
             }
         } catch (Throwable t) {
             LogUtils.error(getClass(), t);
             throw new JMSException(t.getLocalizedMessage());
-        } finally {
-            __lock.unlock();
+        }
+    }
+
+    /**
+     * Claim the next batch of pending records for this partition. Records are
+     * locked using SKIP LOCKED semantics and marked with the claimer instance ID,
+     * the transaction is committed before returning so no row locks are held
+     * while the messages are being sent.
+     * <p>
+     * Records with an expired claim (sender died before completing) are re-claimed.
+     *
+     * @param instanceId - Sender instance ID.
+     * @param partition  - Queue partition.
+     * @param session    - DB Session.
+     * @return - List of claimed records.
+     * @throws Exception
+     */
+    private List<DbMessage> claimNextBatch(@Nonnull String instanceId,
+                                           int partition,
+                                           @Nonnull Session session) throws Exception {
+        state.check(EObjectState.Available, getClass());
+        Transaction tx = session.beginTransaction();
+        try {
+            long now = System.currentTimeMillis();
+            String qstr = String.format("FROM %s WHERE queue = :queue AND partition = :partition " +
+                            "AND (state = :state_n OR state = :state_e) " +
+                            "AND (instanceId is null OR claimedTimestamp < :claim_expiry) ORDER BY createdTimestamp",
+                    DbMessage.class.getCanonicalName());
+            Query<DbMessage> query = session.createQuery(qstr, DbMessage.class)
+                    .setLockOptions(new LockOptions(LockMode.UPGRADE_SKIPLOCKED))
+                    .setMaxResults(fetchBatchSize);
+            query.setParameter("queue", name());
+            query.setParameter("partition", partition);
+            query.setParameter("state_n", ESendState.New);
+            query.setParameter("state_e", ESendState.Error);
+            query.setParameter("claim_expiry", now - claimTimeout);
+
+            List<DbMessage> messages = query.getResultList();
+            if (messages != null && !messages.isEmpty()) {
+                for (DbMessage dbm : messages) {
+                    dbm.setInstanceId(instanceId);
+                    dbm.setClaimedTimestamp(now);
+                    session.save(dbm);
+                }
+            }
+            tx.commit();
+            return messages;
+        } catch (Exception ex) {
+            tx.rollback();
+            throw ex;
         }
     }
 
@@ -226,53 +285,60 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
         session.save(error);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Release the claimed records, marking them as sent or as errors. Records
+     * that have exceeded the retry count are moved to the error table.
+     * <p>
+     * Records whose claim has been taken over by another instance (claim expired)
+     * are skipped.
+     *
+     * @param instanceId - Sender instance ID.
+     * @param session    - DB Session.
+     * @param records    - Claimed records.
+     * @param errors     - Send errors, keyed by record ID.
+     * @param type       - Message entity type.
+     * @throws JMSException
+     */
     private void updateProcessed(@Nonnull String instanceId,
                                  @Nonnull Session session,
-                                 @Nonnull List<MessageStruct<M>> records,
-                                 Map<String, String> errors,
+                                 @Nonnull List<DbMessage> records,
+                                 @Nonnull Map<String, Throwable> errors,
                                  Class<? extends M> type) throws JMSException {
-        Preconditions.checkArgument(!Strings.isNullOrEmpty(instanceId));
         Preconditions.checkArgument(!records.isEmpty());
-
-        Map<String, M> rMap = new HashMap<>();
-        for (MessageStruct<M> r : records) {
-            rMap.put(r.message().getKey().stringKey(), r.message());
-        }
-        __lock.lock();
         try {
-            state.check(EObjectState.Available, getClass());
             Transaction tx = session.beginTransaction();
             try {
-                String qstr = String.format("FROM %s WHERE (state = :state_n OR state = :state_e) AND instanceId = :instance_id", DbMessage.class.getCanonicalName());
-                Query query = session.createQuery(qstr).setLockMode(LockModeType.PESSIMISTIC_WRITE).setMaxResults(fetchBatchSize);
-                query.setParameter("state_n", ESendState.New);
-                query.setParameter("state_e", ESendState.Error);
-                query.setParameter("instance_id", instanceId);
-
-                List<DbMessage> messages = query.getResultList();
-                if (messages != null && !messages.isEmpty()) {
-                    for (DbMessage dbm : messages) {
-                        byte[] body = dbm.getBody();
-                        M m = readMessage(body);
-                        if (m == null) {
-                            String err = String.format("Error reading entity from record. [type=%s][id=%s]", type.getCanonicalName(), dbm.getMessageId());
-                            throw new JMSException(err);
-                        } else {
-                            if (rMap.containsKey(m.getKey().stringKey())) {
-                                dbm.setInstanceId(null);
-                                dbm.setState(ESendState.Sent);
-                                if (errors != null && errors.containsKey(m.getKey().stringKey())) {
-                                    dbm.setState(ESendState.Error);
-                                    String err = errors.get(m.getKey().stringKey());
-                                    dbm.setError(err);
-                                }
-                                session.save(dbm);
-                            }
+                long now = System.currentTimeMillis();
+                int removed = 0;
+                for (DbMessage dbm : records) {
+                    session.refresh(dbm, LockMode.PESSIMISTIC_WRITE);
+                    if (!instanceId.equals(dbm.getInstanceId())) {
+                        LogUtils.warn(getClass(), String.format("Message claim lost. [queue=%s][id=%s][instance=%s]",
+                                name(), dbm.getMessageId(), instanceId));
+                        continue;
+                    }
+                    dbm.setInstanceId(null);
+                    dbm.setClaimedTimestamp(0);
+                    if (errors.containsKey(dbm.getMessageId())) {
+                        Throwable ex = errors.get(dbm.getMessageId());
+                        dbm.setState(ESendState.Error);
+                        dbm.setError(ex.getLocalizedMessage());
+                        dbm.setRetryCount(dbm.getRetryCount() + 1);
+                        if (dbm.getRetryCount() > retryCount) {
+                            sendError(session, dbm, type, LogUtils.getStackTrace(ex));
+                            session.delete(dbm);
+                            removed++;
+                            continue;
                         }
+                    } else {
+                        dbm.setState(ESendState.Sent);
+                        dbm.setSentTimestamp(now);
+                        removed++;
                     }
+                    session.save(dbm);
                 }
                 tx.commit();
+                pendingRemoved(removed);
             } catch (Exception ex) {
                 tx.rollback();
                 throw ex;
@@ -280,8 +346,37 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
         } catch (Throwable t) {
             LogUtils.error(getClass(), t);
             throw new JMSException(t.getLocalizedMessage());
-        } finally {
-            __lock.unlock();
+        }
+    }
+
+    /**
+     * Read the sender saved with the cached message. Principal is an interface
+     * and can't be de-serialized directly, the sender is restored by name.
+     *
+     * @param json - Sender JSON.
+     * @return - Sender principal.
+     * @throws Exception
+     */
+    private Principal readSender(String json) throws Exception {
+        JsonNode node = GlobalConstants.getJsonMapper().readTree(json);
+        JsonNode name = (node != null ? node.get("name") : null);
+        if (name == null || name.isNull()) {
+            throw new JMSException(String.format("Invalid message sender. [sender=%s]", json));
+        }
+        return new CachedSender(name.asText());
+    }
+
+    @Override
+    protected long readPendingCount() throws Exception {
+        try (Session session = getDbConnection().connection()) {
+            String qstr = String.format("SELECT COUNT(*) FROM %s WHERE queue = :queue AND (state = :state_n OR state = :state_e)",
+                    DbMessage.class.getCanonicalName());
+            Query<Long> query = session.createQuery(qstr, Long.class);
+            query.setParameter("queue", name());
+            query.setParameter("state_n", ESendState.New);
+            query.setParameter("state_e", ESendState.Error);
+            Long count = query.getSingleResult();
+            return (count != null ? count : 0);
         }
     }
 
@@ -308,6 +403,7 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
 
     @Override
     public void close() throws IOException {
+        super.close();
         if (dbConnection != null) {
             dbConnection.close();
             dbConnection = null;
@@ -317,4 +413,17 @@ public abstract class DbCachedQueue<C, M extends IKeyed> extends CachedQueue<C,
     public abstract byte[] getBytes(@Nonnull M message) throws JMSException;
 
     public abstract M readMessage(@Nonnull byte[] body) throws JMSException;
+
+    private static final class CachedSender implements Principal {
+        private final String name;
+
+        private CachedSender(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.codekutter.common.messaging;
+
+/**
+ * Action taken by a cached queue when the pending message count
+ * exceeds the configured high watermark.
+ */
+public enum EBackpressurePolicy {
+    /**
+     * Block the sender till the pending count drops below the low watermark (or timeout).
+     */
+    Block,
+    /**
+     * Reject the message with an exception.
+     */
+    FailFast,
+    /**
+     * Drop the message.
+     */
+    Shed
+}
@@ -0,0 +1,35 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.codekutter.common.messaging;
+
+/**
+ * Offset commit strategy for the Kafka queue consumers.
+ */
+public enum EKafkaCommitStrategy {
+    /**
+     * Offsets are committed periodically by the Kafka client.
+     */
+    Auto,
+    /**
+     * Offsets of the received messages are committed on the next poll.
+     */
+    Poll,
+    /**
+     * Offsets are committed when a message is acknowledged.
+     */
+    Ack
+}
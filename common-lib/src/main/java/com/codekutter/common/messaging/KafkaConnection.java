@@ -19,43 +19,138 @@ package com.codekutter.common.messaging;
 
 import com.codekutter.common.stores.AbstractConnection;
 import com.codekutter.common.stores.ConnectionException;
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.utils.ConfigUtils;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.zconfig.common.ConfigurationAnnotationProcessor;
 import com.codekutter.zconfig.common.ConfigurationException;
 import com.codekutter.zconfig.common.model.annotations.ConfigAttribute;
 import com.codekutter.zconfig.common.model.annotations.ConfigValue;
 import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
-import io.confluent.kafka.jms.KafkaConnectionFactory;
+import com.codekutter.zconfig.common.model.nodes.ConfigParametersNode;
+import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
+import com.codekutter.zconfig.common.model.nodes.ConfigValueNode;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 
 import javax.annotation.Nonnull;
-import javax.jms.Connection;
-import javax.jms.Session;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Function;
 
+/**
+ * Kafka connection: holds a shared (thread-safe) producer and
+ * creates consumer instances for the queues.
+ * <p>
+ * The producer is configured for batched, compressed and idempotent sends.
+ * Additional client settings can be specified as connection parameters, parameters
+ * prefixed with "producer." or "consumer." are only applied to the respective client.
+ */
 @Getter
 @Setter
 @Accessors(fluent = true)
-public class KafkaConnection extends AbstractConnection<Session> {
+public class KafkaConnection extends AbstractConnection<Producer<String, byte[]>> {
+    public static final String DEFAULT_COMPRESSION = "lz4";
+    public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+    public static final long DEFAULT_LINGER_MS = 5;
+    private static final String PARAM_PREFIX_PRODUCER = "producer.";
+    private static final String PARAM_PREFIX_CONSUMER = "consumer.";
+
     @ConfigAttribute(name = "client", required = true)
     private String clientId;
     @ConfigValue(name = "servers", required = true)
     private String servers;
-    @ConfigValue(name = "zookeeper", required = true)
-    private String zookeeperHost;
-    @ConfigAttribute(name = "auto-ack")
-    private boolean autoAck = false;
+    @ConfigValue
+    private String compression = DEFAULT_COMPRESSION;
+    @ConfigValue
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    @ConfigValue
+    private long lingerMs = DEFAULT_LINGER_MS;
+    @ConfigValue
+    private boolean idempotent = true;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Properties producerConfig = new Properties();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Properties consumerConfig = new Properties();
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
-    private KafkaConnectionFactory connectionFactory;
+    private Producer<String, byte[]> producer;
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
-    private Connection connection;
+    private Function<Properties, Consumer<String, byte[]>> consumerFactory = KafkaConsumer::new;
+
+    public KafkaConnection withProducer(@Nonnull Producer<String, byte[]> producer) {
+        this.producer = producer;
+        return this;
+    }
+
+    public KafkaConnection withConsumerFactory(@Nonnull Function<Properties, Consumer<String, byte[]>> consumerFactory) {
+        this.consumerFactory = consumerFactory;
+        return this;
+    }
 
+    /**
+     * Get the shared producer handle.
+     *
+     * @return - Kafka Producer
+     * @throws ConnectionException
+     */
     @Override
-    public Session connection() throws ConnectionException {
-        return null;
+    public Producer<String, byte[]> connection() throws ConnectionException {
+        try {
+            state().checkOpened();
+            return producer;
+        } catch (Throwable t) {
+            throw new ConnectionException(t, getClass());
+        }
+    }
+
+    /**
+     * Create a new consumer instance. Consumers are not thread-safe and
+     * should not be shared.
+     *
+     * @param groupId        - Consumer Group ID.
+     * @param autoCommit     - Enable auto commit of offsets.
+     * @param maxPollRecords - Max records returned per poll.
+     * @return - Kafka Consumer
+     * @throws ConnectionException
+     */
+    public Consumer<String, byte[]> consumer(@Nonnull String groupId,
+                                             boolean autoCommit,
+                                             int maxPollRecords) throws ConnectionException {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(groupId));
+        Preconditions.checkArgument(maxPollRecords > 0);
+        try {
+            state().checkOpened();
+            Properties props = new Properties();
+            props.putAll(consumerConfig);
+            props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+            props.put(ConsumerConfig.CLIENT_ID_CONFIG, String.format("%s-%s", clientId, UUID.randomUUID().toString()));
+            props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, String.valueOf(autoCommit));
+            props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+
+            return consumerFactory.apply(props);
+        } catch (Throwable t) {
+            throw new ConnectionException(t, getClass());
+        }
     }
 
     @Override
@@ -63,13 +158,15 @@ public class KafkaConnection extends AbstractConnection<Session> {
         return false;
     }
 
+    /**
+     * Producer is shared across queues, it is closed when the connection is closed.
+     *
+     * @param connection - Producer handle.
+     * @throws ConnectionException
+     */
     @Override
-    public void close(@Nonnull Session connection) throws ConnectionException {
-        try {
-            connection.close();
-        } catch (Exception ex) {
-            throw new ConnectionException(ex, getClass());
-        }
+    public void close(@Nonnull Producer<String, byte[]> connection) throws ConnectionException {
+        // Do nothing...
     }
 
     /**
@@ -80,11 +177,68 @@ public class KafkaConnection extends AbstractConnection<Session> {
      */
     @Override
     public void configure(@Nonnull AbstractConfigNode node) throws ConfigurationException {
+        Preconditions.checkArgument(node instanceof ConfigPathNode);
+        try {
+            ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
+            AbstractConfigNode cnode = ConfigUtils.getPathNode(getClass(), (ConfigPathNode) node);
+            if (!(cnode instanceof ConfigPathNode)) {
+                throw new ConfigurationException(String.format("Invalid connection configuration. [node=%s]", node.getAbsolutePath()));
+            }
+            producerConfig.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
+            producerConfig.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
+            producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getCanonicalName());
+            producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
+            producerConfig.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+            producerConfig.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(batchSize));
+            producerConfig.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(lingerMs));
+            if (idempotent) {
+                producerConfig.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+                producerConfig.put(ProducerConfig.ACKS_CONFIG, "all");
+            }
 
+            consumerConfig.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
+            consumerConfig.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getCanonicalName());
+            consumerConfig.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getCanonicalName());
+
+            readParameters((ConfigPathNode) cnode);
+
+            if (producer == null) {
+                producer = new KafkaProducer<>(producerConfig);
+            }
+            state().setState(EConnectionState.Open);
+        } catch (Throwable t) {
+            state().setError(t);
+            throw new ConfigurationException(t);
+        }
+    }
+
+    private void readParameters(ConfigPathNode node) {
+        ConfigParametersNode params = node.parmeters();
+        if (params != null && !params.getKeyValues().isEmpty()) {
+            Map<String, ConfigValueNode> values = params.getKeyValues();
+            for (String key : values.keySet()) {
+                String value = values.get(key).getValue();
+                if (key.startsWith(PARAM_PREFIX_PRODUCER)) {
+                    producerConfig.put(key.substring(PARAM_PREFIX_PRODUCER.length()), value);
+                } else if (key.startsWith(PARAM_PREFIX_CONSUMER)) {
+                    consumerConfig.put(key.substring(PARAM_PREFIX_CONSUMER.length()), value);
+                } else {
+                    producerConfig.put(key, value);
+                    consumerConfig.put(key, value);
+                }
+                LogUtils.debug(getClass(), String.format("Set client configuration [property=%s]", key));
+            }
+        }
     }
 
     @Override
     public void close() throws IOException {
-
+        if (state().isOpen()) {
+            state().setState(EConnectionState.Closed);
+        }
+        if (producer != null) {
+            producer.close();
+            producer = null;
+        }
     }
 }
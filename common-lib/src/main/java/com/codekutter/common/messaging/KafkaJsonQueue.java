@@ -0,0 +1,61 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.codekutter.common.model.DefaultStringMessage;
+import com.codekutter.common.utils.LogUtils;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import javax.jms.JMSException;
+import java.security.Principal;
+
+@Getter
+@Setter
+@Accessors(fluent = true)
+public class KafkaJsonQueue extends AbstractKafkaQueue<DefaultStringMessage> {
+
+    public KafkaJsonQueue() {
+    }
+
+    @Override
+    public byte[] message(@Nonnull DefaultStringMessage message) throws JMSException {
+        try {
+            message.setQueue(topic());
+            message.setTimestamp(System.currentTimeMillis());
+            return DefaultStringMessageUtils.getBytes(message);
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public DefaultStringMessage message(@Nonnull byte[] data, @Nonnull String messageId, Principal user) throws JMSException {
+        try {
+            DefaultStringMessage message = DefaultStringMessageUtils.readMessage(data);
+            message.setMessageId(messageId);
+            return message;
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            throw new JMSException(ex.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.amazon.sqs.javamessaging.SQSMessagingClientConstants;
+import com.amazon.sqs.javamessaging.message.SQSMessage;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.codekutter.common.utils.LogUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import javax.annotation.Nonnull;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Send batches of messages using the SQS batch API (SQS JMS sessions are not
+ * transacted), up to {@value #MAX_BATCH_SIZE} messages and {@value #MAX_BATCH_BYTES}
+ * bytes (bodies and attributes) per request.
+ * <p>
+ * Only text messages without properties to standard queues can be batched, the
+ * messages carry the same message type attribute as the JMS producer sets.
+ * The extended client offloads large payloads as it does for single sends.
+ */
+public class SQSBatchSender {
+    public static final int MAX_BATCH_SIZE = 10;
+    public static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final String FIFO_SUFFIX = ".fifo";
+
+    private static final MessageAttributeValue TEXT_TYPE = new MessageAttributeValue()
+            .withDataType(SQSMessagingClientConstants.STRING)
+            .withStringValue(SQSMessage.TEXT_MESSAGE_TYPE);
+
+    private final AmazonSQS client;
+    private final String queue;
+    private volatile String queueUrl;
+
+    public SQSBatchSender(@Nonnull AmazonSQS client, @Nonnull String queue) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(queue));
+        this.client = client;
+        this.queue = queue;
+    }
+
+    /**
+     * Check if the messages can be sent using batch requests.
+     *
+     * @param messages - JMS Messages.
+     * @return - Can be batched?
+     * @throws JMSException
+     */
+    public boolean canSend(@Nonnull List<Message> messages) throws JMSException {
+        if (queue.endsWith(FIFO_SUFFIX)) {
+            return false;
+        }
+        for (Message message : messages) {
+            if (!(message instanceof TextMessage) || message.getPropertyNames().hasMoreElements()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send the messages in batch requests. A message larger than the request size
+     * limit is sent in a request of its own. If a request fails all its messages
+     * are returned as failed, the remaining requests are still sent.
+     *
+     * @param messages - JMS Text Messages.
+     * @return - Indexes of the messages that failed to send.
+     * @throws JMSException
+     */
+    public List<Integer> send(@Nonnull List<Message> messages) throws JMSException {
+        List<Integer> failed = new ArrayList<>();
+        String url = queueUrl();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(MAX_BATCH_SIZE);
+        int size = 0;
+        for (int ii = 0; ii < messages.size(); ii++) {
+            SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry()
+                    .withId(String.valueOf(ii))
+                    .withMessageBody(((TextMessage) messages.get(ii)).getText())
+                    .addMessageAttributesEntry(SQSMessage.JMS_SQS_MESSAGE_TYPE, TEXT_TYPE);
+            int esize = size(entry);
+            if (!entries.isEmpty() && (entries.size() == MAX_BATCH_SIZE || size + esize > MAX_BATCH_BYTES)) {
+                send(url, entries, failed);
+                entries = new ArrayList<>(MAX_BATCH_SIZE);
+                size = 0;
+            }
+            entries.add(entry);
+            size += esize;
+        }
+        if (!entries.isEmpty()) {
+            send(url, entries, failed);
+        }
+        return failed;
+    }
+
+    private void send(String url, List<SendMessageBatchRequestEntry> entries, List<Integer> failed) {
+        try {
+            SendMessageBatchResult result = client.sendMessageBatch(new SendMessageBatchRequest()
+                    .withQueueUrl(url).withEntries(entries));
+            if (result.getFailed() != null) {
+                for (BatchResultErrorEntry error : result.getFailed()) {
+                    LogUtils.warn(getClass(), String.format("Batch send failed. [queue=%s][code=%s][error=%s]",
+                            queue, error.getCode(), error.getMessage()));
+                    failed.add(Integer.parseInt(error.getId()));
+                }
+            }
+        } catch (Exception ex) {
+            LogUtils.warn(getClass(), String.format("Batch request failed. [queue=%s][count=%d][error=%s]",
+                    queue, entries.size(), ex.getLocalizedMessage()));
+            for (SendMessageBatchRequestEntry entry : entries) {
+                failed.add(Integer.parseInt(entry.getId()));
+            }
+        }
+    }
+
+    /**
+     * Size of the entry as counted against the request limit: the body and the
+     * name, type and value of each attribute.
+     */
+    static int size(SendMessageBatchRequestEntry entry) {
+        int size = utf8Length(entry.getMessageBody());
+        if (entry.getMessageAttributes() != null) {
+            for (Map.Entry<String, MessageAttributeValue> attr : entry.getMessageAttributes().entrySet()) {
+                size += utf8Length(attr.getKey());
+                size += utf8Length(attr.getValue().getDataType());
+                size += utf8Length(attr.getValue().getStringValue());
+                if (attr.getValue().getBinaryValue() != null) {
+                    size += attr.getValue().getBinaryValue().remaining();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        return (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private String queueUrl() {
+        if (queueUrl == null) {
+            queueUrl = client.getQueueUrl(queue).getQueueUrl();
+        }
+        return queueUrl;
+    }
+}
@@ -20,16 +20,18 @@ package com.codekutter.common.messaging;
 import com.codekutter.common.model.DefaultBytesMessage;
 import com.codekutter.common.utils.LogUtils;
 
+import javax.annotation.Nonnull;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.Session;
 import java.security.Principal;
 
 public class SQSBytesQueue extends AbstractSQSQueue<DefaultBytesMessage> {
 
     @Override
-    public Message message(DefaultBytesMessage message) throws JMSException {
+    public Message message(@Nonnull Session session, DefaultBytesMessage message) throws JMSException {
         try {
-            return DefaultBytesMessageUtils.message(session(), queue(), message);
+            return DefaultBytesMessageUtils.message(session, queue(), message);
         } catch (Exception ex) {
             LogUtils.error(getClass(), ex);
             throw new JMSException(ex.getLocalizedMessage());
@@ -23,8 +23,10 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+import javax.annotation.Nonnull;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.Session;
 import java.security.Principal;
 
 @Getter
@@ -36,9 +38,9 @@ public class SQSJsonQueue extends AbstractSQSQueue<DefaultStringMessage> {
     }
 
     @Override
-    public Message message(DefaultStringMessage message) throws JMSException {
+    public Message message(@Nonnull Session session, DefaultStringMessage message) throws JMSException {
         try {
-            return DefaultStringMessageUtils.message(session(), queue(), message);
+            return DefaultStringMessageUtils.message(session, queue(), message);
         } catch (Exception ex) {
             LogUtils.error(getClass(), ex);
             throw new JMSException(ex.getLocalizedMessage());
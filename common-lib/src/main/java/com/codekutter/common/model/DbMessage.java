@@ -59,6 +59,8 @@ public class DbMessage {
     private String error;
     @Column(name = "read_instance_id")
     private String instanceId;
+    @Column(name = "claimed_timestamp")
+    private long claimedTimestamp;
     @Column(name = "retry_count")
     private int retryCount = -1;
     @JsonIgnore
@@ -36,14 +36,18 @@ import org.quartz.JobKey;
 import javax.annotation.Nonnull;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 @Setter
 @Accessors(fluent = true)
 public abstract class AbstractJob implements Job {
-    private final String METRIC_LATENCY_CALL = String.format("%s.%s.CALL", "%s", "%s");
-    private final String METRIC_COUNTER_CALL = String.format("%s.%s.COUNT.CALL", "%s", "%s");
-    private final String METRIC_COUNTER_ERROR_CALL = String.format("%s.%s.COUNT.ERRORS.CALL", "%s", "%s");
+    /**
+     * Job metrics, registered once per job (type, group and name) and reused
+     * by all the job instances created by the scheduler.
+     */
+    private static final Map<String, JobMetrics> __metrics = new ConcurrentHashMap<>();
+
     /**
      * Metrics - Call Latency
      */
@@ -60,16 +64,21 @@ public abstract class AbstractJob implements Job {
     @Setter(AccessLevel.NONE)
     protected Id callErrorCounter = null;
 
-    public AbstractJob() {
-        setupMonitoring();
-    }
-
-    public void setupMonitoring() {
-        String name = UUID.randomUUID().toString();
-
-        callLatency = Monitoring.addTimer(String.format(METRIC_LATENCY_CALL, getClass().getCanonicalName(), name));
-        callCounter = Monitoring.addCounter(String.format(METRIC_COUNTER_CALL, getClass().getCanonicalName(), name));
-        callErrorCounter = Monitoring.addCounter(String.format(METRIC_COUNTER_ERROR_CALL, getClass().getCanonicalName(), name));
+    /**
+     * Setup the metrics for the job, metrics already registered for the job are reused.
+     *
+     * @param group - Job group.
+     * @param name  - Job name.
+     */
+    public void setupMonitoring(@Nonnull String group, @Nonnull String name) {
+        String type = getClass().getCanonicalName();
+        JobMetrics metrics = __metrics.computeIfAbsent(String.format("%s.%s.%s", type, group, name),
+                (k) -> new JobMetrics(Monitoring.addTimer(String.format(Metrics.METRIC_LATENCY_CALL, type, group, name)),
+                        Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_CALL, type, group, name)),
+                        Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_ERROR_CALL, type, group, name))));
+        callLatency = metrics.callLatency;
+        callCounter = metrics.callCounter;
+        callErrorCounter = metrics.callErrorCounter;
     }
 
     /**
@@ -93,9 +102,10 @@ public abstract class AbstractJob implements Job {
      */
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
+        JobKey key = context.getJobDetail().getKey();
+        setupMonitoring(key.getGroup(), key.getName());
         try {
             Monitoring.increment(callCounter.name(), (Map<String, String>) null);
-            JobKey key = context.getJobDetail().getKey();
             JobConfig config = ScheduleManager.get(getClass()).getJobConfig(key.getGroup(), key.getName());
             if (config == null) {
                 throw new JobExecutionException(String.format("[%s.%s] Failed to get job context.", key.getGroup(), key.getName()));
@@ -157,4 +167,22 @@ public abstract class AbstractJob implements Job {
     }
 
     public abstract Object doExecute(@Nonnull String correlationId, @Nonnull JobExecutionContext context, @Nonnull JobConfig config) throws JobExecutionException;
+
+    private static final class JobMetrics {
+        private final Timer callLatency;
+        private final Id callCounter;
+        private final Id callErrorCounter;
+
+        private JobMetrics(Timer callLatency, Id callCounter, Id callErrorCounter) {
+            this.callLatency = callLatency;
+            this.callCounter = callCounter;
+            this.callErrorCounter = callErrorCounter;
+        }
+    }
+
+    private static final class Metrics {
+        private static final String METRIC_LATENCY_CALL = String.format("%s.%s.%s.CALL", "%s", "%s", "%s");
+        private static final String METRIC_COUNTER_CALL = String.format("%s.%s.%s.COUNT.CALL", "%s", "%s", "%s");
+        private static final String METRIC_COUNTER_ERROR_CALL = String.format("%s.%s.%s.COUNT.ERRORS.CALL", "%s", "%s", "%s");
+    }
 }
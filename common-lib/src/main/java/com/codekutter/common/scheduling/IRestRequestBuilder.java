@@ -21,6 +21,7 @@ import com.codekutter.common.scheduling.impl.RestJobConfig;
 import org.quartz.JobExecutionException;
 
 import javax.annotation.Nonnull;
+import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 
@@ -32,4 +33,17 @@ public interface IRestRequestBuilder {
     Response put(@Nonnull String correlationId, @Nonnull WebTarget target, @Nonnull RestJobConfig config) throws JobExecutionException;
 
     Response delete(@Nonnull String correlationId, @Nonnull WebTarget target, @Nonnull RestJobConfig config) throws JobExecutionException;
+
+    /**
+     * Get the request entity for non-blocking POST/PUT requests, which are sent by
+     * the job instead of this builder.
+     *
+     * @param correlationId - Job correlation ID.
+     * @param config        - Job configuration.
+     * @return - Request entity, NULL if the request must be sent by this builder.
+     * @throws JobExecutionException
+     */
+    default Entity<?> entity(@Nonnull String correlationId, @Nonnull RestJobConfig config) throws JobExecutionException {
+        return null;
+    }
 }
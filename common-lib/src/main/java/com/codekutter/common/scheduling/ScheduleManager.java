@@ -20,6 +20,7 @@ package com.codekutter.common.scheduling;
 import com.codekutter.common.StateException;
 import com.codekutter.common.model.EObjectState;
 import com.codekutter.common.model.ObjectState;
+import com.codekutter.common.scheduling.remote.RemoteStateUpdater;
 import com.codekutter.common.utils.ConfigUtils;
 import com.codekutter.common.utils.LogUtils;
 import com.codekutter.common.utils.TypeUtils;
@@ -55,6 +56,7 @@ import static org.quartz.DateBuilder.futureDate;
 @ConfigPath(path = "schedule")
 public class ScheduleManager implements IConfigurable, Closeable {
     public static final String CONFIG_PATH_JOBS = "jobs";
+    public static final String CONFIG_PATH_STATE_UPDATER = "stateUpdater";
     public static final int DEFAULT_STARTUP_DELAY = 30;
     private static final ScheduleManager __instance = new ScheduleManager();
     @Setter(AccessLevel.NONE)
@@ -81,6 +83,8 @@ public class ScheduleManager implements IConfigurable, Closeable {
     private Scheduler scheduler = null;
     @Setter(AccessLevel.NONE)
     private final String scheduleNodeId;
+    @Setter(AccessLevel.NONE)
+    private RemoteStateUpdater stateUpdater = null;
 
     public ScheduleManager() {
         scheduleNodeId = UUID.randomUUID().toString();
@@ -163,6 +167,10 @@ public class ScheduleManager implements IConfigurable, Closeable {
                 triggers.put(config.jobKey(), trigger);
             }
             state.setState(EObjectState.Available);
+            Set<JobConfig> asyncJobs = getAsyncJobConfigs();
+            if (asyncJobs != null && !asyncJobs.isEmpty()) {
+                startStateUpdater(cnode);
+            }
         } catch (Exception ex) {
             state.setError(ex);
             LogUtils.error(getClass(), ex);
@@ -170,6 +178,23 @@ public class ScheduleManager implements IConfigurable, Closeable {
         }
     }
 
+    /**
+     * Start the state updates for the async jobs on the shared executor.
+     *
+     * @param node - Schedule configuration node.
+     * @throws ConfigurationException
+     */
+    private void startStateUpdater(AbstractConfigNode node) throws ConfigurationException {
+        stateUpdater = new RemoteStateUpdater().withScheduleManager(this);
+        if (node != null) {
+            AbstractConfigNode unode = node.find(CONFIG_PATH_STATE_UPDATER);
+            if (unode instanceof ConfigPathNode) {
+                stateUpdater.configure(unode);
+            }
+        }
+        stateUpdater.start();
+    }
+
     private Trigger scheduleJob(JobConfig config, Date start) throws SchedulerException {
         JobDetail jd = JobBuilder.newJob(config.getType()).withIdentity(config.getName(), config.getNamespace()).build();
         Trigger trigger = TriggerBuilder.newTrigger().withIdentity(config.getName(), config.getNamespace())
@@ -207,6 +232,10 @@ public class ScheduleManager implements IConfigurable, Closeable {
         try {
             if (state.getState() == EObjectState.Available) {
                 state.setState(EObjectState.Disposed);
+                if (stateUpdater != null) {
+                    stateUpdater.stop();
+                    stateUpdater = null;
+                }
                 if (scheduler != null) {
                     scheduler.shutdown(true);
                 }
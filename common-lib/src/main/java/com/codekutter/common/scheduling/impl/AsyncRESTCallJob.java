@@ -31,6 +31,8 @@ import org.quartz.JobExecutionException;
 
 import javax.annotation.Nonnull;
 import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 
@@ -65,13 +67,15 @@ public class AsyncRESTCallJob extends AbstractJob {
 
     private Object doGet(String correlationId, WebTarget target, AsyncRestJobConfig config) throws JobExecutionException {
         Response response = null;
+        if (config.isNonBlocking() && config.getRequestBuilder() == null) {
+            target.request(config.getMediaType()).async().get(new ResponseCallback(correlationId, config));
+            return null;
+        }
         if (config.getRequestBuilder() != null) {
             response = config.getRequestBuilder().get(correlationId, target, config);
         } else
             response = target.request(config.getMediaType()).get();
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
@@ -80,13 +84,16 @@ public class AsyncRESTCallJob extends AbstractJob {
 
     private Object doPost(String correlationId, WebTarget target, AsyncRestJobConfig config) throws JobExecutionException {
         Response response = null;
+        Entity<?> entity = nonBlockingEntity(correlationId, config);
+        if (entity != null) {
+            target.request(config.getMediaType()).async().post(entity, new ResponseCallback(correlationId, config));
+            return null;
+        }
         if (config.getRequestBuilder() != null) {
             response = config.getRequestBuilder().post(correlationId, target, config);
         } else
             throw new JobExecutionException("Request Builder not specified. Required for POST requests.");
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
@@ -95,13 +102,16 @@ public class AsyncRESTCallJob extends AbstractJob {
 
     private Object doPut(String correlationId, WebTarget target, AsyncRestJobConfig config) throws JobExecutionException {
         Response response = null;
+        Entity<?> entity = nonBlockingEntity(correlationId, config);
+        if (entity != null) {
+            target.request(config.getMediaType()).async().put(entity, new ResponseCallback(correlationId, config));
+            return null;
+        }
         if (config.getRequestBuilder() != null) {
             response = config.getRequestBuilder().put(correlationId, target, config);
         } else
             throw new JobExecutionException("Request Builder not specified. Required for PUT requests.");
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
@@ -110,19 +120,33 @@ public class AsyncRESTCallJob extends AbstractJob {
 
     private Object doDelete(String correlationId, WebTarget target, AsyncRestJobConfig config) throws JobExecutionException {
         Response response = null;
+        if (config.isNonBlocking() && config.getRequestBuilder() == null) {
+            target.request(config.getMediaType()).async().delete(new ResponseCallback(correlationId, config));
+            return null;
+        }
         if (config.getRequestBuilder() != null) {
             response = config.getRequestBuilder().delete(correlationId, target, config);
         } else
             throw new JobExecutionException("Request Builder not specified. Required for DELETE requests.");
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
         return processResponse(correlationId, response);
     }
 
+    /**
+     * Get the request entity to send a POST/PUT request without blocking.
+     *
+     * @return - Request entity, NULL if the request must be sent by the request builder.
+     */
+    private Entity<?> nonBlockingEntity(String correlationId, AsyncRestJobConfig config) throws JobExecutionException {
+        if (!config.isNonBlocking() || config.getRequestBuilder() == null) {
+            return null;
+        }
+        return config.getRequestBuilder().entity(correlationId, config);
+    }
+
     private JobResponse processResponse(String correlationId, Response response) throws JobExecutionException {
         JobResponse jr = response.readEntity(JobResponse.class);
         if (jr.getJobState().hasError()) {
@@ -139,4 +163,51 @@ public class AsyncRESTCallJob extends AbstractJob {
         LogUtils.debug(getClass(), jr);
         return jr;
     }
+
+    /**
+     * Callback for non-blocking requests, the job state is audited
+     * when the response is received.
+     */
+    private final class ResponseCallback implements InvocationCallback<Response> {
+        private final String correlationId;
+        private final AsyncRestJobConfig config;
+
+        private ResponseCallback(String correlationId, AsyncRestJobConfig config) {
+            this.correlationId = correlationId;
+            this.config = config;
+        }
+
+        @Override
+        public void completed(Response response) {
+            try {
+                checkResponse(response);
+                if (config.getResponseHandler() != null) {
+                    config.getResponseHandler().handle(response);
+                } else {
+                    processResponse(correlationId, response);
+                }
+            } catch (Exception ex) {
+                failed(ex);
+            }
+        }
+
+        @Override
+        public void failed(Throwable error) {
+            LogUtils.error(getClass(), error);
+            try {
+                auditJobError(correlationId, error);
+            } catch (Exception ex) {
+                LogUtils.error(getClass(), ex);
+            }
+        }
+    }
+
+    private void checkResponse(Response response) throws JobExecutionException {
+        if (response.getStatus() != HttpStatus.SC_OK) {
+            int status = response.getStatus();
+            // Release the connection, else the socket isn't returned to the keep-alive pool.
+            response.close();
+            throw new JobExecutionException(String.format("Request failed. [status=%d]", status));
+        }
+    }
 }
@@ -28,4 +28,12 @@ public class AsyncRestJobConfig extends RestJobConfig {
     private String requestStatusUrl;
     @ConfigValue(name = "dbConnection", required = true)
     private String dbConnectionName;
+    /**
+     * Don't block the job thread waiting for the response, the job state is
+     * audited from the response callback. Applies to GET/DELETE requests without a
+     * request builder and to POST/PUT requests whose request builder provides the
+     * request entity (other request builders return a completed response).
+     */
+    @ConfigValue
+    private boolean nonBlocking = false;
 }
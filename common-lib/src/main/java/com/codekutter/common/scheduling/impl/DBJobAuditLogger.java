@@ -18,6 +18,7 @@
 package com.codekutter.common.scheduling.impl;
 
 import com.codekutter.common.GlobalConstants;
+import com.codekutter.common.TimeWindow;
 import com.codekutter.common.auditing.AuditException;
 import com.codekutter.common.model.JobAuditLog;
 import com.codekutter.common.scheduling.AbstractJob;
@@ -28,14 +29,19 @@ import com.codekutter.common.stores.AbstractConnection;
 import com.codekutter.common.stores.ConnectionManager;
 import com.codekutter.common.stores.impl.HibernateConnection;
 import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.ManagedExecutor;
+import com.codekutter.common.utils.ManagedTask;
 import com.codekutter.zconfig.common.ConfigurationAnnotationProcessor;
 import com.codekutter.zconfig.common.ConfigurationException;
 import com.codekutter.zconfig.common.model.annotations.ConfigAttribute;
 import com.codekutter.zconfig.common.model.annotations.ConfigPath;
+import com.codekutter.zconfig.common.model.annotations.ConfigValue;
 import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
+import com.codekutter.zconfig.common.transformers.TimeWindowParser;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -46,18 +52,90 @@ import org.quartz.JobExecutionContext;
 import javax.annotation.Nonnull;
 import javax.persistence.Query;
 import java.io.IOException;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Job audit logger writing to a database table.
+ * <p>
+ * Job events are buffered in a bounded queue and written in batches (one
+ * transaction per batch) by a background flush on the shared executor. If the
+ * queue is full the caller flushes the pending events. If a batch fails, its
+ * events are written one at a time: events that fail on their own are dropped,
+ * if none can be written (database unavailable) the events are retried on the
+ * next flush, up to the max write attempts. Audit rows older than the configured
+ * retention are purged in chunks.
+ */
 @Getter
 @Setter
 @Accessors(fluent = true)
 @ConfigPath(path = "logger")
 public class DBJobAuditLogger implements IJobAuditLogger {
     private static final int MAX_ERROR_TEXT = 256;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    public static final int DEFAULT_PURGE_BATCH_SIZE = 1000;
+    public static final long DEFAULT_PURGE_INTERVAL = 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_WRITE_ATTEMPTS = 3;
 
     @ConfigAttribute(name = "connection", required = true)
     private String connectionName;
+    /**
+     * Max events written in a single transaction.
+     */
+    @ConfigValue
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Max events buffered.
+     */
+    @ConfigValue
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    /**
+     * Background flush interval (milliseconds).
+     */
+    @ConfigValue
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    /**
+     * Audit records retention, records are not purged if not set.
+     */
+    @ConfigValue(parser = TimeWindowParser.class)
+    private TimeWindow retention;
+    /**
+     * Max records deleted in a single transaction.
+     */
+    @ConfigValue
+    private int purgeBatchSize = DEFAULT_PURGE_BATCH_SIZE;
+    /**
+     * Purge run interval (milliseconds).
+     */
+    @ConfigValue
+    private long purgeInterval = DEFAULT_PURGE_INTERVAL;
+    /**
+     * Max times an event is written before it is dropped.
+     */
+    @ConfigValue
+    private int maxWriteAttempts = DEFAULT_MAX_WRITE_ATTEMPTS;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private BlockingQueue<AuditEvent> queue = null;
+    /**
+     * Events to be retried, written ahead of the queued events (guarded by the flush lock).
+     */
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final Deque<AuditEvent> retries = new ArrayDeque<>();
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock flushLock = new ReentrantLock();
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private ManagedTask flushTask = null;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private ManagedTask purgeTask = null;
 
     /**
      * Log Job start.
@@ -74,11 +152,6 @@ public class DBJobAuditLogger implements IJobAuditLogger {
                               @Nonnull JobExecutionContext context,
                               @Nonnull Class<? extends AbstractJob> type) throws AuditException {
         try {
-            AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
-            if (!(connection instanceof HibernateConnection)) {
-                throw new AuditException(String.format("Error getting DB connection. [name=%s]", connectionName));
-            }
-
             JobAuditLog record = new JobAuditLog();
             record.setJobId(UUID.randomUUID().toString());
             record.setNamespace(config.getNamespace());
@@ -89,23 +162,10 @@ public class DBJobAuditLogger implements IJobAuditLogger {
             record.setCorrelationId(correlationId);
             record.setJobState(EJobState.Running);
 
-            Session session = connection.connection().getSession();
-            try {
-                Transaction tx = ((HibernateConnection) connection).startTransaction();
-                try {
-                    Object result = session.save(record);
-                    if (result == null) {
-                        throw new AuditException(String.format("Error creating entity. [type=%s]", record.getClass().getCanonicalName()));
-                    }
-                    tx.commit();
-                } catch (Throwable t) {
-                    tx.rollback();
-                    throw t;
-                }
-                return record.getJobId();
-            } finally {
-                connection.close(session);
-            }
+            enqueue(new AuditEvent(EAuditEvent.Start, record.getJobId(), correlationId).record(record));
+            return record.getJobId();
+        } catch (AuditException ae) {
+            throw ae;
         } catch (Throwable t) {
             throw new AuditException(t);
         }
@@ -122,45 +182,14 @@ public class DBJobAuditLogger implements IJobAuditLogger {
     @Override
     public void logJobEnd(@Nonnull String id, Object response, Throwable error) throws AuditException {
         try {
-            AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
-            if (!(connection instanceof HibernateConnection)) {
-                throw new AuditException(String.format("Error getting DB connection. [name=%s]", connectionName));
-            }
-
-            Session session = connection.connection();
-            try {
-                JobAuditLog record = session.find(JobAuditLog.class, id);
-                if (record == null) {
-                    throw new AuditException(String.format("Audit Log record not found. [id=%s]", id));
-                }
-                record.setEndTime(System.currentTimeMillis());
-                if (response != null) {
-                    record.setResponseJson(GlobalConstants.getJsonMapper().writeValueAsString(response));
-                }
-                if (error != null) {
-                    String err = error.getLocalizedMessage();
-                    if (!Strings.isNullOrEmpty(err) && err.length() > MAX_ERROR_TEXT) {
-                        err = err.substring(0, MAX_ERROR_TEXT);
-                    }
-                    record.setError(err);
-                    String trace = LogUtils.getStackTrace(error);
-                    record.setErrorTrace(trace);
-                    record.setJobState(EJobState.Error);
-                } else {
-                    record.setJobState(EJobState.Finished);
-                }
-
-                Transaction tx = ((HibernateConnection) connection).startTransaction();
-                try {
-                    session.update(record);
-                    tx.commit();
-                } catch (Throwable t) {
-                    tx.rollback();
-                    throw t;
-                }
-            } finally {
-                connection.close(session);
+            AuditEvent event = new AuditEvent(EAuditEvent.End, id, null);
+            if (response != null) {
+                event.response = GlobalConstants.getJsonMapper().writeValueAsString(response);
             }
+            event.error(error);
+            enqueue(event);
+        } catch (AuditException ae) {
+            throw ae;
         } catch (Throwable t) {
             throw new AuditException(t);
         }
@@ -175,96 +204,245 @@ public class DBJobAuditLogger implements IJobAuditLogger {
      */
     @Override
     public void logJobState(@Nonnull String correlationId, EJobState state) throws AuditException {
+        AuditEvent event = new AuditEvent(EAuditEvent.State, null, correlationId);
+        event.state = state;
+        enqueue(event);
+    }
+
+    /**
+     * Update the Job with Error.
+     *
+     * @param correlationId - Job Correlation ID
+     * @param error         - Error handle.
+     * @throws AuditException
+     */
+    @Override
+    public void logJobError(@Nonnull String correlationId, Throwable error) throws AuditException {
+        AuditEvent event = new AuditEvent(EAuditEvent.Error, null, correlationId);
+        event.error(error);
+        enqueue(event);
+    }
+
+    /**
+     * Write all the buffered events.
+     *
+     * @throws AuditException
+     */
+    public void flush() throws AuditException {
+        if (queue == null) {
+            return;
+        }
+        flushLock.lock();
         try {
-            AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
-            if (!(connection instanceof HibernateConnection)) {
-                throw new AuditException(String.format("Error getting DB connection. [name=%s]", connectionName));
+            List<AuditEvent> events = new ArrayList<>(batchSize);
+            while (true) {
+                while (!retries.isEmpty() && events.size() < batchSize) {
+                    events.add(retries.poll());
+                }
+                queue.drainTo(events, batchSize - events.size());
+                if (events.isEmpty()) {
+                    break;
+                }
+                write(events);
+                events.clear();
             }
+        } finally {
+            flushLock.unlock();
+        }
+    }
 
-            Session session = connection.connection();
-            try {
-                String qstr = String.format("FROM %s WHERE correlationId = :correlation_id", JobAuditLog.class.getCanonicalName());
-                Query query = session.createQuery(qstr);
-                query.setParameter("correlation_id", correlationId);
-                List<JobAuditLog> records = query.getResultList();
-                if (records != null && !records.isEmpty()) {
-                    JobAuditLog job = records.get(0);
-                    job.setJobState(state);
-                    job.setStateUpdateTimestamp(System.currentTimeMillis());
-                    if (state == EJobState.Finished || state == EJobState.Stopped || state == EJobState.Error) {
-                        job.setEndTime(System.currentTimeMillis());
+    /**
+     * Delete the audit records older than the retention period.
+     *
+     * @return - Number of records deleted.
+     * @throws AuditException
+     */
+    @SuppressWarnings("unchecked")
+    public long purge() throws AuditException {
+        Preconditions.checkState(retention != null);
+        try {
+            long cutoff = System.currentTimeMillis() - retention.period();
+            HibernateConnection connection = connection();
+            long count = 0;
+            while (true) {
+                Session session = connection.connection();
+                try {
+                    String qstr = String.format("SELECT jobId FROM %s WHERE startTime < :cutoff", JobAuditLog.class.getCanonicalName());
+                    Query query = session.createQuery(qstr);
+                    query.setParameter("cutoff", cutoff);
+                    query.setMaxResults(purgeBatchSize);
+                    List<String> ids = query.getResultList();
+                    if (ids == null || ids.isEmpty()) {
+                        break;
                     }
-                    Transaction tx = ((HibernateConnection) connection).startTransaction();
+                    Transaction tx = connection.startTransaction();
                     try {
-                        session.update(job);
+                        String dstr = String.format("DELETE FROM %s WHERE jobId IN (:ids)", JobAuditLog.class.getCanonicalName());
+                        Query delete = session.createQuery(dstr);
+                        delete.setParameter("ids", ids);
+                        count += delete.executeUpdate();
                         tx.commit();
-                    } catch (Exception ex) {
-                        LogUtils.error(getClass(), ex);
+                    } catch (Throwable t) {
                         tx.rollback();
-                        throw ex;
+                        throw t;
                     }
-                } else {
-                    LogUtils.error(getClass(), String.format("Job Not Found: [correlation ID=%s]", correlationId));
+                    if (ids.size() < purgeBatchSize) {
+                        break;
+                    }
+                } finally {
+                    connection.close(session);
                 }
-            } finally {
-                connection.close(session);
             }
+            if (count > 0) {
+                LogUtils.info(getClass(), String.format("Purged job audit records. [count=%d][cutoff=%d]", count, cutoff));
+            }
+            return count;
         } catch (Throwable t) {
             throw new AuditException(t);
         }
     }
 
+    private void enqueue(AuditEvent event) throws AuditException {
+        Preconditions.checkState(queue != null);
+        if (!queue.offer(event)) {
+            // Queue full, write the pending events on the caller thread.
+            flush();
+            if (!queue.offer(event)) {
+                throw new AuditException(String.format("Audit queue full. [size=%d]", queueSize));
+            }
+        }
+    }
+
     /**
-     * Update the Job with Error.
+     * Write the batch of events, if the batch fails the events are written
+     * one at a time.
      *
-     * @param correlationId - Job Correlation ID
-     * @param error         - Error handle.
-     * @throws AuditException
+     * @param events - Batch of events.
+     * @throws AuditException - If no event could be written, the events are queued for retry.
      */
-    @Override
-    public void logJobError(@Nonnull String correlationId, Throwable error) throws AuditException {
+    private void write(List<AuditEvent> events) throws AuditException {
         try {
-            AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
-            if (!(connection instanceof HibernateConnection)) {
-                throw new AuditException(String.format("Error getting DB connection. [name=%s]", connectionName));
+            writeBatch(events);
+            return;
+        } catch (Throwable t) {
+            if (events.size() == 1) {
+                retry(events, t);
             }
-
-            Session session = connection.connection();
+            LogUtils.warn(getClass(), String.format("Error writing job audit batch, writing events individually. [count=%d][error=%s]",
+                    events.size(), t.getLocalizedMessage()));
+        }
+        List<AuditEvent> failed = new ArrayList<>();
+        Throwable error = null;
+        for (AuditEvent event : events) {
             try {
-                String qstr = String.format("FROM %s WHERE correlationId = :correlation_id", JobAuditLog.class.getCanonicalName());
-                Query query = session.createQuery(qstr);
-                query.setParameter("correlation_id", correlationId);
-                List<JobAuditLog> records = query.getResultList();
-                if (records != null && !records.isEmpty()) {
-                    JobAuditLog job = records.get(0);
-                    job.setJobState(EJobState.Error);
-                    job.setEndTime(System.currentTimeMillis());
-                    job.setStateUpdateTimestamp(System.currentTimeMillis());
-                    if (error != null) {
-                        job.setError(error.getLocalizedMessage());
-                        String st = LogUtils.getStackTrace(error);
-                        job.setErrorTrace(st);
-                    } else {
-                        job.setError("Job returned error state. [error=null]");
+                writeBatch(Collections.singletonList(event));
+            } catch (Throwable t) {
+                failed.add(event);
+                error = t;
+            }
+        }
+        if (failed.size() == events.size()) {
+            retry(failed, error);
+        }
+        for (AuditEvent event : failed) {
+            LogUtils.error(getClass(), String.format("Error writing job audit event, event dropped. [type=%s][job ID=%s][correlation ID=%s]",
+                    event.type.name(), event.jobId, event.correlationId));
+        }
+    }
+
+    /**
+     * Queue the events (none of which could be written) for retry on the next
+     * flush, events that reached the max write attempts are dropped.
+     */
+    private void retry(List<AuditEvent> events, Throwable error) throws AuditException {
+        int dropped = 0;
+        for (int ii = events.size() - 1; ii >= 0; ii--) {
+            AuditEvent event = events.get(ii);
+            if (++event.attempts < maxWriteAttempts) {
+                retries.addFirst(event);
+            } else {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            LogUtils.error(getClass(), String.format("Error writing job audit events, events dropped. [count=%d][attempts=%d]",
+                    dropped, maxWriteAttempts));
+        }
+        throw new AuditException(error);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeBatch(List<AuditEvent> events) throws Exception {
+        HibernateConnection connection = connection();
+        Session session = connection.connection();
+        try {
+            session.setJdbcBatchSize(batchSize);
+            Map<String, JobAuditLog> created = new LinkedHashMap<>();
+            Map<String, JobAuditLog> updated = new LinkedHashMap<>();
+            Map<String, JobAuditLog> correlated = new HashMap<>();
+            for (AuditEvent event : events) {
+                if (event.type == EAuditEvent.Start) {
+                    created.put(event.jobId, event.record);
+                    correlated.put(event.correlationId, event.record);
+                    continue;
+                }
+                JobAuditLog record = null;
+                if (event.type == EAuditEvent.End) {
+                    record = created.get(event.jobId);
+                    if (record == null) record = updated.get(event.jobId);
+                    if (record == null) record = session.find(JobAuditLog.class, event.jobId);
+                } else {
+                    record = correlated.get(event.correlationId);
+                    if (record == null) {
+                        String qstr = String.format("FROM %s WHERE correlationId = :correlation_id", JobAuditLog.class.getCanonicalName());
+                        Query query = session.createQuery(qstr);
+                        query.setParameter("correlation_id", event.correlationId);
+                        List<JobAuditLog> records = query.getResultList();
+                        if (records != null && !records.isEmpty()) {
+                            record = records.get(0);
+                        }
                     }
-                    Transaction tx = ((HibernateConnection) connection).startTransaction();
-                    try {
-                        session.update(job);
-                        tx.commit();
-                    } catch (Exception ex) {
-                        LogUtils.error(getClass(), ex);
-                        tx.rollback();
-                        throw ex;
+                }
+                if (record == null) {
+                    LogUtils.error(getClass(), String.format("Job Not Found: [job ID=%s][correlation ID=%s]",
+                            event.jobId, event.correlationId));
+                    continue;
+                }
+                event.apply(record);
+                correlated.put(record.getCorrelationId(), record);
+                if (!created.containsKey(record.getJobId())) {
+                    updated.put(record.getJobId(), record);
+                }
+            }
+            Transaction tx = connection.startTransaction();
+            try {
+                for (JobAuditLog record : created.values()) {
+                    Object result = session.save(record);
+                    if (result == null) {
+                        throw new AuditException(String.format("Error creating entity. [type=%s]", record.getClass().getCanonicalName()));
                     }
-                } else {
-                    LogUtils.error(getClass(), String.format("Job Not Found: [correlation ID=%s]", correlationId));
                 }
-            } finally {
-                connection.close(session);
+                for (JobAuditLog record : updated.values()) {
+                    session.update(record);
+                }
+                tx.commit();
+            } catch (Throwable t) {
+                tx.rollback();
+                throw t;
             }
-        } catch (Throwable t) {
-            throw new AuditException(t);
+            LogUtils.debug(getClass(), "Written job audit batch. [events={}][created={}][updated={}]",
+                    events.size(), created.size(), updated.size());
+        } finally {
+            connection.close(session);
+        }
+    }
+
+    protected HibernateConnection connection() throws Exception {
+        AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
+        if (!(connection instanceof HibernateConnection)) {
+            throw new AuditException(String.format("Error getting DB connection. [name=%s]", connectionName));
         }
+        return (HibernateConnection) connection;
     }
 
     /**
@@ -275,6 +453,7 @@ public class DBJobAuditLogger implements IJobAuditLogger {
      */
     @Override
     public List<JobAuditLog> findPendingJobs() throws AuditException {
+        flush();
         try {
             AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
             if (!(connection instanceof HibernateConnection)) {
@@ -307,6 +486,7 @@ public class DBJobAuditLogger implements IJobAuditLogger {
      */
     @Override
     public List<JobAuditLog> findRunningJobs() throws AuditException {
+        flush();
         try {
             AbstractConnection<Session> connection = ConnectionManager.get().connection(connectionName, Session.class);
             if (!(connection instanceof HibernateConnection)) {
@@ -341,10 +521,127 @@ public class DBJobAuditLogger implements IJobAuditLogger {
     public void configure(@Nonnull AbstractConfigNode node) throws ConfigurationException {
         Preconditions.checkArgument(node instanceof ConfigPathNode);
         ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
+        start();
+    }
+
+    /**
+     * Create the event queue and schedule the flush/purge tasks.
+     */
+    void start() {
+        Preconditions.checkState(batchSize > 0 && queueSize > 0 && flushInterval > 0);
+        queue = new ArrayBlockingQueue<>(queueSize);
+        String name = String.format("%s::%s", getClass().getCanonicalName(), connectionName);
+        flushTask = ManagedExecutor.get().schedule(name, () -> {
+            try {
+                flush();
+            } catch (Exception ex) {
+                LogUtils.error(getClass(), ex);
+            }
+        }, flushInterval, flushInterval);
+        if (retention != null) {
+            purgeTask = ManagedExecutor.get().schedule(name + "::purge", () -> {
+                try {
+                    purge();
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                }
+            }, purgeInterval, purgeInterval);
+        }
     }
 
     @Override
     public void close() throws IOException {
+        if (purgeTask != null) {
+            purgeTask.cancel();
+            purgeTask = null;
+        }
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        try {
+            flush();
+        } catch (AuditException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private enum EAuditEvent {
+        Start, End, State, Error
+    }
+
+    private static final class AuditEvent {
+        private final EAuditEvent type;
+        private final String jobId;
+        private final String correlationId;
+        private final long timestamp = System.currentTimeMillis();
+        private int attempts = 0;
+        private JobAuditLog record;
+        private EJobState state;
+        private String response;
+        private boolean hasError = false;
+        private String error;
+        private String errorTrace;
+
+        private AuditEvent(EAuditEvent type, String jobId, String correlationId) {
+            this.type = type;
+            this.jobId = jobId;
+            this.correlationId = correlationId;
+        }
 
+        private AuditEvent record(JobAuditLog record) {
+            this.record = record;
+            return this;
+        }
+
+        private void error(Throwable error) {
+            if (error != null) {
+                hasError = true;
+                this.error = error.getLocalizedMessage();
+                errorTrace = LogUtils.getStackTrace(error);
+            }
+        }
+
+        private void apply(JobAuditLog job) {
+            switch (type) {
+                case End:
+                    job.setEndTime(timestamp);
+                    if (response != null) {
+                        job.setResponseJson(response);
+                    }
+                    if (hasError) {
+                        String err = error;
+                        if (!Strings.isNullOrEmpty(err) && err.length() > MAX_ERROR_TEXT) {
+                            err = err.substring(0, MAX_ERROR_TEXT);
+                        }
+                        job.setError(err);
+                        job.setErrorTrace(errorTrace);
+                        job.setJobState(EJobState.Error);
+                    } else {
+                        job.setJobState(EJobState.Finished);
+                    }
+                    break;
+                case State:
+                    job.setJobState(state);
+                    job.setStateUpdateTimestamp(timestamp);
+                    if (state == EJobState.Finished || state == EJobState.Stopped || state == EJobState.Error) {
+                        job.setEndTime(timestamp);
+                    }
+                    break;
+                case Error:
+                    job.setJobState(EJobState.Error);
+                    job.setEndTime(timestamp);
+                    job.setStateUpdateTimestamp(timestamp);
+                    if (hasError) {
+                        job.setError(error);
+                        job.setErrorTrace(errorTrace);
+                    } else {
+                        job.setError("Job returned error state. [error=null]");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
     }
 }
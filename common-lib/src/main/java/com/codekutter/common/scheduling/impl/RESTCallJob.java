@@ -67,9 +67,7 @@ public class RESTCallJob extends AbstractJob {
             response = config.getRequestBuilder().get(correlationId, target, config);
         } else
             response = target.request(config.getMediaType()).get();
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
@@ -82,9 +80,7 @@ public class RESTCallJob extends AbstractJob {
             response = config.getRequestBuilder().post(correlationId, target, config);
         } else
             throw new JobExecutionException("Request Builder not specified. Required for POST requests.");
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
@@ -97,9 +93,7 @@ public class RESTCallJob extends AbstractJob {
             response = config.getRequestBuilder().put(correlationId, target, config);
         } else
             throw new JobExecutionException("Request Builder not specified. Required for PUT requests.");
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
@@ -112,12 +106,19 @@ public class RESTCallJob extends AbstractJob {
             response = config.getRequestBuilder().delete(correlationId, target, config);
         } else
             throw new JobExecutionException("Request Builder not specified. Required for DELETE requests.");
-        if (response.getStatus() != HttpStatus.SC_OK) {
-            throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
-        }
+        checkResponse(response);
         if (config.getResponseHandler() != null) {
             return config.getResponseHandler().handle(response);
         }
         return response.readEntity(String.class);
     }
+
+    private void checkResponse(Response response) throws JobExecutionException {
+        if (response.getStatus() != HttpStatus.SC_OK) {
+            int status = response.getStatus();
+            // Release the connection, else the socket isn't returned to the keep-alive pool.
+            response.close();
+            throw new JobExecutionException(String.format("Request failed. [status=%d]", status));
+        }
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.scheduling.remote;
+
+import com.codekutter.common.GlobalConstants;
+import com.codekutter.common.utils.LogUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * HTTP endpoint remote services post job state changes to (callback).
+ * <p>
+ * Accepts a POST with a JSON JobStateUpdate or an array of JobStateUpdate(s). Requests
+ * must pass the shared token in the {@value #HEADER_TOKEN} header. The receiver binds
+ * to the loopback interface unless a bind address is specified.
+ */
+@Getter
+@Accessors(fluent = true)
+public class JobStateReceiver {
+    public static final String HEADER_TOKEN = "X-Job-Token";
+    private static final int MAX_REQUEST_SIZE = 1024 * 1024;
+
+    private final String path;
+    @Getter(lombok.AccessLevel.NONE)
+    private final byte[] token;
+    @Getter(lombok.AccessLevel.NONE)
+    private final Consumer<JobStateUpdate> listener;
+    @Getter(lombok.AccessLevel.NONE)
+    private final ObjectMapper mapper = GlobalConstants.getJsonMapper();
+    @Getter(lombok.AccessLevel.NONE)
+    private HttpServer server = null;
+    private final AtomicLong received = new AtomicLong();
+    private volatile long lastReceived = 0;
+
+    /**
+     * Create a new receiver.
+     *
+     * @param path     - Context path to receive updates on.
+     * @param token    - Shared token.
+     * @param listener - Listener invoked for each update.
+     */
+    public JobStateReceiver(@Nonnull String path, @Nonnull String token, @Nonnull Consumer<JobStateUpdate> listener) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(path) && path.startsWith("/"));
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(token), "Receiver token not specified.");
+        this.path = path;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.listener = listener;
+    }
+
+    /**
+     * Start the receiver on the loopback interface.
+     *
+     * @param port - Port to listen on (0 for an ephemeral port).
+     * @return - Self
+     * @throws IOException
+     */
+    public JobStateReceiver start(int port) throws IOException {
+        return start(null, port);
+    }
+
+    /**
+     * Start the receiver.
+     *
+     * @param bindAddress - Address to bind to (NULL for the loopback interface).
+     * @param port        - Port to listen on (0 for an ephemeral port).
+     * @return - Self
+     * @throws IOException
+     */
+    public synchronized JobStateReceiver start(String bindAddress, int port) throws IOException {
+        Preconditions.checkState(server == null);
+        InetAddress address = (Strings.isNullOrEmpty(bindAddress) ?
+                InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress));
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.createContext(path, this::handle);
+        server.start();
+        LogUtils.info(getClass(), String.format("Started job state receiver. [address=%s][port=%d][path=%s]",
+                address.getHostAddress(), port(), path));
+        return this;
+    }
+
+    /**
+     * Stop the receiver.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Is the receiver running?
+     *
+     * @return - Is running?
+     */
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Get the address the receiver is bound to.
+     *
+     * @return - Bound address or NULL if not running.
+     */
+    public InetAddress address() {
+        HttpServer s = server;
+        return (s != null ? s.getAddress().getAddress() : null);
+    }
+
+    /**
+     * Get the port the receiver is listening on.
+     *
+     * @return - Port or -1 if not running.
+     */
+    public int port() {
+        HttpServer s = server;
+        return (s != null ? s.getAddress().getPort() : -1);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Method not allowed.");
+                return;
+            }
+            if (!isValidToken(exchange.getRequestHeaders().getFirst(HEADER_TOKEN))) {
+                respond(exchange, 403, "Invalid token.");
+                return;
+            }
+            List<JobStateUpdate> updates;
+            try {
+                updates = parse(exchange.getRequestBody());
+            } catch (Exception ex) {
+                LogUtils.warn(getClass(), String.format("Invalid job state update. [error=%s]", ex.getLocalizedMessage()));
+                respond(exchange, 400, "Invalid request.");
+                return;
+            }
+            int count = 0;
+            for (JobStateUpdate update : updates) {
+                if (update == null || Strings.isNullOrEmpty(update.getCorrelationId()) || update.getState() == null) {
+                    LogUtils.warn(getClass(), "Ignoring job state update: missing correlation ID/state.");
+                    continue;
+                }
+                try {
+                    listener.accept(update);
+                    count++;
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                }
+            }
+            received.addAndGet(count);
+            lastReceived = System.currentTimeMillis();
+            respond(exchange, 200, String.format("{\"accepted\":%d}", count));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isValidToken(String value) {
+        if (Strings.isNullOrEmpty(value)) {
+            return false;
+        }
+        // Constant time compare.
+        return MessageDigest.isEqual(token, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<JobStateUpdate> parse(InputStream input) throws IOException {
+        byte[] data = readBody(input);
+        int ii = 0;
+        while (ii < data.length && Character.isWhitespace(data[ii])) ii++;
+        if (ii >= data.length) {
+            return Collections.emptyList();
+        }
+        if (data[ii] == '[') {
+            return Arrays.asList(mapper.readValue(data, JobStateUpdate[].class));
+        }
+        return Collections.singletonList(mapper.readValue(data, JobStateUpdate.class));
+    }
+
+    private byte[] readBody(InputStream input) throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            output.write(buffer, 0, read);
+            if (output.size() > MAX_REQUEST_SIZE) {
+                throw new IOException(String.format("Request too large. [max=%d]", MAX_REQUEST_SIZE));
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(data);
+        }
+    }
+}
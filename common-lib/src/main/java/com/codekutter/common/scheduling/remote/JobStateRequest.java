@@ -15,6 +15,10 @@ public class JobStateRequest {
     private String nodeId;
     private long requestTime;
     private Set<String> jobCorrelationIds;
+    /**
+     * URL to push job state changes to (NULL if not supported).
+     */
+    private String callbackUrl;
 
     public JobStateRequest addCorrelationId(@Nonnull String correlationId) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(correlationId));
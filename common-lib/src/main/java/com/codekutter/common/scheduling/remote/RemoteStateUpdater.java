@@ -28,6 +28,9 @@ import com.codekutter.common.stores.ConnectionManager;
 import com.codekutter.common.stores.DataStoreException;
 import com.codekutter.common.stores.impl.RestConnection;
 import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.ManagedExecutor;
+import com.codekutter.common.utils.ManagedTask;
+import com.codekutter.common.utils.NetUtils;
 import com.codekutter.common.utils.Runner;
 import com.codekutter.zconfig.common.ConfigurationAnnotationProcessor;
 import com.codekutter.zconfig.common.ConfigurationException;
@@ -35,6 +38,7 @@ import com.codekutter.zconfig.common.IConfigurable;
 import com.codekutter.zconfig.common.model.annotations.ConfigValue;
 import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import lombok.AccessLevel;
@@ -51,37 +55,184 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Updates the state of asynchronous (REST) jobs.
+ * <p>
+ * If the receiver is enabled, remote services push state changes to the
+ * callback endpoint (see JobStateReceiver) and polling the remote status URLs is
+ * only a fallback: the poll interval is backed off (up to the max. fetch interval)
+ * while polls don't find any state changes missed by the callbacks.
+ */
 @Getter
 @Setter
 @Accessors(fluent = true)
 public class RemoteStateUpdater extends Runner implements IConfigurable {
     private static final int DEFAULT_FETCH_INTERVAL = 60 * 1000; // Every minute
+    private static final long DEFAULT_MAX_FETCH_INTERVAL = 15 * 60 * 1000;
+    private static final String DEFAULT_RECEIVER_PATH = "/jobs/state";
+    private static final String DEFAULT_RECEIVER_BIND_ADDRESS = "127.0.0.1";
     @ConfigValue
     private int fetchInterval = DEFAULT_FETCH_INTERVAL;
+    /**
+     * Max poll interval when state changes are being pushed.
+     */
+    @ConfigValue
+    private long maxFetchInterval = DEFAULT_MAX_FETCH_INTERVAL;
+    @ConfigValue
+    private boolean receiverEnabled = false;
+    /**
+     * Receiver port (0 for an ephemeral port).
+     */
+    @ConfigValue
+    private int receiverPort = 0;
+    @ConfigValue
+    private String receiverPath = DEFAULT_RECEIVER_PATH;
+    /**
+     * Address the receiver binds to (defaults to loopback), set to a
+     * node address to accept callbacks from remote services.
+     */
+    @ConfigValue
+    private String receiverBindAddress = DEFAULT_RECEIVER_BIND_ADDRESS;
+    /**
+     * Host name advertised in the callback URL (defaults to the node IP address).
+     */
+    @ConfigValue
+    private String receiverHost;
+    /**
+     * Shared token remote services must pass with callbacks (required if the receiver is enabled).
+     */
+    @ConfigValue
+    private String receiverToken;
     @Setter(AccessLevel.NONE)
     private ScheduleManager scheduleManager;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private volatile ManagedTask task = null;
+    @Setter(AccessLevel.NONE)
+    private JobStateReceiver receiver = null;
+    @Setter(AccessLevel.NONE)
+    private long pollInterval = DEFAULT_FETCH_INTERVAL;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private long nextPoll = 0;
 
     public RemoteStateUpdater withScheduleManager(@Nonnull ScheduleManager scheduleManager) {
         this.scheduleManager = scheduleManager;
         return this;
     }
 
+    /**
+     * Start the periodic state updates on the shared executor
+     * (and the callback receiver, if enabled). Started by the
+     * ScheduleManager if any async jobs are configured.
+     */
+    public synchronized void start() {
+        Preconditions.checkState(scheduleManager != null);
+        Preconditions.checkState(task == null);
+        if (receiverEnabled) {
+            Preconditions.checkState(!Strings.isNullOrEmpty(receiverToken),
+                    "Job state receiver enabled, but no receiver token specified.");
+            try {
+                receiver = new JobStateReceiver(receiverPath, receiverToken, this::apply)
+                        .start(receiverBindAddress, receiverPort);
+            } catch (IOException ex) {
+                LogUtils.error(getClass(), String.format("Error starting job state receiver, using polling. [port=%d]", receiverPort));
+                LogUtils.error(getClass(), ex);
+                receiver = null;
+            }
+        }
+        pollInterval = fetchInterval;
+        nextPoll = 0;
+        task = ManagedExecutor.get().schedule(getClass().getCanonicalName(), this, DEFAULT_FETCH_INTERVAL, fetchInterval);
+    }
+
+    /**
+     * Stop the periodic state updates.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        if (receiver != null) {
+            receiver.stop();
+            receiver = null;
+        }
+    }
+
+    /**
+     * Get the URL remote services should post state changes to.
+     *
+     * @return - Callback URL or NULL if the receiver isn't running.
+     */
+    public String callbackUrl() {
+        JobStateReceiver r = receiver;
+        if (r == null || !r.isRunning()) {
+            return null;
+        }
+        String host = receiverHost;
+        if (Strings.isNullOrEmpty(host)) {
+            InetAddress address = r.address();
+            if (address == null || address.isAnyLocalAddress()) {
+                address = NetUtils.getIpAddress();
+            }
+            host = (address != null ? address.getHostAddress() : "localhost");
+        }
+        return String.format("http://%s:%d%s", host, r.port(), r.path());
+    }
+
+    /**
+     * Apply a state change pushed by a remote service.
+     *
+     * @param update - Job state update.
+     */
+    public void apply(@Nonnull JobStateUpdate update) {
+        try {
+            IJobAuditLogger logger = (scheduleManager != null ? scheduleManager.auditLogger() : null);
+            if (logger == null) {
+                LogUtils.warn(getClass(), String.format("No audit logger, ignoring state update. [correlation ID=%s]",
+                        update.getCorrelationId()));
+                return;
+            }
+            if (update.getState() == EJobState.Error) {
+                logger.logJobError(update.getCorrelationId(),
+                        (update.getError() != null ? new Exception(update.getError()) : null));
+            } else {
+                logger.logJobState(update.getCorrelationId(), update.getState());
+            }
+        } catch (AuditException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Run the state updates. When started (see start()) this is a single poll tick
+     * on the shared executor. If run directly on a thread (ManagedThread), polls in a
+     * loop until the schedule manager is shutdown.
+     *
+     * @throws Exception
+     */
     @Override
     public void doRun() throws Exception {
         try {
+            if (task != null) {
+                poll();
+                return;
+            }
             Thread.sleep(DEFAULT_FETCH_INTERVAL);
-            while (scheduleManager != null && scheduleManager.state().getState() == EObjectState.Available) {
-                Set<JobConfig> configs = scheduleManager.getAsyncJobConfigs();
-                if (configs != null && !configs.isEmpty()) {
-                    processingPending(configs);
-                    processingRunning(configs);
-                }
-                Thread.sleep(fetchInterval);
+            pollInterval = fetchInterval;
+            nextPoll = 0;
+            while (isAvailable()) {
+                poll();
+                Thread.sleep(pollInterval);
             }
             LogUtils.info(getClass(), "Shutting down Remote State Updater...");
         } catch (Throwable t) {
@@ -90,7 +241,38 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
         }
     }
 
-    private void processingPending(Set<JobConfig> configs) throws JobExecutionException, AuditException, DataStoreException {
+    private boolean isAvailable() {
+        return (scheduleManager != null && scheduleManager.state().getState() == EObjectState.Available);
+    }
+
+    private void poll() throws Exception {
+        if (isAvailable()) {
+            long now = System.currentTimeMillis();
+            if (now < nextPoll) {
+                return;
+            }
+            int changed = 0;
+            Set<JobConfig> configs = scheduleManager.getAsyncJobConfigs();
+            if (configs != null && !configs.isEmpty()) {
+                changed += processingPending(configs);
+                changed += processingRunning(configs);
+            }
+            if (receiver != null && receiver.isRunning() && changed == 0) {
+                // Updates are being pushed, back off the fallback poll.
+                pollInterval = Math.min(pollInterval * 2, Math.max(maxFetchInterval, fetchInterval));
+            } else {
+                pollInterval = fetchInterval;
+            }
+            // Slack for the tick scheduling jitter.
+            nextPoll = now + pollInterval - (fetchInterval / 2);
+        } else if (task != null) {
+            LogUtils.info(getClass(), "Shutting down Remote State Updater...");
+            task.cancel();
+        }
+    }
+
+    private int processingPending(Set<JobConfig> configs) throws JobExecutionException, AuditException, DataStoreException {
+        int changed = 0;
         IJobAuditLogger logger = scheduleManager.auditLogger();
         if (logger != null) {
             List<JobAuditLog> records = logger.findPendingJobs();
@@ -111,21 +293,16 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
                     for (JobConfig config : recordMap.keySet()) {
                         Collection<JobAuditLog> ars = recordMap.get(config);
                         if (ars.isEmpty()) continue;
-                        JobStateResponse response = updateStates(config, ars, logger);
-                        if (response != null) {
-                            LogUtils.debug(getClass(), response);
-                        } else {
-                            LogUtils.error(getClass(),
-                                    String.format("State response is NULL. [config=%s]",
-                                            JobConfig.key(config.getNamespace(), config.getName())));
-                        }
+                        changed += updateStates(config, ars, logger);
                     }
                 }
             }
         }
+        return changed;
     }
 
-    private void processingRunning(Set<JobConfig> configs) throws JobExecutionException, AuditException, DataStoreException {
+    private int processingRunning(Set<JobConfig> configs) throws JobExecutionException, AuditException, DataStoreException {
+        int changed = 0;
         IJobAuditLogger logger = scheduleManager.auditLogger();
         if (logger != null) {
             List<JobAuditLog> records = logger.findRunningJobs();
@@ -146,23 +323,17 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
                     for (JobConfig config : recordMap.keySet()) {
                         Collection<JobAuditLog> ars = recordMap.get(config);
                         if (ars.isEmpty()) continue;
-                        JobStateResponse response = updateStates(config, ars, logger);
-                        if (response != null) {
-                            LogUtils.debug(getClass(), response);
-                        } else {
-                            LogUtils.error(getClass(),
-                                    String.format("State response is NULL. [config=%s]",
-                                            JobConfig.key(config.getNamespace(), config.getName())));
-                        }
+                        changed += updateStates(config, ars, logger);
                     }
                 }
             }
         }
+        return changed;
     }
 
-    private JobStateResponse updateStates(JobConfig config,
-                                          Collection<JobAuditLog> records,
-                                          IJobAuditLogger logger) throws JobExecutionException, DataStoreException, AuditException {
+    private int updateStates(JobConfig config,
+                             Collection<JobAuditLog> records,
+                             IJobAuditLogger logger) throws JobExecutionException, DataStoreException, AuditException {
         if (config instanceof AsyncRestJobConfig) {
             AsyncRestJobConfig rc = (AsyncRestJobConfig) config;
 
@@ -174,12 +345,15 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
             JobStateRequest request = new JobStateRequest();
             request.setNodeId(scheduleManager.scheduleNodeId());
             request.setRequestTime(System.currentTimeMillis());
+            request.setCallbackUrl(callbackUrl());
+            Map<String, JobAuditLog> recordMap = new HashMap<>();
             for (JobAuditLog record : records) {
                 if (Strings.isNullOrEmpty(record.getCorrelationId())) {
                     LogUtils.error(getClass(), String.format("Async request missing correlation ID. [jpb ID=%s]", record.getJobId()));
                     continue;
                 }
                 request.addCorrelationId(record.getCorrelationId());
+                recordMap.put(record.getCorrelationId(), record);
             }
             WebTarget target = connection.client().target(rc.getRequestStatusUrl());
             Entity<JobStateRequest> re = Entity.entity(request, MediaType.APPLICATION_JSON_TYPE);
@@ -188,11 +362,17 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
                 throw new JobExecutionException(String.format("Request failed. [status=%d]", response.getStatus()));
             }
             JobStateResponse stateResponse = response.readEntity(JobStateResponse.class);
+            int changed = 0;
             if (stateResponse != null) {
+                LogUtils.debug(getClass(), stateResponse);
                 if (stateResponse.getStates() != null && !stateResponse.getStates().isEmpty()) {
                     Map<String, JobResponse> responses = stateResponse.getStates();
                     for (String key : responses.keySet()) {
                         JobResponse jr = responses.get(key);
+                        JobAuditLog record = recordMap.get(jr.getCorrelationId());
+                        if (record != null && record.getJobState() != jr.getJobState().getState()) {
+                            changed++;
+                        }
                         if (jr.getJobState().hasError()) {
                             logger.logJobError(jr.getCorrelationId(), jr.getJobState().getError());
                         } else {
@@ -200,9 +380,14 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
                         }
                     }
                 }
+            } else {
+                LogUtils.error(getClass(),
+                        String.format("State response is NULL. [config=%s]",
+                                JobConfig.key(config.getNamespace(), config.getName())));
             }
+            return changed;
         }
-        return null;
+        return 0;
     }
 
     private JobConfig findConfig(Set<JobConfig> configs, JobAuditLog record) {
@@ -228,6 +413,9 @@ public class RemoteStateUpdater extends Runner implements IConfigurable {
     public void configure(@Nonnull AbstractConfigNode node) throws ConfigurationException {
         if (node instanceof ConfigPathNode) {
             ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
+            if (receiverEnabled && Strings.isNullOrEmpty(receiverToken)) {
+                throw new ConfigurationException("Job state receiver enabled, but no receiver token specified.");
+            }
         }
     }
 }
@@ -18,7 +18,9 @@
 package com.codekutter.common.stores;
 
 import com.codekutter.common.Context;
-import com.codekutter.common.auditing.AbstractAuditLogger;
+import com.codekutter.common.auditing.*;
+import com.codekutter.common.model.AuditRecord;
+import com.codekutter.common.model.EAuditType;
 import com.codekutter.common.model.IEntity;
 import com.codekutter.common.stores.impl.DataStoreAuditContext;
 import com.codekutter.common.utils.KeyValuePair;
@@ -36,7 +38,9 @@ import lombok.experimental.Accessors;
 import javax.annotation.Nonnull;
 import java.io.Closeable;
 import java.io.IOException;
+import java.security.Principal;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 @Getter
 @Setter
@@ -256,6 +260,135 @@ public abstract class AbstractDataStore<T> implements Closeable {
         return search(query, 0, maxResults, parameters, type, context);
     }
 
+    /**
+     * Execute a write of multiple entities, recording the operation metrics.
+     * The operation counter is incremented for each entity being written, if the
+     * write fails the error counter is incremented for each entity.
+     *
+     * @param operation - Write operation (Create/Update/Delete).
+     * @param type - Entity Type.
+     * @param count - Number of entities being written.
+     * @param writer - Write to execute.
+     * @param <R> - Write result type.
+     * @return - Write result.
+     * @throws DataStoreException
+     */
+    protected <R> R recordWrite(@Nonnull EAuditType operation,
+                                @Nonnull Class<? extends IEntity> type,
+                                int count,
+                                @Nonnull Callable<R> writer) throws DataStoreException {
+        Timer latency = null;
+        Id counter = null;
+        switch (operation) {
+            case Create:
+                latency = metrics.createLatency;
+                counter = metrics.createCounter;
+                break;
+            case Update:
+                latency = metrics.updateLatency;
+                counter = metrics.updateCounter;
+                break;
+            case Delete:
+                latency = metrics.deleteLatency;
+                counter = metrics.deleteCounter;
+                break;
+            default:
+                throw new DataStoreException(String.format("Invalid write operation. [operation=%s]", operation.name()));
+        }
+        setTag(operation.name().toUpperCase(), type);
+        try {
+            for (int ii = 0; ii < count; ii++) {
+                Monitoring.increment(counter.name(), metrics.TAGS);
+            }
+            return latency.record(writer);
+        } catch (Throwable t) {
+            recordWriteErrors(operation, type, count);
+            throw new DataStoreException(t);
+        }
+    }
+
+    /**
+     * Record failed entities of a write of multiple entities.
+     *
+     * @param operation - Write operation (Create/Update/Delete).
+     * @param type - Entity Type.
+     * @param count - Number of entities that failed.
+     */
+    protected void recordWriteErrors(@Nonnull EAuditType operation,
+                                     @Nonnull Class<? extends IEntity> type,
+                                     int count) {
+        Id counter = null;
+        switch (operation) {
+            case Create:
+                counter = metrics.createCounterErrors;
+                break;
+            case Update:
+                counter = metrics.updateCounterErrors;
+                break;
+            case Delete:
+                counter = metrics.deleteCounterErrors;
+                break;
+        }
+        if (counter == null) return;
+        setTag(operation.name().toUpperCase(), type);
+        for (int ii = 0; ii < count; ii++) {
+            Monitoring.increment(counter.name(), metrics.TAGS);
+        }
+    }
+
+    /**
+     * Write the audit record for an entity changed by this data store, if the data store
+     * is audited or the entity type is annotated as Audited.
+     *
+     * @param operation - Audit type.
+     * @param entity - Changed entity.
+     * @param type - Entity Type.
+     * @param context - Context handle.
+     * @param user - User principal.
+     * @param <E> - Entity Type.
+     * @throws DataStoreException
+     */
+    @SuppressWarnings("unchecked")
+    protected <E extends IEntity> void audit(@Nonnull EAuditType operation,
+                                             @Nonnull E entity,
+                                             @Nonnull Class<? extends E> type,
+                                             Context context,
+                                             @Nonnull Principal user) throws DataStoreException {
+        if (!config.isAudited() && !type.isAnnotationPresent(Audited.class)) {
+            return;
+        }
+        try {
+            String changeContext = null;
+            if (config.getAuditContextProvider() != null) {
+                IAuditContextGenerator provider = AuditManager.get().getContextGenerator(config.getAuditContextProvider());
+                if (provider == null) {
+                    throw new DataStoreException(String.format("Audit Context generator not found. [type=%s]",
+                            config.getAuditContextProvider().getCanonicalName()));
+                }
+                AbstractAuditContext ctx = provider.generate(this, entity, context, user);
+                if (ctx != null) {
+                    changeContext = ctx.json();
+                }
+            }
+            if (auditLogger == null) {
+                auditLogger = AuditManager.get().getLogger(config.getAuditLogger());
+                if (auditLogger == null) {
+                    throw new DataStoreException(String.format("Error getting audit logger instance. [data store=%s:%s][entity type=%s]",
+                            getClass().getCanonicalName(), name, type.getCanonicalName()));
+                }
+            }
+            AuditRecord r = auditLogger.write(getClass(), name, operation, entity, type, null, changeContext, user);
+            if (r == null) {
+                throw new DataStoreException(String.format("Error creating audit record. [data store=%s:%s][entity type=%s]",
+                        getClass().getCanonicalName(), name, type.getCanonicalName()));
+            }
+        } catch (DataStoreException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new DataStoreException(ex);
+        }
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -30,13 +30,9 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
-import org.glassfish.jersey.jackson.internal.jackson.jaxrs.json.JacksonJaxbJsonProvider;
 
 import javax.annotation.Nonnull;
-import javax.net.ssl.SSLContext;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
-import java.util.Map;
 
 @Getter
 @Setter
@@ -58,18 +54,8 @@ public class RestBasicAuthConnection extends RestConnection {
         Preconditions.checkArgument(node instanceof ConfigPathNode);
         try {
             ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
-            Map<String, Object> config = configuration(node);
-            ClientBuilder builder = ClientBuilder.newBuilder();
-            if (config != null && !config.isEmpty()) {
-                for (String key : config.keySet()) {
-                    builder.property(key, config.get(key));
-                }
-            }
-            if (useSSL()) {
-                builder.sslContext(SSLContext.getDefault());
-            }
             HttpAuthenticationFeature feature = HttpAuthenticationFeature.basicBuilder().build();
-            client = builder.register(JacksonJaxbJsonProvider.class).register(feature).build();
+            client = builder(configuration(node)).register(feature).build();
             state().setState(EConnectionState.Open);
         } catch (Exception ex) {
             state().setError(ex);
@@ -34,12 +34,24 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.apache.http.HttpHeaders;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.JerseyClientBuilder;
 import org.glassfish.jersey.jackson.internal.jackson.jaxrs.json.JacksonJaxbJsonProvider;
 
 import javax.annotation.Nonnull;
 import javax.net.ssl.SSLContext;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.client.Invocation;
 import java.io.IOException;
 import java.util.HashMap;
@@ -53,15 +65,26 @@ public class RestConnection extends AbstractConnection<Client> {
     public static final String CONFIG_PATH_CONFIG = "configuration";
     private static final int DEFAULT_READ_TIMEOUT = 5 * 60 * 1000;
     private static final int DEFAULT_CONN_TIMEOUT = 60 * 1000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    private static final int DEFAULT_ASYNC_POOL_SIZE = 8;
 
     @Setter(AccessLevel.NONE)
     protected Client client;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PoolingHttpClientConnectionManager connectionManager;
     @ConfigAttribute
     private boolean useSSL = false;
     @ConfigValue
     private int readTimeout = DEFAULT_READ_TIMEOUT;
     @ConfigValue
     private int connectionTimeout = DEFAULT_CONN_TIMEOUT;
+    @ConfigValue
+    private boolean keepAlive = true;
+    @ConfigValue
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    @ConfigValue
+    private int asyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
 
     @Override
     public Client connection() throws ConnectionException {
@@ -92,20 +115,7 @@ public class RestConnection extends AbstractConnection<Client> {
         Preconditions.checkArgument(node instanceof ConfigPathNode);
         try {
             ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
-            Map<String, Object> config = configuration(node);
-            ClientBuilder builder = ClientBuilder.newBuilder();
-            if (config != null && !config.isEmpty()) {
-                for (String key : config.keySet()) {
-                    builder.property(key, config.get(key));
-                }
-            }
-            builder.connectTimeout(connectionTimeout, TimeUnit.MILLISECONDS);
-            builder.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
-
-            if (useSSL) {
-                builder.sslContext(SSLContext.getDefault());
-            }
-            client = builder.register(JacksonJaxbJsonProvider.class).build();
+            client = builder(configuration(node)).build();
             state().setState(EConnectionState.Open);
         } catch (Exception ex) {
             state().setError(ex);
@@ -113,6 +123,54 @@ public class RestConnection extends AbstractConnection<Client> {
         }
     }
 
+    /**
+     * Create a client builder with the connection settings (timeouts, keep-alive
+     * and async pool) and the passed client properties applied.
+     * <p>
+     * The Jersey client builder is used explicitly, other JAX-RS implementations
+     * on the class path would ignore the Jersey properties and features.
+     * Requests use the Apache connector with a connection pool owned by this
+     * connection, sized to the configured max connections (total and per route).
+     * If keep-alive is disabled, requests are sent with "Connection: close".
+     * Response entities must be fully read for the socket to be returned to the
+     * pool, closing a response with an unread entity drops the socket.
+     *
+     * @param config - Client properties (can be NULL).
+     * @return - Client builder.
+     * @throws Exception
+     */
+    protected ClientBuilder builder(Map<String, Object> config) throws Exception {
+        SSLConnectionSocketFactory sslFactory = (useSSL ?
+                new SSLConnectionSocketFactory(SSLContext.getDefault()) :
+                SSLConnectionSocketFactory.getSocketFactory());
+        connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", sslFactory)
+                        .build());
+        int size = Math.max(maxConnections, 1);
+        connectionManager.setMaxTotal(size);
+        connectionManager.setDefaultMaxPerRoute(size);
+
+        ClientConfig cc = new ClientConfig();
+        cc.connectorProvider(new ApacheConnectorProvider());
+        cc.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        ClientBuilder builder = new JerseyClientBuilder().withConfig(cc);
+        if (config != null && !config.isEmpty()) {
+            for (String key : config.keySet()) {
+                builder.property(key, config.get(key));
+            }
+        }
+        builder.connectTimeout(connectionTimeout, TimeUnit.MILLISECONDS);
+        builder.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
+        builder.property(ClientProperties.ASYNC_THREADPOOL_SIZE, Math.max(asyncPoolSize, 1));
+        if (!keepAlive) {
+            builder.register((ClientRequestFilter) (context) ->
+                    context.getHeaders().putSingle(HttpHeaders.CONNECTION, "close"));
+        }
+        return builder.register(JacksonJaxbJsonProvider.class);
+    }
+
     protected Map<String, Object> configuration(AbstractConfigNode node) throws ConfigurationException, ValueParseException {
         if (node instanceof ConfigPathNode) {
             AbstractConfigNode cnode = node.find(CONFIG_PATH_CONFIG);
@@ -145,5 +203,9 @@ public class RestConnection extends AbstractConnection<Client> {
         if (client != null) {
             client.close();
         }
+        if (connectionManager != null) {
+            connectionManager.close();
+            connectionManager = null;
+        }
     }
 }
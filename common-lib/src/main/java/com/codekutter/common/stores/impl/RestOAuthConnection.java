@@ -29,13 +29,9 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.glassfish.jersey.client.oauth2.OAuth2ClientSupport;
-import org.glassfish.jersey.jackson.internal.jackson.jaxrs.json.JacksonJaxbJsonProvider;
 
 import javax.annotation.Nonnull;
-import javax.net.ssl.SSLContext;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.Feature;
-import java.util.Map;
 
 @Getter
 @Setter
@@ -55,19 +51,8 @@ public class RestOAuthConnection extends RestConnection {
         Preconditions.checkArgument(node instanceof ConfigPathNode);
         try {
             ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) node, this);
-            Map<String, Object> config = configuration(node);
-            ClientBuilder builder = ClientBuilder.newBuilder();
-            if (config != null && !config.isEmpty()) {
-                for (String key : config.keySet()) {
-                    builder.property(key, config.get(key));
-                }
-            }
-            if (useSSL()) {
-                builder.sslContext(SSLContext.getDefault());
-            }
-
             Feature feature = OAuth2ClientSupport.feature(token.getDecryptedValue());
-            client = builder.register(JacksonJaxbJsonProvider.class).register(feature).build();
+            client = builder(configuration(node)).register(feature).build();
             state().setState(EConnectionState.Open);
         } catch (Exception ex) {
             state().setError(ex);
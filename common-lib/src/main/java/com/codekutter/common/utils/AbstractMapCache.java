@@ -63,7 +63,7 @@ public abstract class AbstractMapCache<K extends IKey, T extends IKeyed<K>> exte
     protected ObjectState state = new ObjectState();
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
-    protected ManagedThread loaderThread;
+    protected ManagedTask loaderTask;
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
     protected long lastRunTime;
@@ -32,6 +32,10 @@ import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -40,20 +44,35 @@ import org.hibernate.Session;
 import org.hibernate.Transaction;
 
 import javax.annotation.Nonnull;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Getter
 @Setter
 @Accessors(fluent = true)
 @ConfigPath(path = "db-key-vault")
 public class DBKeyVault implements IKeyVault {
+    public static final long DEFAULT_CACHE_TIMEOUT = 5 * 60 * 1000;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
     @ConfigValue(name = "vaultKey")
     private EncryptedValue vaultKey;
     @ConfigValue(name = "ivSpec")
     private String ivSpec;
+    /**
+     * Time (in millis) decrypted passcodes are cached for (0 to disable caching).
+     */
+    @ConfigValue(name = "cacheTimeout")
+    private long cacheTimeout = DEFAULT_CACHE_TIMEOUT;
+    @ConfigValue(name = "cacheSize")
+    private int cacheSize = DEFAULT_CACHE_SIZE;
     @Setter(AccessLevel.NONE)
     @Getter(AccessLevel.NONE)
     private HibernateConnection connection;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private Cache<String, CachedPasscode> cache;
 
     public IKeyVault withConnection(@Nonnull HibernateConnection connection) {
         this.connection = connection;
@@ -102,13 +121,73 @@ public class DBKeyVault implements IKeyVault {
             }
         } catch (Exception e) {
             throw new SecurityException(e);
+        } finally {
+            invalidate(name);
         }
         return this;
     }
 
+    /**
+     * Get the passcode for the specified key. Decrypted passcodes are cached for the
+     * configured timeout, the returned array is a copy and can be cleared by the caller.
+     *
+     * @param name - Key name.
+     * @return - Passcode.
+     * @throws SecurityException
+     */
     @Override
     public char[] getPasscode(@Nonnull String name) throws SecurityException {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(name));
+
+        Cache<String, CachedPasscode> cache = cache();
+        if (cache == null) {
+            return readPasscode(name);
+        }
+        try {
+            while (true) {
+                char[] passcode = cache.get(name, () -> new CachedPasscode(readPasscode(name))).copy();
+                // NULL if the entry was removed (and cleared) after the lookup, read again.
+                if (passcode != null) {
+                    return passcode;
+                }
+            }
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SecurityException) {
+                throw (SecurityException) cause;
+            }
+            throw new SecurityException(cause);
+        }
+    }
+
+    /**
+     * Remove the cached passcode for the specified key.
+     *
+     * @param name - Key name.
+     */
+    public void invalidate(@Nonnull String name) {
+        if (cache != null) {
+            cache.invalidate(name);
+        }
+    }
+
+    /**
+     * Remove all cached passcodes.
+     */
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Read and decrypt the passcode from the database.
+     *
+     * @param name - Key name.
+     * @return - Passcode.
+     * @throws SecurityException
+     */
+    protected char[] readPasscode(@Nonnull String name) throws SecurityException {
         Preconditions.checkState(vaultKey != null);
         Preconditions.checkState(connection != null);
         Preconditions.checkState(!Strings.isNullOrEmpty(ivSpec));
@@ -129,11 +208,31 @@ public class DBKeyVault implements IKeyVault {
             } finally {
                 connection.close(session);
             }
+        } catch (SecurityException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new SecurityException(ex);
         }
     }
 
+    private synchronized Cache<String, CachedPasscode> cache() {
+        if (cache == null && cacheTimeout > 0) {
+            // Clear the key material when entries expire or are invalidated.
+            RemovalListener<String, CachedPasscode> listener = notification -> {
+                CachedPasscode value = notification.getValue();
+                if (value != null) {
+                    value.clear();
+                }
+            };
+            cache = CacheBuilder.newBuilder()
+                    .expireAfterWrite(cacheTimeout, TimeUnit.MILLISECONDS)
+                    .maximumSize(cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE)
+                    .removalListener(listener)
+                    .build();
+        }
+        return cache;
+    }
+
     @Override
     public byte[] decrypt(@Nonnull String data, @Nonnull String name, @Nonnull String iv) throws SecurityException {
         char[] p = getPasscode(name);
@@ -144,6 +243,8 @@ public class DBKeyVault implements IKeyVault {
             return CypherUtils.decrypt(data, new String(p), iv);
         } catch (Exception e) {
             throw new SecurityException(e);
+        } finally {
+            Arrays.fill(p, '\0');
         }
     }
 
@@ -157,6 +258,8 @@ public class DBKeyVault implements IKeyVault {
             return CypherUtils.decrypt(data, new String(p), iv);
         } catch (Exception e) {
             throw new SecurityException(e);
+        } finally {
+            Arrays.fill(p, '\0');
         }
     }
 
@@ -181,4 +284,27 @@ public class DBKeyVault implements IKeyVault {
             connection.configure(cnode);
         }
     }
+
+    /**
+     * Cached passcode, copied and cleared under the same lock so a copy never
+     * sees partially cleared key material.
+     */
+    private static final class CachedPasscode {
+        private char[] value;
+
+        private CachedPasscode(char[] value) {
+            this.value = value;
+        }
+
+        private synchronized char[] copy() {
+            return (value == null ? null : value.clone());
+        }
+
+        private synchronized void clear() {
+            if (value != null) {
+                Arrays.fill(value, '\0');
+                value = null;
+            }
+        }
+    }
 }
@@ -89,8 +89,8 @@ public class ExtendedMultiMapCache<K extends IKey, T extends IKeyed<K>> extends
             load();
 
             state.setState(EObjectState.Available);
-            loaderThread = new ManagedThread(this, String.format("%s::%s", getClass().getCanonicalName(), name));
-            loaderThread.start();
+            loaderTask = ManagedExecutor.get().schedule(String.format("%s::%s", getClass().getCanonicalName(), name),
+                    this, refreshInterval.period(), refreshInterval.period());
         } catch (Exception ex) {
             state.setError(ex);
             throw new ConfigurationException(ex);
@@ -135,6 +135,9 @@ public class ExtendedMultiMapCache<K extends IKey, T extends IKeyed<K>> extends
             state.setState(EObjectState.Disposed);
         }
         try {
+            if (loaderTask != null) {
+                loaderTask.cancel();
+            }
             if (cache01 != null) {
                 cache01.clear();
                 cache01.close();
@@ -144,7 +147,6 @@ public class ExtendedMultiMapCache<K extends IKey, T extends IKeyed<K>> extends
                 cache02.close();
             }
             loader.close();
-            loaderThread.join();
         } catch (Exception ex) {
             LogUtils.error(getClass(), ex);
             throw new IOException(ex);
@@ -154,11 +156,7 @@ public class ExtendedMultiMapCache<K extends IKey, T extends IKeyed<K>> extends
     @Override
     public void doRun() throws Exception {
         try {
-            while (state.getState() == EObjectState.Available) {
-                long delta = (System.currentTimeMillis() - lastRunTime);
-                if (delta < refreshInterval.period()) {
-                    Thread.sleep(refreshInterval.period() - delta);
-                }
+            if (state.getState() == EObjectState.Available) {
                 lastRunTime = System.currentTimeMillis();
                 if (loader.needsReload()) {
                     load();
@@ -31,9 +31,13 @@ import com.google.common.base.Strings;
 import javax.annotation.Nonnull;
 import java.io.*;
 import java.net.URI;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.UUID;
 
 /**
@@ -42,6 +46,7 @@ import java.util.UUID;
 public class IOUtils {
     private static final String DEFAULT_TEMP_DIR_NAME = "codekutter";
     private static final String NON_ASCII_RANGE = "[^\\x00-\\x7F]";
+    private static final int MAX_STALLED_TRANSFERS = 16;
 
     /**
      * Check if the URI represent a local file (file://...)
@@ -193,33 +198,160 @@ public class IOUtils {
      * @param destDir - Destination directory.
      * @throws IOException
      */
-    public static void copyFile(File source, File destDir) throws IOException {
-        FileChannel sourceChannel = null;
-        FileChannel destChannel = null;
+    public static void copyFile(@Nonnull File source, @Nonnull File destDir) throws IOException {
         String destFile =
                 String.format("%s/%s", destDir.getAbsolutePath(), source.getName());
-        File dest = new File(destFile);
-        try {
-            sourceChannel = new FileInputStream(source).getChannel();
-            destChannel = new FileOutputStream(dest).getChannel();
-            destChannel.transferFrom(sourceChannel, 0, sourceChannel.size());
-        } finally {
-            sourceChannel.close();
-            destChannel.close();
+        copy(source, new File(destFile));
+    }
+
+    /**
+     * Copy the source file to the destination file, the destination
+     * is created/truncated (see copy(File, File, boolean)). Data is transferred
+     * channel to channel, without being copied through the heap.
+     *
+     * @param source - Source File handle.
+     * @param dest   - Destination File handle.
+     * @return - Bytes copied.
+     * @throws IOException
+     */
+    public static long copy(@Nonnull File source, @Nonnull File dest) throws IOException {
+        return copy(source, dest, false);
+    }
+
+    /**
+     * Copy the source file to the destination file, the destination
+     * is created/truncated and missing parent directories are created.
+     *
+     * @param source       - Source File handle.
+     * @param dest         - Destination File handle.
+     * @param preserveDate - Set the last modified time of the destination to that of the source.
+     * @return - Bytes copied.
+     * @throws IOException
+     */
+    public static long copy(@Nonnull File source, @Nonnull File dest, boolean preserveDate) throws IOException {
+        File parent = dest.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException(String.format("Error creating directory. [path=%s]", parent.getAbsolutePath()));
+        }
+        long count;
+        try (FileChannel sourceChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel destChannel = FileChannel.open(dest.toPath(),
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            count = transfer(sourceChannel, destChannel);
+        }
+        if (preserveDate && !dest.setLastModified(source.lastModified())) {
+            throw new IOException(String.format("Error setting last modified time. [path=%s]", dest.getAbsolutePath()));
         }
+        return count;
     }
 
-    public static String readContent(@Nonnull File file) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line = null;
-            StringBuilder builder = new StringBuilder();
-            while((line = reader.readLine()) != null) {
-                builder.append(line).append("\n");
-            }
-            if (builder.length() > 0) {
-                return builder.toString();
+    /**
+     * Copy the input stream to the destination file, the destination
+     * is created/replaced. The input stream is closed.
+     *
+     * @param source - Input Stream.
+     * @param dest   - Destination File handle.
+     * @return - Bytes copied.
+     * @throws IOException
+     */
+    public static long copy(@Nonnull InputStream source, @Nonnull File dest) throws IOException {
+        try (InputStream input = source) {
+            return Files.copy(input, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Transfer the remaining content of the source channel to the target channel.
+     * FileChannel.transferTo() can transfer fewer bytes than requested (large
+     * files, socket targets), the transfer is repeated till the source is exhausted.
+     * Fails if the target doesn't accept any data for repeated attempts.
+     *
+     * @param source - Source File Channel.
+     * @param target - Target Channel.
+     * @return - Bytes transferred.
+     * @throws IOException
+     */
+    public static long transfer(@Nonnull FileChannel source,
+                                @Nonnull WritableByteChannel target) throws IOException {
+        long position = source.position();
+        long size = source.size();
+        long count = 0;
+        int stalled = 0;
+        while (position < size) {
+            long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                // Source truncated while copying.
+                if (source.size() <= position) break;
+                if (++stalled > MAX_STALLED_TRANSFERS) {
+                    throw new IOException(String.format("Transfer stalled, target not accepting data. [position=%d][size=%d]",
+                            position, size));
+                }
+                continue;
             }
+            stalled = 0;
+            position += transferred;
+            count += transferred;
+        }
+        source.position(position);
+        return count;
+    }
+
+    /**
+     * Read the file content as bytes.
+     *
+     * @param file - File handle.
+     * @return - File content.
+     * @throws IOException
+     */
+    public static byte[] readBytes(@Nonnull File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Read the file content as a string, line endings are preserved.
+     *
+     * @param file    - File handle.
+     * @param charset - Character set of the file.
+     * @return - File content.
+     * @throws IOException
+     */
+    public static String readContent(@Nonnull File file, @Nonnull Charset charset) throws IOException {
+        return new String(readBytes(file), charset);
+    }
+
+    /**
+     * Read the file content as a string (platform character set).
+     *
+     * @param file - File handle.
+     * @return - File content or NULL if empty.
+     * @throws IOException
+     */
+    public static String readContent(@Nonnull File file) throws IOException {
+        String content = readContent(file, Charset.defaultCharset());
+        if (!content.isEmpty()) {
+            return content;
         }
         return null;
     }
+
+    /**
+     * Memory map the file (read-only). The mapping remains valid after the
+     * method returns, and is released when the buffer is garbage collected.
+     *
+     * @param file - File handle.
+     * @return - Mapped buffer.
+     * @throws IOException
+     */
+    public static MappedByteBuffer map(@Nonnull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("File too large to map. [path=%s][size=%d]",
+                        file.getAbsolutePath(), size));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
 }
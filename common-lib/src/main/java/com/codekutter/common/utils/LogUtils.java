@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.function.Supplier;
 
 /**
  * Utility functions for Logging.
@@ -42,8 +43,47 @@ public class LogUtils {
         return LOGGER.isDebugEnabled();
     }
 
+    /**
+     * Check if the specified log level is enabled on the default logger.
+     *
+     * @param level - Log level.
+     * @return - Is enabled?
+     */
+    public static boolean isEnabled(@Nonnull ELOGLELVEL level) {
+        return isEnabled(LOGGER, level);
+    }
+
+    /**
+     * Check if the specified log level is enabled on the logger.
+     *
+     * @param LOGGER - Logger handle.
+     * @param level  - Log level.
+     * @return - Is enabled?
+     */
+    public static boolean isEnabled(Logger LOGGER, @Nonnull ELOGLELVEL level) {
+        if (LOGGER == null) {
+            LOGGER = LogUtils.LOGGER;
+        }
+        switch (level) {
+            case INFO:
+                return LOGGER.isInfoEnabled();
+            case WARN:
+                return LOGGER.isWarnEnabled();
+            case DEBUG:
+                return LOGGER.isDebugEnabled();
+            case ERROR:
+                return LOGGER.isErrorEnabled();
+            case TRACE:
+                return LOGGER.isTraceEnabled();
+        }
+        return false;
+    }
+
     /**
      * Log an INFO message to the default logger handle.
+     * <p>
+     * The level is checked before the message is passed to the logger,
+     * nothing is formatted if the level is disabled.
      *
      * @param caller - Calling class.
      * @param mesg   - Message to log.
@@ -52,42 +92,87 @@ public class LogUtils {
      */
     private static void LOG(Class<?> caller, String mesg, Logger LOGGER,
                             ELOGLELVEL level) {
-        if (caller == null) {
-            caller = LogUtils.class;
-        }
         if (LOGGER == null) {
             LOGGER = LogUtils.LOGGER;
         }
         if (level == null) {
             level = ELOGLELVEL.DEBUG;
         }
+        if (!isEnabled(LOGGER, level)) {
+            return;
+        }
+        if (caller == null) {
+            caller = LogUtils.class;
+        }
+        String name = caller.getCanonicalName();
         switch (level) {
             case INFO:
-                LOGGER.info(
-                        String.format("[%s]: %s", caller.getCanonicalName(), mesg));
+                LOGGER.info("[{}]: {}", name, mesg);
                 break;
             case WARN:
-                LOGGER.warn(
-                        String.format("[%s]: %s", caller.getCanonicalName(), mesg));
+                LOGGER.warn("[{}]: {}", name, mesg);
                 break;
             case DEBUG:
-                LOGGER.debug(
-                        String.format("[%s]: %s", caller.getCanonicalName(), mesg));
+                LOGGER.debug("[{}]: {}", name, mesg);
                 break;
             case ERROR:
-                LOGGER.error(
-                        String.format("[%s]: %s", caller.getCanonicalName(), mesg));
+                LOGGER.error("[{}]: {}", name, mesg);
                 break;
             case TRACE:
-                LOGGER.trace(
-                        String.format("[%s]: %s", caller.getCanonicalName(), mesg));
+                LOGGER.trace("[{}]: {}", name, mesg);
                 break;
         }
+    }
 
+    /**
+     * Log a parameterized message (SLF4J "{}" placeholders). The message
+     * is only formatted by the logger if the level is enabled.
+     *
+     * @param caller - Calling class.
+     * @param LOGGER - Logger handle to log to.
+     * @param level  - Log level to write.
+     * @param format - Message format.
+     * @param args   - Message arguments.
+     */
+    private static void LOG(Class<?> caller, Logger LOGGER, @Nonnull ELOGLELVEL level,
+                            String format, Object[] args) {
+        if (LOGGER == null) {
+            LOGGER = LogUtils.LOGGER;
+        }
+        if (!isEnabled(LOGGER, level)) {
+            return;
+        }
+        if (caller == null) {
+            caller = LogUtils.class;
+        }
+        Object[] params = new Object[(args != null ? args.length : 0) + 1];
+        params[0] = caller.getCanonicalName();
+        if (args != null) {
+            System.arraycopy(args, 0, params, 1, args.length);
+        }
+        String mesg = "[{}]: " + format;
+        switch (level) {
+            case INFO:
+                LOGGER.info(mesg, params);
+                break;
+            case WARN:
+                LOGGER.warn(mesg, params);
+                break;
+            case DEBUG:
+                LOGGER.debug(mesg, params);
+                break;
+            case ERROR:
+                LOGGER.error(mesg, params);
+                break;
+            case TRACE:
+                LOGGER.trace(mesg, params);
+                break;
+        }
     }
 
     /**
      * Write a serialized object instance to the log.
+     * The object is only serialized if the level is enabled.
      *
      * @param caller - Calling class.
      * @param source - Object instance to serialize.
@@ -96,6 +181,9 @@ public class LogUtils {
      */
     private static void WRITE(Class<?> caller, Object source, Logger LOGGER,
                               ELOGLELVEL level) {
+        if (!isEnabled(LOGGER, level)) {
+            return;
+        }
         try {
             String mesg = "";
             if (source != null) {
@@ -121,6 +209,9 @@ public class LogUtils {
         if (level == null) {
             level = ELOGLELVEL.ERROR;
         }
+        if (!isEnabled(LOGGER, level)) {
+            return;
+        }
         String mesg = error.getLocalizedMessage();
         LOG(caller, mesg, LOGGER, level);
     }
@@ -141,12 +232,12 @@ public class LogUtils {
         if (error == null) {
             return;
         }
-        if (!LogUtils.LOGGER.isDebugEnabled()) {
-            return;
-        }
         if (level == null) {
             level = ELOGLELVEL.DEBUG;
         }
+        if (!isEnabled(LOGGER, level)) {
+            return;
+        }
         String mesg = String.format("\n%s[START:%s]%s", StringUtils.repeat("*", 32),
                 error.getClass().getCanonicalName(),
                 StringUtils.repeat("*", 32));
@@ -198,6 +289,17 @@ public class LogUtils {
         LOG(caller, mesg, LOG, ELOGLELVEL.ERROR);
     }
 
+    /**
+     * Log a parameterized error message (SLF4J "{}" placeholders).
+     *
+     * @param caller - Calling class
+     * @param format - Message format
+     * @param args   - Message arguments
+     */
+    public static void error(Class<?> caller, String format, Object... args) {
+        LOG(caller, null, ELOGLELVEL.ERROR, format, args);
+    }
+
     /**
      * Log the exception message.
      *
@@ -242,6 +344,17 @@ public class LogUtils {
         LOG(caller, mesg, LOG, ELOGLELVEL.WARN);
     }
 
+    /**
+     * Log a parameterized warning message (SLF4J "{}" placeholders).
+     *
+     * @param caller - Calling class
+     * @param format - Message format
+     * @param args   - Message arguments
+     */
+    public static void warn(Class<?> caller, String format, Object... args) {
+        LOG(caller, null, ELOGLELVEL.WARN, format, args);
+    }
+
     /**
      * Log the exception message as a warning.
      *
@@ -286,6 +399,17 @@ public class LogUtils {
         LOG(caller, mesg, LOG, ELOGLELVEL.INFO);
     }
 
+    /**
+     * Log a parameterized info message (SLF4J "{}" placeholders).
+     *
+     * @param caller - Calling class
+     * @param format - Message format
+     * @param args   - Message arguments
+     */
+    public static void info(Class<?> caller, String format, Object... args) {
+        LOG(caller, null, ELOGLELVEL.INFO, format, args);
+    }
+
     /**
      * Log an debug message.
      *
@@ -307,6 +431,31 @@ public class LogUtils {
         LOG(caller, mesg, LOG, ELOGLELVEL.DEBUG);
     }
 
+    /**
+     * Log a parameterized debug message (SLF4J "{}" placeholders).
+     * The message is only formatted if DEBUG is enabled.
+     *
+     * @param caller - Calling class
+     * @param format - Message format
+     * @param args   - Message arguments
+     */
+    public static void debug(Class<?> caller, String format, Object... args) {
+        LOG(caller, null, ELOGLELVEL.DEBUG, format, args);
+    }
+
+    /**
+     * Log a lazily rendered debug message. The supplier is only
+     * invoked if DEBUG is enabled.
+     *
+     * @param caller - Calling class
+     * @param mesg   - Message supplier
+     */
+    public static void debug(Class<?> caller, Supplier<String> mesg) {
+        if (isEnabled(LOGGER, ELOGLELVEL.DEBUG)) {
+            LOG(caller, mesg.get(), null, ELOGLELVEL.DEBUG);
+        }
+    }
+
     /**
      * Log the object source as a debug message.
      *
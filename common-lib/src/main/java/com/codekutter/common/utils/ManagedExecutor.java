@@ -0,0 +1,286 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.utils;
+
+import com.codekutter.common.model.EObjectState;
+import com.codekutter.common.model.ObjectState;
+import com.codekutter.zconfig.common.ConfigurationAnnotationProcessor;
+import com.codekutter.zconfig.common.ConfigurationException;
+import com.codekutter.zconfig.common.IConfigurable;
+import com.codekutter.zconfig.common.model.annotations.ConfigPath;
+import com.codekutter.zconfig.common.model.annotations.ConfigValue;
+import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
+import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
+import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared scheduled executor for the periodic/background work of the
+ * library components (cache loaders, queue senders, state updaters).
+ * <p>
+ * Components register tasks on the shared instance instead of creating a
+ * thread each, the number of threads is bound by the configured pool size
+ * and doesn't grow with the number of configured components. Tasks must not
+ * block indefinitely, periodic work should be registered as a fixed delay
+ * task and not as a sleep loop. Components with tasks that block on remote
+ * calls (e.g. queue senders) should create and close their own instance.
+ * <p>
+ * If virtual threads are enabled and supported by the JDK (21+), the pool
+ * threads are virtual threads, otherwise daemon platform threads are used.
+ */
+@Getter
+@Setter
+@Accessors(fluent = true)
+@ConfigPath(path = "executor")
+public class ManagedExecutor implements IConfigurable, Closeable {
+    public static final int DEFAULT_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final String DEFAULT_THREAD_PREFIX = "codekutter-worker";
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 30 * 1000;
+
+    private static final ManagedExecutor __instance = new ManagedExecutor();
+
+    @ConfigValue
+    private int poolSize = DEFAULT_POOL_SIZE;
+    @ConfigValue
+    private boolean virtualThreads = false;
+    @ConfigValue
+    private String threadPrefix = DEFAULT_THREAD_PREFIX;
+    @ConfigValue
+    private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+    @Setter(AccessLevel.NONE)
+    private ObjectState state = new ObjectState();
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private volatile ScheduledThreadPoolExecutor executor = null;
+
+    /**
+     * Get the shared executor instance.
+     *
+     * @return - Executor handle.
+     */
+    public static ManagedExecutor get() {
+        return __instance;
+    }
+
+    /**
+     * Configure the shared executor, should be called before any tasks are scheduled.
+     *
+     * @param node - Configuration node.
+     * @throws ConfigurationException
+     */
+    public static void setup(@Nonnull AbstractConfigNode node) throws ConfigurationException {
+        if (__instance.state.getState() != EObjectState.Available) {
+            __instance.configure(node);
+        }
+    }
+
+    /**
+     * Shutdown the shared executor.
+     */
+    public static void dispose() {
+        try {
+            __instance.close();
+        } catch (Exception ex) {
+            LogUtils.error(ManagedExecutor.class, ex);
+        }
+    }
+
+    /**
+     * Schedule a periodic task (fixed delay between executions).
+     *
+     * @param name         - Task name.
+     * @param runnable     - Task to run.
+     * @param initialDelay - Delay before the first execution (milliseconds).
+     * @param period       - Delay between executions (milliseconds).
+     * @return - Task handle.
+     */
+    public ManagedTask schedule(@Nonnull String name, @Nonnull Runnable runnable, long initialDelay, long period) {
+        Preconditions.checkArgument(period > 0);
+        ManagedTask task = new ManagedTask(name, runnable, period);
+        return schedule(task, initialDelay);
+    }
+
+    /**
+     * Schedule a periodic task, listener is registered before the task is scheduled.
+     *
+     * @param name         - Task name.
+     * @param runnable     - Task to run.
+     * @param initialDelay - Delay before the first execution (milliseconds).
+     * @param period       - Delay between executions (milliseconds).
+     * @param listener     - Thread listener.
+     * @return - Task handle.
+     */
+    public ManagedTask schedule(@Nonnull String name, @Nonnull Runnable runnable, long initialDelay, long period,
+                                @Nonnull IThreadListener listener) {
+        Preconditions.checkArgument(period > 0);
+        ManagedTask task = new ManagedTask(name, runnable, period).register(listener);
+        return schedule(task, initialDelay);
+    }
+
+    /**
+     * Run a task once after the specified delay.
+     *
+     * @param name     - Task name.
+     * @param runnable - Task to run.
+     * @param delay    - Delay before execution (milliseconds).
+     * @return - Task handle.
+     */
+    public ManagedTask submit(@Nonnull String name, @Nonnull Runnable runnable, long delay) {
+        ManagedTask task = new ManagedTask(name, runnable, -1);
+        return schedule(task, delay);
+    }
+
+    /**
+     * Run a task once.
+     *
+     * @param name     - Task name.
+     * @param runnable - Task to run.
+     * @return - Task handle.
+     */
+    public ManagedTask submit(@Nonnull String name, @Nonnull Runnable runnable) {
+        return submit(name, runnable, 0);
+    }
+
+    /**
+     * Get the number of pool threads currently created.
+     *
+     * @return - Thread count.
+     */
+    public int threadCount() {
+        ScheduledThreadPoolExecutor e = executor;
+        return (e != null ? e.getPoolSize() : 0);
+    }
+
+    private ManagedTask schedule(ManagedTask task, long delay) {
+        ScheduledThreadPoolExecutor e = executor();
+        task.starting();
+        ScheduledFuture<?> future;
+        if (task.period() > 0) {
+            future = e.scheduleWithFixedDelay(task, Math.max(delay, 0), task.period(), TimeUnit.MILLISECONDS);
+        } else {
+            future = e.schedule(task, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        }
+        task.scheduled(future);
+        return task;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor executor() {
+        // Re-created on use after being disposed (environment restarts).
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(Math.max(poolSize, 1), threadFactory());
+            executor.setRemoveOnCancelPolicy(true);
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            state.setState(EObjectState.Available);
+            LogUtils.info(getClass(), String.format("Started shared executor. [pool size=%d][virtual threads=%s]",
+                    executor.getCorePoolSize(), virtualThreads));
+        }
+        return executor;
+    }
+
+    private ThreadFactory threadFactory() {
+        if (virtualThreads) {
+            ThreadFactory factory = virtualThreadFactory(threadPrefix);
+            if (factory != null) {
+                return factory;
+            }
+            LogUtils.warn(getClass(), "Virtual threads not supported by the JDK, using platform threads.");
+            virtualThreads = false;
+        }
+        AtomicLong counter = new AtomicLong();
+        return (r) -> {
+            Thread thread = new Thread(r, String.format("%s-%d", threadPrefix, counter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Create a virtual thread factory, the JDK API is accessed
+     * reflectively as the library is compiled for Java 8.
+     *
+     * @param prefix - Thread name prefix.
+     * @return - Thread factory or NULL if not supported.
+     */
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Configure this type instance.
+     *
+     * @param node - Handle to the configuration node.
+     * @throws ConfigurationException
+     */
+    @Override
+    public void configure(@Nonnull AbstractConfigNode node) throws ConfigurationException {
+        Preconditions.checkArgument(node instanceof ConfigPathNode);
+        AbstractConfigNode cnode = ConfigUtils.getPathNode(getClass(), (ConfigPathNode) node);
+        if (cnode instanceof ConfigPathNode) {
+            ConfigurationAnnotationProcessor.readConfigAnnotations(getClass(), (ConfigPathNode) cnode, this);
+        }
+        synchronized (this) {
+            if (executor != null) {
+                executor.setCorePoolSize(Math.max(poolSize, 1));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ScheduledThreadPoolExecutor e;
+        synchronized (this) {
+            if (state.getState() == EObjectState.Available) {
+                state.setState(EObjectState.Disposed);
+            }
+            e = executor;
+            executor = null;
+        }
+        if (e != null) {
+            e.shutdown();
+            try {
+                if (!e.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                    e.shutdownNow();
+                }
+            } catch (InterruptedException ex) {
+                e.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.utils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Handle to a task scheduled on the shared ManagedExecutor.
+ * <p>
+ * Thread listeners registered on the task receive the same lifecycle
+ * events as for a ManagedThread: Start when scheduled, Run before each
+ * execution, Error on failure and Stop when the task is cancelled or
+ * completes. The thread passed to the listeners is the pool thread running
+ * the task (or the calling thread for Start/Stop).
+ */
+@Getter
+@Accessors(fluent = true)
+public class ManagedTask implements Runnable {
+    private static final ThreadLocal<ManagedTask> __current = new ThreadLocal<>();
+
+    private final String name;
+    private final Runnable runnable;
+    private final long period;
+    @Getter(lombok.AccessLevel.NONE)
+    private final Set<IThreadListener> listeners = new CopyOnWriteArraySet<>();
+    @Getter(lombok.AccessLevel.NONE)
+    private final ReentrantLock runLock = new ReentrantLock();
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicLong runCount = new AtomicLong();
+    @Getter(lombok.AccessLevel.NONE)
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean stopped = false;
+
+    ManagedTask(@Nonnull String name, @Nonnull Runnable runnable, long period) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(name));
+        this.name = name;
+        this.runnable = runnable;
+        this.period = period;
+    }
+
+    /**
+     * Get the task being run by the current thread.
+     *
+     * @return - Current task or NULL if not running in a managed task.
+     */
+    public static ManagedTask current() {
+        return __current.get();
+    }
+
+    /**
+     * Get the number of times the task has been run.
+     *
+     * @return - Run count.
+     */
+    public long runCount() {
+        return runCount.get();
+    }
+
+    /**
+     * Register a thread listener, should be registered before the task is scheduled.
+     *
+     * @param listener - Thread listener.
+     * @return - Self
+     */
+    public ManagedTask register(@Nonnull IThreadListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    void starting() {
+        event(EThreadEvent.Start, Thread.currentThread());
+    }
+
+    void scheduled(@Nonnull ScheduledFuture<?> future) {
+        this.future = future;
+        if (stopped) {
+            future.cancel(false);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (stopped) {
+            return;
+        }
+        runLock.lock();
+        __current.set(this);
+        try {
+            runCount.incrementAndGet();
+            event(EThreadEvent.Run, Thread.currentThread());
+            runnable.run();
+        } catch (Throwable t) {
+            LogUtils.error(runnable.getClass(), t);
+            errorEvent(runnable.getClass(), t);
+        } finally {
+            __current.remove();
+            runLock.unlock();
+        }
+        if (period <= 0) {
+            stop();
+        }
+    }
+
+    /**
+     * Raise an error event to the registered listeners.
+     *
+     * @param type  - Type raising the error.
+     * @param error - Error
+     */
+    public void errorEvent(Class<?> type, Throwable error) {
+        for (IThreadListener listener : listeners) {
+            listener.event(EThreadEvent.Error, Thread.currentThread(), type, error);
+        }
+    }
+
+    /**
+     * Cancel the task, waits for a running execution to complete.
+     */
+    public void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * Cancel the task.
+     *
+     * @param interrupt - Interrupt a running execution (the call doesn't wait for it to complete).
+     */
+    public void cancel(boolean interrupt) {
+        if (future != null) {
+            future.cancel(interrupt);
+        }
+        if (interrupt) {
+            event(EThreadEvent.Interrupted, Thread.currentThread());
+        } else {
+            // Wait for a running execution.
+            runLock.lock();
+            runLock.unlock();
+        }
+        stop();
+    }
+
+    /**
+     * Check if the task has been cancelled or has completed.
+     *
+     * @return - Is done?
+     */
+    public boolean isDone() {
+        return stopped;
+    }
+
+    private synchronized void stop() {
+        if (!stopped) {
+            stopped = true;
+            event(EThreadEvent.Stop, Thread.currentThread());
+        }
+    }
+
+    private void event(EThreadEvent event, Thread thread) {
+        for (IThreadListener listener : listeners) {
+            try {
+                listener.event(event, thread, this);
+            } catch (Exception ex) {
+                LogUtils.error(getClass(), ex);
+            }
+        }
+    }
+}
@@ -74,8 +74,8 @@ public class MapCache<K extends IKey, T extends IKeyed<K>> extends AbstractMapCa
             load();
 
             state.setState(EObjectState.Available);
-            loaderThread = new ManagedThread(this, String.format("%s::%s", getClass().getCanonicalName(), name));
-            loaderThread.start();
+            loaderTask = ManagedExecutor.get().schedule(String.format("%s::%s", getClass().getCanonicalName(), name),
+                    this, refreshInterval.period(), refreshInterval.period());
         } catch (Exception ex) {
             state.setError(ex);
             throw new ConfigurationException(ex);
@@ -125,10 +125,12 @@ public class MapCache<K extends IKey, T extends IKeyed<K>> extends AbstractMapCa
             state.setState(EObjectState.Disposed);
         }
         try {
+            if (loaderTask != null) {
+                loaderTask.cancel();
+            }
             cache01.clear();
             cache02.clear();
             loader.close();
-            loaderThread.join();
         } catch (Exception ex) {
             LogUtils.error(getClass(), ex);
             throw new IOException(ex);
@@ -138,11 +140,7 @@ public class MapCache<K extends IKey, T extends IKeyed<K>> extends AbstractMapCa
     @Override
     public void doRun() throws Exception {
         try {
-            while (state.getState() == EObjectState.Available) {
-                long delta = (System.currentTimeMillis() - lastRunTime);
-                if (delta < refreshInterval.period()) {
-                    Thread.sleep(refreshInterval.period() - delta);
-                }
+            if (state.getState() == EObjectState.Available) {
                 lastRunTime = System.currentTimeMillis();
                 if (loader.needsReload()) {
                     load();
@@ -34,8 +34,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -74,14 +72,7 @@ public class RemoteFileHelper {
         URL url = remoteUri.toURL();
         LogUtils.info(RemoteFileHelper.class,
                 String.format("Downloading file [url=%s]", url.toString()));
-        try (
-                ReadableByteChannel remoteChannel = Channels
-                        .newChannel(url.openStream())) {
-            try (FileOutputStream fos = new FileOutputStream(location)) {
-                return fos.getChannel()
-                        .transferFrom(remoteChannel, 0, Long.MAX_VALUE);
-            }
-        }
+        return IOUtils.copy(url.openStream(), location);
     }
 
     /**
@@ -9,6 +9,8 @@ public abstract class Runner implements Runnable {
             Thread t = Thread.currentThread();
             if (t instanceof ManagedThread) {
                 ((ManagedThread) t).errorEvent(getClass(), th);
+            } else if (ManagedTask.current() != null) {
+                ManagedTask.current().errorEvent(getClass(), th);
             }
         }
     }
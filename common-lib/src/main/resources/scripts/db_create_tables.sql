@@ -123,3 +123,48 @@ CREATE TABLE `config_ds_filesystem_aws`
     KEY `config_ds_filesystem_aws_data_store_class_IDX` (`data_store_class`, `name`) USING BTREE
 ) ENGINE = InnoDB
   DEFAULT CHARSET = utf8 COMMENT ='Table to save/load AWS S3 data store configuration.';
+
+DROP TABLE IF EXISTS `tb_message_cache`;
+
+CREATE TABLE `tb_message_cache`
+(
+    `id`                varchar(64)    NOT NULL,
+    `queue_name`        varchar(256)   NOT NULL,
+    `partition`         int(11)        NOT NULL,
+    `jms_message_id`    varchar(256)   DEFAULT NULL,
+    `checksum`          varchar(256)   NOT NULL,
+    `length`            int(11)        NOT NULL,
+    `created_timestamp` decimal(24, 0) NOT NULL,
+    `sent_timestamp`    decimal(24, 0) DEFAULT NULL,
+    `state`             varchar(32)    NOT NULL,
+    `body`              longblob       NOT NULL,
+    `message_class`     varchar(512)   NOT NULL,
+    `sender`            text           NOT NULL,
+    `error`             text           DEFAULT NULL,
+    `read_instance_id`  varchar(128)   DEFAULT NULL,
+    `claimed_timestamp` decimal(24, 0) DEFAULT 0,
+    `retry_count`       int(11)        DEFAULT -1,
+    PRIMARY KEY (`id`),
+    KEY `tb_message_cache_claim_IDX` (`queue_name`, `partition`, `state`, `created_timestamp`) USING BTREE
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8 COMMENT ='Table used to cache messages pending send.';
+
+DROP TABLE IF EXISTS `tb_message_errors`;
+
+CREATE TABLE `tb_message_errors`
+(
+    `id`                varchar(64)    NOT NULL,
+    `queue_name`        varchar(256)   NOT NULL,
+    `checksum`          varchar(256)   NOT NULL,
+    `length`            int(11)        NOT NULL,
+    `created_timestamp` decimal(24, 0) NOT NULL,
+    `sent_timestamp`    decimal(24, 0) DEFAULT NULL,
+    `state`             varchar(32)    NOT NULL,
+    `body`              longblob       NOT NULL,
+    `message_class`     varchar(512)   NOT NULL,
+    `sender`            text           NOT NULL,
+    `error`             text           DEFAULT NULL,
+    PRIMARY KEY (`id`),
+    KEY `tb_message_errors_queue_IDX` (`queue_name`, `created_timestamp`) USING BTREE
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8 COMMENT ='Table used to store messages that failed to send.';
@@ -0,0 +1,31 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/*
+ * Migration for existing message cache tables : adds the claim timestamp
+ * used to expire sender claims (read_instance_id) and the claim index.
+ */
+
+ALTER TABLE `tb_message_cache`
+    ADD COLUMN `claimed_timestamp` decimal(24, 0) DEFAULT 0 AFTER `read_instance_id`;
+
+UPDATE `tb_message_cache`
+SET `claimed_timestamp` = 0
+WHERE `claimed_timestamp` IS NULL;
+
+ALTER TABLE `tb_message_cache`
+    ADD KEY `tb_message_cache_claim_IDX` (`queue_name`, `partition`, `state`, `created_timestamp`) USING BTREE;
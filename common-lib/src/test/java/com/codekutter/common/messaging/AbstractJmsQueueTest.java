@@ -0,0 +1,253 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.codekutter.common.messaging;
+
+import com.codekutter.common.model.DefaultStringMessage;
+import com.codekutter.common.stores.ConnectionException;
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AbstractJmsQueueTest {
+    private static final String BROKER_URL = "vm://localhost?broker.persistent=false&broker.useJmx=false";
+    private static final String QUEUE_NAME = "TEST.BATCH.QUEUE";
+    private static final Principal user = () -> "test-user";
+
+    private static EmbeddedJmsConnection connection;
+    private static TestJmsQueue queue;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        connection = new EmbeddedJmsConnection();
+        connection.autoAck(true);
+
+        queue = new TestJmsQueue();
+        queue.name("test-batch-queue");
+        queue.queue(QUEUE_NAME);
+        queue.connection(connection);
+        queue.session(connection.connection());
+        queue.setupMetrics(QUEUE_NAME);
+    }
+
+    @AfterAll
+    static void dispose() throws Exception {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Test
+    void sendAndReceiveBatch() {
+        try {
+            int count = 100;
+            List<DefaultStringMessage> batch = new ArrayList<>(count);
+            for (int ii = 0; ii < count; ii++) {
+                DefaultStringMessage message = new DefaultStringMessage();
+                message.setMessageId(UUID.randomUUID().toString());
+                message.setBody(String.format("This is a test message. [index=%d]", ii));
+                batch.add(message);
+            }
+            queue.sendBatch(batch, user);
+
+            List<DefaultStringMessage> received = new ArrayList<>();
+            long etime = System.currentTimeMillis() + 10000;
+            while (received.size() < count && System.currentTimeMillis() < etime) {
+                List<DefaultStringMessage> messages = queue.receiveBatch(count - received.size(), 1000, user);
+                if (messages != null) {
+                    assertTrue(messages.size() <= count - received.size());
+                    received.addAll(messages);
+                }
+            }
+            assertEquals(count, received.size());
+            LogUtils.debug(getClass(), String.format("Received messages. [count=%d]", received.size()));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void concurrentBatches() {
+        TestJmsQueue cqueue = new TestJmsQueue();
+        try {
+            cqueue.name("test-concurrent-queue");
+            cqueue.queue(QUEUE_NAME + ".CONCURRENT");
+            cqueue.connection(connection);
+            cqueue.session(connection.connection());
+            cqueue.setupMetrics(cqueue.queue());
+
+            int threads = 4;
+            int count = 50;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int tt = 0; tt < threads; tt++) {
+                futures.add(executor.submit(() -> {
+                    List<DefaultStringMessage> batch = new ArrayList<>(count);
+                    for (int ii = 0; ii < count; ii++) {
+                        DefaultStringMessage message = new DefaultStringMessage();
+                        message.setMessageId(UUID.randomUUID().toString());
+                        message.setBody(String.format("This is a test message. [index=%d]", ii));
+                        batch.add(message);
+                    }
+                    cqueue.sendBatch(batch, user);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            int received = 0;
+            long etime = System.currentTimeMillis() + 10000;
+            while (received < threads * count && System.currentTimeMillis() < etime) {
+                List<DefaultStringMessage> messages = cqueue.receiveBatch(threads * count - received, 1000, user);
+                if (messages != null) {
+                    received += messages.size();
+                }
+            }
+            assertEquals(threads * count, received);
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        } finally {
+            try {
+                cqueue.close();
+            } catch (IOException ex) {
+                LogUtils.error(getClass(), ex);
+            }
+        }
+    }
+
+    @Test
+    void receiveBatchTimeout() {
+        try {
+            long stime = System.currentTimeMillis();
+            List<DefaultStringMessage> messages = queue.receiveBatch(10, 500, user);
+            assertNull(messages);
+            assertTrue(System.currentTimeMillis() - stime < 5000);
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private static class EmbeddedJmsConnection extends AbstractJmsConnection {
+        private final Connection connection;
+
+        private EmbeddedJmsConnection() throws JMSException {
+            ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL);
+            connection = factory.createConnection();
+            connection.start();
+            state().setState(EConnectionState.Open);
+        }
+
+        @Override
+        public Session connection() throws ConnectionException {
+            try {
+                if (autoAck())
+                    return connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                else
+                    return connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+            } catch (Exception ex) {
+                throw new ConnectionException(ex, getClass());
+            }
+        }
+
+        @Override
+        public boolean hasTransactionSupport() {
+            return true;
+        }
+
+        @Override
+        public Session transactedSession() throws ConnectionException {
+            try {
+                return connection.createSession(true, Session.SESSION_TRANSACTED);
+            } catch (Exception ex) {
+                throw new ConnectionException(ex, getClass());
+            }
+        }
+
+        @Override
+        public void close(@Nonnull Session connection) throws ConnectionException {
+            try {
+                connection.close();
+            } catch (Exception ex) {
+                throw new ConnectionException(ex, getClass());
+            }
+        }
+
+        @Override
+        public void configure(@Nonnull AbstractConfigNode node) {
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                connection.close();
+            } catch (JMSException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    private static class TestJmsQueue extends AbstractJmsQueue<DefaultStringMessage> {
+        @Override
+        public Message message(@Nonnull Session session, DefaultStringMessage message) throws JMSException {
+            try {
+                return DefaultStringMessageUtils.message(session, queue(), message);
+            } catch (Exception ex) {
+                throw new JMSException(ex.getLocalizedMessage());
+            }
+        }
+
+        @Override
+        public DefaultStringMessage message(Message message, Principal user) throws JMSException {
+            try {
+                return DefaultStringMessageUtils.message(message);
+            } catch (Exception ex) {
+                throw new JMSException(ex.getLocalizedMessage());
+            }
+        }
+
+        @Override
+        public void configure(@Nonnull AbstractConfigNode node) {
+        }
+    }
+}
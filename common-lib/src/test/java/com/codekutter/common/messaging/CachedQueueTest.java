@@ -0,0 +1,162 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.codekutter.common.model.DefaultStringMessage;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import javax.jms.JMSException;
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedQueueTest {
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+    }
+
+    @Test
+    void watermarks() {
+        try {
+            TestCachedQueue queue = queue(EBackpressurePolicy.FailFast);
+            queue.pendingAdded(9);
+            assertTrue(queue.checkBackpressure());
+            queue.pendingAdded(1);
+            assertThrows(JMSException.class, queue::checkBackpressure);
+            // Throttled till the pending count drops to the low watermark.
+            queue.pendingRemoved(1);
+            assertThrows(JMSException.class, queue::checkBackpressure);
+            queue.pendingRemoved(1);
+            assertThrows(JMSException.class, queue::checkBackpressure);
+            queue.pendingRemoved(1);
+            assertTrue(queue.checkBackpressure());
+            // Not throttled again till the high watermark is reached.
+            queue.pendingAdded(2);
+            assertTrue(queue.checkBackpressure());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void shed() {
+        try {
+            TestCachedQueue queue = queue(EBackpressurePolicy.Shed);
+            queue.pendingAdded(10);
+            assertFalse(queue.checkBackpressure());
+            queue.pendingRemoved(3);
+            assertTrue(queue.checkBackpressure());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void block() {
+        try {
+            TestCachedQueue queue = queue(EBackpressurePolicy.Block);
+            queue.pendingAdded(10);
+            CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return queue.checkBackpressure();
+                } catch (JMSException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(blocked.isDone());
+            queue.pendingRemoved(3);
+            assertTrue(blocked.get(5, TimeUnit.SECONDS));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void blockTimeout() {
+        try {
+            TestCachedQueue queue = queue(EBackpressurePolicy.Block);
+            queue.blockTimeout(200);
+            queue.pendingAdded(10);
+            long stime = System.currentTimeMillis();
+            assertThrows(JMSException.class, queue::checkBackpressure);
+            assertTrue(System.currentTimeMillis() - stime >= 200);
+            // Never blocks if blocking isn't allowed.
+            queue.blockTimeout(60000);
+            stime = System.currentTimeMillis();
+            assertThrows(JMSException.class, () -> queue.checkBackpressure(false));
+            assertTrue(System.currentTimeMillis() - stime < 5000);
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private TestCachedQueue queue(EBackpressurePolicy policy) {
+        TestCachedQueue queue = new TestCachedQueue();
+        queue.name("test-cached-queue");
+        queue.highWatermark(10);
+        queue.lowWatermark(7);
+        queue.backpressurePolicy(policy);
+        return queue;
+    }
+
+    private static class TestCachedQueue extends CachedQueue<Object, DefaultStringMessage> {
+        @Override
+        public List<MessageStruct<DefaultStringMessage>> sendNextBatch(@Nonnull String instanceId,
+                                                                       int partition,
+                                                                       @Nonnull Class<? extends DefaultStringMessage> type) {
+            return null;
+        }
+
+        @Override
+        public void send(@Nonnull DefaultStringMessage message, @Nonnull Principal user) {
+        }
+
+        @Override
+        public DefaultStringMessage receive(long timeout, @Nonnull Principal user) {
+            return null;
+        }
+
+        @Override
+        public boolean ack(@Nonnull String messageId, @Nonnull Principal user) {
+            return false;
+        }
+
+        @Override
+        public List<DefaultStringMessage> receiveBatch(int maxResults, long timeout, @Nonnull Principal user) {
+            return null;
+        }
+
+        @Override
+        public void configure(@Nonnull AbstractConfigNode node) {
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.codekutter.common.model.DbMessage;
+import com.codekutter.common.model.DbMessageError;
+import com.codekutter.common.model.DefaultStringMessage;
+import com.codekutter.common.model.EObjectState;
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.stores.impl.HibernateConnection;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import javax.jms.JMSException;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbCachedQueueTest {
+    private static final String INSTANCE_ID = "test-instance";
+    private static final String OTHER_INSTANCE_ID = "other-instance";
+    private static final Principal user = new TestUser("test-user");
+
+    private static SessionFactory sessionFactory;
+    private static HibernateConnection connection;
+    private static TestDbCachedQueue queue;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        Properties settings = new Properties();
+        settings.setProperty(Environment.DRIVER, "org.h2.Driver");
+        settings.setProperty(Environment.URL, "jdbc:h2:mem:message_cache;DB_CLOSE_DELAY=-1");
+        settings.setProperty(Environment.USER, "sa");
+        settings.setProperty(Environment.PASS, "");
+        settings.setProperty(Environment.DIALECT, "org.hibernate.dialect.H2Dialect");
+        settings.setProperty(Environment.HBM2DDL_AUTO, "create-drop");
+        sessionFactory = new Configuration().addProperties(settings)
+                .addAnnotatedClass(DbMessage.class)
+                .addAnnotatedClass(DbMessageError.class)
+                .buildSessionFactory();
+
+        connection = new HibernateConnection().withSessionFactory(sessionFactory);
+        connection.state().setState(EConnectionState.Open);
+
+        queue = new TestDbCachedQueue(connection);
+        queue.name("test-db-queue");
+        queue.threadPoolSize(1);
+        queue.entityType(DefaultStringMessage.class);
+        queue.state().setState(EObjectState.Available);
+    }
+
+    @AfterAll
+    static void dispose() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void cleanup() {
+        queue.sent.clear();
+        queue.onSend = null;
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery(String.format("DELETE FROM %s", DbMessage.class.getCanonicalName())).executeUpdate();
+            session.createQuery(String.format("DELETE FROM %s", DbMessageError.class.getCanonicalName())).executeUpdate();
+            tx.commit();
+        }
+    }
+
+    @Test
+    void claimAndSend() {
+        try {
+            enqueue(10);
+            List<CachedQueue.MessageStruct<DefaultStringMessage>> sent = queue.sendNextBatch(INSTANCE_ID, 0, DefaultStringMessage.class);
+            assertNotNull(sent);
+            assertEquals(10, sent.size());
+            assertEquals(user.getName(), sent.get(0).user().getName());
+            assertEquals(10, queue.sent.size());
+
+            for (DbMessage dbm : readMessages()) {
+                assertEquals(ESendState.Sent, dbm.getState());
+                assertNull(dbm.getInstanceId());
+                assertEquals(0, dbm.getClaimedTimestamp());
+            }
+            assertNull(queue.sendNextBatch(INSTANCE_ID, 0, DefaultStringMessage.class));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void claimedSkipped() {
+        try {
+            enqueue(5);
+            claim(OTHER_INSTANCE_ID, System.currentTimeMillis());
+
+            assertNull(queue.sendNextBatch(INSTANCE_ID, 0, DefaultStringMessage.class));
+            assertTrue(queue.sent.isEmpty());
+            for (DbMessage dbm : readMessages()) {
+                assertEquals(ESendState.New, dbm.getState());
+                assertEquals(OTHER_INSTANCE_ID, dbm.getInstanceId());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    /**
+     * Two senders claiming at the same time get disjoint rows. H2 has no SKIP LOCKED,
+     * the dialect falls back to a plain FOR UPDATE (the second claim waits for the
+     * first), so the non-blocking behaviour is not covered here.
+     */
+    @Test
+    void concurrentClaims() {
+        int batchSize = queue.fetchBatchSize();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            enqueue(10);
+            queue.fetchBatchSize(5);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<CachedQueue.MessageStruct<DefaultStringMessage>>>> futures = new ArrayList<>();
+            for (String instanceId : new String[]{INSTANCE_ID, OTHER_INSTANCE_ID}) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return queue.sendNextBatch(instanceId, 0, DefaultStringMessage.class);
+                }));
+            }
+            start.countDown();
+            Set<String> ids = new HashSet<>();
+            int count = 0;
+            for (Future<List<CachedQueue.MessageStruct<DefaultStringMessage>>> future : futures) {
+                List<CachedQueue.MessageStruct<DefaultStringMessage>> sent = future.get(30, TimeUnit.SECONDS);
+                if (sent != null) {
+                    assertTrue(sent.size() <= 5);
+                    for (CachedQueue.MessageStruct<DefaultStringMessage> ms : sent) {
+                        ids.add(ms.message().getMessageId());
+                        count++;
+                    }
+                }
+            }
+            assertTrue(count >= 5);
+            assertEquals(count, ids.size());
+            assertEquals(count, queue.sent.size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        } finally {
+            executor.shutdownNow();
+            queue.fetchBatchSize(batchSize);
+        }
+    }
+
+    @Test
+    void claimTimeout() {
+        try {
+            enqueue(5);
+            claim(OTHER_INSTANCE_ID, System.currentTimeMillis() - queue.claimTimeout() - 1000);
+
+            List<CachedQueue.MessageStruct<DefaultStringMessage>> sent = queue.sendNextBatch(INSTANCE_ID, 0, DefaultStringMessage.class);
+            assertNotNull(sent);
+            assertEquals(5, sent.size());
+            for (DbMessage dbm : readMessages()) {
+                assertEquals(ESendState.Sent, dbm.getState());
+                assertNull(dbm.getInstanceId());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void claimLost() {
+        try {
+            enqueue(3);
+            // Another instance takes over the claim while the batch is being sent.
+            queue.onSend = (m) -> claim(OTHER_INSTANCE_ID, System.currentTimeMillis());
+
+            List<CachedQueue.MessageStruct<DefaultStringMessage>> sent = queue.sendNextBatch(INSTANCE_ID, 0, DefaultStringMessage.class);
+            assertNotNull(sent);
+            for (DbMessage dbm : readMessages()) {
+                assertEquals(ESendState.New, dbm.getState());
+                assertEquals(OTHER_INSTANCE_ID, dbm.getInstanceId());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void throttledInTransaction() {
+        try {
+            long pending = queue.pendingCount();
+            queue.highWatermark(pending + 1);
+            queue.lowWatermark(pending);
+            queue.blockTimeout(60000);
+            enqueue(1);
+            try (Session session = sessionFactory.openSession()) {
+                Transaction tx = session.beginTransaction();
+                // Block policy: rejected without waiting in the open transaction.
+                queue.backpressurePolicy(EBackpressurePolicy.Block);
+                long stime = System.currentTimeMillis();
+                assertThrows(JMSException.class, () -> queue.send(message(0), session, user));
+                assertTrue(System.currentTimeMillis() - stime < 5000);
+                // Shed policy: the drop is returned to the caller.
+                queue.backpressurePolicy(EBackpressurePolicy.Shed);
+                assertFalse(queue.send(message(1), session, user));
+                tx.commit();
+            }
+            assertEquals(1, readMessages().size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        } finally {
+            queue.highWatermark(-1);
+            queue.lowWatermark(-1);
+            queue.backpressurePolicy(EBackpressurePolicy.Block);
+            queue.refreshPendingCount();
+        }
+    }
+
+    @Test
+    void enqueueWakesSender() {
+        TestDbCachedQueue wqueue = new TestDbCachedQueue(connection);
+        try {
+            wqueue.name(queue.name());
+            wqueue.threadPoolSize(1);
+            wqueue.entityType(DefaultStringMessage.class);
+            // Polling would only pick up the messages after a minute.
+            wqueue.startDelay(60000);
+            wqueue.sendDelay(60000);
+            wqueue.state().setState(EObjectState.Available);
+            wqueue.start();
+
+            long stime = System.currentTimeMillis();
+            try (Session session = sessionFactory.openSession()) {
+                Transaction tx = session.beginTransaction();
+                for (int ii = 0; ii < 5; ii++) {
+                    assertTrue(wqueue.send(message(ii), session, user));
+                }
+                tx.commit();
+            }
+            while (wqueue.sent.size() < 5 && System.currentTimeMillis() - stime < 10000) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, wqueue.sent.size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        } finally {
+            try {
+                wqueue.close();
+            } catch (Exception ex) {
+                LogUtils.error(getClass(), ex);
+            }
+        }
+    }
+
+    @Test
+    void senderBackoff() {
+        CachedQueueSender<Object, DefaultStringMessage> sender =
+                new CachedQueueSender<>(queue, 1, DefaultStringMessage.class)
+                        .withStartDelay(10).withSendInterval(80).withMinSendInterval(10);
+        try {
+            // Idle: interval doubles up to the send interval.
+            long interval = 0;
+            for (int ii = 0; ii < 5; ii++) {
+                tick(sender);
+                assertTrue(sender.pollInterval() > interval || sender.pollInterval() == 80);
+                interval = sender.pollInterval();
+            }
+            assertEquals(80, sender.pollInterval());
+
+            // Messages found: interval resets to the min. interval.
+            // Let the send of the last idle tick complete first.
+            Thread.sleep(sender.pollInterval());
+            enqueue(5);
+            tick(sender);
+            long stime = System.currentTimeMillis();
+            while (sender.processedCount() < 5 && System.currentTimeMillis() - stime < 10000) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, sender.processedCount());
+            tick(sender);
+            assertEquals(10, sender.pollInterval());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        } finally {
+            sender.stop();
+        }
+    }
+
+    private void tick(CachedQueueSender<Object, DefaultStringMessage> sender) throws InterruptedException {
+        // Wait for the current poll interval to elapse.
+        Thread.sleep(sender.pollInterval() + 5);
+        sender.run();
+    }
+
+    private void enqueue(int count) throws Exception {
+        long pending = queue.pendingCount();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            for (int ii = 0; ii < count; ii++) {
+                assertTrue(queue.send(message(ii), session, user));
+            }
+            tx.commit();
+        }
+        assertEquals(pending + count, queue.pendingCount());
+    }
+
+    private DefaultStringMessage message(int index) {
+        DefaultStringMessage message = new DefaultStringMessage();
+        message.setMessageId(UUID.randomUUID().toString());
+        message.setQueue(queue.name());
+        message.setBody(String.format("This is a test message. [index=%d]", index));
+        message.setTimestamp(System.currentTimeMillis());
+        return message;
+    }
+
+    private void claim(String instanceId, long timestamp) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery(String.format("UPDATE %s SET instanceId = :instance, claimedTimestamp = :timestamp",
+                    DbMessage.class.getCanonicalName()))
+                    .setParameter("instance", instanceId)
+                    .setParameter("timestamp", timestamp)
+                    .executeUpdate();
+            tx.commit();
+        }
+    }
+
+    private List<DbMessage> readMessages() {
+        try (Session session = sessionFactory.openSession()) {
+            List<DbMessage> messages = session.createQuery(String.format("FROM %s", DbMessage.class.getCanonicalName()), DbMessage.class)
+                    .getResultList();
+            assertFalse(messages.isEmpty());
+            return messages;
+        }
+    }
+
+    private static class TestUser implements Principal {
+        private final String name;
+
+        private TestUser(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static class TestDbCachedQueue extends DbCachedQueue<Object, DefaultStringMessage> {
+        private final HibernateConnection connection;
+        private final List<DefaultStringMessage> sent = Collections.synchronizedList(new ArrayList<>());
+        private Consumer<DefaultStringMessage> onSend;
+
+        private TestDbCachedQueue(HibernateConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public HibernateConnection getDbConnection() {
+            return connection;
+        }
+
+        @Override
+        public void send(@Nonnull DefaultStringMessage message, @Nonnull Principal user) {
+            if (onSend != null) {
+                onSend.accept(message);
+            }
+            sent.add(message);
+        }
+
+        @Override
+        public DefaultStringMessage receive(long timeout, @Nonnull Principal user) {
+            return null;
+        }
+
+        @Override
+        public boolean ack(@Nonnull String messageId, @Nonnull Principal user) {
+            return false;
+        }
+
+        @Override
+        public List<DefaultStringMessage> receiveBatch(int maxResults, long timeout, @Nonnull Principal user) {
+            return null;
+        }
+
+        @Override
+        public byte[] getBytes(@Nonnull DefaultStringMessage message) throws JMSException {
+            try {
+                return DefaultStringMessageUtils.getBytes(message);
+            } catch (Exception ex) {
+                throw new JMSException(ex.getLocalizedMessage());
+            }
+        }
+
+        @Override
+        public DefaultStringMessage readMessage(@Nonnull byte[] body) throws JMSException {
+            try {
+                return DefaultStringMessageUtils.readMessage(body);
+            } catch (Exception ex) {
+                throw new JMSException(ex.getLocalizedMessage());
+            }
+        }
+
+        @Override
+        public void configure(@Nonnull AbstractConfigNode node) {
+        }
+    }
+}
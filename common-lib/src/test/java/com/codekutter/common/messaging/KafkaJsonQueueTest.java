@@ -0,0 +1,241 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.codekutter.common.model.DefaultStringMessage;
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.Principal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KafkaJsonQueueTest {
+    private static final String TOPIC = "test-topic";
+    private static final Principal user = () -> "test-user";
+
+    private MockProducer<String, byte[]> producer;
+    private RebalancingConsumer consumer;
+    private KafkaJsonQueue queue;
+
+    @BeforeAll
+    static void init() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+    }
+
+    @BeforeEach
+    void setup() {
+        producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+        consumer = new RebalancingConsumer();
+        KafkaConnection connection = new KafkaConnection()
+                .withProducer(producer)
+                .withConsumerFactory(props -> consumer);
+        connection.clientId("test-client");
+        connection.state().setState(EConnectionState.Open);
+
+        queue = new KafkaJsonQueue();
+        queue.name("test-kafka-queue");
+        queue.topic(TOPIC);
+        queue.groupId("test-group");
+        queue.connection(connection);
+        queue.setupMetrics(TOPIC);
+    }
+
+    @Test
+    void sendBatch() {
+        try {
+            int count = 50;
+            List<DefaultStringMessage> batch = new ArrayList<>(count);
+            for (int ii = 0; ii < count; ii++) {
+                batch.add(message(ii));
+            }
+            queue.sendBatch(batch, user);
+
+            List<ProducerRecord<String, byte[]>> sent = producer.history();
+            assertEquals(count, sent.size());
+            for (ProducerRecord<String, byte[]> record : sent) {
+                assertEquals(TOPIC, record.topic());
+                assertNotNull(record.key());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void receiveBatchWithAck() {
+        try {
+            int count = 20;
+            TopicPartition tp = new TopicPartition(TOPIC, 0);
+            List<byte[]> values = new ArrayList<>(count);
+            for (int ii = 0; ii < count; ii++) {
+                values.add(queue.message(message(ii)));
+            }
+            consumer.schedulePollTask(() -> {
+                consumer.rebalance(Collections.singletonList(tp));
+                consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+                for (int ii = 0; ii < values.size(); ii++) {
+                    consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, ii, String.valueOf(ii), values.get(ii)));
+                }
+            });
+            queue.commitStrategy(EKafkaCommitStrategy.Ack);
+
+            List<DefaultStringMessage> messages = queue.receiveBatch(count, 1000, user);
+            assertNotNull(messages);
+            assertEquals(count, messages.size());
+
+            DefaultStringMessage last = messages.get(messages.size() - 1);
+            assertTrue(queue.ack(last.getMessageId(), user));
+            assertEquals(count, consumer.committed(tp).offset());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void receiveCommitsOnPoll() {
+        try {
+            TopicPartition tp = new TopicPartition(TOPIC, 0);
+            byte[] value = queue.message(message(0));
+            consumer.schedulePollTask(() -> {
+                consumer.rebalance(Collections.singletonList(tp));
+                consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+                consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, "0", value));
+            });
+
+            DefaultStringMessage message = queue.receive(1000, user);
+            assertNotNull(message);
+            assertNull(consumer.committed(tp));
+
+            assertNull(queue.receive(100, user));
+            assertEquals(1, consumer.committed(tp).offset());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void revokeCommitsPending() {
+        try {
+            TopicPartition tp0 = new TopicPartition(TOPIC, 0);
+            TopicPartition tp1 = new TopicPartition(TOPIC, 1);
+            List<byte[]> values = new ArrayList<>();
+            for (int ii = 0; ii < 4; ii++) {
+                values.add(queue.message(message(ii)));
+            }
+            consumer.schedulePollTask(() -> {
+                consumer.rebalance(Arrays.asList(tp0, tp1));
+                Map<TopicPartition, Long> offsets = new HashMap<>();
+                offsets.put(tp0, 0L);
+                offsets.put(tp1, 0L);
+                consumer.updateBeginningOffsets(offsets);
+                for (int ii = 0; ii < values.size(); ii++) {
+                    consumer.addRecord(new ConsumerRecord<>(TOPIC, ii % 2, ii / 2, String.valueOf(ii), values.get(ii)));
+                }
+            });
+
+            DefaultStringMessage message = queue.receive(1000, user);
+            assertNotNull(message);
+            String[] parts = message.getMessageId().split(":");
+            TopicPartition received = new TopicPartition(parts[0], Integer.parseInt(parts[1]));
+            TopicPartition other = (received.equals(tp0) ? tp1 : tp0);
+            assertNull(consumer.committed(received));
+
+            // Pending offset committed on revoke, buffered records of the revoked partitions dropped.
+            consumer.revoke(Arrays.asList(tp0, tp1));
+            assertEquals(Long.parseLong(parts[2]) + 1, consumer.committed(received).offset());
+            assertNull(consumer.committed(other));
+            consumer.rebalance(Collections.emptyList());
+            assertNull(queue.receive(100, user));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void ackRevoked() {
+        try {
+            TopicPartition tp = new TopicPartition(TOPIC, 0);
+            byte[] value = queue.message(message(0));
+            consumer.schedulePollTask(() -> {
+                consumer.rebalance(Collections.singletonList(tp));
+                consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+                consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, "0", value));
+            });
+            queue.commitStrategy(EKafkaCommitStrategy.Ack);
+
+            DefaultStringMessage message = queue.receive(1000, user);
+            assertNotNull(message);
+            consumer.revoke(Collections.singletonList(tp));
+            consumer.rebalance(Collections.emptyList());
+            // Not committed for a partition owned by another consumer.
+            assertFalse(queue.ack(message.getMessageId(), user));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private DefaultStringMessage message(int index) {
+        DefaultStringMessage message = new DefaultStringMessage();
+        message.setMessageId(UUID.randomUUID().toString());
+        message.setBody(String.format("This is a test message. [index=%d]", index));
+        return message;
+    }
+
+    /**
+     * Mock consumer that exposes the rebalance callback of the subscription
+     * (not invoked by {@link MockConsumer#rebalance(Collection)}).
+     */
+    private static class RebalancingConsumer extends MockConsumer<String, byte[]> {
+        private ConsumerRebalanceListener listener;
+
+        private RebalancingConsumer() {
+            super(OffsetResetStrategy.EARLIEST);
+        }
+
+        @Override
+        public synchronized void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+            this.listener = listener;
+            super.subscribe(topics, listener);
+        }
+
+        private void revoke(Collection<TopicPartition> partitions) {
+            assertNotNull(listener);
+            listener.onPartitionsRevoked(partitions);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.messaging;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.codekutter.common.model.DefaultStringMessage;
+import com.codekutter.common.stores.ConnectionException;
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SQSJsonQueueTest {
+    private static final String BROKER_URL = "vm://sqs-test?broker.persistent=false&broker.useJmx=false";
+    private static final String QUEUE_NAME = "TEST-SQS-BATCH";
+    private static final String QUEUE_URL = "https://sqs.local/000000000000/" + QUEUE_NAME;
+    private static final Principal user = () -> "test-user";
+
+    private static StubSQS client;
+    private static StubSQSConnection connection;
+    private static SQSJsonQueue queue;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        client = new StubSQS();
+        connection = new StubSQSConnection(client);
+        connection.autoAck(true);
+
+        queue = new SQSJsonQueue();
+        queue.name("test-sqs-queue");
+        queue.queue(QUEUE_NAME);
+        queue.connection(connection);
+        queue.session(connection.connection());
+        queue.setupMetrics(QUEUE_NAME);
+    }
+
+    @AfterAll
+    static void dispose() throws Exception {
+        if (queue != null) {
+            queue.close();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    void sendBatch() {
+        try {
+            int count = 25;
+            List<DefaultStringMessage> batch = new ArrayList<>(count);
+            for (int ii = 0; ii < count; ii++) {
+                DefaultStringMessage message = new DefaultStringMessage();
+                message.setMessageId(UUID.randomUUID().toString());
+                message.setBody(String.format("This is a test message. [index=%d]", ii));
+                batch.add(message);
+            }
+            client.requests.clear();
+            client.failId = "3";
+            queue.sendBatch(batch, user);
+            client.failId = null;
+
+            assertEquals(3, client.requests.size());
+            assertEquals(10, client.requests.get(0).getEntries().size());
+            assertEquals(10, client.requests.get(1).getEntries().size());
+            assertEquals(5, client.requests.get(2).getEntries().size());
+            for (SendMessageBatchRequest request : client.requests) {
+                assertEquals(QUEUE_URL, request.getQueueUrl());
+                for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                    assertEquals("text",
+                            entry.getMessageAttributes().get("JMS_SQSMessageType").getStringValue());
+                }
+            }
+
+            // The failed entry is re-sent using the JMS session.
+            DefaultStringMessage resent = queue.receive(5000, user);
+            assertNotNull(resent);
+            assertEquals(batch.get(3).getBody(), resent.getBody());
+            assertNull(queue.receive(500, user));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void sendBatchBySize() {
+        try {
+            int count = 5;
+            char[] body = new char[100 * 1024];
+            Arrays.fill(body, 'x');
+            List<DefaultStringMessage> batch = new ArrayList<>(count);
+            for (int ii = 0; ii < count; ii++) {
+                DefaultStringMessage message = new DefaultStringMessage();
+                message.setMessageId(UUID.randomUUID().toString());
+                message.setBody(String.format("%d:%s", ii, new String(body)));
+                batch.add(message);
+            }
+            client.requests.clear();
+            client.failRequest = 1;
+            queue.sendBatch(batch, user);
+            client.failRequest = -1;
+
+            // Two messages fit the request size limit.
+            assertEquals(3, client.requests.size());
+            assertEquals(2, client.requests.get(0).getEntries().size());
+            assertEquals(2, client.requests.get(1).getEntries().size());
+            assertEquals(1, client.requests.get(2).getEntries().size());
+            for (SendMessageBatchRequest request : client.requests) {
+                int size = 0;
+                for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                    size += SQSBatchSender.size(entry);
+                }
+                assertTrue(size <= SQSBatchSender.MAX_BATCH_BYTES);
+            }
+
+            // Messages of the failed request are re-sent using the JMS session.
+            for (int ii = 0; ii < 2; ii++) {
+                DefaultStringMessage resent = queue.receive(5000, user);
+                assertNotNull(resent);
+                assertEquals(batch.get(2 + ii).getBody(), resent.getBody());
+            }
+            assertNull(queue.receive(500, user));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private static class StubSQS extends AbstractAmazonSQS {
+        private final List<SendMessageBatchRequest> requests = new ArrayList<>();
+        private String failId;
+        private int failRequest = -1;
+
+        @Override
+        public GetQueueUrlResult getQueueUrl(String queueName) {
+            assertEquals(QUEUE_NAME, queueName);
+            return new GetQueueUrlResult().withQueueUrl(QUEUE_URL);
+        }
+
+        @Override
+        public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+            requests.add(request);
+            if (requests.size() - 1 == failRequest) {
+                throw new AmazonSQSException("Request failed.");
+            }
+            SendMessageBatchResult result = new SendMessageBatchResult();
+            for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                if (entry.getId().equals(failId)) {
+                    result.withFailed(new BatchResultErrorEntry()
+                            .withId(entry.getId())
+                            .withCode("InternalError")
+                            .withSenderFault(false));
+                } else {
+                    result.withSuccessful(new SendMessageBatchResultEntry()
+                            .withId(entry.getId())
+                            .withMessageId(UUID.randomUUID().toString()));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * SQS connection backed by an embedded broker for the JMS session
+     * and a stub client for batch requests.
+     */
+    private static class StubSQSConnection extends AwsSQSConnection {
+        private final AmazonSQS client;
+        private final Connection connection;
+
+        private StubSQSConnection(AmazonSQS client) throws JMSException {
+            this.client = client;
+            ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL);
+            connection = factory.createConnection();
+            connection.start();
+            state().setState(EConnectionState.Open);
+        }
+
+        @Override
+        public Session connection() throws ConnectionException {
+            try {
+                return connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            } catch (Exception ex) {
+                throw new ConnectionException(ex, getClass());
+            }
+        }
+
+        @Override
+        public AmazonSQS sqsClient() throws ConnectionException {
+            state().checkOpened();
+            return client;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            try {
+                connection.close();
+            } catch (JMSException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.scheduling;
+
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AbstractJobTest {
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+    }
+
+    @Test
+    void setupMonitoring() {
+        try {
+            TestJob j1 = new TestJob();
+            j1.setupMonitoring("test-group", "test-job");
+            // Scheduler creates a new job instance per execution.
+            TestJob j2 = new TestJob();
+            j2.setupMonitoring("test-group", "test-job");
+            assertSame(j1.callLatency(), j2.callLatency());
+            assertSame(j1.callCounter(), j2.callCounter());
+            assertSame(j1.callErrorCounter(), j2.callErrorCounter());
+            assertTrue(j1.callLatency().id().name().endsWith("test-group.test-job.CALL"));
+
+            TestJob j3 = new TestJob();
+            j3.setupMonitoring("test-group", "other-job");
+            assertNotSame(j1.callLatency(), j3.callLatency());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private static class TestJob extends AbstractJob {
+        @Override
+        public Object doExecute(@Nonnull String correlationId,
+                                @Nonnull JobExecutionContext context,
+                                @Nonnull JobConfig config) throws JobExecutionException {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.scheduling.impl;
+
+import com.codekutter.common.TimeWindow;
+import com.codekutter.common.auditing.AuditException;
+import com.codekutter.common.model.JobAuditLog;
+import com.codekutter.common.scheduling.JobConfig;
+import com.codekutter.common.scheduling.remote.EJobState;
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.stores.impl.HibernateConnection;
+import com.codekutter.common.utils.LogUtils;
+import com.google.common.base.Strings;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DBJobAuditLoggerTest {
+    private static SessionFactory sessionFactory;
+    private static HibernateConnection connection;
+    private TestAuditLogger logger;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Properties settings = new Properties();
+        settings.setProperty(Environment.DRIVER, "org.h2.Driver");
+        settings.setProperty(Environment.URL, "jdbc:h2:mem:job_audit;DB_CLOSE_DELAY=-1");
+        settings.setProperty(Environment.USER, "sa");
+        settings.setProperty(Environment.PASS, "");
+        settings.setProperty(Environment.DIALECT, "org.hibernate.dialect.H2Dialect");
+        settings.setProperty(Environment.HBM2DDL_AUTO, "create-drop");
+        sessionFactory = new Configuration().addProperties(settings)
+                .addAnnotatedClass(JobAuditLog.class)
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createNativeQuery("ALTER TABLE sys_job_audit ALTER COLUMN context_json CLOB").executeUpdate();
+            session.createNativeQuery("ALTER TABLE sys_job_audit ALTER COLUMN response_json CLOB").executeUpdate();
+            session.createNativeQuery("ALTER TABLE sys_job_audit ALTER COLUMN error_trace CLOB").executeUpdate();
+            tx.commit();
+        }
+
+        connection = new HibernateConnection().withSessionFactory(sessionFactory);
+        connection.state().setState(EConnectionState.Open);
+    }
+
+    @AfterAll
+    static void dispose() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void init() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery(String.format("DELETE FROM %s", JobAuditLog.class.getCanonicalName())).executeUpdate();
+            tx.commit();
+        }
+        logger = new TestAuditLogger();
+        logger.batchSize(10);
+        logger.queueSize(1000);
+        // Flushed by the tests.
+        logger.flushInterval(60 * 60 * 1000);
+        logger.start();
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        logger.unavailable = false;
+        logger.close();
+    }
+
+    @Test
+    void writeBatches() {
+        try {
+            for (int ii = 0; ii < 25; ii++) {
+                start("test-job-" + ii);
+            }
+            logger.flush();
+            assertEquals(25, readRecords().size());
+            // One transaction per batch.
+            assertEquals(3, logger.writes.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void mergeEvents() {
+        try {
+            String correlationId = UUID.randomUUID().toString();
+            String jobId = logger.logJobStart(config("test-job"), correlationId, null, RESTCallJob.class);
+            logger.logJobState(correlationId, EJobState.Pending);
+            logger.logJobEnd(jobId, "response", null);
+            logger.flush();
+            assertEquals(1, logger.writes.get());
+
+            List<JobAuditLog> records = readRecords();
+            assertEquals(1, records.size());
+            JobAuditLog record = records.get(0);
+            assertEquals(EJobState.Finished, record.getJobState());
+            assertTrue(record.getEndTime() > 0);
+            assertTrue(record.getStateUpdateTimestamp() > 0);
+            assertNotNull(record.getResponseJson());
+
+            // Update of a record written by an earlier batch.
+            logger.logJobError(correlationId, new Exception("Test error"));
+            logger.flush();
+            record = readRecords().get(0);
+            assertEquals(EJobState.Error, record.getJobState());
+            assertEquals("Test error", record.getError());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void purge() {
+        try {
+            long old = System.currentTimeMillis() - 2 * 60 * 60 * 1000;
+            try (Session session = sessionFactory.openSession()) {
+                Transaction tx = session.beginTransaction();
+                for (int ii = 0; ii < 5; ii++) {
+                    session.save(record("old-job-" + ii, old));
+                }
+                session.save(record("new-job", System.currentTimeMillis()));
+                tx.commit();
+            }
+            logger.retention(TimeWindow.parse("1hh"));
+            logger.purgeBatchSize(2);
+            assertEquals(5, logger.purge());
+
+            List<JobAuditLog> records = readRecords();
+            assertEquals(1, records.size());
+            assertEquals("new-job", records.get(0).getName());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void invalidEventDropped() {
+        try {
+            for (int ii = 0; ii < 4; ii++) {
+                start("test-job-" + ii);
+            }
+            // Name exceeds the column size, fails the batch.
+            start(Strings.repeat("x", 512));
+            logger.flush();
+
+            List<JobAuditLog> records = readRecords();
+            assertEquals(4, records.size());
+            // Failed batch followed by the individual writes.
+            assertEquals(6, logger.writes.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void retryUnavailable() {
+        try {
+            for (int ii = 0; ii < 3; ii++) {
+                start("test-job-" + ii);
+            }
+            logger.unavailable = true;
+            assertThrows(AuditException.class, () -> logger.flush());
+            assertEquals(0, readRecords().size());
+
+            logger.unavailable = false;
+            start("test-job-3");
+            logger.flush();
+            List<JobAuditLog> records = readRecords();
+            assertEquals(4, records.size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void retryLimit() {
+        try {
+            logger.maxWriteAttempts(2);
+            start("test-job");
+            logger.unavailable = true;
+            assertThrows(AuditException.class, () -> logger.flush());
+            assertThrows(AuditException.class, () -> logger.flush());
+            logger.unavailable = false;
+            logger.flush();
+            assertEquals(0, readRecords().size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private void start(String name) throws Exception {
+        logger.logJobStart(config(name), UUID.randomUUID().toString(), null, RESTCallJob.class);
+    }
+
+    private JobConfig config(String name) {
+        JobConfig config = new JobConfig();
+        config.setNamespace("test");
+        config.setName(name);
+        config.setType(RESTCallJob.class);
+        return config;
+    }
+
+    private JobAuditLog record(String name, long startTime) {
+        JobAuditLog record = new JobAuditLog();
+        record.setJobId(UUID.randomUUID().toString());
+        record.setNamespace("test");
+        record.setName(name);
+        record.setType(RESTCallJob.class.getCanonicalName());
+        record.setStartTime(startTime);
+        record.setContextJson("{}");
+        record.setJobState(EJobState.Finished);
+        return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<JobAuditLog> readRecords() {
+        try (Session session = sessionFactory.openSession()) {
+            List<JobAuditLog> records = session.createQuery(String.format("FROM %s",
+                    JobAuditLog.class.getCanonicalName())).getResultList();
+            return (records == null ? new ArrayList<>() : records);
+        }
+    }
+
+    private static class TestAuditLogger extends DBJobAuditLogger {
+        private final AtomicInteger writes = new AtomicInteger();
+        private volatile boolean unavailable = false;
+
+        @Override
+        protected HibernateConnection connection() throws Exception {
+            if (unavailable) {
+                throw new AuditException("Database unavailable.");
+            }
+            writes.incrementAndGet();
+            return connection;
+        }
+    }
+}
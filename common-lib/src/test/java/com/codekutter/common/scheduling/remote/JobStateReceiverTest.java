@@ -0,0 +1,89 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.scheduling.remote;
+
+import com.codekutter.common.utils.LogUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobStateReceiverTest {
+    private static final String TOKEN = "test-token";
+
+    @Test
+    void receive() {
+        List<JobStateUpdate> updates = new CopyOnWriteArrayList<>();
+        JobStateReceiver receiver = new JobStateReceiver("/jobs/state", TOKEN, updates::add);
+        try {
+            receiver.start(0);
+            assertTrue(receiver.address().isLoopbackAddress());
+            String url = String.format("http://localhost:%d/jobs/state", receiver.port());
+
+            assertEquals(200, post(url, TOKEN, "{\"correlationId\":\"job-1\",\"state\":\"Finished\"}"));
+            assertEquals(200, post(url, TOKEN, "[{\"correlationId\":\"job-2\",\"state\":\"Running\"},"
+                    + "{\"correlationId\":\"job-3\",\"state\":\"Error\",\"error\":\"Failed\"}]"));
+            assertEquals(3, updates.size());
+            assertEquals(EJobState.Finished, updates.get(0).getState());
+            assertEquals("Failed", updates.get(2).getError());
+            assertEquals(3, receiver.received().get());
+
+            assertEquals(403, post(url, "invalid", "{\"correlationId\":\"job-4\",\"state\":\"Finished\"}"));
+            assertEquals(403, post(url, null, "{\"correlationId\":\"job-4\",\"state\":\"Finished\"}"));
+            assertEquals(400, post(url, TOKEN, "not json"));
+            assertEquals(3, updates.size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        } finally {
+            receiver.stop();
+        }
+    }
+
+    @Test
+    void tokenRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new JobStateReceiver("/jobs/state", null, (u) -> {
+        }));
+        assertThrows(IllegalArgumentException.class, () -> new JobStateReceiver("/jobs/state", "", (u) -> {
+        }));
+    }
+
+    private int post(String url, String token, String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            if (token != null) {
+                connection.setRequestProperty(JobStateReceiver.HEADER_TOKEN, token);
+            }
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
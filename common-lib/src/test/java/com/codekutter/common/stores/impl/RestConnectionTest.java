@@ -0,0 +1,195 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.stores.impl;
+
+import com.codekutter.common.utils.LogUtils;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the client connection settings against a local HTTP server,
+ * the server records the client ports to count the sockets opened.
+ */
+class RestConnectionTest {
+    private static final int REQUEST_COUNT = 20;
+    private static final Set<Integer> ports = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger maxActive = new AtomicInteger();
+    private static HttpServer server;
+    private static String url;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/test", (exchange) -> {
+            ports.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/slow", (exchange) -> {
+            int count = active.incrementAndGet();
+            maxActive.accumulateAndGet(count, Math::max);
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.start();
+        url = String.format("http://localhost:%d/test", server.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void shutdown() {
+        server.stop(0);
+    }
+
+    @Test
+    void reuseConnections() {
+        try (RestConnection connection = new RestConnection()) {
+            connection.client = connection.builder(null).build();
+            ports.clear();
+            for (int ii = 0; ii < REQUEST_COUNT; ii++) {
+                Response response = connection.client().target(url).request().get();
+                assertEquals(200, response.getStatus());
+                assertEquals("OK", response.readEntity(String.class));
+            }
+            // Sequential requests reuse the single pooled keep-alive socket.
+            assertEquals(1, ports.size(),
+                    String.format("Connections not reused. [sockets=%d]", ports.size()));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void noKeepAlive() {
+        try (RestConnection connection = new RestConnection()) {
+            connection.keepAlive(false);
+            connection.client = connection.builder(null).build();
+            ports.clear();
+            for (int ii = 0; ii < REQUEST_COUNT; ii++) {
+                Response response = connection.client().target(url).request().get();
+                assertEquals(200, response.getStatus());
+                assertEquals("OK", response.readEntity(String.class));
+            }
+            assertEquals(REQUEST_COUNT, ports.size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void maxConnections() {
+        try (RestConnection connection = new RestConnection()) {
+            connection.maxConnections(2);
+            connection.asyncPoolSize(8);
+            connection.client = connection.builder(null).build();
+            maxActive.set(0);
+            int count = 8;
+            CountDownLatch latch = new CountDownLatch(count);
+            AtomicInteger completed = new AtomicInteger();
+            for (int ii = 0; ii < count; ii++) {
+                connection.client().target(url.replace("/test", "/slow")).request().async()
+                        .get(new InvocationCallback<Response>() {
+                            @Override
+                            public void completed(Response response) {
+                                if (response.getStatus() == 200
+                                        && "OK".equals(response.readEntity(String.class))) {
+                                    completed.incrementAndGet();
+                                }
+                                latch.countDown();
+                            }
+
+                            @Override
+                            public void failed(Throwable error) {
+                                LogUtils.error(getClass(), error);
+                                latch.countDown();
+                            }
+                        });
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertEquals(count, completed.get());
+            // Concurrent requests are limited by the connection's own pool.
+            assertEquals(2, maxActive.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void asyncRequests() {
+        try (RestConnection connection = new RestConnection()) {
+            connection.asyncPoolSize(4);
+            connection.client = connection.builder(null).build();
+            Client client = connection.client();
+            CountDownLatch latch = new CountDownLatch(REQUEST_COUNT);
+            AtomicInteger completed = new AtomicInteger();
+            for (int ii = 0; ii < REQUEST_COUNT; ii++) {
+                client.target(url).request().async().get(new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(Response response) {
+                        if (response.getStatus() == 200) {
+                            completed.incrementAndGet();
+                        }
+                        response.close();
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void failed(Throwable error) {
+                        LogUtils.error(getClass(), error);
+                        latch.countDown();
+                    }
+                });
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertEquals(REQUEST_COUNT, completed.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+}
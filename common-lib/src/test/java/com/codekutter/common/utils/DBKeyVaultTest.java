@@ -0,0 +1,127 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the passcode cache, the database read is replaced by an in-memory lookup.
+ */
+class DBKeyVaultTest {
+    private static final String PASSCODE = "testp@ssw0rd";
+
+    @Test
+    void cachedPasscode() {
+        try {
+            CountingVault vault = vault(60 * 1000);
+            char[] p1 = vault.getPasscode("TEST_KEY");
+            assertEquals(PASSCODE, new String(p1));
+            // Clearing the returned copy must not affect the cached value.
+            Arrays.fill(p1, '\0');
+            char[] p2 = vault.getPasscode("TEST_KEY");
+            assertEquals(PASSCODE, new String(p2));
+            assertEquals(1, vault.reads.get());
+
+            vault.invalidate("TEST_KEY");
+            assertEquals(PASSCODE, new String(vault.getPasscode("TEST_KEY")));
+            assertEquals(2, vault.reads.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void expiredPasscode() {
+        try {
+            CountingVault vault = vault(100);
+            vault.getPasscode("TEST_KEY");
+            Thread.sleep(200);
+            vault.getPasscode("TEST_KEY");
+            assertEquals(2, vault.reads.get());
+            // Evicted key material is cleared.
+            assertEquals(2, vault.returned.size());
+            for (char c : vault.returned.get(0)) {
+                assertEquals('\0', c);
+            }
+
+            CountingVault uncached = vault(0);
+            uncached.getPasscode("TEST_KEY");
+            uncached.getPasscode("TEST_KEY");
+            assertEquals(2, uncached.reads.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void concurrentInvalidate() {
+        try {
+            CountingVault vault = vault(60 * 1000);
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread invalidator = new Thread(() -> {
+                while (running.get()) {
+                    vault.invalidate("TEST_KEY");
+                }
+            });
+            invalidator.start();
+            try {
+                // Copies are never taken from cleared key material.
+                for (int ii = 0; ii < 20000; ii++) {
+                    assertEquals(PASSCODE, new String(vault.getPasscode("TEST_KEY")));
+                }
+            } finally {
+                running.set(false);
+                invalidator.join();
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private CountingVault vault(long timeout) {
+        CountingVault vault = new CountingVault();
+        vault.cacheTimeout(timeout);
+        return vault;
+    }
+
+    private static class CountingVault extends DBKeyVault {
+        private final AtomicInteger reads = new AtomicInteger();
+        private final List<char[]> returned = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        protected char[] readPasscode(@Nonnull String name) throws SecurityException {
+            reads.incrementAndGet();
+            char[] value = PASSCODE.toCharArray();
+            returned.add(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IOUtilsTest {
+    private static final String CONTENT = "line 1\r\nline 2\nline 3";
+
+    @Test
+    void readContent() {
+        try {
+            File file = new File(IOUtils.getTempFile());
+            Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+            try {
+                assertEquals(CONTENT, IOUtils.readContent(file, StandardCharsets.UTF_8));
+                MappedByteBuffer buffer = IOUtils.map(file);
+                assertEquals(CONTENT.length(), buffer.remaining());
+                assertEquals('l', (char) buffer.get(0));
+            } finally {
+                Files.delete(file.toPath());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void copy() {
+        try {
+            byte[] data = new byte[4 * 1024 * 1024 + 17];
+            new Random().nextBytes(data);
+            File source = new File(IOUtils.getTempFile());
+            File dest = new File(IOUtils.getTempFile());
+            File stream = new File(IOUtils.getTempFile());
+            try {
+                Files.write(source.toPath(), data);
+                // Existing (longer) content must be truncated.
+                Files.write(dest.toPath(), new byte[data.length * 2]);
+                assertEquals(data.length, IOUtils.copy(source, dest));
+                assertArrayEquals(data, IOUtils.readBytes(dest));
+
+                assertEquals(data.length, IOUtils.copy(new ByteArrayInputStream(data), stream));
+                assertArrayEquals(data, IOUtils.readBytes(stream));
+            } finally {
+                Files.deleteIfExists(source.toPath());
+                Files.deleteIfExists(dest.toPath());
+                Files.deleteIfExists(stream.toPath());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void copyPreserveDate() {
+        try {
+            File source = new File(IOUtils.getTempFile());
+            File dir = new File(IOUtils.getTempFile());
+            File dest = new File(dir, "nested/copy.txt");
+            try {
+                Files.write(source.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+                long modified = System.currentTimeMillis() - 24 * 60 * 60 * 1000;
+                assertTrue(source.setLastModified(modified));
+
+                assertEquals(CONTENT.length(), IOUtils.copy(source, dest, true));
+                assertEquals(CONTENT, IOUtils.readContent(dest, StandardCharsets.UTF_8));
+                assertEquals(source.lastModified(), dest.lastModified());
+            } finally {
+                Files.deleteIfExists(source.toPath());
+                Files.deleteIfExists(dest.toPath());
+                Files.deleteIfExists(dest.getParentFile().toPath());
+                Files.deleteIfExists(dir.toPath());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void transferStalled() {
+        try {
+            File source = new File(IOUtils.getTempFile());
+            try {
+                Files.write(source.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+                // Target that never accepts any data.
+                WritableByteChannel target = new WritableByteChannel() {
+                    @Override
+                    public int write(ByteBuffer src) {
+                        return 0;
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return true;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+                try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                    assertThrows(IOException.class, () -> IOUtils.transfer(channel, target));
+                }
+            } finally {
+                Files.deleteIfExists(source.toPath());
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.codekutter.common.utils;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manual benchmark for the cost of log calls to a disabled level, run against
+ * the project's SLF4J binding (logback) with DEBUG turned off.
+ * Not run as part of the unit tests, run the main() method directly.
+ */
+public class LogUtilsBenchmark {
+    private static final int ITERATIONS = 1000000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        Logger logger = LoggerFactory.getLogger(LogUtilsBenchmark.class);
+        if (logger instanceof ch.qos.logback.classic.Logger) {
+            ((ch.qos.logback.classic.Logger) logger).setLevel(Level.INFO);
+        }
+        if (logger.isDebugEnabled()) {
+            throw new IllegalStateException(String.format("DEBUG must be disabled. [binding=%s]",
+                    LoggerFactory.getILoggerFactory().getClass().getCanonicalName()));
+        }
+        System.out.println(String.format("Logger binding. [factory=%s][logger=%s]",
+                LoggerFactory.getILoggerFactory().getClass().getCanonicalName(), logger.getClass().getCanonicalName()));
+        Payload payload = new Payload();
+        // Warm up.
+        for (int ii = 0; ii < ITERATIONS; ii++) {
+            LogUtils.debug(LogUtilsBenchmark.class, payload, logger);
+        }
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int ii = 0; ii < ITERATIONS; ii++) {
+                LogUtils.debug(LogUtilsBenchmark.class, payload, logger);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("Disabled level call cost. [run=%d][iterations=%d][ns/call=%f]",
+                    run, ITERATIONS, (double) elapsed / ITERATIONS));
+        }
+    }
+
+    public static class Payload {
+        public String getValue() {
+            return "value";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.utils;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogUtilsTest {
+    private static final AtomicInteger serialized = new AtomicInteger();
+    private static final AtomicInteger formatted = new AtomicInteger();
+
+    @Test
+    void disabledLevel() {
+        try {
+            Logger logger = NOPLogger.NOP_LOGGER;
+            Payload payload = new Payload();
+            Argument argument = new Argument();
+            for (int ii = 0; ii < 1000; ii++) {
+                LogUtils.debug(getClass(), payload, logger);
+                LogUtils.info(getClass(), String.valueOf(ii), logger);
+                LogUtils.error(getClass(), new Exception("Disabled level"), logger);
+            }
+            assertEquals(0, serialized.get());
+
+            AtomicInteger rendered = new AtomicInteger();
+            LogUtils.debug(getClass(), () -> String.format("Rendered [count=%d]", rendered.incrementAndGet()));
+            assertEquals(LogUtils.isDebugEnabled() ? 1 : 0, rendered.get());
+
+            LogUtils.debug(getClass(), "Argument [value={}]", argument);
+            assertEquals(LogUtils.isDebugEnabled() ? 1 : 0, formatted.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    public static class Argument {
+        @Override
+        public String toString() {
+            formatted.incrementAndGet();
+            return "argument";
+        }
+    }
+
+    public static class Payload {
+        public String getValue() {
+            serialized.incrementAndGet();
+            return "value";
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.common.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagedExecutorTest {
+    private static final int TASK_COUNT = 50;
+
+    @AfterAll
+    static void shutdown() {
+        ManagedExecutor.dispose();
+    }
+
+    @Test
+    void schedule() {
+        try {
+            ManagedExecutor executor = ManagedExecutor.get();
+            AtomicInteger runs = new AtomicInteger();
+            List<ManagedTask> tasks = new ArrayList<>();
+            for (int ii = 0; ii < TASK_COUNT; ii++) {
+                tasks.add(executor.schedule(String.format("task-%d", ii), runs::incrementAndGet, 0, 10));
+            }
+            Thread.sleep(200);
+            // Thread count is bound by the pool, not the number of tasks.
+            assertTrue(executor.threadCount() <= executor.poolSize());
+            for (ManagedTask task : tasks) {
+                task.cancel();
+                assertTrue(task.isDone());
+                assertTrue(task.runCount() > 0);
+            }
+            int count = runs.get();
+            assertTrue(count >= TASK_COUNT);
+            Thread.sleep(50);
+            assertEquals(count, runs.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void listeners() {
+        try {
+            Map<EThreadEvent, AtomicInteger> events = new ConcurrentHashMap<>();
+            IThreadListener listener = (event, thread, params) ->
+                    events.computeIfAbsent(event, e -> new AtomicInteger()).incrementAndGet();
+            Runner runner = new Runner() {
+                @Override
+                public void doRun() throws Exception {
+                    throw new Exception("Task error");
+                }
+            };
+            ManagedTask task = ManagedExecutor.get().schedule("error-task", runner, 0, 10, listener);
+            Thread.sleep(100);
+            task.cancel();
+            assertEquals(1, events.get(EThreadEvent.Start).get());
+            assertEquals(1, events.get(EThreadEvent.Stop).get());
+            assertTrue(events.get(EThreadEvent.Run).get() > 0);
+            assertEquals(events.get(EThreadEvent.Run).get(), events.get(EThreadEvent.Error).get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.codekutter.common.messaging;
 import com.codekutter.common.GlobalConstants;
 import com.codekutter.common.model.IKeyed;
 import com.codekutter.common.stores.AbstractConnection;
+import com.codekutter.common.stores.ConnectionException;
 import com.codekutter.common.stores.ConnectionManager;
 import com.codekutter.common.utils.ConfigUtils;
 import com.codekutter.common.utils.LogUtils;
@@ -29,20 +30,27 @@ import com.codekutter.zconfig.common.ConfigurationException;
 import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
 import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
 import javax.annotation.Nonnull;
+import javax.jms.JMSException;
 import javax.jms.Session;
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.security.Principal;
+import java.util.List;
 
 @Getter
 @Setter
 @Accessors(fluent = true)
 @SuppressWarnings("rawtypes")
 public abstract class AbstractExtendedSQSQueue<M extends IKeyed> extends AbstractJmsQueue<M> {
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile SQSBatchSender batchSender;
 
     /**
      * Configure this type instance.
@@ -74,6 +82,30 @@ public abstract class AbstractExtendedSQSQueue<M extends IKeyed> extends Abstrac
         }
     }
 
+    /**
+     * Send a batch of messages using SQS batch requests (SQS JMS sessions
+     * can't be transacted).
+     *
+     * @param messages - List of messages.
+     * @param user     - Calling user.
+     * @throws JMSException
+     */
+    @Override
+    public void sendBatch(@Nonnull List<M> messages, @Nonnull Principal user) throws JMSException {
+        if (batchSender == null) {
+            synchronized (this) {
+                if (batchSender == null) {
+                    try {
+                        batchSender = new SQSBatchSender(((ExtendedSQSConnection) connection()).sqsClient(), queue());
+                    } catch (ConnectionException ex) {
+                        throw new JMSException(ex.getLocalizedMessage());
+                    }
+                }
+            }
+        }
+        sendBatch(messages, user, batchSender);
+    }
+
     @Override
     public void close() throws IOException {
         super.close();
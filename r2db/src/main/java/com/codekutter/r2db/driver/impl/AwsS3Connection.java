@@ -45,6 +45,7 @@ import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigValueNode;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -53,12 +54,17 @@ import lombok.experimental.Accessors;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Getter
 @Setter
 @Accessors(fluent = true)
 public class AwsS3Connection extends AbstractConnection<AmazonS3> {
     public static final String DEFAULT_PROFILE = "default";
+    public static final long DEFAULT_TRANSFER_PART_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_TRANSFER_THRESHOLD = 32 * 1024 * 1024;
+    public static final int DEFAULT_TRANSFER_CONCURRENCY = 4;
 
     @ConfigAttribute
     private boolean useCredentials = true;
@@ -68,9 +74,27 @@ public class AwsS3Connection extends AbstractConnection<AmazonS3> {
     private String endpoint;
     @ConfigAttribute
     private String profile = DEFAULT_PROFILE;
+    /**
+     * Part size (in bytes) for multipart uploads and ranged downloads.
+     */
+    @ConfigValue
+    private long transferPartSize = DEFAULT_TRANSFER_PART_SIZE;
+    /**
+     * Object size (in bytes) above which parallel transfers are used.
+     */
+    @ConfigValue
+    private long transferThreshold = DEFAULT_TRANSFER_THRESHOLD;
+    @ConfigValue
+    private int transferConcurrency = DEFAULT_TRANSFER_CONCURRENCY;
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
     private AmazonS3 client = null;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ExecutorService transferExecutor = null;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private S3TransferHelper transfers = null;
 
     @Override
     public AmazonS3 connection() throws ConnectionException {
@@ -82,6 +106,27 @@ public class AwsS3Connection extends AbstractConnection<AmazonS3> {
         }
     }
 
+    /**
+     * Get the transfer helper for this connection, sharing
+     * a bounded pool of transfer threads.
+     *
+     * @return - Transfer Helper.
+     * @throws ConnectionException
+     */
+    public synchronized S3TransferHelper transfers() throws ConnectionException {
+        AmazonS3 client = connection();
+        if (transfers == null) {
+            if (transferPartSize < S3TransferHelper.MIN_PART_SIZE) {
+                LogUtils.warn(getClass(), String.format("Part size below S3 minimum, using minimum. [size=%d]", transferPartSize));
+                transferPartSize = S3TransferHelper.MIN_PART_SIZE;
+            }
+            transferExecutor = Executors.newFixedThreadPool(Math.max(transferConcurrency, 1),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat(String.format("%s-transfer-%%d", name())).build());
+            transfers = new S3TransferHelper(client, transferExecutor, transferPartSize, transferThreshold);
+        }
+        return transfers;
+    }
+
     @Override
     public boolean hasTransactionSupport() {
         return false;
@@ -208,6 +253,13 @@ public class AwsS3Connection extends AbstractConnection<AmazonS3> {
         if (state().isOpen()) {
             state().setState(EConnectionState.Closed);
         }
+        synchronized (this) {
+            if (transferExecutor != null) {
+                transferExecutor.shutdownNow();
+                transferExecutor = null;
+            }
+            transfers = null;
+        }
         client = null;
     }
 }
@@ -34,14 +34,11 @@ import com.codekutter.r2db.driver.model.S3FileKey;
 import com.codekutter.zconfig.common.ConfigurationException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.http.HttpStatus;
 
 import javax.annotation.Nonnull;
 import java.io.File;
@@ -50,7 +47,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @Getter
 @Accessors(fluent = true)
@@ -58,7 +55,7 @@ import java.util.concurrent.TimeUnit;
 public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
     private File workDirectory;
     private String bucket;
-    private Cache<S3FileKey, S3FileEntity> cache;
+    private S3LocalCache cache;
 
     @Override
     public <S, T> void move(S source, T target, Context context) throws DataStoreException {
@@ -180,22 +177,8 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
             }
 
             if (config.isUseCache()) {
-                RemovalListener<S3FileKey, S3FileEntity> listener = new RemovalListener<S3FileKey, S3FileEntity>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<S3FileKey, S3FileEntity> notification) {
-                        S3FileEntity entity = notification.getValue();
-                        if (entity.exists()) {
-                            if (!entity.delete()) {
-                                LogUtils.warn(getClass(), String.format("Failed to remove local file. [path=%s]", entity.getAbsolutePath()));
-                            }
-                        }
-                    }
-                };
-                cache = CacheBuilder.newBuilder()
-                        .maximumSize(config.getMaxCacheSize())
-                        .expireAfterAccess(config.getCacheExpiryWindow(), TimeUnit.MILLISECONDS)
-                        .removalListener(listener)
-                        .build();
+                cache = new S3LocalCache(config.getName(), config.getMaxCacheBytes(),
+                        config.getMaxCacheSize(), config.getCacheExpiryWindow());
             }
             if (config.getMaxResults() > 0) {
                 maxResults(config.getMaxResults());
@@ -215,14 +198,11 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
             if (fe.withClient(connection().connection()).remoteExists()) {
                 throw new DataStoreException(String.format("Duplicate file: Remote file with key already exists. [key=%s]", fe.getKey().key()));
             }
-            String key = fe.copyToRemote();
+            String key = upload(fe);
             if (Strings.isNullOrEmpty(key)) {
                 throw new DataStoreException(String.format("Error uploading file to S3. [key=%s]", entity.getKey().stringKey()));
             }
             fe.setUpdateTimestamp(System.currentTimeMillis());
-            if (cache != null) {
-                cache.put(fe.getKey(), fe);
-            }
         } catch (Exception ex) {
             throw new DataStoreException(ex);
         }
@@ -241,13 +221,10 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
                 throw new DataStoreException(String.format("Specified file doesn't exist. [key=%s]", entity.getKey().stringKey()));
             }
             fe.setUpdateTimestamp(System.currentTimeMillis());
-            String key = fe.copyToRemote();
+            String key = upload(fe);
             if (Strings.isNullOrEmpty(key)) {
                 throw new DataStoreException(String.format("Error uploading file to S3. [key=%s]", entity.getKey().stringKey()));
             }
-            if (cache != null) {
-                cache.put(fe.getKey(), fe);
-            }
         } catch (Exception ex) {
             throw new DataStoreException(ex);
         }
@@ -293,34 +270,37 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
         Preconditions.checkArgument(ReflectionUtils.isSuperType(S3FileEntity.class, type));
         try {
             S3FileKey fk = (S3FileKey) key;
-            if (cache != null) {
-                S3FileEntity entity = cache.getIfPresent(key);
-                if (entity != null) {
-                    return (E) entity;
+            boolean stream = (context instanceof S3StoreContext && ((S3StoreContext) context).stream());
+            AmazonS3 client = connection().connection();
+            ObjectMetadata meta = null;
+            try {
+                meta = client.getObjectMetadata(fk.bucket(), fk.key());
+            } catch (AmazonS3Exception ex) {
+                if (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                    return null;
                 }
+                throw ex;
             }
-            S3Object obj = connection().connection().getObject(fk.bucket(), fk.key());
-            if (obj != null) {
-                try {
-                    String lfname = getLocalFileName(fk);
-                    S3FileEntity entity = new S3FileEntity(fk.bucket(), fk.key(), lfname).
-                            withClient(connection().connection());
-                    ObjectMetadata meta = obj.getObjectMetadata();
-                    entity.setUpdateTimestamp(meta.getLastModified().getTime());
-
-                    File lf = entity.copyToLocal();
-                    if (!lf.exists()) {
-                        throw new DataStoreException(String.format("Local file not found. [path=%s]", lf.getAbsolutePath()));
-                    }
-                    if (cache != null) {
-                        cache.put(entity.getKey(), entity);
-                    }
-                    return (E) entity;
-                } finally {
-                    obj.close();
-                }
+            String lfname = getLocalFileName(fk);
+            S3FileEntity entity = new S3FileEntity(fk.bucket(), fk.key(), lfname).
+                    withClient(client).withMetadata(meta);
+            if (stream) {
+                return (E) entity;
             }
-            return null;
+            if (cache != null && cache.get(fk, meta.getETag()) != null) {
+                return (E) entity;
+            }
+            if (entity.exists() && !entity.delete()) {
+                throw new DataStoreException(String.format("Error deleting existing file. [path=%s]", entity.getAbsolutePath()));
+            }
+            ((AwsS3Connection) connection()).transfers().download(fk.bucket(), fk.key(), meta, entity);
+            if (!entity.exists()) {
+                throw new DataStoreException(String.format("Local file not found. [path=%s]", entity.getAbsolutePath()));
+            }
+            if (cache != null) {
+                cache.put(fk, entity, meta.getETag());
+            }
+            return (E) entity;
         } catch (Throwable t) {
             throw new DataStoreException(t);
         }
@@ -337,6 +317,26 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
         return doSearch(bucket, query, offset, maxResults, type, context);
     }
 
+    /**
+     * Search for objects with the specified key prefix.
+     * <p>
+     * If the context carries a continuation key (returned as the scroll ID of the previous
+     * result page) the listing resumes from it with a single request and the offset is ignored.
+     * Otherwise the offset is skipped using key-only list requests, without loading entities.
+     * The scroll ID of the returned result is the continuation key for the next page (NULL if
+     * there are no more results).
+     *
+     * @param bucket - S3 Bucket.
+     * @param query - Key prefix.
+     * @param offset - Offset to start from (ignored if a continuation key is specified).
+     * @param maxResults - Max results to return.
+     * @param type - Entity type.
+     * @param context - Context handle.
+     * @param <E> - Entity type.
+     * @return - Search result or NULL if no objects found.
+     * @throws DataStoreException
+     */
+    @SuppressWarnings("unchecked")
     protected <E extends IEntity> BaseSearchResult<E> doSearch(@Nonnull String bucket,
                                                                @Nonnull String query,
                                                                int offset,
@@ -348,60 +348,78 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
             if (maxResults <= 0) {
                 maxResults = this.maxResults();
             }
-            S3StoreContext ctx = (S3StoreContext) context;
+            S3StoreContext ctx = (context instanceof S3StoreContext ? (S3StoreContext) context : null);
 
-            AmazonS3 client = connection().connection();
-            ListObjectsV2Request request = new ListObjectsV2Request();
-            request.setBucketName(bucket);
-            if (!Strings.isNullOrEmpty(query)) {
-                request.setPrefix(query);
-            }
-            request.setMaxKeys(maxResults > 0 ? maxResults + offset : maxResults() + offset);
-            if (ctx != null) {
-                String ckey = ctx.continuationKey();
-                if (!Strings.isNullOrEmpty(ckey)) {
-                    request.setContinuationToken(ckey);
+            S3ObjectCursor cursor = new S3ObjectCursor(connection().connection(), bucket, query, maxResults);
+            String ckey = (ctx != null ? ctx.continuationKey() : null);
+            if (!Strings.isNullOrEmpty(ckey)) {
+                cursor.withContinuationToken(ckey);
+                offset = 0;
+            } else {
+                int skip = offset;
+                while (skip > 0 && !cursor.done()) {
+                    skip -= cursor.nextPage(Math.min(skip, S3ObjectCursor.MAX_PAGE_SIZE)).size();
                 }
             }
-            ListObjectsV2Result result = client.listObjectsV2(request);
-            if (result != null) {
-                List<S3ObjectSummary> objs = result.getObjectSummaries();
-                if (objs != null && !objs.isEmpty()) {
-                    List<S3FileEntity> array = new ArrayList<>();
-                    int count = 0;
-                    for (S3ObjectSummary obj : objs) {
-                        if (offset > 0 && count < offset) {
-                            count++;
-                            continue;
-                        }
-
-                        S3FileKey key = new S3FileKey();
-                        key.bucket(obj.getBucketName());
-                        key.key(obj.getKey());
-
-                        S3FileEntity entity = findEntity(key, S3FileEntity.class, null);
-                        if (entity == null) {
-                            throw new DataStoreException(String.format("invalid key : [key=%s]", key.key()));
-                        }
-                        array.add(entity);
-                        count++;
-                        if ((count - offset) > maxResults) break;
+            List<S3FileEntity> array = new ArrayList<>();
+            while (array.size() < maxResults && !cursor.done()) {
+                List<S3ObjectSummary> objs = cursor.nextPage(maxResults - array.size());
+                for (S3ObjectSummary obj : objs) {
+                    S3FileKey key = new S3FileKey(obj.getBucketName(), obj.getKey());
+                    S3FileEntity entity = findEntity(key, S3FileEntity.class, context);
+                    if (entity == null) {
+                        throw new DataStoreException(String.format("invalid key : [key=%s]", key.key()));
                     }
-                    EntitySearchResult<S3FileEntity> er = new EntitySearchResult<>(type);
-                    er.setOffset(offset);
-                    er.setQuery(query);
-                    er.setCount(array.size());
-                    er.setEntities(array);
-
-                    return (BaseSearchResult<E>) er;
+                    array.add(entity);
                 }
             }
+            if (!array.isEmpty()) {
+                EntitySearchResult<S3FileEntity> er = new EntitySearchResult<>(type);
+                er.setOffset(offset);
+                er.setQuery(query);
+                er.setCount(array.size());
+                er.setEntities(array);
+                er.setScrollId(cursor.continuationToken());
+
+                return (BaseSearchResult<E>) er;
+            }
             return null;
         } catch (Throwable t) {
             throw new DataStoreException(t);
         }
     }
 
+    /**
+     * Stream all the entities with the specified key prefix. Objects are listed
+     * page by page as the stream is consumed (one list request per page).
+     *
+     * @param prefix - Key prefix.
+     * @param pageSize - Number of keys fetched per page.
+     * @param context - Context handle (use S3StoreContext.stream(true) to skip downloads).
+     * @return - Entity stream.
+     * @throws DataStoreException
+     */
+    public Stream<S3FileEntity> streamSearch(String prefix, int pageSize, Context context) throws DataStoreException {
+        if (pageSize <= 0) pageSize = maxResults();
+        S3ObjectCursor cursor;
+        try {
+            cursor = new S3ObjectCursor(connection().connection(), bucket, prefix, pageSize);
+        } catch (ConnectionException ex) {
+            throw new DataStoreException(ex);
+        }
+        return cursor.stream().map(obj -> {
+            try {
+                S3FileEntity entity = findEntity(new S3FileKey(obj.getBucketName(), obj.getKey()), S3FileEntity.class, context);
+                if (entity == null) {
+                    throw new DataStoreException(String.format("Object not found. [key=%s]", obj.getKey()));
+                }
+                return entity;
+            } catch (DataStoreException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
     @Override
     public <E extends IEntity> BaseSearchResult<E> doSearch(@Nonnull String query, int offset, int maxResults,
                                                             Map<String, Object> parameters,
@@ -421,6 +439,15 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
         return ctx;
     }
 
+    private String upload(S3FileEntity entity) throws Exception {
+        S3FileKey key = entity.getKey();
+        String etag = ((AwsS3Connection) connection()).transfers().upload(key.bucket(), key.key(), entity);
+        if (cache != null) {
+            cache.refresh(key, entity, etag);
+        }
+        return entity.getUrl().toString();
+    }
+
     private String getLocalFileName(S3FileKey key) throws Exception {
         String fname = FilenameUtils.getName(key.key());
         if (Strings.isNullOrEmpty(fname)) {
@@ -435,6 +462,9 @@ public class AwsS3DataStore extends AbstractDirectoryStore<AmazonS3> {
 
     @Override
     public void close() throws IOException {
+        if (cache != null) {
+            cache.clear();
+        }
         FileUtils.deleteDirectory(workDirectory);
         super.close();
     }
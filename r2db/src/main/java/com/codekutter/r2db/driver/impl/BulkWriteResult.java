@@ -0,0 +1,84 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result of a multi-entity bulk write, with the failure
+ * reason for each document that could not be written.
+ */
+@Getter
+@Accessors(fluent = true)
+public class BulkWriteResult {
+    private int requested = 0;
+    private int succeeded = 0;
+    private int batches = 0;
+    /**
+     * Failed documents: Index/Document ID -> Failure reason.
+     */
+    private final Map<String, String> errors = new HashMap<>();
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    void requested(int count) {
+        requested += count;
+    }
+
+    void batchExecuted() {
+        batches++;
+    }
+
+    void success() {
+        succeeded++;
+    }
+
+    /**
+     * Check if the write failed for the specified document.
+     *
+     * @param index - Index name.
+     * @param id - Document ID.
+     * @return - Has failed?
+     */
+    public boolean failed(@Nonnull String index, @Nonnull String id) {
+        return errors.containsKey(key(index, id));
+    }
+
+    void error(@Nonnull String index, @Nonnull String id, String reason) {
+        errors.put(key(index, id), reason);
+    }
+
+    /**
+     * Get the error key for a document, document IDs are only
+     * unique within an index.
+     *
+     * @param index - Index name.
+     * @param id - Document ID.
+     * @return - Error key (index/id).
+     */
+    public static String key(@Nonnull String index, @Nonnull String id) {
+        return String.format("%s/%s", index, id);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.model.IEntity;
+import com.codekutter.common.stores.BaseSearchResult;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search result returning the raw document hits (source fields,
+ * score and highlights) without mapping them to entities.
+ */
+@Getter
+@Setter
+@SuppressWarnings("rawtypes")
+public class DocumentSearchResult<T extends IEntity> extends BaseSearchResult<T> {
+    private float maxScore;
+    private List<DocumentHit> hits = new ArrayList<>();
+
+    public DocumentSearchResult(@Nonnull Class<? extends IEntity> type) {
+        super(type);
+    }
+
+    public void add(@Nonnull DocumentHit hit) {
+        hits.add(hit);
+    }
+
+    @Getter
+    @Setter
+    public static class DocumentHit {
+        private String index;
+        private String id;
+        private float score;
+        private Map<String, Object> source;
+        private Map<String, List<String>> highlights = new HashMap<>();
+
+        public DocumentHit() {
+        }
+
+        public DocumentHit(@Nonnull String index, @Nonnull String id, float score) {
+            this.index = index;
+            this.id = id;
+            this.score = score;
+        }
+
+        public Object field(@Nonnull String name) {
+            if (source != null) return source.get(name);
+            return null;
+        }
+    }
+}
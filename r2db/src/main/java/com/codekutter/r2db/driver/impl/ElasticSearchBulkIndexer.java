@@ -0,0 +1,305 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.utils.KeyValuePair;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.ManagedExecutor;
+import com.codekutter.common.utils.Monitoring;
+import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Timer;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.*;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous bulk indexing pipeline shared by all data stores
+ * using the same Elastic Search connection.
+ * <p>
+ * Write requests are buffered and flushed either when the batch size
+ * (count or bytes) is reached or when the flush interval elapses.
+ * Bulk requests rejected by the cluster are retried with an exponential back-off.
+ * Individual items rejected by the cluster (429/es_rejected_execution) are
+ * re-queued after a back-off delay, up to the max retries.
+ */
+public class ElasticSearchBulkIndexer implements Closeable {
+    @Getter
+    @Accessors(fluent = true)
+    private final String name;
+    private final long closeTimeout;
+    private final int maxRetries;
+    private final long retryDelay;
+    /**
+     * Number of write requests submitted but not yet acknowledged.
+     */
+    private final AtomicLong pendingCount = new AtomicLong();
+    /**
+     * Time (in millis) taken by the last flushed batch from being queued
+     * to being acknowledged by the cluster.
+     */
+    @Getter
+    @Accessors(fluent = true)
+    private volatile long indexLag = 0;
+    private final BulkProcessor processor;
+    private final AtomicLong queuedTimestamp = new AtomicLong();
+    private final Map<Long, Long> executions = new ConcurrentHashMap<>();
+    /**
+     * Retry attempts of re-queued item requests.
+     */
+    private final Map<DocWriteRequest<?>, Integer> retries = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Timer lagTimer;
+    private final Id failedCounter;
+    private final Id errorCounter;
+    private final Id retryCounter;
+    private final Id requeueCounter;
+
+    public ElasticSearchBulkIndexer(@Nonnull ElasticSearchConnection connection) {
+        Preconditions.checkArgument(connection.state().isOpen());
+        this.name = connection.name();
+        this.closeTimeout = connection.bulkCloseTimeout();
+        this.maxRetries = connection.bulkMaxRetries();
+        this.retryDelay = connection.bulkRetryDelay();
+
+        RestHighLevelClient client = connection.connection();
+        BulkProcessor.Builder builder = BulkProcessor.builder(
+                (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+                new Listener());
+        builder.setBulkActions(connection.bulkBatchSize());
+        if (connection.bulkBatchBytes() > 0) {
+            builder.setBulkSize(new ByteSizeValue(connection.bulkBatchBytes(), ByteSizeUnit.BYTES));
+        }
+        if (connection.bulkFlushInterval() > 0) {
+            builder.setFlushInterval(TimeValue.timeValueMillis(connection.bulkFlushInterval()));
+        }
+        builder.setConcurrentRequests(connection.bulkConcurrency());
+        if (connection.bulkMaxRetries() > 0) {
+            builder.setBackoffPolicy(BackoffPolicy.exponentialBackoff(
+                    TimeValue.timeValueMillis(connection.bulkRetryDelay()), connection.bulkMaxRetries()));
+        } else {
+            builder.setBackoffPolicy(BackoffPolicy.noBackoff());
+        }
+        processor = builder.build();
+
+        lagTimer = Monitoring.addTimer(String.format(Metrics.METRIC_LATENCY_INDEX_LAG, getClass().getCanonicalName(), name));
+        failedCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_FAILED, getClass().getCanonicalName(), name));
+        errorCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_ERROR, getClass().getCanonicalName(), name));
+        retryCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_RETRY, getClass().getCanonicalName(), name));
+        requeueCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_REQUEUED, getClass().getCanonicalName(), name));
+        Monitoring.addGauge(String.format(Metrics.METRIC_GAUGE_PENDING, getClass().getCanonicalName(), name), this, "pending");
+        Monitoring.addGauge(String.format(Metrics.METRIC_GAUGE_INDEX_LAG, getClass().getCanonicalName(), name), this, "indexLag");
+    }
+
+    /**
+     * Queue the write requests to be indexed.
+     *
+     * @param requests - List of write requests.
+     */
+    public void add(@Nonnull List<DocWriteRequest<?>> requests) {
+        if (requests.isEmpty()) return;
+        queuedTimestamp.compareAndSet(0, System.currentTimeMillis());
+        pendingCount.addAndGet(requests.size());
+        for (DocWriteRequest<?> request : requests) {
+            processor.add(request);
+        }
+    }
+
+    /**
+     * Queue write requests that failed to be indexed synchronously,
+     * to be retried by the bulk pipeline.
+     *
+     * @param requests - List of failed write requests.
+     */
+    public void requeue(@Nonnull List<DocWriteRequest<?>> requests) {
+        if (requests.isEmpty()) return;
+        increment(requeueCounter, requests.size());
+        add(requests);
+    }
+
+    /**
+     * Get the number of write requests pending acknowledgement.
+     *
+     * @return - Pending request count.
+     */
+    public long pending() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Force flush the buffered requests.
+     */
+    public void flush() {
+        processor.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!processor.awaitClose(closeTimeout, TimeUnit.MILLISECONDS)) {
+                LogUtils.warn(getClass(), String.format("Timeout waiting for pending index requests. [name=%s][pending=%d]",
+                        name, pendingCount.get()));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void increment(Id counter, int count) {
+        for (int ii = 0; ii < count; ii++) {
+            Monitoring.increment(counter.name(), (KeyValuePair<String, String>[]) null);
+        }
+    }
+
+    /**
+     * Re-queue the rejected item requests after the back-off delay
+     * (doubled on every attempt).
+     *
+     * @param requests - Rejected requests.
+     * @param attempt  - Retry attempt.
+     */
+    private void retry(List<DocWriteRequest<?>> requests, int attempt) {
+        pendingCount.addAndGet(requests.size());
+        increment(retryCounter, requests.size());
+        long delay = retryDelay * (1L << Math.min(attempt - 1, 16));
+        ManagedExecutor.get().submit(String.format("%s::%s::retry", getClass().getCanonicalName(), name), () -> {
+            try {
+                queuedTimestamp.compareAndSet(0, System.currentTimeMillis());
+                for (DocWriteRequest<?> request : requests) {
+                    processor.add(request);
+                }
+            } catch (Exception ex) {
+                pendingCount.addAndGet(-requests.size());
+                for (DocWriteRequest<?> request : requests) {
+                    retries.remove(request);
+                }
+                increment(failedCounter, requests.size());
+                LogUtils.error(getClass(), String.format("Error re-queuing index requests, requests dropped. [name=%s][count=%d]",
+                        name, requests.size()));
+                LogUtils.error(getClass(), ex);
+            }
+        }, delay);
+    }
+
+    private static boolean retryable(BulkItemResponse item) {
+        return item.status() == RestStatus.TOO_MANY_REQUESTS
+                || ExceptionsHelper.unwrapCause(item.getFailure().getCause()) instanceof EsRejectedExecutionException;
+    }
+
+    private void completed(long executionId, int count) {
+        pendingCount.addAndGet(-count);
+        Long queued = executions.remove(executionId);
+        if (queued != null) {
+            indexLag = System.currentTimeMillis() - queued;
+            lagTimer.record(indexLag, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final class Listener implements BulkProcessor.Listener {
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            long queued = queuedTimestamp.getAndSet(0);
+            if (queued <= 0) {
+                queued = System.currentTimeMillis();
+            }
+            executions.put(executionId, queued);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            completed(executionId, request.numberOfActions());
+            Map<Integer, List<DocWriteRequest<?>>> requeue = new HashMap<>();
+            Set<DocWriteRequest<?>> requeued = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (response.hasFailures()) {
+                int failed = 0;
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed()) {
+                        DocWriteRequest<?> wr = request.requests().get(item.getItemId());
+                        if (retryable(item)) {
+                            Integer attempts = retries.get(wr);
+                            int attempt = (attempts == null ? 1 : attempts + 1);
+                            if (attempt <= maxRetries) {
+                                retries.put(wr, attempt);
+                                requeue.computeIfAbsent(attempt, (k) -> new ArrayList<>()).add(wr);
+                                requeued.add(wr);
+                                continue;
+                            }
+                        }
+                        failed++;
+                        LogUtils.error(getClass(), String.format("Index request failed. [index=%s][id=%s][operation=%s][error=%s]",
+                                item.getIndex(), item.getId(), item.getOpType().getLowercase(), item.getFailureMessage()));
+                    }
+                }
+                increment(failedCounter, failed);
+            }
+            if (!retries.isEmpty()) {
+                for (DocWriteRequest<?> wr : request.requests()) {
+                    if (!requeued.contains(wr)) {
+                        retries.remove(wr);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, List<DocWriteRequest<?>>> entry : requeue.entrySet()) {
+                retry(entry.getValue(), entry.getKey());
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            completed(executionId, request.numberOfActions());
+            LogUtils.error(getClass(), String.format("Bulk index request failed. [name=%s][count=%d]",
+                    name, request.numberOfActions()));
+            LogUtils.error(getClass(), failure);
+            increment(errorCounter, request.numberOfActions());
+        }
+    }
+
+    private static final class Metrics {
+        private static final String METRIC_LATENCY_INDEX_LAG = String.format("%s.%s.INDEX.LAG", "%s", "%s");
+        private static final String METRIC_GAUGE_INDEX_LAG = String.format("%s.%s.INDEX.LAG.LAST", "%s", "%s");
+        private static final String METRIC_GAUGE_PENDING = String.format("%s.%s.INDEX.PENDING", "%s", "%s");
+        private static final String METRIC_COUNTER_FAILED = String.format("%s.%s.INDEX.ERRORS.ITEM", "%s", "%s");
+        private static final String METRIC_COUNTER_ERROR = String.format("%s.%s.INDEX.ERRORS.BULK", "%s", "%s");
+        private static final String METRIC_COUNTER_RETRY = String.format("%s.%s.INDEX.RETRIES", "%s", "%s");
+        private static final String METRIC_COUNTER_REQUEUED = String.format("%s.%s.INDEX.ERRORS.SYNC", "%s", "%s");
+    }
+}
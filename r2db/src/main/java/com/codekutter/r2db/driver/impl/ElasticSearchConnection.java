@@ -42,11 +42,44 @@ import java.util.List;
 @Setter
 @Accessors(fluent = true)
 public class ElasticSearchConnection extends SearchableConnection<RestHighLevelClient> {
+    private static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+    private static final long DEFAULT_BULK_BATCH_BYTES = 5 * 1024 * 1024;
+    private static final long DEFAULT_BULK_FLUSH_INTERVAL = 1000;
+    private static final int DEFAULT_BULK_CONCURRENCY = 1;
+    private static final int DEFAULT_BULK_MAX_RETRIES = 3;
+    private static final long DEFAULT_BULK_RETRY_DELAY = 100;
+    private static final long DEFAULT_BULK_CLOSE_TIMEOUT = 30 * 1000;
+
     @ConfigValue(name = "hosts", required = true, parser = StringListParser.class)
     private List<String> hosts;
+    /**
+     * Index updates asynchronously using a bulk pipeline (index updates are
+     * not visible/checked when the commit returns). Indexed synchronously by default,
+     * in which case the commit latency includes the index update: enable to keep
+     * commits independent of the search cluster.
+     */
+    @ConfigValue(name = "bulk.async")
+    private boolean bulkAsync = false;
+    @ConfigValue(name = "bulk.batchSize")
+    private int bulkBatchSize = DEFAULT_BULK_BATCH_SIZE;
+    @ConfigValue(name = "bulk.batchBytes")
+    private long bulkBatchBytes = DEFAULT_BULK_BATCH_BYTES;
+    @ConfigValue(name = "bulk.flushInterval")
+    private long bulkFlushInterval = DEFAULT_BULK_FLUSH_INTERVAL;
+    @ConfigValue(name = "bulk.concurrency")
+    private int bulkConcurrency = DEFAULT_BULK_CONCURRENCY;
+    @ConfigValue(name = "bulk.maxRetries")
+    private int bulkMaxRetries = DEFAULT_BULK_MAX_RETRIES;
+    @ConfigValue(name = "bulk.retryDelay")
+    private long bulkRetryDelay = DEFAULT_BULK_RETRY_DELAY;
+    @ConfigValue(name = "bulk.closeTimeout")
+    private long bulkCloseTimeout = DEFAULT_BULK_CLOSE_TIMEOUT;
     @Setter(AccessLevel.NONE)
     @Getter(AccessLevel.NONE)
     private RestHighLevelClient client = null;
+    @Setter(AccessLevel.NONE)
+    @Getter(AccessLevel.NONE)
+    private ElasticSearchBulkIndexer bulkIndexer = null;
 
     @Override
     public RestHighLevelClient connection() {
@@ -54,6 +87,20 @@ public class ElasticSearchConnection extends SearchableConnection<RestHighLevelC
         return client;
     }
 
+    /**
+     * Get the shared bulk indexer for this connection,
+     * created on first use.
+     *
+     * @return - Bulk Indexer.
+     */
+    public synchronized ElasticSearchBulkIndexer bulkIndexer() {
+        Preconditions.checkState(state().isOpen());
+        if (bulkIndexer == null) {
+            bulkIndexer = new ElasticSearchBulkIndexer(this);
+        }
+        return bulkIndexer;
+    }
+
     public RestClient restClient() {
         Preconditions.checkState(state().isOpen());
         return client.getLowLevelClient();
@@ -109,6 +156,12 @@ public class ElasticSearchConnection extends SearchableConnection<RestHighLevelC
     @Override
     public void close() throws IOException {
         if (client != null && state().isOpen()) {
+            synchronized (this) {
+                if (bulkIndexer != null) {
+                    bulkIndexer.close();
+                    bulkIndexer = null;
+                }
+            }
             state().setState(EConnectionState.Closed);
             client = null;
         }
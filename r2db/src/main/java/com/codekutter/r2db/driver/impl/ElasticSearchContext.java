@@ -18,6 +18,7 @@
 package com.codekutter.r2db.driver.impl;
 
 import com.codekutter.common.Context;
+import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.common.unit.Fuzziness;
 import org.elasticsearch.search.sort.SortBuilder;
 
@@ -30,6 +31,10 @@ public class ElasticSearchContext extends Context {
     public static final String CONTEXT_ES_SCROLL = "context.es.scroll";
     public static final String CONTEXT_ES_FUZZINESS = "context.es.fuzziness";
     public static final String CONTEXT_ES_SORT = "context.es.sort";
+    public static final String CONTEXT_ES_INCLUDES = "context.es.source.includes";
+    public static final String CONTEXT_ES_EXCLUDES = "context.es.source.excludes";
+    public static final String CONTEXT_ES_HIGHLIGHT = "context.es.highlight";
+    public static final String CONTEXT_ES_REFRESH = "context.es.refresh";
 
     public ElasticSearchContext doScroll(boolean scroll) {
         setParam(CONTEXT_ES_SCROLL, scroll);
@@ -71,4 +76,45 @@ public class ElasticSearchContext extends Context {
     public List<SortBuilder<?>> sort() {
         return (List<SortBuilder<?>>) getParam(CONTEXT_ES_SORT);
     }
+
+    public ElasticSearchContext includes(@Nonnull String... fields) {
+        setParam(CONTEXT_ES_INCLUDES, fields);
+        return this;
+    }
+
+    public String[] includes() {
+        return (String[]) getParam(CONTEXT_ES_INCLUDES);
+    }
+
+    public ElasticSearchContext excludes(@Nonnull String... fields) {
+        setParam(CONTEXT_ES_EXCLUDES, fields);
+        return this;
+    }
+
+    public String[] excludes() {
+        return (String[]) getParam(CONTEXT_ES_EXCLUDES);
+    }
+
+    public ElasticSearchContext highlight(@Nonnull String field) {
+        List<String> fields = (List<String>) getParam(CONTEXT_ES_HIGHLIGHT);
+        if (fields == null) {
+            fields = new ArrayList<>();
+            setParam(CONTEXT_ES_HIGHLIGHT, fields);
+        }
+        fields.add(field);
+        return this;
+    }
+
+    public List<String> highlight() {
+        return (List<String>) getParam(CONTEXT_ES_HIGHLIGHT);
+    }
+
+    public ElasticSearchContext refreshPolicy(@Nonnull WriteRequest.RefreshPolicy policy) {
+        setParam(CONTEXT_ES_REFRESH, policy);
+        return this;
+    }
+
+    public WriteRequest.RefreshPolicy refreshPolicy() {
+        return (WriteRequest.RefreshPolicy) getParam(CONTEXT_ES_REFRESH);
+    }
 }
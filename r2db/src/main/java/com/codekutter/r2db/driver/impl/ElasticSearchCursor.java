@@ -0,0 +1,165 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.stores.DataStoreException;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily evaluated iterator over a search result, paged using search_after.
+ * <p>
+ * Pages are fetched on demand and only the current page is held in memory.
+ * No search context is kept open on the cluster, so slow consumers do not time out.
+ * A unique tiebreaker field is appended to the sort to make the paging deterministic,
+ * this must be a keyword field with doc values (sorting on _id loads field data).
+ *
+ * @param <T> - Result type the hits are mapped to.
+ */
+@Getter
+@Accessors(fluent = true)
+public class ElasticSearchCursor<T> implements Iterator<T> {
+    private final RestHighLevelClient client;
+    private final String index;
+    private final QueryBuilder query;
+    private final int pageSize;
+    private final Function<SearchHit, T> mapper;
+    private final List<SortBuilder<?>> sort = new ArrayList<>();
+    private final String tiebreaker;
+    private long fetched = 0;
+    private int pages = 0;
+    private Object[] searchAfter = null;
+    private SearchHit[] page = null;
+    private int position = 0;
+    private boolean done = false;
+
+    public ElasticSearchCursor(@Nonnull RestHighLevelClient client,
+                               @Nonnull String index,
+                               @Nonnull QueryBuilder query,
+                               int pageSize,
+                               @Nonnull String tiebreaker,
+                               @Nonnull Function<SearchHit, T> mapper) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(index));
+        Preconditions.checkArgument(pageSize > 0);
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(tiebreaker));
+        this.client = client;
+        this.index = index;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.tiebreaker = tiebreaker;
+        this.mapper = mapper;
+    }
+
+    public ElasticSearchCursor<T> withSort(List<SortBuilder<?>> sort) {
+        Preconditions.checkState(pages == 0);
+        if (sort != null) {
+            this.sort.addAll(sort);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page != null && position < page.length) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        fetch();
+        return page != null && position < page.length;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SearchHit hit = page[position++];
+        return mapper.apply(hit);
+    }
+
+    /**
+     * Get a sequential stream over the remaining results.
+     *
+     * @return - Result stream.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private void fetch() {
+        try {
+            SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+            sourceBuilder.size(pageSize);
+            sourceBuilder.query(query);
+            for (SortBuilder<?> sortBuilder : sort) {
+                sourceBuilder.sort(sortBuilder);
+            }
+            sourceBuilder.sort(SortBuilders.fieldSort(tiebreaker).order(SortOrder.ASC));
+            sourceBuilder.trackTotalHits(false);
+            if (searchAfter != null) {
+                sourceBuilder.searchAfter(searchAfter);
+            }
+            SearchRequest request = new SearchRequest(index);
+            request.source(sourceBuilder);
+
+            SearchResponse response = client.search(request, RequestOptions.DEFAULT);
+            RestStatus status = response.status();
+            if (status != RestStatus.OK && status != RestStatus.NOT_FOUND && status != RestStatus.FOUND) {
+                throw new DataStoreException(String.format("Search failed. [status=%s][index=%s]", status.name(), index));
+            }
+            pages++;
+            position = 0;
+            page = response.getHits() != null ? response.getHits().getHits() : null;
+            if (page == null || page.length == 0) {
+                page = null;
+                done = true;
+                return;
+            }
+            fetched += page.length;
+            searchAfter = page[page.length - 1].getSortValues();
+            if (page.length < pageSize) {
+                done = true;
+            }
+        } catch (DataStoreException ex) {
+            throw new RuntimeException(ex);
+        } catch (Exception ex) {
+            throw new RuntimeException(new DataStoreException(ex));
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.codekutter.r2db.driver.impl;
 
 import com.codekutter.common.Context;
 import com.codekutter.common.model.DocumentEntity;
+import com.codekutter.common.model.EAuditType;
 import com.codekutter.common.model.IEntity;
 import com.codekutter.common.model.IKey;
 import com.codekutter.common.stores.*;
@@ -31,15 +32,20 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.apache.lucene.search.Query;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
 import org.elasticsearch.search.sort.SortBuilder;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @SuppressWarnings("rawtypes")
 public class ElasticSearchDataStore extends AbstractDataStore<RestHighLevelClient> implements ISearchable {
@@ -94,6 +100,90 @@ public class ElasticSearchDataStore extends AbstractDataStore<RestHighLevelClien
         }
     }
 
+    /**
+     * Index the specified entities using bulk requests. Records the create metrics
+     * and writes the audit records for the indexed entities.
+     *
+     * @param entities - Entities to index.
+     * @param type - Entity Type.
+     * @param context - Context handle (refresh policy, audit context).
+     * @param user - User principal.
+     * @param <E> - Entity Type.
+     * @return - Bulk Write result, with the per-document failures.
+     * @throws DataStoreException
+     */
+    public <E extends IEntity> BulkWriteResult createEntities(@Nonnull List<E> entities,
+                                                              @Nonnull Class<? extends E> type,
+                                                              Context context,
+                                                              @Nonnull Principal user) throws DataStoreException {
+        return bulkWrite(DocWriteRequest.OpType.INDEX, EAuditType.Create, entities, type, context, user);
+    }
+
+    /**
+     * Update the specified entities using bulk requests. Records the update metrics
+     * and writes the audit records for the updated entities.
+     *
+     * @param entities - Entities to update.
+     * @param type - Entity Type.
+     * @param context - Context handle (refresh policy, audit context).
+     * @param user - User principal.
+     * @param <E> - Entity Type.
+     * @return - Bulk Write result, with the per-document failures.
+     * @throws DataStoreException
+     */
+    public <E extends IEntity> BulkWriteResult updateEntities(@Nonnull List<E> entities,
+                                                              @Nonnull Class<? extends E> type,
+                                                              Context context,
+                                                              @Nonnull Principal user) throws DataStoreException {
+        return bulkWrite(DocWriteRequest.OpType.UPDATE, EAuditType.Update, entities, type, context, user);
+    }
+
+    /**
+     * Delete the documents for the specified entities using bulk requests. Records the
+     * delete metrics and writes the audit records for the deleted entities.
+     *
+     * @param entities - Entities to delete.
+     * @param type - Entity Type.
+     * @param context - Context handle (refresh policy, audit context).
+     * @param user - User principal.
+     * @param <E> - Entity Type.
+     * @return - Bulk Write result, with the per-document failures.
+     * @throws DataStoreException
+     */
+    public <E extends IEntity> BulkWriteResult deleteEntities(@Nonnull List<E> entities,
+                                                              @Nonnull Class<? extends E> type,
+                                                              Context context,
+                                                              @Nonnull Principal user) throws DataStoreException {
+        return bulkWrite(DocWriteRequest.OpType.DELETE, EAuditType.Delete, entities, type, context, user);
+    }
+
+    private <E extends IEntity> BulkWriteResult bulkWrite(DocWriteRequest.OpType operation,
+                                                          EAuditType auditType,
+                                                          List<E> entities,
+                                                          Class<? extends E> type,
+                                                          Context context,
+                                                          Principal user) throws DataStoreException {
+        String index = helper.getIndexName(type);
+        List<DocWriteRequest<?>> requests = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            requests.add(helper.writeRequest(operation, entity.getKey(), entity, type));
+        }
+        BulkWriteResult result = recordWrite(auditType, type, entities.size(), () -> {
+            ElasticSearchConnection connection = (ElasticSearchConnection) connection();
+            return helper.bulkWrite(connection.connection(), requests,
+                    connection.bulkBatchSize(), connection.bulkBatchBytes(), context);
+        });
+        if (result.hasErrors()) {
+            recordWriteErrors(auditType, type, result.errors().size());
+        }
+        for (E entity : entities) {
+            if (!result.failed(index, entity.getKey().stringKey())) {
+                audit(auditType, entity, type, context, user);
+            }
+        }
+        return result;
+    }
+
     @Override
     public <E extends IEntity> E findEntity(@Nonnull Object key,
                                             @Nonnull Class<? extends E> type,
@@ -264,7 +354,7 @@ public class ElasticSearchDataStore extends AbstractDataStore<RestHighLevelClien
                                                                   int batchSize,
                                                                   int offset,
                                                                   Context context) throws DataStoreException {
-        return null;
+        return searchDocument(index, QueryBuilders.queryStringQuery(query), batchSize, offset, DocumentEntity.class, context);
     }
 
     @Override
@@ -274,7 +364,62 @@ public class ElasticSearchDataStore extends AbstractDataStore<RestHighLevelClien
                                                                   int offset,
                                                                   @Nonnull Class<? extends T> type,
                                                                   Context context) throws DataStoreException {
-        return null;
+        return searchDocument(index, QueryBuilders.queryStringQuery(query.toString()), batchSize, offset, type, context);
+    }
+
+    /**
+     * Search the index returning the matched documents (source subset, score and highlights)
+     * without mapping them to entities. Use an ElasticSearchContext to specify the
+     * source fields to include/exclude and the fields to highlight.
+     *
+     * @param index - Index to search.
+     * @param query - Search query.
+     * @param batchSize - Number of hits to return.
+     * @param offset - Result offset.
+     * @param type - Result type.
+     * @param context - Context handle.
+     * @param <T> - Result type.
+     * @return - Document Search result.
+     * @throws DataStoreException
+     */
+    public <T extends IEntity> DocumentSearchResult<T> searchDocument(@Nonnull String index,
+                                                                      @Nonnull QueryBuilder query,
+                                                                      int batchSize,
+                                                                      int offset,
+                                                                      @Nonnull Class<? extends IEntity> type,
+                                                                      Context context) throws DataStoreException {
+        if (batchSize <= 0) batchSize = maxResults();
+        if (offset < 0) offset = 0;
+        try {
+            return helper.documentSearch(connection().connection(), index, query, batchSize, offset, type, context);
+        } catch (ConnectionException ex) {
+            throw new DataStoreException(ex);
+        }
+    }
+
+    /**
+     * Stream all the entities matching the query. Results are fetched page by page
+     * as the stream is consumed, without holding a scroll context open.
+     *
+     * @param query - Search query.
+     * @param pageSize - Number of documents fetched per page.
+     * @param type - Entity type.
+     * @param context - Context handle.
+     * @param <T> - Entity type.
+     * @return - Entity stream.
+     * @throws DataStoreException
+     */
+    public <T extends IEntity> Stream<T> streamSearch(@Nonnull QueryBuilder query,
+                                                      int pageSize,
+                                                      @Nonnull Class<? extends T> type,
+                                                      Context context) throws DataStoreException {
+        if (pageSize <= 0) pageSize = maxResults();
+        try {
+            ElasticSearchCursor<T> cursor = helper.cursor(connection().connection(), query, pageSize, type, context);
+            return cursor.stream();
+        } catch (ConnectionException ex) {
+            throw new DataStoreException(ex);
+        }
     }
 
     public <T extends IEntity> BaseSearchResult<T> textSearch(@Nonnull QueryBuilder query,
@@ -38,7 +38,11 @@ import com.google.common.base.Strings;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.StatusLine;
 import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
@@ -48,10 +52,12 @@ import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.support.replication.ReplicationResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.*;
+import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -68,6 +74,8 @@ import org.elasticsearch.search.aggregations.bucket.range.Range;
 import org.elasticsearch.search.aggregations.bucket.terms.ParsedTerms;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
 import org.elasticsearch.search.sort.SortBuilder;
 
 import javax.annotation.Nonnull;
@@ -83,6 +91,8 @@ public class ElasticSearchHelper {
     public static final String ES_FIELD_MIME_TYPE = "mimeType";
     public static final String ES_FIELD_TITLE = "title";
 
+    private static final long BULK_REQUEST_OVERHEAD = 50;
+
     public <E extends IEntity> E createEntity(@Nonnull RestHighLevelClient client,
                                               @Nonnull E entity,
                                               @Nonnull Class<? extends IEntity> type,
@@ -90,9 +100,7 @@ public class ElasticSearchHelper {
         try {
             String index = getIndexName(type);
             String json = GlobalConstants.getJsonMapper().writeValueAsString(entity);
-            IndexRequest request = new IndexRequest(index);
-            request.id(entity.getKey().stringKey());
-            request.source(json, XContentType.JSON);
+            IndexRequest request = indexRequest(index, entity, json);
             IndexResponse response = client.index(request, RequestOptions.DEFAULT);
             if (response.getResult() == DocWriteResponse.Result.CREATED) {
                 LogUtils.debug(getClass(), json);
@@ -128,7 +136,7 @@ public class ElasticSearchHelper {
         try {
             String index = getIndexName(type);
             String json = GlobalConstants.getJsonMapper().writeValueAsString(entity);
-            UpdateRequest request = new UpdateRequest(index, entity.getKey().stringKey()).doc(json, XContentType.JSON);
+            UpdateRequest request = updateRequest(index, entity, json);
             UpdateResponse response = client.update(request, RequestOptions.DEFAULT);
             if (response.getResult() == DocWriteResponse.Result.CREATED) {
                 LogUtils.debug(getClass(), json);
@@ -159,7 +167,7 @@ public class ElasticSearchHelper {
         IKey k = (IKey) key;
         try {
             String index = getIndexName(type);
-            DeleteRequest request = new DeleteRequest(index, k.stringKey());
+            DeleteRequest request = deleteRequest(index, k);
             DeleteResponse response = client.delete(request, RequestOptions.DEFAULT);
             if (response.getResult() == DocWriteResponse.Result.DELETED) {
                 return true;
@@ -180,6 +188,158 @@ public class ElasticSearchHelper {
         }
     }
 
+    /**
+     * Build the write request for the specified entity operation,
+     * to be submitted as part of a bulk request.
+     *
+     * @param operation - Write operation type.
+     * @param key - Entity Key.
+     * @param entity - Entity (not required for deletes).
+     * @param type - Entity Type.
+     * @return - Write request.
+     * @throws DataStoreException
+     */
+    public DocWriteRequest<?> writeRequest(@Nonnull DocWriteRequest.OpType operation,
+                                           @Nonnull IKey key,
+                                           IEntity entity,
+                                           @Nonnull Class<? extends IEntity> type) throws DataStoreException {
+        try {
+            String index = getIndexName(type);
+            if (operation == DocWriteRequest.OpType.DELETE) {
+                return deleteRequest(index, key);
+            }
+            Preconditions.checkArgument(entity != null);
+            String json = GlobalConstants.getJsonMapper().writeValueAsString(entity);
+            if (operation == DocWriteRequest.OpType.UPDATE) {
+                return updateRequest(index, entity, json);
+            }
+            return indexRequest(index, entity, json);
+        } catch (DataStoreException ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new DataStoreException(t);
+        }
+    }
+
+    private IndexRequest indexRequest(String index, IEntity entity, String json) {
+        IndexRequest request = new IndexRequest(index);
+        request.id(entity.getKey().stringKey());
+        request.source(json, XContentType.JSON);
+        return request;
+    }
+
+    private UpdateRequest updateRequest(String index, IEntity entity, String json) {
+        return new UpdateRequest(index, entity.getKey().stringKey()).doc(json, XContentType.JSON);
+    }
+
+    private DeleteRequest deleteRequest(String index, IKey key) {
+        return new DeleteRequest(index, key.stringKey());
+    }
+
+    /**
+     * Execute the write requests using bulk requests. Requests are split into
+     * multiple bulk requests by the action count and estimated payload size.
+     *
+     * @param client - Elastic Search client.
+     * @param requests - Write requests.
+     * @param maxActions - Max actions per bulk request.
+     * @param maxBytes - Max estimated payload size (in bytes) per bulk request.
+     * @return - Bulk Write result, with the per-document failures.
+     */
+    public BulkWriteResult bulkWrite(@Nonnull RestHighLevelClient client,
+                                     @Nonnull List<DocWriteRequest<?>> requests,
+                                     int maxActions,
+                                     long maxBytes) {
+        return bulkWrite(client, requests, maxActions, maxBytes, null);
+    }
+
+    /**
+     * Execute the write requests using bulk requests. Requests are split into
+     * multiple bulk requests by the action count and estimated payload size.
+     * The refresh policy (if set in the context) is applied to each bulk request.
+     *
+     * @param client - Elastic Search client.
+     * @param requests - Write requests.
+     * @param maxActions - Max actions per bulk request.
+     * @param maxBytes - Max estimated payload size (in bytes) per bulk request.
+     * @param context - Context handle (can be NULL).
+     * @return - Bulk Write result, with the per-document failures.
+     */
+    public BulkWriteResult bulkWrite(@Nonnull RestHighLevelClient client,
+                                     @Nonnull List<DocWriteRequest<?>> requests,
+                                     int maxActions,
+                                     long maxBytes,
+                                     Context context) {
+        Preconditions.checkArgument(maxActions > 0);
+        Preconditions.checkArgument(maxBytes > 0);
+        WriteRequest.RefreshPolicy refreshPolicy = null;
+        if (context instanceof ElasticSearchContext) {
+            refreshPolicy = ((ElasticSearchContext) context).refreshPolicy();
+        }
+        BulkWriteResult result = new BulkWriteResult();
+        result.requested(requests.size());
+        BulkRequest bulkRequest = bulkRequest(refreshPolicy);
+        for (DocWriteRequest<?> request : requests) {
+            if (bulkRequest.numberOfActions() > 0
+                    && (bulkRequest.numberOfActions() >= maxActions
+                    || bulkRequest.estimatedSizeInBytes() + estimatedSize(request) > maxBytes)) {
+                executeBulk(client, bulkRequest, result);
+                bulkRequest = bulkRequest(refreshPolicy);
+            }
+            bulkRequest.add(request);
+        }
+        if (bulkRequest.numberOfActions() > 0) {
+            executeBulk(client, bulkRequest, result);
+        }
+        return result;
+    }
+
+    private BulkRequest bulkRequest(WriteRequest.RefreshPolicy refreshPolicy) {
+        BulkRequest request = new BulkRequest();
+        if (refreshPolicy != null) {
+            request.setRefreshPolicy(refreshPolicy);
+        }
+        return request;
+    }
+
+    private void executeBulk(RestHighLevelClient client, BulkRequest request, BulkWriteResult result) {
+        result.batchExecuted();
+        try {
+            BulkResponse response = client.bulk(request, RequestOptions.DEFAULT);
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    // Key by the requested index, the response has the concrete index for aliases.
+                    DocWriteRequest<?> r = request.requests().get(item.getItemId());
+                    result.error(r.index(), r.id(), item.getFailureMessage());
+                } else {
+                    result.success();
+                }
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            String reason = String.format("Bulk request failed. [error=%s]", t.getLocalizedMessage());
+            for (DocWriteRequest<?> r : request.requests()) {
+                result.error(r.index(), r.id(), reason);
+            }
+        }
+    }
+
+    private long estimatedSize(DocWriteRequest<?> request) {
+        long size = BULK_REQUEST_OVERHEAD;
+        if (request instanceof IndexRequest) {
+            IndexRequest ir = (IndexRequest) request;
+            if (ir.source() != null) {
+                size += ir.source().length();
+            }
+        } else if (request instanceof UpdateRequest) {
+            UpdateRequest ur = (UpdateRequest) request;
+            if (ur.doc() != null && ur.doc().source() != null) {
+                size += ur.doc().source().length();
+            }
+        }
+        return size;
+    }
+
     public <E extends IEntity> E findEntity(@Nonnull RestHighLevelClient client,
                                             @Nonnull Object key,
                                             @Nonnull Class<? extends E> type,
@@ -240,6 +400,44 @@ public class ElasticSearchHelper {
         }
     }
 
+    /**
+     * Get a lazily evaluated cursor over the entities matching the query,
+     * paged using search_after (sort order from the context, if specified).
+     * The type must declare a unique key field ({@link Indexed#keyField()}) used
+     * as the paging tiebreaker.
+     *
+     * @param client - Elastic Search client.
+     * @param query - Search query.
+     * @param pageSize - Number of documents fetched per page.
+     * @param type - Entity type.
+     * @param context - Context handle.
+     * @param <T> - Entity type.
+     * @return - Entity cursor.
+     * @throws DataStoreException
+     */
+    public <T extends IEntity> ElasticSearchCursor<T> cursor(@Nonnull RestHighLevelClient client,
+                                                             @Nonnull QueryBuilder query,
+                                                             int pageSize,
+                                                             @Nonnull Class<? extends T> type,
+                                                             Context context) throws DataStoreException {
+        String index = getIndexName(type);
+        String keyField = type.getAnnotation(Indexed.class).keyField();
+        if (Strings.isNullOrEmpty(keyField)) {
+            throw new DataStoreException(String.format("No key field defined for cursor. [type=%s]", type.getCanonicalName()));
+        }
+        ElasticSearchCursor<T> cursor = new ElasticSearchCursor<>(client, index, query, pageSize, keyField, hit -> {
+            try {
+                return GlobalConstants.getJsonMapper().readValue(hit.getSourceAsString(), type);
+            } catch (IOException ex) {
+                throw new RuntimeException(new DataStoreException(ex));
+            }
+        });
+        if (context instanceof ElasticSearchContext) {
+            cursor.withSort(((ElasticSearchContext) context).sort());
+        }
+        return cursor;
+    }
+
     private <T extends IEntity> BaseSearchResult<T> scroll(RestHighLevelClient client,
                                                            String index,
                                                            @Nonnull QueryBuilder query,
@@ -452,6 +650,96 @@ public class ElasticSearchHelper {
         }
     }
 
+    /**
+     * Search the index and return the raw document hits (source, score and highlights),
+     * without mapping to entities. Source filtering and highlighted fields are read from
+     * the ElasticSearchContext, if specified.
+     *
+     * @param client - Elastic Search client.
+     * @param index - Index to search.
+     * @param query - Search query.
+     * @param batchSize - Number of hits to return.
+     * @param offset - Result offset.
+     * @param type - Result type.
+     * @param context - Context handle.
+     * @param <T> - Result type.
+     * @return - Document Search result.
+     * @throws DataStoreException
+     */
+    public <T extends IEntity> DocumentSearchResult<T> documentSearch(@Nonnull RestHighLevelClient client,
+                                                                      @Nonnull String index,
+                                                                      @Nonnull QueryBuilder query,
+                                                                      int batchSize,
+                                                                      int offset,
+                                                                      @Nonnull Class<? extends IEntity> type,
+                                                                      Context context) throws DataStoreException {
+        try {
+            SearchRequest request = new SearchRequest(index);
+            SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+            sourceBuilder.from(offset);
+            sourceBuilder.size(batchSize);
+            sourceBuilder.query(query);
+            if (context instanceof ElasticSearchContext) {
+                ElasticSearchContext ctx = (ElasticSearchContext) context;
+                if (ctx.includes() != null || ctx.excludes() != null) {
+                    sourceBuilder.fetchSource(ctx.includes(), ctx.excludes());
+                }
+                List<String> highlights = ctx.highlight();
+                if (highlights != null && !highlights.isEmpty()) {
+                    HighlightBuilder highlightBuilder = new HighlightBuilder();
+                    for (String field : highlights) {
+                        highlightBuilder.field(field);
+                    }
+                    sourceBuilder.highlighter(highlightBuilder);
+                }
+                List<SortBuilder<?>> sortBuilders = ctx.sort();
+                if (sortBuilders != null && !sortBuilders.isEmpty()) {
+                    for (SortBuilder<?> sortBuilder : sortBuilders)
+                        sourceBuilder.sort(sortBuilder);
+                }
+            }
+            request.source(sourceBuilder);
+
+            SearchResponse response = client.search(request, RequestOptions.DEFAULT);
+            RestStatus status = response.status();
+            if (status != RestStatus.OK && status != RestStatus.NOT_FOUND && status != RestStatus.FOUND) {
+                throw new DataStoreException(String.format("Search failed. [status=%s][index=%s]", response.status().name(), index));
+            }
+            DocumentSearchResult<T> result = new DocumentSearchResult<>(type);
+            result.setQuery(query.toString());
+            result.setOffset(offset);
+            SearchHits hits = response.getHits();
+            if (hits != null) {
+                for (SearchHit hit : hits.getHits()) {
+                    DocumentSearchResult.DocumentHit dh = new DocumentSearchResult.DocumentHit(hit.getIndex(), hit.getId(), hit.getScore());
+                    dh.setSource(hit.getSourceAsMap());
+                    if (hit.getHighlightFields() != null) {
+                        for (HighlightField field : hit.getHighlightFields().values()) {
+                            List<String> fragments = new ArrayList<>();
+                            if (field.getFragments() != null) {
+                                for (Text fragment : field.getFragments()) {
+                                    fragments.add(fragment.string());
+                                }
+                            }
+                            dh.getHighlights().put(field.getName(), fragments);
+                        }
+                    }
+                    result.add(dh);
+                }
+                result.setMaxScore(hits.getMaxScore());
+                if (hits.getTotalHits() != null) {
+                    result.setTotalRecords(hits.getTotalHits().value);
+                }
+            }
+            result.setCount(result.getHits().size());
+            return result;
+        } catch (DataStoreException ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new DataStoreException(t);
+        }
+    }
+
     public <T extends IEntity> FacetedSearchResult<T> facetedSearch(@Nonnull AbstractAggregationBuilder[] builders,
                                                                     @Nonnull String index,
                                                                     @Nonnull RestHighLevelClient client,
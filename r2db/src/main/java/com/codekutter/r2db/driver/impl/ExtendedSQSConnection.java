@@ -94,6 +94,18 @@ public class ExtendedSQSConnection extends AbstractJmsConnection {
         return false;
     }
 
+    /**
+     * Get the (extended) SQS client. SQS JMS sessions can't be transacted,
+     * batches are sent using the client batch API.
+     *
+     * @return - SQS Client.
+     * @throws ConnectionException
+     */
+    public AmazonSQS sqsClient() throws ConnectionException {
+        state().checkOpened();
+        return client;
+    }
+
     @Override
     public void close(@NotNull Session connection) throws ConnectionException {
 
@@ -0,0 +1,49 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.Context;
+
+import javax.annotation.Nonnull;
+
+public class LocalDirStoreContext extends Context {
+    public static final String CONTEXT_CURSOR = "context.LocalDir.cursor";
+
+    public LocalDirStoreContext() {
+    }
+
+    public LocalDirStoreContext(@Nonnull Context source) {
+        super(source);
+    }
+
+    /**
+     * Resume the search after the specified path (the scroll ID
+     * returned with the previous result page).
+     *
+     * @param cursor - Last path returned.
+     * @return - Self
+     */
+    public LocalDirStoreContext cursor(@Nonnull String cursor) {
+        setParam(CONTEXT_CURSOR, cursor);
+        return this;
+    }
+
+    public String cursor() {
+        return getStringParam(CONTEXT_CURSOR);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.stores.DataStoreException;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.r2db.driver.model.FileEntity;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily evaluated, depth-first (pre-order) walk of a directory tree.
+ * <p>
+ * Directories are read using directory streams, only one open stream per level of the
+ * current path is held, so memory use does not depend on the size of the tree. The name
+ * filter is applied while reading the directories: entries not matching the filter are
+ * neither returned nor descended into. Symbolic links are not followed.
+ * <p>
+ * The walk can be resumed after a previously returned path (see cursor()). Resuming relies on
+ * the directory iteration order being stable, if the cursor path has been removed the walk
+ * restarts from the beginning of the directory the path was in.
+ */
+@Getter
+@Accessors(fluent = true)
+public class LocalDirectoryCursor implements Iterator<FileEntity>, Closeable {
+    private final Path root;
+    private final Pattern pattern;
+    @Getter(lombok.AccessLevel.NONE)
+    private final Deque<Level> levels = new ArrayDeque<>();
+    @Getter(lombok.AccessLevel.NONE)
+    private Path next = null;
+    private Path last = null;
+    private long returned = 0;
+    private boolean started = false;
+    private boolean closed = false;
+
+    /**
+     * Create a new walk.
+     *
+     * @param root - Root directory.
+     * @param pattern - File name regex (NULL to return all entries).
+     */
+    public LocalDirectoryCursor(@Nonnull Path root, Pattern pattern) {
+        Preconditions.checkArgument(Files.isDirectory(root));
+        this.root = root.toAbsolutePath();
+        this.pattern = pattern;
+    }
+
+    /**
+     * Resume the walk after the specified path (as returned by cursor()).
+     *
+     * @param cursor - Last path returned by a previous walk.
+     * @return - Self
+     * @throws DataStoreException
+     */
+    public LocalDirectoryCursor resumeAfter(@Nonnull String cursor) throws DataStoreException {
+        Preconditions.checkState(!started);
+        Path path = Paths.get(cursor).toAbsolutePath();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new DataStoreException(String.format("Invalid cursor. [root=%s][cursor=%s]", root.toString(), cursor));
+        }
+        started = true;
+        try {
+            push(root);
+            Path current = root;
+            Path relative = root.relativize(path);
+            for (int ii = 0; ii < relative.getNameCount(); ii++) {
+                current = current.resolve(relative.getName(ii));
+                Level level = levels.peek();
+                if (level == null || !level.seek(current)) {
+                    LogUtils.debug(getClass(), String.format("Cursor path not found, restarting level. [path=%s]", current.toString()));
+                    if (level != null) {
+                        levels.pop().close();
+                        push(level.dir);
+                    }
+                    break;
+                }
+                if (Files.isDirectory(current, LinkOption.NOFOLLOW_LINKS)) {
+                    push(current);
+                } else {
+                    break;
+                }
+            }
+            last = path;
+            return this;
+        } catch (IOException ex) {
+            throw new DataStoreException(ex);
+        }
+    }
+
+    /**
+     * Get the cursor to resume the walk after the last returned entry.
+     *
+     * @return - Cursor or NULL if no entries have been returned.
+     */
+    public String cursor() {
+        return (last != null ? last.toString() : null);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            if (!started) {
+                started = true;
+                push(root);
+            }
+            next = advance();
+            if (next == null) {
+                close();
+            }
+            return next != null;
+        } catch (IOException ex) {
+            throw new RuntimeException(new DataStoreException(ex));
+        }
+    }
+
+    @Override
+    public FileEntity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        last = next;
+        next = null;
+        returned++;
+        return new FileEntity(last.toString());
+    }
+
+    /**
+     * Skip the next count entries.
+     *
+     * @param count - Number of entries to skip.
+     * @return - Number of entries skipped.
+     */
+    public long skip(long count) {
+        long skipped = 0;
+        while (skipped < count && hasNext()) {
+            last = next;
+            next = null;
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Get a sequential stream over the remaining entries.
+     * Closing the stream closes the cursor.
+     *
+     * @return - Entity stream.
+     */
+    public Stream<FileEntity> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        while (!levels.isEmpty()) {
+            levels.pop().close();
+        }
+    }
+
+    private Path advance() throws IOException {
+        while (!levels.isEmpty()) {
+            Level level = levels.peek();
+            Path path = level.next();
+            if (path == null) {
+                levels.pop().close();
+                continue;
+            }
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                push(path);
+            }
+            return path;
+        }
+        return null;
+    }
+
+    private void push(Path dir) throws IOException {
+        DirectoryStream<Path> stream;
+        try {
+            if (pattern == null) {
+                stream = Files.newDirectoryStream(dir);
+            } else {
+                stream = Files.newDirectoryStream(dir, p -> pattern.matcher(p.getFileName().toString()).matches());
+            }
+        } catch (AccessDeniedException ex) {
+            LogUtils.warn(getClass(), String.format("Skipping unreadable directory. [path=%s]", dir.toString()));
+            return;
+        }
+        levels.push(new Level(dir, stream));
+    }
+
+    private static final class Level {
+        private final Path dir;
+        private final DirectoryStream<Path> stream;
+        private final Iterator<Path> iterator;
+
+        private Level(Path dir, DirectoryStream<Path> stream) {
+            this.dir = dir;
+            this.stream = stream;
+            this.iterator = stream.iterator();
+        }
+
+        private Path next() throws IOException {
+            try {
+                if (iterator.hasNext()) {
+                    return iterator.next();
+                }
+                return null;
+            } catch (DirectoryIteratorException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private boolean seek(Path target) throws IOException {
+            while (true) {
+                Path path = next();
+                if (path == null) return false;
+                if (path.equals(target)) return true;
+            }
+        }
+
+        private void close() {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                LogUtils.warn(getClass(), String.format("Error closing directory stream. [path=%s]", dir.toString()));
+            }
+        }
+    }
+}
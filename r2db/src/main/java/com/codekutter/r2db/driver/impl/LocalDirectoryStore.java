@@ -24,6 +24,7 @@ import com.codekutter.common.model.StringEntity;
 import com.codekutter.common.stores.*;
 import com.codekutter.common.stores.impl.DataStoreAuditContext;
 import com.codekutter.common.stores.impl.EntitySearchResult;
+import com.codekutter.common.utils.IOUtils;
 import com.codekutter.common.utils.ReflectionUtils;
 import com.codekutter.r2db.driver.model.FileEntity;
 import com.codekutter.zconfig.common.ConfigurationException;
@@ -34,11 +35,9 @@ import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.RegexFileFilter;
 
 import javax.annotation.Nonnull;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -49,6 +48,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Getter
 @Setter
@@ -74,7 +75,7 @@ public class LocalDirectoryStore extends AbstractDirectoryStore<File> {
                 File tf = new File(Paths.get(td.getAbsolutePath(), fname).toString());
                 File sf = (File) source;
                 try {
-                    FileUtils.copyFile(sf, tf);
+                    IOUtils.copy(sf, tf, true);
                 } catch (IOException ex) {
                     throw new DataStoreException(ex);
                 }
@@ -267,23 +268,22 @@ public class LocalDirectoryStore extends AbstractDirectoryStore<File> {
         if (!ReflectionUtils.isSuperType(FileEntity.class, type)) {
             throw new DataStoreException(String.format("Unsupported entity type. [type=%s]", type.getCanonicalName()));
         }
+        LocalDirectoryCursor cursor = null;
         try {
-            FileFilter filter = null;
-            if (query.trim().compareTo("*") != 0) {
-                filter = new RegexFileFilter(query);
-            }
-            List<FileEntity> array = new ArrayList<>();
-            array = findRecursive(connection().connection(), filter, array);
-            if (offset > 0) {
-                if (offset < array.size()) {
-                    array = array.subList(offset, (array.size() - 1));
-                }
-            }
             if (maxResults <= 0) {
                 maxResults = maxResults();
             }
-            if (array.size() > maxResults) {
-                array = array.subList(0, maxResults - 1);
+            cursor = cursor(query);
+            String last = (context instanceof LocalDirStoreContext ? ((LocalDirStoreContext) context).cursor() : null);
+            if (!Strings.isNullOrEmpty(last)) {
+                cursor.resumeAfter(last);
+                offset = 0;
+            } else if (offset > 0) {
+                cursor.skip(offset);
+            }
+            List<FileEntity> array = new ArrayList<>();
+            while (array.size() < maxResults && cursor.hasNext()) {
+                array.add(cursor.next());
             }
             if (!array.isEmpty()) {
                 EntitySearchResult<FileEntity> er = new EntitySearchResult<>(type);
@@ -291,30 +291,44 @@ public class LocalDirectoryStore extends AbstractDirectoryStore<File> {
                 er.setOffset(offset);
                 er.setCount(array.size());
                 er.setEntities(array);
+                if (cursor.hasNext()) {
+                    er.setScrollId(cursor.cursor());
+                }
                 return (BaseSearchResult<E>) er;
             }
             return null;
         } catch (Exception ex) {
             throw new DataStoreException(ex);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
     }
 
-    private List<FileEntity> findRecursive(File dir, FileFilter filter, List<FileEntity> array) {
-        File[] files = null;
-        if (filter == null) {
-            files = dir.listFiles();
-        } else {
-            files = dir.listFiles(filter);
+    /**
+     * Stream all the files/directories matching the query. The directory
+     * tree is walked lazily as the stream is consumed; the stream should be closed
+     * to release the open directory handles if not fully consumed.
+     *
+     * @param query - File name regex ("*" for all).
+     * @return - Entity stream.
+     * @throws DataStoreException
+     */
+    public Stream<FileEntity> streamSearch(@Nonnull String query) throws DataStoreException {
+        return cursor(query).stream();
+    }
+
+    private LocalDirectoryCursor cursor(String query) throws DataStoreException {
+        Pattern pattern = null;
+        if (query.trim().compareTo("*") != 0) {
+            pattern = Pattern.compile(query);
         }
-        if (files != null && files.length > 0) {
-            for (File file : files) {
-                array.add(new FileEntity(file.getAbsolutePath()));
-                if (file.isDirectory()) {
-                    findRecursive(file, filter, array);
-                }
-            }
+        try {
+            return new LocalDirectoryCursor(connection().connection().toPath(), pattern);
+        } catch (ConnectionException ex) {
+            throw new DataStoreException(ex);
         }
-        return array;
     }
 
     @Override
@@ -0,0 +1,257 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.utils.KeyValuePair;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.r2db.driver.model.S3FileKey;
+import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.DistributionSummary;
+import com.netflix.spectator.api.Id;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local disk cache of downloaded S3 objects.
+ * <p>
+ * The cache is bounded by the total bytes on disk (and optionally the number of entries),
+ * least recently used entries are evicted first and their local files deleted.
+ * Entries are validated against the remote ETag on lookup, stale entries are removed.
+ */
+public class S3LocalCache {
+    @Getter
+    @Accessors(fluent = true)
+    private final String name;
+    @Getter
+    @Accessors(fluent = true)
+    private final long maxBytes;
+    @Getter
+    @Accessors(fluent = true)
+    private final int maxEntries;
+    @Getter
+    @Accessors(fluent = true)
+    private final long expiryWindow;
+    private long bytes = 0;
+    private final LinkedHashMap<S3FileKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Id hitCounter;
+    private final Id missCounter;
+    private final Id evictionCounter;
+    private final DistributionSummary downloadSummary;
+
+    /**
+     * Create a new cache instance.
+     *
+     * @param name - Cache name (used for metrics).
+     * @param maxBytes - Max total size of the cached files.
+     * @param maxEntries - Max number of cached files (0 for unbounded).
+     * @param expiryWindow - Expire entries not accessed within this window (millis, 0 for no expiry).
+     */
+    public S3LocalCache(@Nonnull String name, long maxBytes, int maxEntries, long expiryWindow) {
+        Preconditions.checkArgument(maxBytes > 0);
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.expiryWindow = expiryWindow;
+
+        hitCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_HIT, getClass().getCanonicalName(), name));
+        missCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_MISS, getClass().getCanonicalName(), name));
+        evictionCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_EVICTED, getClass().getCanonicalName(), name));
+        downloadSummary = Monitoring.addDistributionSummary(String.format(Metrics.METRIC_BYTES_DOWNLOADED, getClass().getCanonicalName(), name));
+        Monitoring.addGauge(String.format(Metrics.METRIC_GAUGE_BYTES, getClass().getCanonicalName(), name), this, "bytes");
+    }
+
+    /**
+     * Get the cached file for the key, if the cached copy matches the remote ETag.
+     *
+     * @param key - Object Key.
+     * @param etag - Current ETag of the remote object.
+     * @return - Cached file or NULL.
+     */
+    public synchronized File get(@Nonnull S3FileKey key, String etag) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null) {
+            if (isValid(entry, etag)) {
+                entry.accessed = System.currentTimeMillis();
+                increment(hitCounter);
+                return entry.file;
+            }
+            LogUtils.debug(getClass(), "Removing stale cache entry. [key={}][etag={}]", key.stringKey(), etag);
+            remove(key);
+        }
+        increment(missCounter);
+        return null;
+    }
+
+    /**
+     * Add a downloaded file to the cache, evicting least recently used
+     * entries to stay within the configured bounds.
+     *
+     * @param key - Object Key.
+     * @param file - Local file.
+     * @param etag - ETag of the downloaded object.
+     * @return - Is cached? (files larger than the cache size are not cached)
+     */
+    public synchronized boolean put(@Nonnull S3FileKey key, @Nonnull File file, String etag) {
+        long size = file.length();
+        if (downloadSummary != null) {
+            downloadSummary.record(size);
+        }
+        CacheEntry current = entries.get(key);
+        if (current != null && !current.file.equals(file)) {
+            remove(key);
+        } else if (current != null) {
+            entries.remove(key);
+            bytes -= current.size;
+        }
+        if (size > maxBytes) {
+            return false;
+        }
+        entries.put(key, new CacheEntry(file, etag, size));
+        bytes += size;
+        evict();
+        return true;
+    }
+
+    /**
+     * Update the cached entry after the remote object has been written.
+     * If the entry refers to the uploaded file, the ETag is updated, else
+     * the stale entry is removed.
+     *
+     * @param key - Object Key.
+     * @param file - Uploaded file.
+     * @param etag - ETag of the uploaded object.
+     */
+    public synchronized void refresh(@Nonnull S3FileKey key, @Nonnull File file, String etag) {
+        CacheEntry current = entries.get(key);
+        if (current != null) {
+            if (current.file.equals(file)) {
+                entries.put(key, new CacheEntry(file, etag, file.length()));
+                bytes += file.length() - current.size;
+                evict();
+            } else {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Remove the entry and delete the cached file.
+     *
+     * @param key - Object Key.
+     */
+    public synchronized void invalidate(@Nonnull S3FileKey key) {
+        remove(key);
+    }
+
+    /**
+     * Remove all entries and delete the cached files.
+     */
+    public synchronized void clear() {
+        for (CacheEntry entry : entries.values()) {
+            delete(entry.file);
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    private boolean isValid(CacheEntry entry, String etag) {
+        if (expiryWindow > 0 && System.currentTimeMillis() - entry.accessed > expiryWindow) {
+            return false;
+        }
+        if (etag != null && !etag.equals(entry.etag)) {
+            return false;
+        }
+        return entry.file.exists() && entry.file.length() == entry.size;
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<S3FileKey, CacheEntry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<S3FileKey, CacheEntry> e = iter.next();
+            CacheEntry entry = e.getValue();
+            boolean expired = (expiryWindow > 0 && now - entry.accessed > expiryWindow);
+            if (!expired && bytes <= maxBytes && (maxEntries <= 0 || entries.size() <= maxEntries)) {
+                break;
+            }
+            iter.remove();
+            bytes -= entry.size;
+            delete(entry.file);
+            increment(evictionCounter);
+            LogUtils.debug(getClass(), "Evicted cache entry. [key={}][size={}]", e.getKey().stringKey(), entry.size);
+        }
+    }
+
+    private void remove(S3FileKey key) {
+        CacheEntry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+            delete(entry.file);
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LogUtils.warn(getClass(), String.format("Failed to remove local file. [path=%s]", file.getAbsolutePath()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void increment(Id counter) {
+        if (counter != null) {
+            Monitoring.increment(counter.name(), (KeyValuePair<String, String>[]) null);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final File file;
+        private final String etag;
+        private final long size;
+        private long accessed;
+
+        private CacheEntry(File file, String etag, long size) {
+            this.file = file;
+            this.etag = etag;
+            this.size = size;
+            this.accessed = System.currentTimeMillis();
+        }
+    }
+
+    private static final class Metrics {
+        private static final String METRIC_COUNTER_HIT = String.format("%s.%s.CACHE.HIT", "%s", "%s");
+        private static final String METRIC_COUNTER_MISS = String.format("%s.%s.CACHE.MISS", "%s", "%s");
+        private static final String METRIC_COUNTER_EVICTED = String.format("%s.%s.CACHE.EVICTED", "%s", "%s");
+        private static final String METRIC_BYTES_DOWNLOADED = String.format("%s.%s.CACHE.BYTES.DOWNLOADED", "%s", "%s");
+        private static final String METRIC_GAUGE_BYTES = String.format("%s.%s.CACHE.BYTES", "%s", "%s");
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.codekutter.common.stores.DataStoreException;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily evaluated iterator over the objects under a prefix, paged
+ * using ListObjectsV2 continuation tokens.
+ * <p>
+ * Pages are fetched on demand (one request per page) and only the
+ * current page is held in memory.
+ */
+@Getter
+@Accessors(fluent = true)
+public class S3ObjectCursor implements Iterator<S3ObjectSummary> {
+    /**
+     * Max keys returned by a single list request.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final AmazonS3 client;
+    private final String bucket;
+    private final String prefix;
+    private final int pageSize;
+    /**
+     * Token to fetch the next page, NULL if the listing is complete or not started.
+     */
+    private String continuationToken;
+    private long fetched = 0;
+    private int pages = 0;
+    private List<S3ObjectSummary> page = null;
+    private int position = 0;
+    private boolean done = false;
+
+    public S3ObjectCursor(@Nonnull AmazonS3 client,
+                          @Nonnull String bucket,
+                          String prefix,
+                          int pageSize) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(bucket));
+        Preconditions.checkArgument(pageSize > 0);
+        this.client = client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Resume the listing from a continuation token returned by a previous listing.
+     *
+     * @param continuationToken - Continuation token.
+     * @return - Self
+     */
+    public S3ObjectCursor withContinuationToken(String continuationToken) {
+        Preconditions.checkState(pages == 0);
+        this.continuationToken = continuationToken;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page != null && position < page.size()) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        fetch(pageSize);
+        return page != null && position < page.size();
+    }
+
+    @Override
+    public S3ObjectSummary next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(position++);
+    }
+
+    /**
+     * Fetch the next page of the listing, discarding any unread entries of the current page.
+     *
+     * @param size - Number of keys to fetch.
+     * @return - Object summaries (empty if the listing is complete).
+     */
+    public List<S3ObjectSummary> nextPage(int size) {
+        Preconditions.checkArgument(size > 0);
+        if (done) {
+            return Collections.emptyList();
+        }
+        fetch(Math.min(size, MAX_PAGE_SIZE));
+        position = (page != null ? page.size() : 0);
+        return (page != null ? page : Collections.emptyList());
+    }
+
+    /**
+     * Get a sequential stream over the remaining objects.
+     *
+     * @return - Object stream.
+     */
+    public Stream<S3ObjectSummary> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private void fetch(int size) {
+        try {
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(bucket)
+                    .withMaxKeys(size);
+            if (!Strings.isNullOrEmpty(prefix)) {
+                request.setPrefix(prefix);
+            }
+            if (!Strings.isNullOrEmpty(continuationToken)) {
+                request.setContinuationToken(continuationToken);
+            }
+            ListObjectsV2Result result = client.listObjectsV2(request);
+            pages++;
+            position = 0;
+            page = result.getObjectSummaries();
+            if (page != null) {
+                fetched += page.size();
+            }
+            continuationToken = (result.isTruncated() ? result.getNextContinuationToken() : null);
+            if (Strings.isNullOrEmpty(continuationToken)) {
+                done = true;
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException(new DataStoreException(ex));
+        }
+    }
+}
@@ -33,6 +33,7 @@ import javax.persistence.MappedSuperclass;
 public class S3StoreConfig extends DataStoreConfig {
     public static final int DEFAULT_MAX_CACHE_SIZE = 128;
     public static final int DEFAULT_CACHE_EXPIRY = 5 * 60 * 1000;
+    public static final long DEFAULT_MAX_CACHE_BYTES = 1024L * 1024 * 1024;
 
     @Column(name = "bucket")
     @ConfigAttribute(required = true)
@@ -49,6 +50,9 @@ public class S3StoreConfig extends DataStoreConfig {
     @Column(name = "cache_expiry_window")
     @ConfigValue
     private long cacheExpiryWindow = DEFAULT_CACHE_EXPIRY;
+    @Column(name = "max_cache_bytes")
+    @ConfigValue
+    private long maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
 
     @Override
     public void postLoad() throws ConfigurationException {
@@ -60,6 +64,9 @@ public class S3StoreConfig extends DataStoreConfig {
             if (cacheExpiryWindow <= 0) {
                 cacheExpiryWindow = DEFAULT_CACHE_EXPIRY;
             }
+            if (maxCacheBytes <= 0) {
+                maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+            }
         }
     }
 }
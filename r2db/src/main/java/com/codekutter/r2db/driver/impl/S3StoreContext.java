@@ -23,6 +23,7 @@ import javax.annotation.Nonnull;
 
 public class S3StoreContext extends Context {
     public static final String CONTEXT_CONTINUE_KEY = "context.S3.continuationKey";
+    public static final String CONTEXT_STREAM = "context.S3.stream";
 
     public S3StoreContext() {
     }
@@ -39,4 +40,22 @@ public class S3StoreContext extends Context {
     public String continuationKey() {
         return getStringParam(CONTEXT_CONTINUE_KEY);
     }
+
+    /**
+     * Return entities without downloading a local copy. The remote
+     * content can be read using the entity streams/channel or
+     * materialised using copyToLocal().
+     *
+     * @param stream - Stream remote content.
+     * @return - Self
+     */
+    public S3StoreContext stream(boolean stream) {
+        setParam(CONTEXT_STREAM, stream);
+        return this;
+    }
+
+    public boolean stream() {
+        Boolean stream = getBoolParam(CONTEXT_STREAM);
+        return (stream != null && stream);
+    }
 }
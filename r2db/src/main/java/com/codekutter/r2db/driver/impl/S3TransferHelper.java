@@ -0,0 +1,279 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.codekutter.common.utils.LogUtils;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel transfers for S3 objects: files larger than the threshold are
+ * uploaded as multipart uploads and downloaded using parallel ranged reads.
+ * Incomplete multipart uploads are aborted on failure.
+ */
+@Getter
+@Accessors(fluent = true)
+public class S3TransferHelper {
+    /**
+     * S3 minimum part size (except for the last part).
+     */
+    public static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+    /**
+     * S3 maximum number of parts in a multipart upload.
+     */
+    public static final int MAX_PARTS = 10000;
+    private static final long PART_SIZE_UNIT = 1024 * 1024;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 client;
+    private final ExecutorService executor;
+    private final long partSize;
+    private final long threshold;
+
+    public S3TransferHelper(@Nonnull AmazonS3 client,
+                            @Nonnull ExecutorService executor,
+                            long partSize,
+                            long threshold) {
+        Preconditions.checkArgument(partSize > 0);
+        this.client = client;
+        this.executor = executor;
+        this.partSize = partSize;
+        this.threshold = Math.max(threshold, partSize);
+    }
+
+    /**
+     * Upload the local file to the specified bucket/key.
+     *
+     * @param bucket - S3 Bucket.
+     * @param key - Object Key.
+     * @param file - Local file.
+     * @return - ETag of the uploaded object.
+     * @throws IOException
+     */
+    public String upload(@Nonnull String bucket, @Nonnull String key, @Nonnull File file) throws IOException {
+        if (!file.exists()) {
+            throw new IOException(String.format("File not found. [path=%s]", file.getAbsolutePath()));
+        }
+        long length = file.length();
+        try {
+            if (length <= threshold) {
+                PutObjectResult result = client.putObject(new PutObjectRequest(bucket, key, file));
+                return result.getETag();
+            }
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+        long uploadPartSize = partSize(length);
+        String uploadId = null;
+        List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            InitiateMultipartUploadResult init = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key));
+            uploadId = init.getUploadId();
+            long offset = 0;
+            int partNumber = 1;
+            while (offset < length) {
+                long size = Math.min(uploadPartSize, length - offset);
+                UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withFile(file)
+                        .withFileOffset(offset)
+                        .withPartSize(size)
+                        .withLastPart(offset + size >= length);
+                parts.add(executor.submit(() -> client.uploadPart(request).getPartETag()));
+                offset += size;
+                partNumber++;
+            }
+            List<PartETag> etags = new ArrayList<>(parts.size());
+            for (Future<PartETag> part : parts) {
+                etags.add(part.get());
+            }
+            CompleteMultipartUploadResult result =
+                    client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+            LogUtils.debug(getClass(), "Multipart upload completed. [bucket={}][key={}][parts={}]",
+                    bucket, key, etags.size());
+            return result.getETag();
+        } catch (Throwable t) {
+            cancel(parts);
+            if (uploadId != null) {
+                try {
+                    client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+                } catch (Exception ex) {
+                    LogUtils.warn(getClass(), String.format("Error aborting multipart upload. [bucket=%s][key=%s][upload ID=%s]",
+                            bucket, key, uploadId));
+                    LogUtils.warn(getClass(), ex);
+                }
+            }
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException(String.format("Multipart upload failed. [bucket=%s][key=%s]", bucket, key), cause(t));
+        }
+    }
+
+    /**
+     * Get the part size to upload a file of the specified length, increased (in whole MB)
+     * from the configured part size if the file would need more than {@value #MAX_PARTS} parts.
+     *
+     * @param length - File length.
+     * @return - Part size.
+     */
+    long partSize(long length) {
+        long min = (length + MAX_PARTS - 1) / MAX_PARTS;
+        if (min <= partSize) {
+            return partSize;
+        }
+        return ((min + PART_SIZE_UNIT - 1) / PART_SIZE_UNIT) * PART_SIZE_UNIT;
+    }
+
+    /**
+     * Download the object to the specified local file.
+     *
+     * @param bucket - S3 Bucket.
+     * @param key - Object Key.
+     * @param file - Local file.
+     * @return - Object metadata.
+     * @throws IOException
+     */
+    public ObjectMetadata download(@Nonnull String bucket, @Nonnull String key, @Nonnull File file) throws IOException {
+        ObjectMetadata metadata = client.getObjectMetadata(bucket, key);
+        download(bucket, key, metadata, file);
+        return metadata;
+    }
+
+    /**
+     * Download the object version described by the metadata to the specified local file.
+     *
+     * @param bucket - S3 Bucket.
+     * @param key - Object Key.
+     * @param metadata - Object metadata (from a HEAD request).
+     * @param file - Local file.
+     * @throws IOException
+     */
+    public void download(@Nonnull String bucket,
+                         @Nonnull String key,
+                         @Nonnull ObjectMetadata metadata,
+                         @Nonnull File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            if (!dir.mkdirs()) {
+                throw new IOException(String.format("Error creating parent folder. [path=%s]", dir.getAbsolutePath()));
+            }
+        }
+        long length = metadata.getContentLength();
+        if (length <= threshold) {
+            try {
+                client.getObject(new GetObjectRequest(bucket, key), file);
+                return;
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+        List<Future<Long>> parts = new ArrayList<>();
+        try {
+            for (long offset = 0; offset < length; offset += partSize) {
+                long start = offset;
+                long end = Math.min(offset + partSize, length) - 1;
+                parts.add(executor.submit(() -> readRange(bucket, key, metadata.getETag(), start, end, file)));
+            }
+            for (Future<Long> part : parts) {
+                part.get();
+            }
+            LogUtils.debug(getClass(), "Ranged download completed. [bucket={}][key={}][parts={}]",
+                    bucket, key, parts.size());
+        } catch (Throwable t) {
+            cancel(parts);
+            if (file.exists() && !file.delete()) {
+                LogUtils.warn(getClass(), String.format("Error deleting partial download. [path=%s]", file.getAbsolutePath()));
+            }
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException(String.format("Ranged download failed. [bucket=%s][key=%s]", bucket, key), cause(t));
+        }
+    }
+
+    private long readRange(String bucket, String key, String etag, long start, long end, File file) throws IOException {
+        GetObjectRequest request = new GetObjectRequest(bucket, key).withRange(start, end);
+        if (etag != null) {
+            // Fail if the object is replaced while the parts are being read.
+            request.withMatchingETagConstraint(etag);
+        }
+        S3Object object = client.getObject(request);
+        if (object == null) {
+            throw new IOException(String.format("Object modified during download. [bucket=%s][key=%s]", bucket, key));
+        }
+        long written = 0;
+        try (InputStream is = object.getObjectContent();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            long position = start;
+            while (true) {
+                int size = is.read(buffer);
+                if (size < 0) break;
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, size);
+                while (bb.hasRemaining()) {
+                    position += channel.write(bb, position);
+                }
+                written += size;
+            }
+        } finally {
+            object.close();
+        }
+        if (written != end - start + 1) {
+            throw new IOException(String.format("Incomplete range read. [bucket=%s][key=%s][range=%d-%d][read=%d]",
+                    bucket, key, start, end, written));
+        }
+        return written;
+    }
+
+    private void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private Throwable cause(Throwable t) {
+        if (t instanceof ExecutionException && t.getCause() != null) {
+            return t.getCause();
+        }
+        return t;
+    }
+}
@@ -26,6 +26,7 @@ import com.codekutter.common.stores.*;
 import com.codekutter.common.stores.impl.HibernateConnection;
 import com.codekutter.common.stores.impl.RdbmsConfig;
 import com.codekutter.common.stores.impl.RdbmsDataStore;
+import com.codekutter.common.utils.LogUtils;
 import com.codekutter.r2db.driver.impl.annotations.Indexed;
 import com.codekutter.zconfig.common.ConfigurationException;
 import com.google.common.base.Preconditions;
@@ -34,6 +35,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.apache.lucene.search.Query;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
@@ -42,6 +44,7 @@ import org.hibernate.Session;
 
 import javax.annotation.Nonnull;
 import javax.persistence.Entity;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,28 +57,80 @@ public class SearchableRdbmsDataStore extends RdbmsDataStore implements ISearcha
     private ElasticSearchConnection readConnection = null;
     private Map<Class<? extends IEntity>, Map<IKey, CacheEntry>> dirtyCache = new HashMap<>();
 
+    /**
+     * Commit the database transaction and then index the changed entities.
+     * <p>
+     * Index updates are only done once the database commit succeeded, synchronously
+     * by default or using the connection's asynchronous bulk pipeline if enabled
+     * (bulk.async). Synchronous indexing ties the commit latency to the search cluster,
+     * enable bulk.async to decouple them.
+     * <p>
+     * The data is committed when indexing runs, so index failures don't fail the commit:
+     * failed items are logged and queued to the bulk pipeline to be retried.
+     *
+     * @throws DataStoreException
+     */
     @Override
     public void commit() throws DataStoreException {
-        super.flush();
-        if (!dirtyCache.isEmpty()) {
-            for (Class<? extends IEntity> type : dirtyCache.keySet()) {
-                Map<IKey, CacheEntry> entries = dirtyCache.get(type);
-                if (entries != null && !entries.isEmpty()) {
-                    for (IKey key : entries.keySet()) {
-                        CacheEntry entry = entries.get(key);
-                        if (entry.entryType == EAuditType.Create) {
-                            helper.createEntity(readConnection.connection(), entry.entity, type, null);
-                        } else if (entry.entryType == EAuditType.Update) {
-                            helper.updateEntity(readConnection.connection(), entry.entity, type, null);
-                        } else if (entry.entryType == EAuditType.Delete) {
-                            helper.deleteEntity(readConnection.connection(), key, type, null);
-                        }
+        try {
+            // Build the requests before the commit, serialization errors fail the commit.
+            List<DocWriteRequest<?>> requests = (dirtyCache.isEmpty() ? null : writeRequests());
+            super.flush();
+            super.commit();
+            if (requests != null && !requests.isEmpty()) {
+                if (readConnection.bulkAsync()) {
+                    readConnection.bulkIndexer().add(requests);
+                } else {
+                    index(requests);
+                }
+            }
+        } finally {
+            dirtyCache.clear();
+        }
+    }
+
+    private void index(List<DocWriteRequest<?>> requests) {
+        List<DocWriteRequest<?>> failed = new ArrayList<>();
+        try {
+            BulkWriteResult result = helper.bulkWrite(readConnection.connection(), requests,
+                    readConnection.bulkBatchSize(), readConnection.bulkBatchBytes());
+            if (!result.hasErrors()) {
+                return;
+            }
+            LogUtils.error(getClass(), String.format("Error indexing entities, queued for retry. [store=%s][failed=%d][errors=%s]",
+                    name(), result.errors().size(), result.errors()));
+            for (DocWriteRequest<?> request : requests) {
+                if (result.failed(request.index(), request.id())) {
+                    failed.add(request);
+                }
+            }
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), String.format("Error indexing entities, queued for retry. [store=%s][count=%d]",
+                    name(), requests.size()));
+            LogUtils.error(getClass(), ex);
+            failed = requests;
+        }
+        readConnection.bulkIndexer().requeue(failed);
+    }
+
+    private List<DocWriteRequest<?>> writeRequests() throws DataStoreException {
+        List<DocWriteRequest<?>> requests = new ArrayList<>();
+        for (Class<? extends IEntity> type : dirtyCache.keySet()) {
+            Map<IKey, CacheEntry> entries = dirtyCache.get(type);
+            if (entries != null && !entries.isEmpty()) {
+                for (IKey key : entries.keySet()) {
+                    CacheEntry entry = entries.get(key);
+                    if (entry.entryType == EAuditType.Create) {
+                        requests.add(helper.writeRequest(DocWriteRequest.OpType.INDEX, key, entry.entity, type));
+                    } else if (entry.entryType == EAuditType.Update) {
+                        requests.add(helper.writeRequest(DocWriteRequest.OpType.UPDATE, key, entry.entity, type));
+                    } else if (entry.entryType == EAuditType.Delete) {
+                        requests.add(helper.writeRequest(DocWriteRequest.OpType.DELETE, key, null, type));
                     }
                 }
             }
         }
-        dirtyCache.clear();
-        super.commit();
+        return requests;
     }
 
     @Override
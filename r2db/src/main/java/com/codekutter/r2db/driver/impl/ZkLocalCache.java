@@ -0,0 +1,290 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.utils.KeyValuePair;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.netflix.spectator.api.Id;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.zookeeper.data.Stat;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local in-memory view of a Zookeeper sub-tree, kept in sync by watches.
+ * <p>
+ * Reads are served from the cached view once the initial load has completed.
+ * A lookup returns NULL (miss) if the node isn't cached, the cache hasn't been
+ * initialized, the connection has been down longer than the max staleness or
+ * the cached node is older than a write made through this cache. Callers read
+ * through to Zookeeper on a miss.
+ */
+public class ZkLocalCache implements Closeable {
+    @Getter
+    @Accessors(fluent = true)
+    private final String name;
+    @Getter
+    @Accessors(fluent = true)
+    private final String rootPath;
+    @Getter
+    @Accessors(fluent = true)
+    private final long maxStaleness;
+    private final TreeCache cache;
+    private final CountDownLatch initLatch = new CountDownLatch(1);
+    private final AtomicLong size = new AtomicLong();
+    private final Map<String, Marker> written = new ConcurrentHashMap<>();
+    private volatile boolean initialized = false;
+    private volatile long disconnectedAt = 0;
+    private final Id hitCounter;
+    private final Id missCounter;
+
+    /**
+     * Create a new cache instance.
+     *
+     * @param name - Cache name (used for metrics).
+     * @param client - Curator client.
+     * @param rootPath - Root path of the cached sub-tree.
+     * @param maxStaleness - Serve reads for this window after the connection is lost (millis, 0 for connected only).
+     */
+    public ZkLocalCache(@Nonnull String name, @Nonnull CuratorFramework client, @Nonnull String rootPath, long maxStaleness) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(rootPath));
+        this.name = name;
+        this.rootPath = rootPath;
+        this.maxStaleness = maxStaleness;
+        cache = TreeCache.newBuilder(client, rootPath).setCacheData(true).build();
+        cache.getListenable().addListener((c, event) -> event(event));
+
+        hitCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_HIT, getClass().getCanonicalName(), name));
+        missCounter = Monitoring.addCounter(String.format(Metrics.METRIC_COUNTER_MISS, getClass().getCanonicalName(), name));
+        Monitoring.addGauge(String.format(Metrics.METRIC_GAUGE_SIZE, getClass().getCanonicalName(), name), this, "size");
+        Monitoring.addGauge(String.format(Metrics.METRIC_GAUGE_STALENESS, getClass().getCanonicalName(), name), this, "staleness");
+    }
+
+    /**
+     * Start the cache and wait for the initial load. If the load doesn't
+     * complete within the timeout, reads miss until it has completed.
+     *
+     * @param timeout - Max time to wait for the initial load (millis).
+     * @return - Is initialized?
+     * @throws Exception
+     */
+    public boolean start(long timeout) throws Exception {
+        cache.start();
+        if (!initLatch.await(timeout, TimeUnit.MILLISECONDS)) {
+            LogUtils.warn(getClass(), String.format("Cache not initialized within timeout. [name=%s][root=%s][timeout=%d]",
+                    name, rootPath, timeout));
+        }
+        return initialized;
+    }
+
+    /**
+     * Get the cached data for the path.
+     *
+     * @param path - Node path.
+     * @return - Node data or NULL on a miss (the returned array must not be modified).
+     */
+    public byte[] get(@Nonnull String path) {
+        if (!initialized || staleness() > maxStaleness) {
+            increment(missCounter);
+            return null;
+        }
+        ChildData data = cache.getCurrentData(path);
+        Marker marker = written.get(path);
+        if (marker != null) {
+            if (marker.stale(data)) {
+                increment(missCounter);
+                return null;
+            }
+            written.remove(path, marker);
+        }
+        if (data == null || data.getData() == null) {
+            increment(missCounter);
+            return null;
+        }
+        increment(hitCounter);
+        return data.getData();
+    }
+
+    /**
+     * Record a write made to the node, reads miss until the
+     * cached view has received the change.
+     *
+     * @param path - Node path.
+     * @param stat - Node stat returned by the write.
+     */
+    public void written(@Nonnull String path, @Nonnull Stat stat) {
+        written(path, stat.getMzxid());
+    }
+
+    /**
+     * Record a write (or create) made to the node in the transaction with the
+     * specified zxid, reads miss until the cached view has received the change.
+     *
+     * @param path - Node path.
+     * @param zxid - Transaction zxid, 0 if not known (reads miss until the node is cached).
+     */
+    public void written(@Nonnull String path, long zxid) {
+        written.put(path, new Marker(zxid, false));
+    }
+
+    /**
+     * Record a delete of the node, reads miss until the cached view has received
+     * the change. A node re-created after the delete is returned.
+     *
+     * @param path  - Node path.
+     * @param czxid - Creation zxid of the deleted node.
+     */
+    public void deleted(@Nonnull String path, long czxid) {
+        written.put(path, new Marker(czxid, true));
+    }
+
+    public boolean initialized() {
+        return initialized;
+    }
+
+    /**
+     * Get the number of cached nodes.
+     *
+     * @return - Node count.
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Get the time since the cached view was last known to be in sync
+     * (0 while connected).
+     *
+     * @return - Staleness (millis).
+     */
+    public long staleness() {
+        long at = disconnectedAt;
+        return (at > 0 ? System.currentTimeMillis() - at : 0);
+    }
+
+    private void event(TreeCacheEvent event) {
+        switch (event.getType()) {
+            case NODE_ADDED:
+                size.incrementAndGet();
+                synced(event.getData(), true);
+                break;
+            case NODE_UPDATED:
+                synced(event.getData(), false);
+                break;
+            case NODE_REMOVED:
+                size.decrementAndGet();
+                if (event.getData() != null) {
+                    Marker marker = written.get(event.getData().getPath());
+                    if (marker != null && marker.deleted) {
+                        written.remove(event.getData().getPath(), marker);
+                    }
+                }
+                break;
+            case INITIALIZED:
+                initialized = true;
+                initLatch.countDown();
+                LogUtils.debug(getClass(), "Cache initialized. [name={}][root={}][size={}]", name, rootPath, size.get());
+                break;
+            case CONNECTION_SUSPENDED:
+            case CONNECTION_LOST:
+                if (disconnectedAt == 0) {
+                    disconnectedAt = System.currentTimeMillis();
+                }
+                break;
+            case CONNECTION_RECONNECTED:
+                disconnectedAt = 0;
+                break;
+        }
+    }
+
+    private void synced(ChildData data, boolean added) {
+        if (data != null && data.getStat() != null) {
+            Marker marker = written.get(data.getPath());
+            if (marker != null && marker.synced(data, added)) {
+                written.remove(data.getPath(), marker);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void increment(Id counter) {
+        if (counter != null) {
+            Monitoring.increment(counter.name(), (KeyValuePair<String, String>[]) null);
+        }
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+        written.clear();
+        initialized = false;
+    }
+
+    /**
+     * Change made through this cache not yet received by the cached view: the
+     * modified zxid of a write or the creation zxid of a deleted node.
+     */
+    private static final class Marker {
+        private final long zxid;
+        private final boolean deleted;
+
+        private Marker(long zxid, boolean deleted) {
+            this.zxid = zxid;
+            this.deleted = deleted;
+        }
+
+        private boolean stale(ChildData data) {
+            if (deleted) {
+                return (data != null && data.getStat().getCzxid() <= zxid);
+            }
+            return (data == null || data.getStat().getMzxid() < zxid);
+        }
+
+        /**
+         * Check if the added/updated node is the change (or newer).
+         */
+        private boolean synced(ChildData data, boolean added) {
+            if (deleted) {
+                // Node re-created after the delete.
+                return added && data.getStat().getCzxid() > zxid;
+            }
+            return (data.getStat().getMzxid() >= zxid);
+        }
+    }
+
+    private static final class Metrics {
+        private static final String METRIC_COUNTER_HIT = String.format("%s.%s.CACHE.HIT", "%s", "%s");
+        private static final String METRIC_COUNTER_MISS = String.format("%s.%s.CACHE.MISS", "%s", "%s");
+        private static final String METRIC_GAUGE_SIZE = String.format("%s.%s.CACHE.SIZE", "%s", "%s");
+        private static final String METRIC_GAUGE_STALENESS = String.format("%s.%s.CACHE.STALENESS", "%s", "%s");
+    }
+}
@@ -25,6 +25,7 @@ import com.codekutter.common.stores.*;
 import com.codekutter.common.stores.annotations.Reference;
 import com.codekutter.common.stores.impl.DataStoreAuditContext;
 import com.codekutter.common.stores.impl.ZookeeperConnection;
+import com.codekutter.common.utils.LogUtils;
 import com.codekutter.common.utils.ReflectionUtils;
 import com.codekutter.r2db.driver.impl.annotations.ZkEntity;
 import com.codekutter.r2db.driver.impl.annotations.ZkProperty;
@@ -32,22 +33,38 @@ import com.codekutter.r2db.driver.model.ZkEntityReference;
 import com.codekutter.zconfig.common.ConfigurationException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.curator.framework.api.transaction.OperationType;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 @Setter
 @Accessors(fluent = true)
 public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
+    private static final int OP_OVERHEAD_BYTES = 128;
+
+    @Setter(AccessLevel.NONE)
+    private ZkLocalCache cache;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Set<String> knownParents = ConcurrentHashMap.newKeySet();
 
     @Override
     public void configureDataStore(@Nonnull DataStoreManager dataStoreManager) throws ConfigurationException {
@@ -59,6 +76,13 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
                         config().getConnectionName(), CuratorFramework.class.getCanonicalName()));
             }
             withConnection(connection);
+
+            ZookeeperDataStoreConfig config = (ZookeeperDataStoreConfig) config();
+            if (config.useCache()) {
+                cache = new ZkLocalCache(config.getName(), ((ZookeeperConnection) connection).connection(),
+                        config.rootPath(), config.cacheMaxStaleness());
+                cache.start(config.cacheInitTimeout());
+            }
         } catch (Exception ex) {
             throw new ConfigurationException(ex);
         }
@@ -91,11 +115,9 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
     @SuppressWarnings("rawtypes")
     private <E extends IEntity> E readEntityData(String path, Class<? extends E> type, Context context) throws DataStoreException {
         try {
-            CuratorFramework client = connection().connection();
-            Stat stat = client.checkExists().forPath(path);
-            if (stat != null) {
-                byte[] data = client.getData().forPath(path);
-                if (data != null && data.length > 0) {
+            byte[] data = readData(path);
+            if (data != null) {
+                if (data.length > 0) {
                     Map properties = GlobalConstants.getJsonMapper().readValue(data, Map.class);
                     if (properties != null) {
                         E entity = type.newInstance();
@@ -130,6 +152,7 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
                                 }
                             }
                         }
+                        return entity;
                     } else {
                         throw new DataStoreException(String.format("Error reading object data. [type=%s][path=%s]", type.getCanonicalName(), path));
                     }
@@ -141,8 +164,39 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
         }
     }
 
+    private byte[] readData(String path) throws Exception {
+        return readData(path, true);
+    }
+
+    private byte[] readData(String path, boolean useCache) throws Exception {
+        if (useCache && cache != null) {
+            byte[] data = cache.get(path);
+            if (data != null) {
+                return data;
+            }
+        }
+        return readData(path, new Stat());
+    }
+
+    /**
+     * Read the node data from Zookeeper (not the cache).
+     *
+     * @param path - Node path.
+     * @param stat - Stat of the node read.
+     * @return - Node data, NULL if the node doesn't exist.
+     * @throws Exception
+     */
+    private byte[] readData(String path, Stat stat) throws Exception {
+        CuratorFramework client = connection().connection();
+        if (client.checkExists().forPath(path) != null) {
+            byte[] data = client.getData().storingStatIn(stat).forPath(path);
+            return (data != null ? data : new byte[0]);
+        }
+        return null;
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
-    private <E extends IEntity> E setEntityData(String path, E entity, Class<? extends E> type, Context context) throws DataStoreException {
+    private <E extends IEntity> byte[] getEntityData(E entity, Class<? extends E> type, WriteBatch batch, Context context) throws DataStoreException {
         try {
             Map<String, Object> properties = new HashMap<>();
             Field[] fields = ReflectionUtils.getAllFields(type);
@@ -175,35 +229,19 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
                                 if (ReflectionUtils.implementsInterface(List.class, field.getType())) {
                                     List<ZkEntityReference> references = new ArrayList<>();
                                     List values = (List) value;
-                                    for (Object v : values) {
-                                        IEntity ie = (IEntity) v;
-                                        if (cascade) {
-                                            String p = createZkEntity(ie, (Class<? extends IEntity>) itype, context);
-                                            if (Strings.isNullOrEmpty(p)) {
-                                                throw new DataStoreException(String.format("Error creating reference entity. [type=%s]", itype.getCanonicalName()));
-                                            }
+                                    if (values != null) {
+                                        for (Object v : values) {
+                                            references.add(addReference(batch, (IEntity) v, (Class<? extends IEntity>) itype, cascade, context));
                                         }
-                                        ZkEntityReference ref = new ZkEntityReference();
-                                        ref.setType(itype.getCanonicalName());
-                                        ref.setKey(ie.getKey());
-                                        references.add(ref);
                                     }
                                     properties.put(field.getName(), references);
-                                } else if (ReflectionUtils.implementsInterface(List.class, field.getType())) {
+                                } else if (ReflectionUtils.implementsInterface(Set.class, field.getType())) {
                                     Set<ZkEntityReference> references = new HashSet<>();
                                     Set values = (Set) value;
-                                    for (Object v : values) {
-                                        IEntity ie = (IEntity) v;
-                                        if (cascade) {
-                                            String p = createZkEntity(ie, (Class<? extends IEntity>) itype, context);
-                                            if (Strings.isNullOrEmpty(p)) {
-                                                throw new DataStoreException(String.format("Error creating reference entity. [type=%s]", itype.getCanonicalName()));
-                                            }
+                                    if (values != null) {
+                                        for (Object v : values) {
+                                            references.add(addReference(batch, (IEntity) v, (Class<? extends IEntity>) itype, cascade, context));
                                         }
-                                        ZkEntityReference ref = new ZkEntityReference();
-                                        ref.setType(itype.getCanonicalName());
-                                        ref.setKey(ie.getKey());
-                                        references.add(ref);
                                     }
                                     properties.put(field.getName(), references);
                                 }
@@ -217,33 +255,62 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
                     }
                 }
             }
-            CuratorFramework client = connection().connection();
             String json = GlobalConstants.getJsonMapper().writeValueAsString(properties);
-            Stat stat = client.setData().forPath(path, json.getBytes(GlobalConstants.defaultCharset()));
-            if (stat == null) {
-                throw new DataStoreException(String.format("Error setting data for path. [path=%s]", path));
-            }
-            return entity;
+            return json.getBytes(GlobalConstants.defaultCharset());
         } catch (Exception ex) {
             throw new DataStoreException(ex);
         }
     }
 
-    private <E extends IEntity> String createZkEntity(E entity, Class<? extends E> type, Context context) throws DataStoreException {
+    @SuppressWarnings("rawtypes")
+    private ZkEntityReference addReference(WriteBatch batch, IEntity entity, Class<? extends IEntity> type,
+                                           boolean cascade, Context context) throws DataStoreException {
+        String path;
+        if (cascade) {
+            path = addZkEntity(batch, entity, type, context);
+            if (Strings.isNullOrEmpty(path)) {
+                throw new DataStoreException(String.format("Error creating reference entity. [type=%s]", type.getCanonicalName()));
+            }
+        } else {
+            path = getZkPath(type, entity.getKey());
+        }
+        ZkEntityReference ref = new ZkEntityReference();
+        ref.setType(type.getCanonicalName());
+        ref.setKey(entity.getKey());
+        ref.setPath(path);
+        return ref;
+    }
+
+    /**
+     * Add the create/update of the entity (and cascaded references) to the batch.
+     *
+     * @param batch   - Write batch.
+     * @param entity  - Entity to save.
+     * @param type    - Entity type.
+     * @param context - Execution context.
+     * @return - Entity path.
+     * @throws DataStoreException
+     */
+    private <E extends IEntity> String addZkEntity(WriteBatch batch, E entity, Class<? extends E> type, Context context) throws DataStoreException {
         try {
             CuratorFramework client = connection().connection();
             entity.validate();
             String path = getZkPath(type, entity.getKey());
+            if (batch.contains(path)) {
+                return path;
+            }
+            // Reserve the path before adding references, handles cyclic references.
+            batch.reserve(path);
+            byte[] data = getEntityData(entity, type, batch, context);
             Stat stat = client.checkExists().forPath(path);
             if (stat == null) {
-                path = client.create().withMode(CreateMode.PERSISTENT).forPath(path);
-                if (Strings.isNullOrEmpty(path)) {
-                    throw new DataStoreException(String.format("Error creating zookeeper path. [path=%s]", path));
-                }
+                batch.create(path, data);
+            } else {
+                batch.setData(path, data);
             }
-            setEntityData(path, entity, type, context);
-
             return path;
+        } catch (DataStoreException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new DataStoreException(ex);
         }
@@ -255,73 +322,194 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
                                               @Nonnull Class<? extends E> type,
                                               Context context) throws DataStoreException {
         try {
-            createZkEntity(entity, type, context);
+            WriteBatch batch = new WriteBatch();
+            addZkEntity(batch, entity, type, context);
+            batch.commit();
             return entity;
         } catch (Throwable t) {
             throw new DataStoreException(t);
         }
     }
 
+    /**
+     * Create/update the entities in multi transactions, each transaction is
+     * atomic and takes a single round trip. Batches larger than the max batch
+     * size are split into multiple transactions.
+     *
+     * @param entities - Entities to save.
+     * @param type     - Entity type.
+     * @param context  - Execution context.
+     * @return - Saved entities.
+     * @throws DataStoreException
+     */
+    @SuppressWarnings("rawtypes")
+    public <E extends IEntity> List<E> createEntities(@Nonnull List<E> entities,
+                                                      @Nonnull Class<? extends E> type,
+                                                      Context context) throws DataStoreException {
+        Preconditions.checkArgument(entities != null);
+        try {
+            WriteBatch batch = new WriteBatch();
+            for (E entity : entities) {
+                addZkEntity(batch, entity, type, context);
+                batch.endGroup();
+            }
+            batch.commit();
+            return entities;
+        } catch (Throwable t) {
+            throw new DataStoreException(t);
+        }
+    }
+
     @Override
     public <E extends IEntity> E updateEntity(@Nonnull E entity, @Nonnull Class<? extends E> type, Context context) throws DataStoreException {
         return createEntity(entity, type, context);
     }
 
+    /**
+     * Add the delete of the entity (and cascaded references) to the batch. The
+     * references are read from the stored entity data.
+     *
+     * @param batch - Write batch.
+     * @param path  - Entity path.
+     * @param type  - Entity type.
+     * @return - Entity exists?
+     * @throws DataStoreException
+     */
     @SuppressWarnings({"rawtypes", "unchecked"})
-    private <E extends IEntity> boolean deleteZkEntity(String path, E entity, Class<? extends E> type, Context context) throws DataStoreException {
+    private <E extends IEntity> boolean addZkDelete(WriteBatch batch, String path, Class<? extends E> type) throws DataStoreException {
         try {
-            CuratorFramework client = connection().connection();
-            client.delete().forPath(path);
+            // Not read from the cache, deleting a removed node fails the transaction.
+            Stat stat = new Stat();
+            byte[] data = readData(path, stat);
+            if (data == null) {
+                return false;
+            }
+            batch.delete(path, stat.getCzxid());
+            if (data.length == 0) {
+                return true;
+            }
+            Map properties = GlobalConstants.getJsonMapper().readValue(data, Map.class);
             Field[] fields = ReflectionUtils.getAllFields(type);
-            if (fields != null && fields.length > 0) {
-                for (Field field : fields) {
-                    Class<?> itype = field.getType();
-                    if (ReflectionUtils.implementsInterface(List.class, itype)) {
-                        itype = ReflectionUtils.getGenericListType(field);
-                    } else if (ReflectionUtils.implementsInterface(Set.class, itype)) {
-                        itype = ReflectionUtils.getGenericSetType(field);
+            if (properties == null || fields == null) {
+                return true;
+            }
+            for (Field field : fields) {
+                if (!field.isAnnotationPresent(ZkProperty.class) || !field.getAnnotation(ZkProperty.class).cascade()) {
+                    continue;
+                }
+                Class<?> itype = field.getType();
+                if (ReflectionUtils.implementsInterface(List.class, itype)) {
+                    itype = ReflectionUtils.getGenericListType(field);
+                } else if (ReflectionUtils.implementsInterface(Set.class, itype)) {
+                    itype = ReflectionUtils.getGenericSetType(field);
+                } else {
+                    continue;
+                }
+                if (!ReflectionUtils.implementsInterface(IEntity.class, itype)
+                        || !itype.isAnnotationPresent(ZkEntity.class)) {
+                    continue;
+                }
+                Object value = properties.get(field.getName());
+                if (!(value instanceof Collection)) {
+                    continue;
+                }
+                for (Object v : (Collection) value) {
+                    if (!(v instanceof Map)) {
+                        continue;
                     }
-                    Object value = ReflectionUtils.getFieldValue(entity, field);
-                    if (field.isAnnotationPresent(ZkProperty.class)) {
-                        ZkProperty zp = field.getAnnotation(ZkProperty.class);
-                        if (zp.cascade()) {
-                            if (ReflectionUtils.implementsInterface(IEntity.class, itype)
-                                    && itype.isAnnotationPresent(ZkEntity.class)) {
-                                if (ReflectionUtils.implementsInterface(List.class, field.getType())) {
-                                    List values = (List) value;
-                                    for (Object v : values) {
-                                        deleteEntity(((IEntity) v).getKey(), (Class<? extends IEntity>) itype, context);
-                                    }
-                                } else if (ReflectionUtils.implementsInterface(Set.class, field.getType())) {
-                                    Set values = (Set) value;
-                                    for (Object v : values) {
-                                        deleteEntity(((IEntity) v).getKey(), (Class<? extends IEntity>) itype, context);
-                                    }
-                                } else {
-                                    deleteEntity(((IEntity) value).getKey(), (Class<? extends IEntity>) itype, context);
-                                }
-                            }
+                    Object rpath = ((Map) v).get("path");
+                    if (!(rpath instanceof String) || Strings.isNullOrEmpty((String) rpath)) {
+                        // References saved before the path was stored.
+                        IKey rkey = readReferenceKey((Map) v, itype);
+                        if (rkey == null) {
+                            LogUtils.warn(getClass(), String.format("Invalid reference, cascade delete skipped. [path=%s][field=%s]",
+                                    path, field.getName()));
+                            continue;
                         }
+                        rpath = getZkPath((Class<? extends IEntity>) itype, rkey);
+                    }
+                    if (!batch.contains((String) rpath)) {
+                        addZkDelete(batch, (String) rpath, (Class<? extends IEntity>) itype);
                     }
                 }
             }
             return true;
+        } catch (DataStoreException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new DataStoreException(ex);
         }
     }
 
+    /**
+     * Read the key of a stored reference, the key type is the return type of the
+     * referenced entity's getKey().
+     *
+     * @param reference - Reference JSON properties.
+     * @param type      - Referenced entity type.
+     * @return - Reference key or NULL if the key can't be read.
+     */
+    @SuppressWarnings("rawtypes")
+    private IKey readReferenceKey(Map reference, Class<?> type) {
+        Object key = reference.get("key");
+        if (key == null) {
+            return null;
+        }
+        try {
+            Class<?> ktype = type.getMethod("getKey").getReturnType();
+            if (ktype.isInterface() || Modifier.isAbstract(ktype.getModifiers())) {
+                return null;
+            }
+            return (IKey) GlobalConstants.getJsonMapper().convertValue(key, ktype);
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            return null;
+        }
+    }
+
     @Override
     public <E extends IEntity> boolean deleteEntity(@Nonnull Object key, @Nonnull Class<? extends E> type, Context context) throws DataStoreException {
         Preconditions.checkArgument(key instanceof IKey);
         String path = getZkPath(type, (IKey) key);
-        E entity = readEntityData(path, type, context);
-        if (entity != null) {
-            return deleteZkEntity(path, entity, type, context);
+        WriteBatch batch = new WriteBatch();
+        if (addZkDelete(batch, path, type)) {
+            batch.commit();
+            return true;
         }
         return false;
     }
 
+    /**
+     * Delete the entities in multi transactions, each transaction is
+     * atomic and takes a single round trip. Batches larger than the max batch
+     * size are split into multiple transactions.
+     *
+     * @param keys    - Keys of the entities to delete.
+     * @param type    - Entity type.
+     * @param context - Execution context.
+     * @return - Number of entities deleted.
+     * @throws DataStoreException
+     */
+    public <E extends IEntity> int deleteEntities(@Nonnull List<? extends IKey> keys,
+                                                  @Nonnull Class<? extends E> type,
+                                                  Context context) throws DataStoreException {
+        Preconditions.checkArgument(keys != null);
+        WriteBatch batch = new WriteBatch();
+        int count = 0;
+        for (IKey key : keys) {
+            String path = getZkPath(type, key);
+            if (batch.contains(path)) {
+                continue;
+            }
+            if (addZkDelete(batch, path, type)) {
+                batch.endGroup();
+                count++;
+            }
+        }
+        batch.commit();
+        return count;
+    }
+
     @Override
     public <E extends IEntity> E findEntity(@Nonnull Object key, @Nonnull Class<? extends E> type, Context context) throws DataStoreException {
         Preconditions.checkArgument(key instanceof IKey);
@@ -343,4 +531,173 @@ public class ZookeeperDataStore extends AbstractDataStore<CuratorFramework> {
     public DataStoreAuditContext context() {
         return null;
     }
+
+    @Override
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+            cache = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Writes collected for a multi transaction. Operations are committed in
+     * chunks bounded by the max batch bytes (ZooKeeper rejects requests larger than
+     * jute.maxbuffer), each chunk is atomic and takes a single round trip. Chunks are
+     * only split between entities, the operations of an entity and its cascaded
+     * references are always committed in the same transaction. Missing parent paths
+     * are created before the transaction.
+     */
+    private final class WriteBatch {
+        private final List<WriteOp> ops = new ArrayList<>();
+        private final Set<String> paths = new HashSet<>();
+        private final List<Integer> groups = new ArrayList<>();
+        private final Map<String, Long> deleted = new HashMap<>();
+
+        private boolean contains(String path) {
+            return paths.contains(path);
+        }
+
+        private void reserve(String path) {
+            paths.add(path);
+        }
+
+        private void create(String path, byte[] data) {
+            paths.add(path);
+            ops.add(new WriteOp(OperationType.CREATE, path, data));
+        }
+
+        private void setData(String path, byte[] data) {
+            paths.add(path);
+            ops.add(new WriteOp(OperationType.SET_DATA, path, data));
+        }
+
+        private void delete(String path, long czxid) {
+            paths.add(path);
+            deleted.put(path, czxid);
+            ops.add(new WriteOp(OperationType.DELETE, path, null));
+        }
+
+        /**
+         * Mark the end of the operations of an entity (including cascaded references).
+         */
+        private void endGroup() {
+            int last = (groups.isEmpty() ? 0 : groups.get(groups.size() - 1));
+            if (ops.size() > last) {
+                groups.add(ops.size());
+            }
+        }
+
+        private void commit() throws DataStoreException {
+            if (ops.isEmpty()) {
+                return;
+            }
+            ZookeeperDataStoreConfig config = (ZookeeperDataStoreConfig) config();
+            endGroup();
+            try {
+                CuratorFramework client = connection().connection();
+                ensureParents(client);
+                List<CuratorOp> chunk = new ArrayList<>();
+                long size = 0;
+                int start = 0;
+                for (int end : groups) {
+                    List<WriteOp> group = ops.subList(start, end);
+                    start = end;
+                    long gsize = 0;
+                    for (WriteOp op : group) {
+                        gsize += op.size();
+                    }
+                    if (!chunk.isEmpty() && size + gsize > config.maxBatchBytes()) {
+                        commit(client, chunk);
+                        chunk.clear();
+                        size = 0;
+                    }
+                    if (gsize > config.maxBatchBytes()) {
+                        LogUtils.warn(getClass(), String.format("Entity write exceeds max batch size. [path=%s][size=%d]",
+                                group.get(group.size() - 1).path, gsize));
+                    }
+                    for (WriteOp op : group) {
+                        chunk.add(op.build(client));
+                    }
+                    size += gsize;
+                }
+                commit(client, chunk);
+            } catch (KeeperException.NoNodeException ex) {
+                // Parent path removed since it was created.
+                knownParents.clear();
+                throw new DataStoreException(ex);
+            } catch (Exception ex) {
+                throw new DataStoreException(ex);
+            }
+        }
+
+        private void commit(CuratorFramework client, List<CuratorOp> chunk) throws Exception {
+            List<CuratorTransactionResult> results = client.transaction().forOperations(chunk);
+            if (cache != null && results != null) {
+                // All operations in the transaction share the zxid, only set data results carry a stat.
+                // Creates without it miss until the node is cached.
+                long zxid = 0;
+                for (CuratorTransactionResult result : results) {
+                    if (result.getResultStat() != null) {
+                        zxid = Math.max(zxid, result.getResultStat().getMzxid());
+                    }
+                }
+                for (CuratorTransactionResult result : results) {
+                    if (result.getType() == OperationType.SET_DATA && result.getResultStat() != null) {
+                        cache.written(result.getForPath(), result.getResultStat());
+                    } else if (result.getType() == OperationType.CREATE) {
+                        cache.written(result.getForPath(), zxid);
+                    } else if (result.getType() == OperationType.DELETE) {
+                        cache.deleted(result.getForPath(), deleted.get(result.getForPath()));
+                    }
+                }
+            }
+            LogUtils.debug(getClass(), "Committed write batch. [operations={}]", chunk.size());
+        }
+
+        private void ensureParents(CuratorFramework client) throws Exception {
+            for (WriteOp op : ops) {
+                if (op.type == OperationType.CREATE) {
+                    String parent = ZKPaths.getPathAndNode(op.path).getPath();
+                    if (!knownParents.contains(parent)) {
+                        try {
+                            // Created via the client : applies the ACL provider, retry policy and namespace.
+                            client.create().creatingParentsIfNeeded().forPath(parent, new byte[0]);
+                        } catch (KeeperException.NodeExistsException ex) {
+                            // Parent already exists.
+                        }
+                        knownParents.add(parent);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class WriteOp {
+        private final OperationType type;
+        private final String path;
+        private final byte[] data;
+
+        private WriteOp(OperationType type, String path, byte[] data) {
+            this.type = type;
+            this.path = path;
+            this.data = data;
+        }
+
+        private long size() {
+            return OP_OVERHEAD_BYTES + path.getBytes(StandardCharsets.UTF_8).length + (data != null ? data.length : 0);
+        }
+
+        private CuratorOp build(CuratorFramework client) throws Exception {
+            switch (type) {
+                case CREATE:
+                    return client.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(path, data);
+                case SET_DATA:
+                    return client.transactionOp().setData().forPath(path, data);
+                default:
+                    return client.transactionOp().delete().forPath(path);
+            }
+        }
+    }
 }
@@ -27,6 +27,20 @@ import lombok.experimental.Accessors;
 @Setter
 @Accessors(fluent = true)
 public class ZookeeperDataStoreConfig extends DataStoreConfig {
+    public static final int DEFAULT_MAX_BATCH_BYTES = 512 * 1024;
+
     @ConfigValue(name = "root", required = true)
     private String rootPath;
+    @ConfigValue
+    private boolean useCache = false;
+    @ConfigValue
+    private long cacheMaxStaleness = 0;
+    @ConfigValue
+    private long cacheInitTimeout = 30 * 1000;
+    /**
+     * Max request size of a multi transaction, should be below
+     * the server jute.maxbuffer (default 1MB).
+     */
+    @ConfigValue
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
 }
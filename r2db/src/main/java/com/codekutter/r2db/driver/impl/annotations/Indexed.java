@@ -28,4 +28,10 @@ public @interface Indexed {
     String language() default "english";
 
     String tokenizer() default "whitespace";
+
+    /**
+     * Unique keyword (doc values) field, such as the entity key field, used as the
+     * tiebreaker when paging with search_after.
+     */
+    String keyField() default "";
 }
@@ -19,6 +19,8 @@ package com.codekutter.r2db.driver.model;
 
 import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.codekutter.common.Context;
@@ -34,11 +36,14 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.SeekableByteChannel;
 
 public class S3FileEntity extends RemoteFileEntity<S3FileKey, AmazonS3> {
     private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
     private S3FileKey key;
     private AmazonS3 client;
+    private long remoteLength = -1;
+    private String eTag;
 
     public S3FileEntity(String bucket, String key, String pathname) {
         super(pathname);
@@ -65,6 +70,136 @@ public class S3FileEntity extends RemoteFileEntity<S3FileKey, AmazonS3> {
         return this;
     }
 
+    /**
+     * Set the remote object attributes (from a HEAD request).
+     *
+     * @param metadata - Remote object metadata.
+     * @return - Self
+     */
+    public S3FileEntity withMetadata(@Nonnull ObjectMetadata metadata) {
+        this.remoteLength = metadata.getContentLength();
+        this.eTag = metadata.getETag();
+        if (metadata.getLastModified() != null) {
+            setUpdateTimestamp(metadata.getLastModified().getTime());
+        }
+        return this;
+    }
+
+    /**
+     * Get the size of the remote object.
+     *
+     * @return - Size in bytes.
+     * @throws IOException
+     */
+    public long getRemoteLength() throws IOException {
+        if (remoteLength < 0) {
+            readMetadata();
+        }
+        return remoteLength;
+    }
+
+    /**
+     * Get the ETag of the remote object version this entity was read from.
+     *
+     * @return - ETag or NULL if not known.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Open a stream to read the remote object directly from S3.
+     * No local copy is created.
+     *
+     * @return - Input Stream, to be closed by the caller.
+     * @throws IOException
+     */
+    public InputStream openStream() throws IOException {
+        return openStream(0, -1);
+    }
+
+    /**
+     * Open a stream to read a byte range of the remote object directly from S3.
+     * No local copy is created.
+     *
+     * @param offset - Start offset.
+     * @param length - Number of bytes to read (-1 to read till the end of the object).
+     * @return - Input Stream, to be closed by the caller.
+     * @throws IOException
+     */
+    public InputStream openStream(long offset, long length) throws IOException {
+        Preconditions.checkArgument(offset >= 0);
+        if (client == null) {
+            throw new IOException("AWS S3 Client not set.");
+        }
+        GetObjectRequest request = new GetObjectRequest(key.bucket(), key.key());
+        if (length > 0) {
+            request.withRange(offset, offset + length - 1);
+        } else if (offset > 0) {
+            request.withRange(offset);
+        }
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+        try {
+            S3Object source = client.getObject(request);
+            if (source == null) {
+                throw new IOException(String.format("S3 Object modified. [bucket=%s][key=%s][etag=%s]",
+                        key.bucket(), key.key(), eTag));
+            }
+            return source.getObjectContent();
+        } catch (SdkClientException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Open a read-only seekable channel on the remote object.
+     * Reads are streamed directly from S3, no local copy is created.
+     *
+     * @return - Seekable channel, to be closed by the caller.
+     * @throws IOException
+     */
+    public SeekableByteChannel openChannel() throws IOException {
+        if (client == null) {
+            throw new IOException("AWS S3 Client not set.");
+        }
+        return new S3ObjectChannel(client, key.bucket(), key.key(), getRemoteLength(), eTag);
+    }
+
+    /**
+     * Read a byte range of the remote object.
+     *
+     * @param offset - Start offset.
+     * @param length - Number of bytes to read.
+     * @return - Bytes read (can be less than length if the range extends past the end of the object).
+     * @throws IOException
+     */
+    public byte[] readRange(long offset, int length) throws IOException {
+        Preconditions.checkArgument(length > 0);
+        try (InputStream is = openStream(offset, length)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(length);
+            byte[] data = new byte[Math.min(length, DEFAULT_BUFFER_SIZE)];
+            while (true) {
+                int size = is.read(data);
+                if (size < 0) break;
+                buffer.write(data, 0, size);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private void readMetadata() throws IOException {
+        if (client == null) {
+            throw new IOException("AWS S3 Client not set.");
+        }
+        try {
+            withMetadata(client.getObjectMetadata(key.bucket(), key.key()));
+        } catch (SdkClientException ex) {
+            throw new IOException(ex);
+        }
+    }
+
     @Override
     public String getRemotePath() throws IOException {
         return key.key();
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.model;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only seekable channel over a remote S3 object.
+ * <p>
+ * Data is streamed directly from S3 using ranged GETs starting at the current position;
+ * nothing is written to local disk. Seeking forward within the skip window reuses the open
+ * stream, any other seek re-opens the stream at the new position. All reads are pinned
+ * to the object ETag, reads fail if the object is replaced while the channel is open.
+ */
+public class S3ObjectChannel implements SeekableByteChannel {
+    private static final long DEFAULT_SKIP_WINDOW = 64 * 1024;
+
+    private final AmazonS3 client;
+    @Getter
+    @Accessors(fluent = true)
+    private final String bucket;
+    @Getter
+    @Accessors(fluent = true)
+    private final String key;
+    private final long size;
+    @Getter
+    @Accessors(fluent = true)
+    private final String etag;
+    private long position = 0;
+    private boolean open = true;
+    private S3Object object = null;
+    private S3ObjectInputStream stream = null;
+    private long streamPosition = 0;
+
+    public S3ObjectChannel(@Nonnull AmazonS3 client,
+                           @Nonnull String bucket,
+                           @Nonnull String key,
+                           long size,
+                           String etag) {
+        Preconditions.checkArgument(size >= 0);
+        this.client = client;
+        this.bucket = bucket;
+        this.key = key;
+        this.size = size;
+        this.etag = etag;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        openStream();
+        int length = (int) Math.min(dst.remaining(), size - position);
+        int read;
+        if (dst.hasArray()) {
+            read = stream.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+            if (read > 0) {
+                dst.position(dst.position() + read);
+            }
+        } else {
+            byte[] buffer = new byte[length];
+            read = stream.read(buffer, 0, length);
+            if (read > 0) {
+                dst.put(buffer, 0, read);
+            }
+        }
+        if (read < 0) {
+            throw new IOException(String.format("Unexpected end of stream. [bucket=%s][key=%s][position=%d]",
+                    bucket, key, position));
+        }
+        position += read;
+        streamPosition += read;
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        checkOpen();
+        Preconditions.checkArgument(newPosition >= 0);
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            closeStream();
+        }
+    }
+
+    private void openStream() throws IOException {
+        if (stream != null) {
+            long skip = position - streamPosition;
+            if (skip == 0) {
+                return;
+            }
+            if (skip > 0 && skip <= DEFAULT_SKIP_WINDOW) {
+                while (streamPosition < position) {
+                    long skipped = stream.skip(position - streamPosition);
+                    if (skipped <= 0) break;
+                    streamPosition += skipped;
+                }
+                if (streamPosition == position) {
+                    return;
+                }
+            }
+            closeStream();
+        }
+        GetObjectRequest request = new GetObjectRequest(bucket, key).withRange(position, size - 1);
+        if (etag != null) {
+            request.withMatchingETagConstraint(etag);
+        }
+        object = client.getObject(request);
+        if (object == null) {
+            throw new IOException(String.format("Object modified while reading. [bucket=%s][key=%s]", bucket, key));
+        }
+        stream = object.getObjectContent();
+        streamPosition = position;
+    }
+
+    private void closeStream() throws IOException {
+        if (stream != null) {
+            // Abort instead of draining the remaining range when the stream is discarded early.
+            if (streamPosition < size) {
+                stream.abort();
+            }
+            stream = null;
+        }
+        if (object != null) {
+            object.close();
+            object = null;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -26,4 +26,5 @@ import lombok.Setter;
 public class ZkEntityReference<K extends IKey> {
     private String type;
     private K key;
+    private String path;
 }
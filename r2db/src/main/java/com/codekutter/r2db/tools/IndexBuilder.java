@@ -31,17 +31,29 @@ import com.google.common.base.Strings;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.open.OpenIndexRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.GetAliasesResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
 import org.elasticsearch.client.indices.*;
+import org.elasticsearch.client.tasks.GetTaskRequest;
+import org.elasticsearch.client.tasks.GetTaskResponse;
+import org.elasticsearch.client.tasks.TaskSubmissionResponse;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.reindex.ReindexRequest;
 
 import javax.annotation.Nonnull;
 import java.lang.reflect.Field;
@@ -60,11 +72,24 @@ public class IndexBuilder {
     public static final String SETTING_WRITE_SHARDS = "index.write.wait_for_active_shards";
     public static final String SETTING_NUM_SHARDS = "index.number_of_shards";
     public static final String SETTING_NUM_REPLICAS = "index.number_of_replicas";
+    public static final String SETTING_BLOCKS_WRITE = "index.blocks.write";
+    public static final String INDEX_VERSION_SEPARATOR = "-v";
+
+    private static final long DEFAULT_REINDEX_TIMEOUT = 60 * 60 * 1000;
+    private static final long DEFAULT_REINDEX_POLL_INTERVAL = 5 * 1000;
+    private static final int DEFAULT_REINDEX_BATCH_SIZE = 1000;
 
     private int minWriteShards = 1;
     private int maxShards = 1;
     private int replicas = 1;
+    private long reindexTimeout = DEFAULT_REINDEX_TIMEOUT;
+    private long reindexPollInterval = DEFAULT_REINDEX_POLL_INTERVAL;
+    private int reindexBatchSize = DEFAULT_REINDEX_BATCH_SIZE;
     private ElasticSearchConnection connection;
+    /**
+     * Index name used by readers/writers: an alias pointing to the
+     * current versioned index.
+     */
     private String index;
 
     public IndexBuilder withConnection(String searchConnection) throws DataStoreException {
@@ -89,7 +114,9 @@ public class IndexBuilder {
 
             if (!indexExists()) {
                 LogUtils.info(getClass(), String.format("Creating new index. [index=%s]", index));
-                createIndex(type, indexed);
+                String name = versionedName(1);
+                createIndex(name, indexed, mappings(type, indexed));
+                swapAlias(null, name);
             } else {
                 LogUtils.info(getClass(), String.format("Updating index. [index=%s]", index));
                 updateIndex(type, indexed);
@@ -119,31 +146,450 @@ public class IndexBuilder {
         }
     }
 
+    /**
+     * Delete the index, including all the versioned indices if aliased.
+     *
+     * @throws Exception
+     */
     public void deleteIndex() throws Exception {
         RestHighLevelClient client = connection.connection();
         DeleteIndexRequest request = new DeleteIndexRequest(index);
+        if (!Strings.isNullOrEmpty(currentIndex())) {
+            List<String> versions = versions();
+            request = new DeleteIndexRequest(versions.toArray(new String[0]));
+        }
         AcknowledgedResponse response = client.indices().delete(request, RequestOptions.DEFAULT);
         if (!response.isAcknowledged()) {
             throw new Exception(String.format("Index open not acked. [index=%s]", index));
         }
     }
 
+    /**
+     * Rebuild the index with the current mappings without making it unavailable:
+     * a new versioned index is created and the documents copied into it, after which
+     * the alias is atomically swapped to the new index. The previous index is kept
+     * (for rollback) until explicitly dropped. The index is only rebuilt if the
+     * stored mappings differ from the mappings generated for the type.
+     * <p>
+     * Documents are first copied while the current index still takes writes. The current
+     * index is then write blocked and a catch-up copy (external versioning) picks up the
+     * changes made during the first copy, before the counts are verified and the alias
+     * swapped. Nothing is copied once writes have moved to the new index. If documents
+     * were deleted during the first copy the counts differ and the rebuild is abandoned.
+     *
+     * @param type - Entity type.
+     * @param indexed - Index annotation.
+     * @throws Exception
+     */
     private void updateIndex(Class<? extends IEntity> type, Indexed indexed) throws Exception {
-        deleteIndex();
-        createIndex(type, indexed);
+        String current = currentIndex();
+        Map<String, Object> properties = mappings(type, indexed);
+        String source = (Strings.isNullOrEmpty(current) ? index : current);
+        if (!mappingChanged(readMappings(source), properties)) {
+            LogUtils.info(getClass(), String.format("Index mappings unchanged. [index=%s][current=%s]", index, source));
+            return;
+        }
+        if (Strings.isNullOrEmpty(current)) {
+            updateLegacyIndex(indexed, properties);
+            return;
+        }
+        List<String> versions = versions();
+        int version = versions.isEmpty() ? 1 : parseVersion(versions.get(versions.size() - 1)) + 1;
+        String name = versionedName(version);
+        createIndex(name, indexed, properties);
+        try {
+            reindex(current, name);
+        } catch (Exception ex) {
+            try {
+                dropIndex(name);
+            } catch (Exception e) {
+                LogUtils.error(getClass(), e);
+            }
+            throw ex;
+        }
+        copyAndSwap(current, name);
     }
 
-    private void createIndex(Class<? extends IEntity> type, Indexed indexed) throws Exception {
+    /**
+     * Move an index created before aliases were used to a versioned index. The alias
+     * cannot share the name of an existing index, so the legacy index is removed as part
+     * of the alias swap.
+     * <p>
+     * Writes to the legacy index are blocked while it is copied, so no updates are lost,
+     * and the copy is verified before the swap. If the copy fails the write block is
+     * removed and the new index dropped, leaving the legacy index unchanged.
+     *
+     * @param indexed    - Index annotation.
+     * @param properties - Generated mappings.
+     * @throws Exception
+     */
+    private void updateLegacyIndex(Indexed indexed, Map<String, Object> properties) throws Exception {
+        String name = versionedName(1);
+        createIndex(name, indexed, properties);
+        copyAndSwap(index, name);
+    }
+
+    /**
+     * Write block the source index, copy it to the target and verify the document
+     * counts before moving the alias. The source index stays write blocked after the
+     * swap. If the copy fails the write block is removed and the target index dropped,
+     * leaving the source index unchanged.
+     *
+     * @param source - Index currently aliased (or legacy index).
+     * @param target - New versioned index.
+     * @throws Exception
+     */
+    private void copyAndSwap(String source, String target) throws Exception {
+        boolean swapped = false;
+        writeBlock(source, true);
+        try {
+            reindex(source, target);
+            long scount = count(source);
+            long tcount = count(target);
+            if (scount != tcount) {
+                throw new Exception(String.format("Reindex incomplete. [source=%s][count=%d][target=%s][count=%d]",
+                        source, scount, target, tcount));
+            }
+            swapAlias(source, target);
+            swapped = true;
+        } finally {
+            if (!swapped) {
+                try {
+                    writeBlock(source, false);
+                    dropIndex(target);
+                } catch (Exception ex) {
+                    LogUtils.error(getClass(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the generated mappings differ from the stored index mappings. Only the
+     * generated fields are compared, fields added to the index by dynamic mapping are
+     * ignored. Dotted field names are matched against the stored object fields.
+     *
+     * @param stored    - Stored index mappings (properties).
+     * @param generated - Generated mappings (properties).
+     * @return - Mappings changed?
+     */
+    @SuppressWarnings("unchecked")
+    static boolean mappingChanged(Map<String, Object> stored, Map<String, Object> generated) {
+        if (generated == null || generated.isEmpty()) {
+            return false;
+        }
+        if (stored == null) {
+            return true;
+        }
+        for (Map.Entry<String, Object> entry : generated.entrySet()) {
+            Object field = findField(stored, entry.getKey());
+            if (!(field instanceof Map) || !(entry.getValue() instanceof Map)) {
+                return true;
+            }
+            Map<String, Object> sfield = (Map<String, Object>) field;
+            for (Map.Entry<String, Object> attr : ((Map<String, Object>) entry.getValue()).entrySet()) {
+                Object value = sfield.get(attr.getKey());
+                if (value == null) {
+                    if (isDefault(attr.getKey(), attr.getValue())) {
+                        continue;
+                    }
+                    return true;
+                }
+                if (!String.valueOf(value).equals(String.valueOf(attr.getValue()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object findField(Map<String, Object> properties, String name) {
+        Object field = properties.get(name);
+        if (field != null) {
+            return field;
+        }
+        int indx = name.indexOf('.');
+        if (indx > 0) {
+            Object parent = properties.get(name.substring(0, indx));
+            if (parent instanceof Map) {
+                Object children = ((Map<String, Object>) parent).get(MAPPING_PROPERTIES);
+                if (children instanceof Map) {
+                    return findField((Map<String, Object>) children, name.substring(indx + 1));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Mapping attributes not returned by the index when set to the default value.
+     */
+    private static boolean isDefault(String attribute, Object value) {
+        return (attribute.equals(MAPPING_TYPE) && IndexCreateHelper.FIELD_TYPE_OBJECT.equals(value))
+                || (attribute.equals(MAPPING_IGNORE) && Boolean.TRUE.equals(value));
+    }
+
+    /**
+     * Read the stored mappings (properties) of the index.
+     *
+     * @param name - Concrete index name.
+     * @return - Mapping properties, NULL if none defined.
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readMappings(String name) throws Exception {
         RestHighLevelClient client = connection.connection();
-        Field[] fields = ReflectionUtils.getAllFields(type);
-        if (fields != null && fields.length > 0) {
-            CreateIndexRequest indexRequest = new CreateIndexRequest(index);
-            String analyzer = String.format("analyzer_%s_%s", index, indexed.language());
-            settings(analyzer, index, indexed, indexRequest);
-            Map<String, Object> properties = new HashMap<>();
-            for (Field field : fields) {
-                processField(null, analyzer, field, properties, new HashMap<>());
+        GetMappingsRequest request = new GetMappingsRequest().indices(name);
+        GetMappingsResponse response = client.indices().getMapping(request, RequestOptions.DEFAULT);
+        MappingMetaData mapping = response.mappings().get(name);
+        if (mapping != null) {
+            Object properties = mapping.sourceAsMap().get(MAPPING_PROPERTIES);
+            if (properties instanceof Map) {
+                return (Map<String, Object>) properties;
+            }
+        }
+        return null;
+    }
+
+    private void writeBlock(String name, boolean block) throws Exception {
+        RestHighLevelClient client = connection.connection();
+        UpdateSettingsRequest request = new UpdateSettingsRequest(name)
+                .settings(Settings.builder().put(SETTING_BLOCKS_WRITE, block));
+        AcknowledgedResponse response = client.indices().putSettings(request, RequestOptions.DEFAULT);
+        if (!response.isAcknowledged()) {
+            throw new Exception(String.format("Index settings update not acked. [index=%s]", name));
+        }
+        LogUtils.info(getClass(), String.format("Index write block updated. [index=%s][blocked=%s]", name, block));
+    }
+
+    private long count(String name) throws Exception {
+        RestHighLevelClient client = connection.connection();
+        CountResponse response = client.count(new CountRequest(name), RequestOptions.DEFAULT);
+        return response.getCount();
+    }
+
+    /**
+     * Get the concrete index the alias currently points to.
+     *
+     * @return - Current index name, NULL if the index is not aliased.
+     * @throws Exception
+     */
+    public String currentIndex() throws Exception {
+        Preconditions.checkState(connection != null);
+        Preconditions.checkState(!Strings.isNullOrEmpty(index));
+        RestHighLevelClient client = connection.connection();
+
+        GetAliasesRequest request = new GetAliasesRequest(index);
+        if (!client.indices().existsAlias(request, RequestOptions.DEFAULT)) {
+            return null;
+        }
+        GetAliasesResponse response = client.indices().getAlias(request, RequestOptions.DEFAULT);
+        String current = null;
+        for (Map.Entry<String, Set<AliasMetaData>> entry : response.getAliases().entrySet()) {
+            for (AliasMetaData alias : entry.getValue()) {
+                if (alias.alias().equals(index)) {
+                    if (current == null || (alias.writeIndex() != null && alias.writeIndex())) {
+                        current = entry.getKey();
+                    }
+                }
             }
+        }
+        return current;
+    }
+
+    /**
+     * Get the versioned indices for this index, sorted by version.
+     *
+     * @return - List of index names.
+     * @throws Exception
+     */
+    public List<String> versions() throws Exception {
+        Preconditions.checkState(connection != null);
+        Preconditions.checkState(!Strings.isNullOrEmpty(index));
+        RestHighLevelClient client = connection.connection();
+
+        GetIndexRequest request = new GetIndexRequest(index + INDEX_VERSION_SEPARATOR + "*");
+        GetIndexResponse response = client.indices().get(request, RequestOptions.DEFAULT);
+        List<String> versions = new ArrayList<>();
+        for (String name : response.getIndices()) {
+            if (parseVersion(name) > 0) {
+                versions.add(name);
+            }
+        }
+        versions.sort(Comparator.comparingInt(this::parseVersion));
+        return versions;
+    }
+
+    /**
+     * Point the alias back to the version preceding the current index. The write
+     * block set on the previous index by the rebuild is removed.
+     *
+     * @throws Exception
+     */
+    public void rollback() throws Exception {
+        String current = currentIndex();
+        if (Strings.isNullOrEmpty(current)) {
+            throw new Exception(String.format("Index is not aliased. [index=%s]", index));
+        }
+        List<String> versions = versions();
+        int indx = versions.indexOf(current);
+        if (indx <= 0) {
+            throw new Exception(String.format("No previous version to rollback to. [index=%s][current=%s]", index, current));
+        }
+        String previous = versions.get(indx - 1);
+        writeBlock(previous, false);
+        swapAlias(current, previous);
+    }
+
+    /**
+     * Drop the versioned indices older than the current index,
+     * retaining the specified number of previous versions.
+     *
+     * @param keep - Number of previous versions to keep.
+     * @throws Exception
+     */
+    public void dropOldVersions(int keep) throws Exception {
+        Preconditions.checkArgument(keep >= 0);
+        String current = currentIndex();
+        if (Strings.isNullOrEmpty(current)) {
+            return;
+        }
+        List<String> versions = versions();
+        int indx = versions.indexOf(current);
+        for (int ii = 0; ii < indx - keep; ii++) {
+            dropIndex(versions.get(ii));
+        }
+    }
+
+    /**
+     * Drop a versioned index. The index currently pointed to by the alias cannot be dropped.
+     *
+     * @param name - Versioned index name.
+     * @throws Exception
+     */
+    public void dropIndex(@Nonnull String name) throws Exception {
+        Preconditions.checkArgument(parseVersion(name) > 0);
+        if (name.equals(currentIndex())) {
+            throw new Exception(String.format("Cannot drop the current index. [index=%s][name=%s]", index, name));
+        }
+        RestHighLevelClient client = connection.connection();
+        DeleteIndexRequest request = new DeleteIndexRequest(name);
+        AcknowledgedResponse response = client.indices().delete(request, RequestOptions.DEFAULT);
+        if (!response.isAcknowledged()) {
+            throw new Exception(String.format("Index delete not acked. [index=%s]", name));
+        }
+        LogUtils.info(getClass(), String.format("Index dropped. [index=%s][name=%s]", index, name));
+    }
+
+    private String versionedName(int version) {
+        return String.format("%s%s%d", index, INDEX_VERSION_SEPARATOR, version);
+    }
+
+    private int parseVersion(String name) {
+        String prefix = index + INDEX_VERSION_SEPARATOR;
+        if (name.startsWith(prefix)) {
+            try {
+                return Integer.parseInt(name.substring(prefix.length()));
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Atomically move the alias from the source index to the target index.
+     *
+     * @param source - Index currently aliased (or legacy index to be removed), NULL if none.
+     * @param target - Index to alias.
+     * @throws Exception
+     */
+    private void swapAlias(String source, String target) throws Exception {
+        RestHighLevelClient client = connection.connection();
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        if (!Strings.isNullOrEmpty(source)) {
+            if (source.equals(index)) {
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(source));
+            } else {
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(source).alias(index));
+            }
+        }
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(target).alias(index).writeIndex(true));
+        AcknowledgedResponse response = client.indices().updateAliases(request, RequestOptions.DEFAULT);
+        if (!response.isAcknowledged()) {
+            throw new Exception(String.format("Alias update not acked. [alias=%s][index=%s]", index, target));
+        }
+        LogUtils.info(getClass(), String.format("Alias updated. [alias=%s][from=%s][to=%s]", index, source, target));
+    }
+
+    /**
+     * Copy the documents from the source index as a background task on the cluster,
+     * and wait for it to complete.
+     *
+     * @param source - Source index.
+     * @param target - Target index.
+     * @throws Exception
+     */
+    private void reindex(String source, String target) throws Exception {
+        RestHighLevelClient client = connection.connection();
+        ReindexRequest request = new ReindexRequest();
+        request.setSourceIndices(source);
+        request.setDestIndex(target);
+        request.setDestVersionType(VersionType.EXTERNAL);
+        request.setConflicts("proceed");
+        request.setSourceBatchSize(reindexBatchSize);
+        request.setRefresh(true);
+        TaskSubmissionResponse submitted = client.submitReindexTask(request, RequestOptions.DEFAULT);
+        String[] parts = submitted.getTask().split(":");
+        GetTaskRequest taskRequest = new GetTaskRequest(parts[0], Long.parseLong(parts[1]));
+
+        long start = System.currentTimeMillis();
+        while (true) {
+            Optional<GetTaskResponse> response = client.tasks().get(taskRequest, RequestOptions.DEFAULT);
+            if (response.isPresent() && response.get().isCompleted()) {
+                LogUtils.info(getClass(), String.format("Reindex completed. [source=%s][target=%s][status=%s]",
+                        source, target, response.get().getTaskInfo().getStatus()));
+                break;
+            }
+            if (System.currentTimeMillis() - start > reindexTimeout) {
+                throw new Exception(String.format("Timeout waiting for reindex. [source=%s][target=%s][task=%s]",
+                        source, target, submitted.getTask()));
+            }
+            Thread.sleep(reindexPollInterval);
+        }
+    }
+
+    /**
+     * Generate the index mappings (properties) for the entity type.
+     *
+     * @param type    - Entity type.
+     * @param indexed - Index annotation.
+     * @return - Mapping properties, NULL if the type has no fields.
+     * @throws Exception
+     */
+    Map<String, Object> mappings(Class<? extends IEntity> type, Indexed indexed) throws Exception {
+        Field[] fields = ReflectionUtils.getAllFields(type);
+        if (fields == null || fields.length == 0) {
+            return null;
+        }
+        String analyzer = analyzer(indexed);
+        Map<String, Object> properties = new HashMap<>();
+        for (Field field : fields) {
+            processField(null, analyzer, field, properties, new HashMap<>());
+        }
+        return properties;
+    }
+
+    private String analyzer(Indexed indexed) {
+        return String.format("analyzer_%s_%s", index, indexed.language());
+    }
+
+    private void createIndex(String name, Indexed indexed, Map<String, Object> properties) throws Exception {
+        RestHighLevelClient client = connection.connection();
+        if (properties != null) {
+            CreateIndexRequest indexRequest = new CreateIndexRequest(name);
+            settings(analyzer(indexed), index, indexed, indexRequest);
             if (!properties.isEmpty()) {
                 Map<String, Object> mappings = new HashMap<>();
                 mappings.put(MAPPING_PROPERTIES, properties);
@@ -151,9 +597,9 @@ public class IndexBuilder {
             }
             CreateIndexResponse response = client.indices().create(indexRequest, RequestOptions.DEFAULT);
             if (!response.isShardsAcknowledged()) {
-                throw new Exception(String.format("Shard response not received. [index=%s]", index));
+                throw new Exception(String.format("Shard response not received. [index=%s]", name));
             }
-            LogUtils.info(getClass(), String.format("Index created. [name=%s]", index));
+            LogUtils.info(getClass(), String.format("Index created. [index=%s][name=%s]", index, name));
         }
     }
 
@@ -248,7 +694,11 @@ public class IndexBuilder {
 
         GetSettingsRequest getSettingsRequest = new GetSettingsRequest();
         GetSettingsResponse indexResponse = client.indices().getSettings(getSettingsRequest, RequestOptions.DEFAULT);
-        Settings settings = indexResponse.getIndexToSettings().get(index);
+        String name = currentIndex();
+        if (Strings.isNullOrEmpty(name)) {
+            name = index;
+        }
+        Settings settings = indexResponse.getIndexToSettings().get(name);
 
         for (String key : settings.keySet()) {
             System.out.println(key + " : " + settings.get(key));
@@ -263,7 +713,11 @@ public class IndexBuilder {
         GetMappingsRequest request = new GetMappingsRequest();
         GetMappingsResponse response = client.indices().getMapping(request, RequestOptions.DEFAULT);
         Map<String, MappingMetaData> allMappings = response.mappings();
-        MappingMetaData indexMapping = allMappings.get(index);
+        String name = currentIndex();
+        if (Strings.isNullOrEmpty(name)) {
+            name = index;
+        }
+        MappingMetaData indexMapping = allMappings.get(name);
         Map<String, Object> mapping = indexMapping.sourceAsMap();
         for (String key : mapping.keySet()) {
             System.out.println(String.format("%s ==> [%s]", key, mapping.get(key)));
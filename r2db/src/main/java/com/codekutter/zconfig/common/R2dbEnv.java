@@ -20,6 +20,7 @@ package com.codekutter.zconfig.common;
 import com.codekutter.common.auditing.AuditManager;
 import com.codekutter.common.stores.ConnectionManager;
 import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.ManagedExecutor;
 import com.codekutter.r2db.driver.EntityManager;
 import com.codekutter.zconfig.common.model.nodes.AbstractConfigNode;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
@@ -29,6 +30,7 @@ import javax.annotation.Nonnull;
 public class R2dbEnv extends ExtendedZConfigEnv {
     public static final String CONFIG_PATH_ENTITY_MANAGER = "/configuration/r2db";
     public static final String CONFIG_PATH_AUDIT_LOGGER = "/configuration/audit";
+    public static final String CONFIG_PATH_EXECUTOR = "/configuration/executor";
 
     private EntityManager entityManager = new EntityManager();
 
@@ -64,7 +66,12 @@ public class R2dbEnv extends ExtendedZConfigEnv {
     @Override
     public void postInit() throws ConfigurationException {
         super.postInit();
-        AbstractConfigNode node = getConfiguration().getRootConfigNode().find(CONFIG_PATH_ENTITY_MANAGER);
+        AbstractConfigNode node = getConfiguration().getRootConfigNode().find(CONFIG_PATH_EXECUTOR);
+        if (node instanceof ConfigPathNode && node.getParent() instanceof ConfigPathNode) {
+            ManagedExecutor.setup(node.getParent());
+        }
+
+        node = getConfiguration().getRootConfigNode().find(CONFIG_PATH_ENTITY_MANAGER);
         if (node instanceof ConfigPathNode) {
             entityManager.configure(node);
         } else {
@@ -34,7 +34,7 @@ import javax.persistence.Table;
 @Setter
 @Entity
 @Table(name = "tb_product")
-@Indexed(index = "product_index")
+@Indexed(index = "product_index", keyField = "id.key")
 public class Product implements IEntity<ProductKey> {
     @EmbeddedId
     private ProductKey id;
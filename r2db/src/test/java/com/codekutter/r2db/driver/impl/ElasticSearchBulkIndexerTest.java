@@ -0,0 +1,243 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.stores.EConnectionState;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the bulk indexer against a stub _bulk endpoint. Documents with ID
+ * "busy-*" are rejected (429) for the first attempts, "fail-*" are rejected
+ * with a mapping error and "reject-*" are always rejected (429).
+ */
+class ElasticSearchBulkIndexerTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int BUSY_ATTEMPTS = 2;
+    private static final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private static final Set<String> indexed = ConcurrentHashMap.newKeySet();
+    private static HttpServer server;
+    private static RestHighLevelClient client;
+    private static TestConnection connection;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            StringBuilder items = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    JsonNode node = mapper.readTree(line);
+                    Iterator<String> names = node.fieldNames();
+                    String op = names.next();
+                    JsonNode meta = node.get(op);
+                    if (!op.equals("delete")) {
+                        reader.readLine();
+                    }
+                    String id = meta.get("_id").asText();
+                    int attempt = attempts.computeIfAbsent(id, (k) -> new AtomicInteger()).incrementAndGet();
+                    if (items.length() > 0) items.append(",");
+                    if (id.startsWith("fail-")) {
+                        items.append(String.format("{\"%s\":{\"_index\":\"%s\",\"_type\":\"_doc\",\"_id\":\"%s\",\"status\":400," +
+                                        "\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}",
+                                op, meta.get("_index").asText(), id));
+                    } else if (id.startsWith("reject-") || (id.startsWith("busy-") && attempt <= BUSY_ATTEMPTS)) {
+                        items.append(String.format("{\"%s\":{\"_index\":\"%s\",\"_type\":\"_doc\",\"_id\":\"%s\",\"status\":429," +
+                                        "\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\"}}}",
+                                op, meta.get("_index").asText(), id));
+                    } else {
+                        indexed.add(id);
+                        items.append(String.format("{\"%s\":{\"_index\":\"%s\",\"_type\":\"_doc\",\"_id\":\"%s\",\"_version\":1," +
+                                        "\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}," +
+                                        "\"_seq_no\":0,\"_primary_term\":1,\"status\":201}}",
+                                op, meta.get("_index").asText(), id));
+                    }
+                }
+            }
+            byte[] body = String.format("{\"took\":1,\"errors\":%s,\"items\":[%s]}",
+                    items.toString().contains("\"error\""), items).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        client = new RestHighLevelClient(RestClient.builder(
+                new HttpHost("localhost", server.getAddress().getPort(), "http")));
+        connection = new TestConnection(client);
+        connection.name("test-bulk-indexer");
+        connection.bulkBatchSize(10);
+        connection.bulkFlushInterval(100);
+        connection.bulkMaxRetries(3);
+        connection.bulkRetryDelay(10);
+        connection.state().setState(EConnectionState.Open);
+    }
+
+    @AfterAll
+    static void shutdown() throws Exception {
+        if (client != null) client.close();
+        if (server != null) server.stop(0);
+    }
+
+    @BeforeEach
+    void reset() {
+        attempts.clear();
+        indexed.clear();
+    }
+
+    @Test
+    void retryRejected() {
+        try (ElasticSearchBulkIndexer indexer = new ElasticSearchBulkIndexer(connection)) {
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            for (int ii = 0; ii < 6; ii++) {
+                requests.add(request("product-" + ii));
+            }
+            requests.add(request("busy-1"));
+            requests.add(request("busy-2"));
+            requests.add(request("fail-1"));
+            requests.add(request("fail-2"));
+            indexer.add(requests);
+            indexer.flush();
+            waitForPending(indexer);
+
+            assertEquals(8, indexed.size());
+            assertTrue(indexed.contains("busy-1"));
+            assertTrue(indexed.contains("busy-2"));
+            assertEquals(BUSY_ATTEMPTS + 1, attempts.get("busy-1").get());
+            // Mapping errors are not retried.
+            assertEquals(1, attempts.get("fail-1").get());
+            assertFalse(indexed.contains("fail-1"));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void retryLimit() {
+        try (ElasticSearchBulkIndexer indexer = new ElasticSearchBulkIndexer(connection)) {
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            requests.add(request("product-1"));
+            requests.add(request("reject-1"));
+            requests.add(request("fail-1"));
+            indexer.add(requests);
+            indexer.flush();
+            waitForPending(indexer);
+
+            assertTrue(indexed.contains("product-1"));
+            assertFalse(indexed.contains("reject-1"));
+            assertTrue(attempts.get("reject-1").get() > connection.bulkMaxRetries());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void requeueSyncFailures() {
+        try (ElasticSearchBulkIndexer indexer = new ElasticSearchBulkIndexer(connection)) {
+            ElasticSearchHelper helper = new ElasticSearchHelper();
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            requests.add(request("product-1"));
+            requests.add(request("busy-1"));
+            BulkWriteResult result = helper.bulkWrite(client, requests, 10, 1024 * 1024);
+            assertEquals(1, result.succeeded());
+
+            List<DocWriteRequest<?>> failed = new ArrayList<>();
+            for (DocWriteRequest<?> request : requests) {
+                if (result.failed(request.index(), request.id())) {
+                    failed.add(request);
+                }
+            }
+            assertEquals(1, failed.size());
+            indexer.requeue(failed);
+            indexer.flush();
+            waitForPending(indexer);
+
+            assertTrue(indexed.contains("busy-1"));
+            assertEquals(BUSY_ATTEMPTS + 1, attempts.get("busy-1").get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void syncByDefault() {
+        assertFalse(new ElasticSearchConnection().bulkAsync());
+    }
+
+    private void waitForPending(ElasticSearchBulkIndexer indexer) throws Exception {
+        long etime = System.currentTimeMillis() + 10000;
+        while (indexer.pending() > 0 && System.currentTimeMillis() < etime) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, indexer.pending());
+    }
+
+    private IndexRequest request(String id) {
+        return new IndexRequest("product_index").id(id).source("{\"name\":\"" + id + "\"}",
+                XContentType.JSON);
+    }
+
+    private static class TestConnection extends ElasticSearchConnection {
+        private final RestHighLevelClient client;
+
+        private TestConnection(RestHighLevelClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public RestHighLevelClient connection() {
+            return client;
+        }
+    }
+}
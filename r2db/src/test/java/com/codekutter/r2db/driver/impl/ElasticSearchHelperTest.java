@@ -0,0 +1,336 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.Context;
+import com.codekutter.common.model.DocumentEntity;
+import com.codekutter.common.model.EAuditType;
+import com.codekutter.common.model.IEntity;
+import com.codekutter.common.stores.DataStoreException;
+import com.codekutter.common.stores.model.Customer;
+import com.codekutter.common.stores.model.Product;
+import com.codekutter.common.stores.model.ProductKey;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the bulk requests against a stub HTTP endpoint that mimics
+ * the Elastic Search _bulk and _search APIs. Documents with ID "fail-*" are rejected.
+ * Bulk writes are run both through the helper and the data store. Failed items are
+ * reported with a concrete index name, as for writes through an alias.
+ */
+class ElasticSearchHelperTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int SEARCH_DOC_COUNT = 95;
+    private static final AtomicInteger bulkCalls = new AtomicInteger();
+    private static final AtomicInteger searchCalls = new AtomicInteger();
+    private static final AtomicReference<String> bulkQuery = new AtomicReference<>();
+    private static final AtomicReference<String> searchSort = new AtomicReference<>();
+    private static final Principal user = () -> "test-user";
+    private static HttpServer server;
+    private static RestHighLevelClient client;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            bulkCalls.incrementAndGet();
+            bulkQuery.set(exchange.getRequestURI().getQuery());
+            StringBuilder items = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    JsonNode node = mapper.readTree(line);
+                    Iterator<String> names = node.fieldNames();
+                    String op = names.next();
+                    JsonNode meta = node.get(op);
+                    if (!op.equals("delete")) {
+                        reader.readLine();
+                    }
+                    String id = meta.get("_id").asText();
+                    if (items.length() > 0) items.append(",");
+                    if (id.startsWith("fail-")) {
+                        items.append(String.format("{\"%s\":{\"_index\":\"%s\",\"_type\":\"_doc\",\"_id\":\"%s\",\"status\":400," +
+                                        "\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}",
+                                op, meta.get("_index").asText() + "_000001", id));
+                    } else {
+                        items.append(String.format("{\"%s\":{\"_index\":\"%s\",\"_type\":\"_doc\",\"_id\":\"%s\",\"_version\":1," +
+                                        "\"result\":\"%s\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}," +
+                                        "\"_seq_no\":0,\"_primary_term\":1,\"status\":%d}}",
+                                op, meta.get("_index").asText(), id,
+                                op.equals("delete") ? "deleted" : "created", op.equals("delete") ? 200 : 201));
+                    }
+                }
+            }
+            byte[] body = String.format("{\"took\":1,\"errors\":%s,\"items\":[%s]}",
+                    items.toString().contains("\"error\""), items).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.createContext("/product_index/_search", exchange -> {
+            searchCalls.incrementAndGet();
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            int size = request.get("size").asInt();
+            searchSort.set(request.get("sort").get(0).fieldNames().next());
+            String after = request.has("search_after") ? request.get("search_after").get(0).asText() : null;
+            StringBuilder hits = new StringBuilder();
+            int count = 0;
+            for (int ii = 0; ii < SEARCH_DOC_COUNT && count < size; ii++) {
+                String id = String.format("product-%03d", ii);
+                if (after != null && id.compareTo(after) <= 0) continue;
+                if (hits.length() > 0) hits.append(",");
+                hits.append(String.format("{\"_index\":\"product_index\",\"_type\":\"_doc\",\"_id\":\"%s\",\"_score\":null," +
+                        "\"_source\":{\"id\":{\"key\":\"%s\"},\"name\":\"Product %s\"},\"sort\":[\"%s\"]}", id, id, id, id));
+                count++;
+            }
+            byte[] body = String.format("{\"took\":1,\"timed_out\":false," +
+                    "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}," +
+                    "\"hits\":{\"max_score\":null,\"hits\":[%s]}}", hits).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.createContext("/document_index/_search", exchange -> {
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            assertEquals("title", request.get("_source").get("includes").get(0).asText());
+            assertTrue(request.get("highlight").get("fields").has("title"));
+            byte[] body = ("{\"took\":1,\"timed_out\":false," +
+                    "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}," +
+                    "\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"max_score\":1.5,\"hits\":[" +
+                    "{\"_index\":\"document_index\",\"_type\":\"_doc\",\"_id\":\"doc-1\",\"_score\":1.5," +
+                    "\"_source\":{\"title\":\"Quarterly report\"}," +
+                    "\"highlight\":{\"title\":[\"Quarterly <em>report</em>\"]}}]}}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        client = new RestHighLevelClient(RestClient.builder(
+                new HttpHost("localhost", server.getAddress().getPort(), "http")));
+    }
+
+    @AfterAll
+    static void shutdown() throws Exception {
+        if (client != null) client.close();
+        if (server != null) server.stop(0);
+    }
+
+    @Test
+    void bulkWrite() {
+        try {
+            ElasticSearchHelper helper = new ElasticSearchHelper();
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            for (int ii = 0; ii < 25; ii++) {
+                String id = (ii % 10 == 0 ? "fail-" : "product-") + ii;
+                requests.add(helper.writeRequest(DocWriteRequest.OpType.INDEX, new ProductKey(id), product(id), Product.class));
+            }
+            requests.add(helper.writeRequest(DocWriteRequest.OpType.DELETE, new ProductKey("product-1"), null, Product.class));
+
+            bulkCalls.set(0);
+            BulkWriteResult result = helper.bulkWrite(client, requests, 10, 1024 * 1024);
+            assertEquals(26, result.requested());
+            assertEquals(3, result.batches());
+            assertEquals(3, bulkCalls.get());
+            assertEquals(23, result.succeeded());
+            assertTrue(result.hasErrors());
+            assertTrue(result.failed(helper.getIndexName(Product.class), "fail-10"));
+            assertTrue(result.errors().containsKey(BulkWriteResult.key(helper.getIndexName(Product.class), "fail-10")));
+            assertFalse(result.failed("other_index", "fail-10"));
+            assertFalse(bulkQuery.get().contains("refresh="));
+
+            bulkCalls.set(0);
+            result = helper.bulkWrite(client, requests, 100, 1024);
+            assertEquals(26, result.requested());
+            assertTrue(result.batches() > 1);
+            assertEquals(result.batches(), bulkCalls.get());
+            assertEquals(23, result.succeeded());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void bulkWriteRefresh() {
+        try {
+            ElasticSearchHelper helper = new ElasticSearchHelper();
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            requests.add(helper.writeRequest(DocWriteRequest.OpType.INDEX, new ProductKey("product-1"),
+                    product("product-1"), Product.class));
+            ElasticSearchContext context = new ElasticSearchContext();
+            context.refreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+
+            BulkWriteResult result = helper.bulkWrite(client, requests, 10, 1024 * 1024, context);
+            assertEquals(1, result.succeeded());
+            assertNotNull(bulkQuery.get());
+            assertTrue(bulkQuery.get().contains("refresh=true"));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void dataStoreBulkWrite() {
+        try {
+            TestDataStore dataStore = new TestDataStore();
+            dataStore.name("test-es-store");
+            dataStore.withConnection(new TestConnection(client));
+            dataStore.setupMonitoring();
+
+            List<Product> products = new ArrayList<>();
+            for (int ii = 0; ii < 5; ii++) {
+                String id = (ii == 0 ? "fail-" : "product-") + ii;
+                products.add(product(id));
+            }
+            BulkWriteResult result = dataStore.createEntities(products, Product.class, null, user);
+            assertEquals(4, result.succeeded());
+            assertEquals(1, result.errors().size());
+            assertEquals(4, dataStore.audited.size());
+            assertFalse(dataStore.audited.contains("fail-0"));
+
+            dataStore.audited.clear();
+            result = dataStore.deleteEntities(products.subList(1, 3), Product.class, null, user);
+            assertFalse(result.hasErrors());
+            assertEquals(2, dataStore.audited.size());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void cursor() {
+        try {
+            ElasticSearchHelper helper = new ElasticSearchHelper();
+            searchCalls.set(0);
+            ElasticSearchCursor<Product> cursor = helper.cursor(client, QueryBuilders.matchAllQuery(), 10, Product.class, null);
+            assertEquals(0, searchCalls.get());
+            List<String> ids = cursor.stream().map(p -> p.getKey().stringKey()).collect(Collectors.toList());
+            assertEquals(SEARCH_DOC_COUNT, ids.size());
+            assertEquals("product-000", ids.get(0));
+            assertEquals("product-094", ids.get(SEARCH_DOC_COUNT - 1));
+            assertEquals(10, cursor.pages());
+            assertEquals(10, searchCalls.get());
+            assertFalse(cursor.hasNext());
+            assertEquals("id.key", searchSort.get());
+
+            // A cursor needs a unique key field to page on.
+            assertThrows(DataStoreException.class,
+                    () -> helper.cursor(client, QueryBuilders.matchAllQuery(), 10, Customer.class, null));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void documentSearch() {
+        try {
+            ElasticSearchHelper helper = new ElasticSearchHelper();
+            ElasticSearchContext context = new ElasticSearchContext();
+            context.includes("title").highlight("title");
+            DocumentSearchResult<DocumentEntity> result = helper.documentSearch(client, "document_index",
+                    QueryBuilders.queryStringQuery("report"), 10, 0, DocumentEntity.class, context);
+            assertEquals(1, result.getCount());
+            assertEquals(1, result.getTotalRecords());
+            DocumentSearchResult.DocumentHit hit = result.getHits().get(0);
+            assertEquals("doc-1", hit.getId());
+            assertEquals(1.5f, hit.getScore());
+            assertEquals("Quarterly report", hit.field("title"));
+            assertEquals("Quarterly <em>report</em>", hit.getHighlights().get("title").get(0));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private Product product(String id) {
+        Product product = new Product();
+        product.setId(new ProductKey(id));
+        product.setName(String.format("Product %s", id));
+        product.setDescription("Bulk write test product.");
+        product.setBasePrice(100.0);
+        product.setCreatedDate(System.currentTimeMillis());
+        return product;
+    }
+
+    private static class TestConnection extends ElasticSearchConnection {
+        private final RestHighLevelClient client;
+
+        private TestConnection(RestHighLevelClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public RestHighLevelClient connection() {
+            return client;
+        }
+    }
+
+    private static class TestDataStore extends ElasticSearchDataStore {
+        private final List<String> audited = new ArrayList<>();
+
+        @Override
+        protected <E extends IEntity> void audit(@Nonnull EAuditType operation,
+                                                 @Nonnull E entity,
+                                                 @Nonnull Class<? extends E> type,
+                                                 Context context,
+                                                 @Nonnull Principal user) {
+            audited.add(entity.getKey().stringKey());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.r2db.driver.model.FileEntity;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalDirectoryCursorTest {
+    private static final int DIR_COUNT = 5;
+    private static final int FILE_COUNT = 20;
+    private static Path root;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        root = Files.createTempDirectory("dircursor");
+        for (int ii = 0; ii < DIR_COUNT; ii++) {
+            Path dir = Files.createDirectory(root.resolve(String.format("dir-%d", ii)));
+            for (int jj = 0; jj < FILE_COUNT; jj++) {
+                Files.write(dir.resolve(String.format("file-%d.txt", jj)), new byte[0]);
+            }
+        }
+    }
+
+    @AfterAll
+    static void shutdown() throws Exception {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    void walk() {
+        try (LocalDirectoryCursor cursor = new LocalDirectoryCursor(root, null)) {
+            List<String> paths = cursor.stream().map(FileEntity::getAbsolutePath).collect(Collectors.toList());
+            assertEquals(DIR_COUNT * (FILE_COUNT + 1), paths.size());
+            assertEquals(paths.size(), new HashSet<>(paths).size());
+
+            LocalDirectoryCursor filtered = new LocalDirectoryCursor(root, Pattern.compile("dir-[0-2]|file-1.*"));
+            // 3 directories, each with file-1 and file-10..19
+            assertEquals(3 * 12, filtered.stream().count());
+            assertTrue(filtered.closed());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void resume() {
+        try {
+            Set<String> paths = new HashSet<>();
+            String last = null;
+            int pages = 0;
+            while (true) {
+                try (LocalDirectoryCursor cursor = new LocalDirectoryCursor(root, null)) {
+                    if (last != null) {
+                        cursor.resumeAfter(last);
+                    }
+                    List<String> page = new ArrayList<>();
+                    while (page.size() < 7 && cursor.hasNext()) {
+                        page.add(cursor.next().getAbsolutePath());
+                    }
+                    if (page.isEmpty()) break;
+                    pages++;
+                    for (String path : page) {
+                        assertTrue(paths.add(path), String.format("Duplicate path. [path=%s]", path));
+                    }
+                    last = cursor.cursor();
+                }
+            }
+            assertEquals(DIR_COUNT * (FILE_COUNT + 1), paths.size());
+            assertEquals(15, pages);
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+}
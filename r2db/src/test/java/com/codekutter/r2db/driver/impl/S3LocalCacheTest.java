@@ -0,0 +1,103 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.r2db.driver.model.S3FileKey;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3LocalCacheTest {
+    private static final String BUCKET = "test-bucket";
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+    }
+
+    @Test
+    void evictBySize() {
+        try {
+            File dir = Files.createTempDirectory("s3cache").toFile();
+            S3LocalCache cache = new S3LocalCache("test-cache", 3000, 0, 0);
+            File f1 = file(dir, "f1", 1000);
+            File f2 = file(dir, "f2", 1000);
+            File f3 = file(dir, "f3", 1000);
+            assertTrue(cache.put(new S3FileKey(BUCKET, "f1"), f1, "e1"));
+            assertTrue(cache.put(new S3FileKey(BUCKET, "f2"), f2, "e2"));
+            assertTrue(cache.put(new S3FileKey(BUCKET, "f3"), f3, "e3"));
+            assertEquals(3000, cache.bytes());
+
+            // Touch f1 so that f2 is the least recently used.
+            assertNotNull(cache.get(new S3FileKey(BUCKET, "f1"), "e1"));
+            File f4 = file(dir, "f4", 1500);
+            assertTrue(cache.put(new S3FileKey(BUCKET, "f4"), f4, "e4"));
+            assertFalse(f2.exists());
+            assertFalse(f3.exists());
+            assertTrue(f1.exists());
+            assertEquals(2500, cache.bytes());
+            assertEquals(2, cache.size());
+
+            File f5 = file(dir, "f5", 5000);
+            assertFalse(cache.put(new S3FileKey(BUCKET, "f5"), f5, "e5"));
+            assertEquals(2500, cache.bytes());
+
+            cache.clear();
+            assertFalse(f1.exists());
+            assertFalse(f4.exists());
+            assertEquals(0, cache.bytes());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void validateETag() {
+        try {
+            File dir = Files.createTempDirectory("s3cache").toFile();
+            S3LocalCache cache = new S3LocalCache("test-cache", 3000, 0, 0);
+            S3FileKey key = new S3FileKey(BUCKET, "f1");
+            File f1 = file(dir, "f1", 1000);
+            cache.put(key, f1, "e1");
+            assertEquals(f1, cache.get(key, "e1"));
+
+            cache.refresh(key, f1, "e2");
+            assertNull(cache.get(key, "e1"));
+            assertFalse(f1.exists());
+            assertEquals(0, cache.bytes());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private File file(File dir, String name, int size) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), new byte[size]);
+        file.deleteOnExit();
+        return file;
+    }
+}
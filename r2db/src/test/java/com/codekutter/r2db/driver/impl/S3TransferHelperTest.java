@@ -0,0 +1,401 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.r2db.driver.model.S3FileEntity;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the transfers against an in-process stub of the S3 object APIs
+ * (put/get/head, list, ranged get and multipart uploads). Parts uploaded for
+ * keys starting with "fail/" are rejected, as are multipart uploads for keys
+ * starting with "noinit/".
+ */
+class S3TransferHelperTest {
+    private static final String BUCKET = "test-bucket";
+    private static final int PART_SIZE = (int) S3TransferHelper.MIN_PART_SIZE;
+    private static final Map<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private static final AtomicInteger uploadIds = new AtomicInteger();
+    private static final AtomicInteger partCalls = new AtomicInteger();
+    private static final AtomicInteger rangeCalls = new AtomicInteger();
+    private static final AtomicInteger abortCalls = new AtomicInteger();
+    private static final AtomicInteger listCalls = new AtomicInteger();
+    private static HttpServer server;
+    private static AmazonS3 client;
+    private static ExecutorService executor;
+    private static S3TransferHelper transfers;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", S3TransferHelperTest::handle);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.start();
+        client = AmazonS3ClientBuilder.standard()
+                .withPathStyleAccessEnabled(true)
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(
+                        String.format("http://localhost:%d", server.getAddress().getPort()), "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new AnonymousAWSCredentials()))
+                .withClientConfiguration(new ClientConfiguration().withMaxErrorRetry(0))
+                .build();
+        executor = Executors.newFixedThreadPool(4);
+        transfers = new S3TransferHelper(client, executor, PART_SIZE, PART_SIZE);
+    }
+
+    @AfterAll
+    static void shutdown() {
+        if (executor != null) executor.shutdownNow();
+        if (server != null) server.stop(0);
+    }
+
+    @Test
+    void singleTransfer() {
+        try {
+            byte[] data = randomData(1024 * 64);
+            File source = tempFile(data);
+            transfers.upload(BUCKET, "small/data.bin", source);
+            assertArrayEquals(data, objects.get("small/data.bin"));
+
+            File target = new File(source.getParentFile(), "download.bin");
+            rangeCalls.set(0);
+            transfers.download(BUCKET, "small/data.bin", target);
+            assertEquals(0, rangeCalls.get());
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void parallelTransfer() {
+        try {
+            byte[] data = randomData(PART_SIZE * 2 + 1024);
+            File source = tempFile(data);
+            partCalls.set(0);
+            transfers.upload(BUCKET, "large/data.bin", source);
+            assertEquals(3, partCalls.get());
+            assertArrayEquals(data, objects.get("large/data.bin"));
+
+            File target = new File(source.getParentFile(), "download.bin");
+            rangeCalls.set(0);
+            transfers.download(BUCKET, "large/data.bin", target);
+            assertEquals(3, rangeCalls.get());
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void abortOnFailure() {
+        try {
+            byte[] data = randomData(PART_SIZE * 2);
+            File source = tempFile(data);
+            abortCalls.set(0);
+            assertThrows(IOException.class, () -> transfers.upload(BUCKET, "fail/data.bin", source));
+            assertEquals(1, abortCalls.get());
+            assertFalse(objects.containsKey("fail/data.bin"));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void initiateFailure() {
+        try {
+            byte[] data = randomData(PART_SIZE * 2);
+            File source = tempFile(data);
+            abortCalls.set(0);
+            partCalls.set(0);
+            assertThrows(IOException.class, () -> transfers.upload(BUCKET, "noinit/data.bin", source));
+            assertEquals(0, partCalls.get());
+            assertEquals(0, abortCalls.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void partSize() {
+        long mb = 1024 * 1024;
+        assertEquals(PART_SIZE, transfers.partSize(PART_SIZE * 2));
+        assertEquals(PART_SIZE, transfers.partSize(PART_SIZE * (long) S3TransferHelper.MAX_PARTS));
+        // Larger files use bigger parts (rounded up to a whole MB) to stay within the part limit.
+        long length = PART_SIZE * (long) S3TransferHelper.MAX_PARTS + 1;
+        long size = transfers.partSize(length);
+        assertEquals(6 * mb, size);
+        assertTrue((length + size - 1) / size <= S3TransferHelper.MAX_PARTS);
+        length = 200L * 1024 * mb;
+        size = transfers.partSize(length);
+        assertEquals(0, size % mb);
+        assertTrue((length + size - 1) / size <= S3TransferHelper.MAX_PARTS);
+    }
+
+    @Test
+    void streamRead() {
+        try {
+            byte[] data = randomData(1024 * 256);
+            transfers.upload(BUCKET, "stream/data.bin", tempFile(data));
+            File local = new File(Files.createTempDirectory("s3stream").toFile(), "data.bin");
+            S3FileEntity entity = new S3FileEntity(BUCKET, "stream/data.bin", local.getAbsolutePath()).withClient(client);
+            assertEquals(data.length, entity.getRemoteLength());
+
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 1100), entity.readRange(1000, 100));
+            try (InputStream is = entity.openStream()) {
+                assertArrayEquals(data, IOUtils.toByteArray(is));
+            }
+            rangeCalls.set(0);
+            try (SeekableByteChannel channel = entity.openChannel()) {
+                ByteBuffer buffer = ByteBuffer.allocate(512);
+                channel.position(data.length - 1024);
+                assertEquals(512, channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(data, data.length - 1024, data.length - 512), buffer.array());
+                buffer.clear();
+                channel.position(16);
+                assertEquals(512, channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(data, 16, 528), buffer.array());
+                channel.position(data.length);
+                assertEquals(-1, channel.read(buffer));
+            }
+            assertEquals(2, rangeCalls.get());
+            assertFalse(local.exists());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void listCursor() {
+        try {
+            for (int ii = 0; ii < 25; ii++) {
+                objects.put(String.format("list/obj-%02d", ii), randomData(16));
+            }
+            listCalls.set(0);
+            S3ObjectCursor cursor = new S3ObjectCursor(client, BUCKET, "list/", 10);
+            assertEquals(0, listCalls.get());
+            List<String> keys = cursor.stream().map(o -> o.getKey()).collect(Collectors.toList());
+            assertEquals(25, keys.size());
+            assertEquals("list/obj-24", keys.get(24));
+            assertEquals(3, listCalls.get());
+            assertNull(cursor.continuationToken());
+
+            cursor = new S3ObjectCursor(client, BUCKET, "list/", 10);
+            assertEquals(10, cursor.nextPage(10).size());
+            String token = cursor.continuationToken();
+            assertNotNull(token);
+            listCalls.set(0);
+            cursor = new S3ObjectCursor(client, BUCKET, "list/", 10).withContinuationToken(token);
+            assertEquals("list/obj-10", cursor.next().getKey());
+            assertEquals(1, listCalls.get());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static File tempFile(byte[] data) throws IOException {
+        File dir = Files.createTempDirectory("s3transfer").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "source.bin");
+        Files.write(file.toPath(), data);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String key = path.substring(BUCKET.length() + 2);
+            Map<String, String> query = new HashMap<>();
+            String raw = exchange.getRequestURI().getRawQuery();
+            if (raw != null) {
+                for (String param : raw.split("&")) {
+                    String[] parts = param.split("=", 2);
+                    query.put(parts[0], parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+                }
+            }
+            String method = exchange.getRequestMethod();
+            byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+            if (method.equals("GET") && query.containsKey("list-type")) {
+                list(exchange, query);
+            } else if (method.equals("POST") && query.containsKey("uploads") && key.startsWith("noinit/")) {
+                reply(exchange, 403, "<Error><Code>AccessDenied</Code><Message>Access Denied</Message></Error>");
+            } else if (method.equals("POST") && query.containsKey("uploads")) {
+                String uploadId = String.format("upload-%d", uploadIds.incrementAndGet());
+                uploads.put(uploadId, new ConcurrentHashMap<>());
+                reply(exchange, 200, String.format("<InitiateMultipartUploadResult><Bucket>%s</Bucket><Key>%s</Key>" +
+                        "<UploadId>%s</UploadId></InitiateMultipartUploadResult>", BUCKET, key, uploadId));
+            } else if (method.equals("PUT") && query.containsKey("partNumber")) {
+                partCalls.incrementAndGet();
+                int partNumber = Integer.parseInt(query.get("partNumber"));
+                if (key.startsWith("fail/") && partNumber > 1) {
+                    reply(exchange, 400, "<Error><Code>InvalidPart</Code><Message>Part rejected</Message></Error>");
+                    return;
+                }
+                uploads.get(query.get("uploadId")).put(partNumber, body);
+                exchange.getResponseHeaders().add("ETag", String.format("\"%s\"", DigestUtils.md5Hex(body)));
+                reply(exchange, 200, null);
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                Map<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                byte[] data = new byte[0];
+                for (byte[] part : new TreeMap<>(parts).values()) {
+                    byte[] merged = Arrays.copyOf(data, data.length + part.length);
+                    System.arraycopy(part, 0, merged, data.length, part.length);
+                    data = merged;
+                }
+                objects.put(key, data);
+                reply(exchange, 200, String.format("<CompleteMultipartUploadResult><Bucket>%s</Bucket><Key>%s</Key>" +
+                        "<ETag>\"%s-%d\"</ETag></CompleteMultipartUploadResult>", BUCKET, key, DigestUtils.md5Hex(data), parts.size()));
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                abortCalls.incrementAndGet();
+                uploads.remove(query.get("uploadId"));
+                reply(exchange, 204, null);
+            } else if (method.equals("PUT")) {
+                objects.put(key, body);
+                exchange.getResponseHeaders().add("ETag", String.format("\"%s\"", DigestUtils.md5Hex(body)));
+                reply(exchange, 200, null);
+            } else if (method.equals("HEAD") || method.equals("GET")) {
+                byte[] data = objects.get(key);
+                if (data == null) {
+                    reply(exchange, 404, method.equals("HEAD") ? null : "<Error><Code>NoSuchKey</Code></Error>");
+                    return;
+                }
+                String etag = String.format("\"%s\"", DigestUtils.md5Hex(data));
+                SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Last-Modified", format.format(new Date()));
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                if (method.equals("HEAD")) {
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(data.length));
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                    return;
+                }
+                String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+                if (ifMatch != null && !ifMatch.replace("\"", "").equals(etag.replace("\"", ""))) {
+                    reply(exchange, 412, "<Error><Code>PreconditionFailed</Code></Error>");
+                    return;
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range != null) {
+                    rangeCalls.incrementAndGet();
+                    String[] bounds = range.substring("bytes=".length()).split("-");
+                    int start = Integer.parseInt(bounds[0]);
+                    int end = Math.min(Integer.parseInt(bounds[1]), data.length - 1);
+                    exchange.getResponseHeaders().add("Content-Range", String.format("bytes %d-%d/%d", start, end, data.length));
+                    send(exchange, 206, Arrays.copyOfRange(data, start, end + 1));
+                } else {
+                    send(exchange, 200, data);
+                }
+            } else {
+                reply(exchange, 405, null);
+            }
+        } catch (Throwable t) {
+            LogUtils.error(S3TransferHelperTest.class, t);
+            reply(exchange, 500, null);
+        }
+    }
+
+    private static void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        listCalls.incrementAndGet();
+        String prefix = query.getOrDefault("prefix", "");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        String after = query.get("continuation-token");
+        List<String> keys = objects.keySet().stream()
+                .filter(k -> k.startsWith(prefix) && (after == null || k.compareTo(after) > 0))
+                .collect(Collectors.toList());
+        boolean truncated = keys.size() > maxKeys;
+        if (truncated) keys = keys.subList(0, maxKeys);
+        StringBuilder xml = new StringBuilder(String.format("<ListBucketResult><Name>%s</Name><Prefix>%s</Prefix>" +
+                "<KeyCount>%d</KeyCount><MaxKeys>%d</MaxKeys><IsTruncated>%s</IsTruncated>", BUCKET, prefix, keys.size(), maxKeys, truncated));
+        if (truncated) {
+            xml.append(String.format("<NextContinuationToken>%s</NextContinuationToken>", keys.get(keys.size() - 1)));
+        }
+        for (String key : keys) {
+            xml.append(String.format("<Contents><Key>%s</Key><LastModified>2020-01-01T00:00:00.000Z</LastModified>" +
+                    "<ETag>\"%s\"</ETag><Size>%d</Size><StorageClass>STANDARD</StorageClass></Contents>",
+                    key, DigestUtils.md5Hex(objects.get(key)), objects.get(key).length));
+        }
+        xml.append("</ListBucketResult>");
+        reply(exchange, 200, xml.toString());
+    }
+
+    private static void reply(HttpExchange exchange, int status, String xml) throws IOException {
+        if (xml == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        send(exchange, status, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] data) throws IOException {
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(data);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import org.apache.commons.io.FileUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the cached view against an in-process Zookeeper server.
+ */
+class ZkLocalCacheTest {
+    private static final String ROOT = "/test/cache";
+    private static File dataDir;
+    private static ServerCnxnFactory factory;
+    private static CuratorFramework client;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        dataDir = Files.createTempDirectory("zkcache").toFile();
+        ZooKeeperServer server = new ZooKeeperServer(dataDir, dataDir, 2000);
+        factory = ServerCnxnFactory.createFactory(new InetSocketAddress("localhost", 0), 100);
+        factory.startup(server);
+        client = CuratorFrameworkFactory.newClient(String.format("localhost:%d", factory.getLocalPort()), new RetryOneTime(100));
+        client.start();
+        client.blockUntilConnected();
+    }
+
+    @AfterAll
+    static void shutdown() throws Exception {
+        client.close();
+        factory.shutdown();
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    @Test
+    void readThrough() {
+        try {
+            client.create().creatingParentsIfNeeded().forPath(ROOT + "/e1", bytes("v1"));
+            client.create().forPath(ROOT + "/e2", bytes("v2"));
+            try (ZkLocalCache cache = new ZkLocalCache("test-cache", client, ROOT, 0)) {
+                assertTrue(cache.start(10000));
+                // Root and the 2 entities.
+                assertEquals(3, cache.size());
+                assertEquals(0, cache.staleness());
+                assertEquals("v1", string(cache.get(ROOT + "/e1")));
+                assertNull(cache.get(ROOT + "/e3"));
+
+                // Changes made outside the cache are received by the watches.
+                client.setData().forPath(ROOT + "/e2", bytes("v2.1"));
+                client.create().forPath(ROOT + "/e3", bytes("v3"));
+                waitFor(() -> "v2.1".equals(string(cache.get(ROOT + "/e2"))) && cache.get(ROOT + "/e3") != null);
+                assertEquals(4, cache.size());
+
+                client.delete().forPath(ROOT + "/e3");
+                waitFor(() -> cache.size() == 3);
+                assertNull(cache.get(ROOT + "/e3"));
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void readOwnWrites() {
+        try {
+            String path = ROOT + "/w1";
+            client.create().creatingParentsIfNeeded().forPath(path, bytes("v1"));
+            try (ZkLocalCache cache = new ZkLocalCache("test-writes", client, ROOT, 0)) {
+                assertTrue(cache.start(10000));
+                assertEquals("v1", string(cache.get(path)));
+
+                Stat stat = client.setData().forPath(path, bytes("v2"));
+                cache.written(path, stat);
+                // Never returns the value older than the recorded write.
+                byte[] data = cache.get(path);
+                assertTrue(data == null || "v2".equals(string(data)));
+                waitFor(() -> cache.get(path) != null);
+                assertEquals("v2", string(cache.get(path)));
+
+                client.delete().forPath(path);
+                cache.deleted(path, stat.getCzxid());
+                assertNull(cache.get(path));
+
+                // Created node misses until it has been cached.
+                client.create().forPath(path, bytes("v3"));
+                cache.written(path, 0);
+                data = cache.get(path);
+                assertTrue(data == null || "v3".equals(string(data)));
+                waitFor(() -> cache.get(path) != null);
+                assertEquals("v3", string(cache.get(path)));
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void deleteRecreated() {
+        try {
+            String path = ROOT + "/d1";
+            client.create().creatingParentsIfNeeded().forPath(path, bytes("v1"));
+            try (ZkLocalCache cache = new ZkLocalCache("test-deletes", client, ROOT, 0)) {
+                assertTrue(cache.start(10000));
+                Stat stat = client.checkExists().forPath(path);
+
+                // Delete recorded after the cached view has received the delete and the re-create.
+                client.delete().forPath(path);
+                client.create().forPath(path, bytes("v2"));
+                waitFor(() -> "v2".equals(string(cache.get(path))));
+                cache.deleted(path, stat.getCzxid());
+                assertEquals("v2", string(cache.get(path)));
+
+                // Delete recorded before the cached view has received it.
+                stat = client.checkExists().forPath(path);
+                client.delete().forPath(path);
+                cache.deleted(path, stat.getCzxid());
+                assertNull(cache.get(path));
+                client.create().forPath(path, bytes("v3"));
+                waitFor(() -> cache.get(path) != null);
+                assertEquals("v3", string(cache.get(path)));
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws Exception {
+        long start = System.currentTimeMillis();
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() - start > 10000) {
+                fail("Timed out waiting for cache update.");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return (data != null ? new String(data, StandardCharsets.UTF_8) : null);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.driver.impl;
+
+import com.codekutter.common.Context;
+import com.codekutter.common.GlobalConstants;
+import com.codekutter.common.model.CopyException;
+import com.codekutter.common.model.IEntity;
+import com.codekutter.common.model.StringKey;
+import com.codekutter.common.model.ValidationExceptions;
+import com.codekutter.common.stores.DataStoreException;
+import com.codekutter.common.stores.impl.ZookeeperConnection;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.Monitoring;
+import com.codekutter.r2db.driver.impl.annotations.ZkEntity;
+import com.codekutter.r2db.driver.impl.annotations.ZkProperty;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.io.FileUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the multi transaction writes against an in-process Zookeeper server.
+ */
+class ZookeeperDataStoreTest {
+    private static final String ROOT = "/test/store";
+    private static File dataDir;
+    private static ServerCnxnFactory factory;
+    private static CuratorFramework client;
+    private static ZookeeperDataStore dataStore;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        Monitoring.start("test", 0, null, false, false);
+        dataDir = Files.createTempDirectory("zkstore").toFile();
+        ZooKeeperServer server = new ZooKeeperServer(dataDir, dataDir, 2000);
+        factory = ServerCnxnFactory.createFactory(new InetSocketAddress("localhost", 0), 100);
+        factory.startup(server);
+        client = CuratorFrameworkFactory.newClient(String.format("localhost:%d", factory.getLocalPort()), new RetryOneTime(100));
+        client.start();
+        client.blockUntilConnected();
+
+        ZookeeperDataStoreConfig config = new ZookeeperDataStoreConfig();
+        config.setName("test-zk");
+        config.rootPath(ROOT);
+        // Small batches to force multiple transactions.
+        config.maxBatchBytes(4096);
+        dataStore = new ZookeeperDataStore();
+        dataStore.withConfig(config);
+        dataStore.withConnection(new TestConnection(client));
+    }
+
+    @AfterAll
+    static void shutdown() throws Exception {
+        dataStore.close();
+        client.close();
+        factory.shutdown();
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    @Test
+    void batchWrites() {
+        try {
+            List<ZkParent> parents = new ArrayList<>();
+            List<StringKey> keys = new ArrayList<>();
+            for (int ii = 0; ii < 40; ii++) {
+                ZkParent parent = parent(String.format("batch-%d", ii), 2);
+                parents.add(parent);
+                keys.add(parent.getKey());
+            }
+            dataStore.createEntities(parents, ZkParent.class, null);
+            for (ZkParent parent : parents) {
+                ZkParent p = dataStore.findEntity(parent.getKey(), ZkParent.class, null);
+                assertNotNull(p);
+                assertEquals(parent.getValue(), p.getValue());
+                for (ZkChild child : parent.getChildren()) {
+                    assertNotNull(dataStore.findEntity(child.getKey(), ZkChild.class, null));
+                }
+            }
+
+            assertEquals(parents.size(), dataStore.deleteEntities(keys, ZkParent.class, null));
+            for (ZkParent parent : parents) {
+                assertNull(dataStore.findEntity(parent.getKey(), ZkParent.class, null));
+                for (ZkChild child : parent.getChildren()) {
+                    assertNull(dataStore.findEntity(child.getKey(), ZkChild.class, null));
+                }
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void atomicWrite() {
+        try {
+            dataStore.createEntity(parent("atomic-1", 1), ZkParent.class, null);
+            // Remove the child type path, the create of the child in the next write fails.
+            client.delete().deletingChildrenIfNeeded().forPath(String.format("%s/children/%s", ROOT, ZkChild.class.getName()));
+
+            ZkParent parent = parent("atomic-2", 1);
+            assertThrows(DataStoreException.class, () -> dataStore.createEntity(parent, ZkParent.class, null));
+            // Nothing written by the failed transaction.
+            assertNull(dataStore.findEntity(parent.getKey(), ZkParent.class, null));
+
+            dataStore.createEntity(parent, ZkParent.class, null);
+            assertNotNull(dataStore.findEntity(parent.getKey(), ZkParent.class, null));
+            assertNotNull(dataStore.findEntity(parent.getChildren().get(0).getKey(), ZkChild.class, null));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void entityNotSplit() {
+        try {
+            String group = String.format("%s/children/%s/group", ROOT, ZkChild.class.getName());
+            ZkParent first = parent("group-1", 0);
+            first.getChildren().add(child("group/child-0", first.getId()));
+            dataStore.createEntity(first, ZkParent.class, null);
+            // Remove the (known) parent path, the create of the last child fails.
+            client.delete().deletingChildrenIfNeeded().forPath(group);
+
+            // Entity writes larger than the max batch size.
+            ZkParent parent = parent("group-2", 20);
+            parent.getChildren().add(child("group/child-1", parent.getId()));
+            assertThrows(DataStoreException.class,
+                    () -> dataStore.createEntities(Collections.singletonList(parent), ZkParent.class, null));
+            // Nothing written for the entity, including children before the failed create.
+            assertNull(dataStore.findEntity(parent.getKey(), ZkParent.class, null));
+            for (ZkChild child : parent.getChildren()) {
+                assertNull(dataStore.findEntity(child.getKey(), ZkChild.class, null));
+            }
+
+            dataStore.createEntities(Collections.singletonList(parent), ZkParent.class, null);
+            for (ZkChild child : parent.getChildren()) {
+                assertNotNull(dataStore.findEntity(child.getKey(), ZkChild.class, null));
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    void legacyCascadeDelete() {
+        try {
+            ZkParent parent = parent("legacy-1", 2);
+            dataStore.createEntity(parent, ZkParent.class, null);
+            // Strip the reference paths, as saved by earlier versions.
+            String path = String.format("%s/parents/%s/%s", ROOT, ZkParent.class.getName(), parent.getId());
+            Map data = GlobalConstants.getJsonMapper().readValue(client.getData().forPath(path), Map.class);
+            for (Object ref : (List) data.get("children")) {
+                assertNotNull(((Map) ref).remove("path"));
+            }
+            client.setData().forPath(path, GlobalConstants.getJsonMapper().writeValueAsBytes(data));
+
+            assertTrue(dataStore.deleteEntity(parent.getKey(), ZkParent.class, null));
+            assertNull(dataStore.findEntity(parent.getKey(), ZkParent.class, null));
+            for (ZkChild child : parent.getChildren()) {
+                assertNull(dataStore.findEntity(child.getKey(), ZkChild.class, null));
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private static ZkChild child(String id, String value) {
+        ZkChild child = new ZkChild();
+        child.setId(id);
+        child.setValue(value);
+        return child;
+    }
+
+    private static ZkParent parent(String id, int children) {
+        ZkParent parent = new ZkParent();
+        parent.setId(id);
+        parent.setValue(String.format("%0500d", 0));
+        parent.setChildren(new ArrayList<>());
+        for (int ii = 0; ii < children; ii++) {
+            parent.getChildren().add(child(String.format("%s-child-%d", id, ii), id));
+        }
+        return parent;
+    }
+
+    private static class TestConnection extends ZookeeperConnection {
+        private final CuratorFramework client;
+
+        private TestConnection(CuratorFramework client) {
+            this.client = client;
+        }
+
+        @Override
+        public CuratorFramework connection() {
+            return client;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static abstract class ZkTestEntity implements IEntity<StringKey> {
+        private String id;
+        private String value;
+
+        @Override
+        public StringKey getKey() {
+            return new StringKey(id);
+        }
+
+        @Override
+        public int compare(StringKey key) {
+            return getKey().compareTo(key);
+        }
+
+        @Override
+        public IEntity<StringKey> copyChanges(IEntity<StringKey> source, Context context) throws CopyException {
+            return this;
+        }
+
+        @Override
+        public IEntity<StringKey> clone(Context context) throws CopyException {
+            return this;
+        }
+
+        @Override
+        public void validate() throws ValidationExceptions {
+        }
+    }
+
+    @ZkEntity(path = "parents")
+    @Getter
+    @Setter
+    public static class ZkParent extends ZkTestEntity {
+        @ZkProperty
+        private List<ZkChild> children;
+    }
+
+    @ZkEntity(path = "children")
+    public static class ZkChild extends ZkTestEntity {
+    }
+}
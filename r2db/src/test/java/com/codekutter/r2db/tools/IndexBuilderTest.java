@@ -0,0 +1,350 @@
+/*
+ *  Copyright (2020) Subhabrata Ghosh (subho dot ghosh at outlook dot com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.codekutter.r2db.tools;
+
+import com.codekutter.common.Context;
+import com.codekutter.common.GlobalConstants;
+import com.codekutter.common.model.CopyException;
+import com.codekutter.common.model.IEntity;
+import com.codekutter.common.model.StringKey;
+import com.codekutter.common.model.ValidationExceptions;
+import com.codekutter.common.stores.DataStoreException;
+import com.codekutter.common.utils.LogUtils;
+import com.codekutter.r2db.driver.impl.ElasticSearchConnection;
+import com.codekutter.r2db.driver.impl.annotations.Indexed;
+import com.codekutter.r2db.driver.model.Searchable;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the index update paths against a stub Elastic Search endpoint.
+ */
+class IndexBuilderTest {
+    private static final String INDEX = "test-index";
+    private static final String ANALYZER = String.format("analyzer_%s_english", INDEX);
+    private static final String ACKED = "{\"acknowledged\":true}";
+    private static final String TASK_COMPLETED = "{\"completed\":true,\"task\":{\"node\":\"node-1\",\"id\":1,\"type\":\"transport\"," +
+            "\"action\":\"indices:data/write/reindex\",\"start_time_in_millis\":0,\"running_time_in_nanos\":0,\"cancellable\":true}}";
+
+    private HttpServer server;
+    private RestHighLevelClient client;
+    private IndexBuilder builder;
+    private final Map<String, String> routes = new HashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setup() throws Exception {
+        routes.clear();
+        requests.clear();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        client = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", server.getAddress().getPort(), "http")));
+        builder = new IndexBuilder();
+        builder.connection(new TestConnection(client));
+        builder.reindexPollInterval(10);
+    }
+
+    @AfterEach
+    void dispose() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void mappingChanged() {
+        try {
+            Map<String, Object> generated = builder.index(INDEX).mappings(IndexedEntity.class, IndexedEntity.class.getAnnotation(Indexed.class));
+            assertNotNull(generated);
+            assertTrue(generated.containsKey("name"));
+            assertTrue(generated.containsKey("nested.value"));
+
+            assertFalse(IndexBuilder.mappingChanged(storedMappings(IndexCreateHelper.FIELD_TYPE_STRING), generated));
+            assertTrue(IndexBuilder.mappingChanged(storedMappings(IndexCreateHelper.FIELD_TYPE_OBJECT), generated));
+            assertTrue(IndexBuilder.mappingChanged(null, generated));
+
+            Map<String, Object> stored = storedMappings(IndexCreateHelper.FIELD_TYPE_STRING);
+            stored.remove("nested");
+            assertTrue(IndexBuilder.mappingChanged(stored, generated));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void updateUnchanged() {
+        try {
+            routes.put(String.format("HEAD /%s", INDEX), "");
+            routes.put(String.format("HEAD /_alias/%s", INDEX), "");
+            routes.put(String.format("GET /_alias/%s", INDEX),
+                    String.format("{\"%s-v1\":{\"aliases\":{\"%s\":{\"is_write_index\":true}}}}", INDEX, INDEX));
+            mappingRoute(String.format("%s-v1", INDEX), IndexCreateHelper.FIELD_TYPE_STRING);
+
+            builder.setupIndex(IndexedEntity.class);
+            // No index created and nothing copied.
+            for (String request : requests) {
+                assertTrue(request.startsWith("GET") || request.startsWith("HEAD"), request);
+            }
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void updateLegacy() {
+        try {
+            legacyRoutes(5, 5);
+
+            builder.setupIndex(IndexedEntity.class);
+            assertOrder(String.format("PUT /%s-v1", INDEX),
+                    String.format("PUT /%s/_settings", INDEX),
+                    "POST /_reindex",
+                    "POST /_aliases");
+            assertFalse(requests.contains(String.format("DELETE /%s-v1", INDEX)));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void updateLegacyIncomplete() {
+        try {
+            legacyRoutes(5, 4);
+
+            assertThrows(DataStoreException.class, () -> builder.setupIndex(IndexedEntity.class));
+            // Legacy index is unblocked and kept, the new index dropped.
+            assertFalse(requests.contains("POST /_aliases"));
+            assertEquals(2, requests.stream().filter(r -> r.equals(String.format("PUT /%s/_settings", INDEX))).count());
+            assertOrder(String.format("PUT /%s-v1", INDEX),
+                    "POST /_reindex",
+                    String.format("DELETE /%s-v1", INDEX));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void updateVersioned() {
+        try {
+            versionedRoutes(5, 5);
+
+            builder.setupIndex(IndexedEntity.class);
+            String block = String.format("PUT /%s-v1/_settings", INDEX);
+            assertOrder(String.format("PUT /%s-v2", INDEX),
+                    "POST /_reindex",
+                    block,
+                    "POST /_aliases");
+            // Catch-up copy runs under the write block, nothing is copied after the swap.
+            assertEquals(1, requests.stream().filter(r -> r.equals(block)).count());
+            assertTrue(requests.lastIndexOf("POST /_reindex") > requests.indexOf(block));
+            assertTrue(requests.lastIndexOf("POST /_reindex") < requests.indexOf("POST /_aliases"));
+            assertEquals(2, requests.stream().filter(r -> r.equals("POST /_reindex")).count());
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    @Test
+    void updateVersionedIncomplete() {
+        try {
+            versionedRoutes(5, 6);
+
+            assertThrows(DataStoreException.class, () -> builder.setupIndex(IndexedEntity.class));
+            // Current index is unblocked and stays aliased, the new index dropped.
+            assertFalse(requests.contains("POST /_aliases"));
+            assertEquals(2, requests.stream().filter(r -> r.equals(String.format("PUT /%s-v1/_settings", INDEX))).count());
+            assertTrue(requests.contains(String.format("DELETE /%s-v2", INDEX)));
+        } catch (Throwable t) {
+            LogUtils.error(getClass(), t);
+            fail(t);
+        }
+    }
+
+    private void versionedRoutes(long sourceCount, long targetCount) {
+        routes.put(String.format("HEAD /%s", INDEX), "");
+        routes.put(String.format("HEAD /_alias/%s", INDEX), "");
+        routes.put(String.format("GET /_alias/%s", INDEX),
+                String.format("{\"%s-v1\":{\"aliases\":{\"%s\":{\"is_write_index\":true}}}}", INDEX, INDEX));
+        mappingRoute(String.format("%s-v1", INDEX), IndexCreateHelper.FIELD_TYPE_OBJECT);
+        routes.put(String.format("GET /%s-v*", INDEX), String.format("{\"%s-v1\":{}}", INDEX));
+        routes.put(String.format("PUT /%s-v2", INDEX),
+                String.format("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"%s-v2\"}", INDEX));
+        routes.put(String.format("PUT /%s-v1/_settings", INDEX), ACKED);
+        routes.put("POST /_reindex", "{\"task\":\"node-1:1\"}");
+        routes.put("GET /_tasks/node-1:1", TASK_COMPLETED);
+        routes.put(String.format("POST /%s-v1/_count", INDEX), count(sourceCount));
+        routes.put(String.format("POST /%s-v2/_count", INDEX), count(targetCount));
+        routes.put("POST /_aliases", ACKED);
+        routes.put(String.format("DELETE /%s-v2", INDEX), ACKED);
+    }
+
+    private void legacyRoutes(long sourceCount, long targetCount) {
+        routes.put(String.format("HEAD /%s", INDEX), "");
+        mappingRoute(INDEX, IndexCreateHelper.FIELD_TYPE_OBJECT);
+        routes.put(String.format("PUT /%s-v1", INDEX),
+                String.format("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"%s-v1\"}", INDEX));
+        routes.put(String.format("PUT /%s/_settings", INDEX), ACKED);
+        routes.put("POST /_reindex", "{\"task\":\"node-1:1\"}");
+        routes.put("GET /_tasks/node-1:1", TASK_COMPLETED);
+        routes.put(String.format("POST /%s-v1/_count", INDEX), count(targetCount));
+        routes.put(String.format("POST /%s/_count", INDEX), count(sourceCount));
+        routes.put("POST /_aliases", ACKED);
+        routes.put(String.format("DELETE /%s-v1", INDEX), ACKED);
+    }
+
+    private void mappingRoute(String name, String type) {
+        try {
+            Map<String, Object> mappings = new HashMap<>();
+            mappings.put(IndexBuilder.MAPPING_PROPERTIES, storedMappings(type));
+            Map<String, Object> index = new HashMap<>();
+            index.put("mappings", mappings);
+            Map<String, Object> response = new HashMap<>();
+            response.put(name, index);
+            routes.put(String.format("GET /%s/_mapping", name),
+                    GlobalConstants.getJsonMapper().writeValueAsString(response));
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static String count(long count) {
+        return String.format("{\"count\":%d,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}}", count);
+    }
+
+    /**
+     * Mappings as returned by the index: dotted fields stored as object
+     * fields, plus fields added by dynamic mapping.
+     */
+    private static Map<String, Object> storedMappings(String type) {
+        Map<String, Object> field = new HashMap<>();
+        field.put(IndexBuilder.MAPPING_TYPE, type);
+        field.put(IndexBuilder.MAPPING_ANALYZER, ANALYZER);
+        field.put(IndexBuilder.MAPPING_FIELD_DATA, true);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", field);
+        Map<String, Object> nested = new HashMap<>();
+        nested.put(IndexBuilder.MAPPING_PROPERTIES, Collections.singletonMap("value", new HashMap<>(field)));
+        properties.put("nested", nested);
+        properties.put("dynamic", Collections.singletonMap(IndexBuilder.MAPPING_TYPE, "keyword"));
+        return properties;
+    }
+
+    private void assertOrder(String... expected) {
+        int last = -1;
+        for (String request : expected) {
+            int indx = requests.indexOf(request);
+            assertTrue(indx > last, String.format("Request out of order. [request=%s][requests=%s]", request, requests));
+            last = indx;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String request = String.format("%s %s", exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+        requests.add(request);
+        String body = routes.get(request);
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else if (body.isEmpty() || exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            byte[] data = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(data);
+            }
+        }
+        exchange.close();
+    }
+
+    private static class TestConnection extends ElasticSearchConnection {
+        private final RestHighLevelClient client;
+
+        private TestConnection(RestHighLevelClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public RestHighLevelClient connection() {
+            return client;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Nested {
+        @Searchable(faceted = true)
+        private String value;
+    }
+
+    @Indexed(index = INDEX)
+    @Getter
+    @Setter
+    public static class IndexedEntity implements IEntity<StringKey> {
+        private String id;
+        @Searchable(faceted = true)
+        private String name;
+        private Nested nested;
+
+        @Override
+        public StringKey getKey() {
+            return new StringKey(id);
+        }
+
+        @Override
+        public int compare(StringKey key) {
+            return getKey().compareTo(key);
+        }
+
+        @Override
+        public IEntity<StringKey> copyChanges(IEntity<StringKey> source, Context context) throws CopyException {
+            return this;
+        }
+
+        @Override
+        public IEntity<StringKey> clone(Context context) throws CopyException {
+            return this;
+        }
+
+        @Override
+        public void validate() throws ValidationExceptions {
+        }
+    }
+}
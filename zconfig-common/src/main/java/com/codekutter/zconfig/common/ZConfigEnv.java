@@ -27,6 +27,7 @@ package com.codekutter.zconfig.common;
 import com.codekutter.common.StateException;
 import com.codekutter.common.utils.KeyStoreVault;
 import com.codekutter.common.utils.LogUtils;
+import com.codekutter.common.utils.ManagedExecutor;
 import com.codekutter.common.utils.NetUtils;
 import com.codekutter.zconfig.common.model.Version;
 import com.codekutter.zconfig.common.model.nodes.ConfigPathNode;
@@ -205,5 +206,6 @@ public abstract class ZConfigEnv extends BaseConfigEnv {
         if (state.getState() == EEnvState.Initialized) {
             state.dispose();
         }
+        ManagedExecutor.dispose();
     }
 }